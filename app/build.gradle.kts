@@ -24,6 +24,9 @@ dependencies {
     implementation("androidx.constraintlayout:constraintlayout:2.0.4")
     implementation("com.google.dagger:dagger:2.49")
     annotationProcessor("com.google.dagger:dagger-compiler:2.49")
+    testImplementation("junit:junit:4.13.2")
+    testImplementation("androidx.test:core:1.5.0")
+    testImplementation("org.robolectric:robolectric:4.10.3")
     androidTestImplementation("androidx.test:rules:1.4.0")
     androidTestImplementation("androidx.annotation:annotation:1.2.0")
 }
@@ -79,6 +82,13 @@ android {
         targetCompatibility = JavaVersion.VERSION_11
     }
 
+    testOptions {
+        // Unit tests run on the JVM, where android.jar only contains stubs.
+        unitTests.isReturnDefaultValues = true
+        // Robolectric tests start the app, which needs its resources and manifest.
+        unitTests.isIncludeAndroidResources = true
+    }
+
     // Otherwise libsyncthing.so doesn't appear where it should in installs
     // based on app bundles, and thus nothing works.
     packagingOptions {
@@ -112,6 +122,11 @@ tasks.register<Delete>("deleteUnsupportedPlayTranslations") {
     )
 }
 
+tasks.withType<Test>().configureEach {
+    // Benchmarks in the unit tests only run with -Pbenchmark.
+    systemProperty("benchmark", project.hasProperty("benchmark"))
+}
+
 project.afterEvaluate {
     android.buildTypes.forEach {
         tasks.named("merge${it.name.capitalized()}JniLibFolders") {
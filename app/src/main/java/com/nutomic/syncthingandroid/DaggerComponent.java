@@ -2,12 +2,14 @@ package com.nutomic.syncthingandroid;
 
 import com.nutomic.syncthingandroid.activities.FirstStartActivity;
 import com.nutomic.syncthingandroid.activities.FolderPickerActivity;
+import com.nutomic.syncthingandroid.activities.LogActivity;
 import com.nutomic.syncthingandroid.activities.MainActivity;
 import com.nutomic.syncthingandroid.activities.SettingsActivity;
 import com.nutomic.syncthingandroid.activities.ShareActivity;
 import com.nutomic.syncthingandroid.activities.ThemedAppCompatActivity;
 import com.nutomic.syncthingandroid.receiver.AppConfigReceiver;
 import com.nutomic.syncthingandroid.service.RunConditionMonitor;
+import com.nutomic.syncthingandroid.service.DiskEventProcessor;
 import com.nutomic.syncthingandroid.service.EventProcessor;
 import com.nutomic.syncthingandroid.service.NotificationHandler;
 import com.nutomic.syncthingandroid.service.RestApi;
@@ -31,6 +33,7 @@ public interface DaggerComponent {
     void inject(SyncthingService service);
     void inject(RunConditionMonitor runConditionMonitor);
     void inject(EventProcessor eventProcessor);
+    void inject(DiskEventProcessor diskEventProcessor);
     void inject(SyncthingRunnable syncthingRunnable);
     void inject(NotificationHandler notificationHandler);
     void inject(AppConfigReceiver appConfigReceiver);
@@ -38,4 +41,5 @@ public interface DaggerComponent {
     void inject(SettingsActivity.SettingsFragment fragment);
     void inject(ShareActivity activity);
     void inject(ThemedAppCompatActivity activity);
+    void inject(LogActivity activity);
 }
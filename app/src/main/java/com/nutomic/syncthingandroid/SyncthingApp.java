@@ -4,6 +4,7 @@ import android.app.Application;
 import android.os.StrictMode;
 
 import com.google.android.material.color.DynamicColors;
+import com.nutomic.syncthingandroid.http.ApiRequest;
 import com.nutomic.syncthingandroid.util.Languages;
 
 import javax.inject.Inject;
@@ -25,6 +26,9 @@ public class SyncthingApp extends Application {
 
         new Languages(this).setLanguage(this);
 
+        // Must run before the first API request, the connection pool reads its settings once.
+        ApiRequest.setUpConnectionPool();
+
         // The main point here is to use a VM policy without
         // `detectFileUriExposure`, as that leads to exceptions when e.g.
         // opening the ignores file. And it's enabled by default.
@@ -3,6 +3,7 @@ package com.nutomic.syncthingandroid;
 import android.content.SharedPreferences;
 import android.preference.PreferenceManager;
 
+import com.nutomic.syncthingandroid.service.NativeLogBuffer;
 import com.nutomic.syncthingandroid.service.NotificationHandler;
 
 import javax.inject.Singleton;
@@ -30,4 +31,10 @@ public class SyncthingModule {
     public NotificationHandler getNotificationHandler() {
         return new NotificationHandler(mApp);
     }
+
+    @Provides
+    @Singleton
+    public NativeLogBuffer getNativeLogBuffer() {
+        return new NativeLogBuffer();
+    }
 }
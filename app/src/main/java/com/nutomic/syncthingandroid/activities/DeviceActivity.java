@@ -26,11 +26,11 @@ import android.widget.Toast;
 
 import androidx.core.content.ContextCompat;
 
-import com.google.gson.Gson;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.databinding.ActivityDeviceBinding;
 import com.nutomic.syncthingandroid.model.Connections;
 import com.nutomic.syncthingandroid.model.Device;
+import com.nutomic.syncthingandroid.model.JsonCodec;
 import com.nutomic.syncthingandroid.service.SyncthingService;
 import com.nutomic.syncthingandroid.util.Compression;
 import com.nutomic.syncthingandroid.util.TextWatcherAdapter;
@@ -62,6 +62,9 @@ public class DeviceActivity extends SyncthingActivity implements View.OnClickLis
 
     private static final List<String> DYNAMIC_ADDRESS = Collections.singletonList("dynamic");
 
+    private static final List<String> CONNECTION_EVENT_TYPES =
+            Arrays.asList("DeviceConnected", "DeviceDisconnected");
+
     private Device mDevice;
 
     private ActivityDeviceBinding binding;
@@ -151,7 +154,7 @@ public class DeviceActivity extends SyncthingActivity implements View.OnClickLis
 
         if (savedInstanceState != null){
             if (mDevice == null) {
-                mDevice = new Gson().fromJson(savedInstanceState.getString("device"), Device.class);
+                mDevice = JsonCodec.fromJson(savedInstanceState.getString("device"), Device.class);
             }
             restoreDialogStates(savedInstanceState);
         }
@@ -211,7 +214,7 @@ public class DeviceActivity extends SyncthingActivity implements View.OnClickLis
     @Override
     public void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
-        outState.putString("device", new Gson().toJson(mDevice));
+        outState.putString("device", JsonCodec.toJson(mDevice));
         if (mIsCreateMode){
             outState.putBoolean(IS_SHOWING_DISCARD_DIALOG, mDiscardDialog != null && mDiscardDialog.isShowing());
             Util.dismissDialogSafe(mDiscardDialog, this);
@@ -229,13 +232,19 @@ public class DeviceActivity extends SyncthingActivity implements View.OnClickLis
         SyncthingService syncthingService = (SyncthingService) getService();
         syncthingService.getNotificationHandler().cancelConsentNotification(getIntent().getIntExtra(EXTRA_NOTIFICATION_ID, 0));
         syncthingService.registerOnServiceStateChangeListener(this::onServiceStateChange);
+        if (!mIsCreateMode) {
+            // Show version and address changes while the activity is visible.
+            syncthingService.getEventBus().subscribe(this, CONNECTION_EVENT_TYPES,
+                    getIntent().getStringExtra(EXTRA_DEVICE_ID), event -> {
+                        if (getApi() != null && mDevice != null) {
+                            getApi().getConnections(this::onReceiveConnections);
+                        }
+                    });
+        }
     }
 
     /**
      * Sets version and current address of the device.
-     * <p/>
-     * NOTE: This is only called once on startup, should be called more often to properly display
-     * version/address changes.
      */
     private void onReceiveConnections(Connections connections) {
         boolean viewsExist = binding.syncthingVersion != null && binding.currentAddress != null;
@@ -254,14 +263,7 @@ public class DeviceActivity extends SyncthingActivity implements View.OnClickLis
         }
 
         if (!mIsCreateMode) {
-            List<Device> devices = getApi().getDevices(false);
-            mDevice = null;
-            for (Device device : devices) {
-                if (device.deviceID.equals(getIntent().getStringExtra(EXTRA_DEVICE_ID))) {
-                    mDevice = device;
-                    break;
-                }
-            }
+            mDevice = getApi().getDeviceForEdit(getIntent().getStringExtra(EXTRA_DEVICE_ID));
             if (mDevice == null) {
                 Log.w(TAG, "Device not found in API update, maybe it was deleted?");
                 finish();
@@ -17,6 +17,7 @@ import android.util.TypedValue;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CompoundButton;
 import android.widget.EditText;
@@ -25,20 +26,23 @@ import android.widget.TextView;
 import android.widget.Toast;
 
 import com.google.android.material.materialswitch.MaterialSwitch;
-import com.google.gson.Gson;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.databinding.FragmentFolderBinding;
+import com.nutomic.syncthingandroid.model.Completion;
 import com.nutomic.syncthingandroid.model.Device;
 import com.nutomic.syncthingandroid.model.Folder;
+import com.nutomic.syncthingandroid.model.JsonCodec;
 import com.nutomic.syncthingandroid.service.Constants;
 import com.nutomic.syncthingandroid.service.RestApi;
 import com.nutomic.syncthingandroid.service.SyncthingService;
 import com.nutomic.syncthingandroid.util.FileUtils;
 import com.nutomic.syncthingandroid.util.TextWatcherAdapter;
 import com.nutomic.syncthingandroid.util.Util;
+import com.nutomic.syncthingandroid.views.FoldersAdapter;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 import java.util.Map;
@@ -78,6 +82,9 @@ public class FolderActivity extends SyncthingActivity
     private static final int FOLDER_TYPE_DIALOG_REQUEST =3456;
     private static final int CHOOSE_FOLDER_REQUEST = 3459;
 
+    private static final List<String> COMPLETION_EVENT_TYPES =
+            Collections.singletonList("FolderCompletion");
+
     private static final String FOLDER_MARKER_NAME = ".stfolder";
     private static final String IGNORE_FILE_NAME = ".stignore";
 
@@ -151,7 +158,7 @@ public class FolderActivity extends SyncthingActivity
 
         if (mIsCreateMode) {
             if (savedInstanceState != null) {
-                mFolder = new Gson().fromJson(savedInstanceState.getString("folder"), Folder.class);
+                mFolder = JsonCodec.fromJson(savedInstanceState.getString("folder"), Folder.class);
                 if (savedInstanceState.getBoolean(IS_SHOW_DISCARD_DIALOG)){
                     showDiscardDialog();
                 }
@@ -322,6 +329,29 @@ public class FolderActivity extends SyncthingActivity
         SyncthingService syncthingService = (SyncthingService) getService();
         syncthingService.getNotificationHandler().cancelConsentNotification(getIntent().getIntExtra(EXTRA_NOTIFICATION_ID, 0));
         syncthingService.registerOnServiceStateChangeListener(this);
+        if (!mIsCreateMode) {
+            // Show the progress of remote devices while the activity is visible.
+            syncthingService.getEventBus().subscribe(this, COMPLETION_EVENT_TYPES,
+                    getIntent().getStringExtra(EXTRA_FOLDER_ID), event -> updateRemoteCompletion());
+        }
+    }
+
+    /**
+     * Shows how far remote devices are in syncing the folder, if they are not in sync.
+     */
+    private void updateRemoteCompletion() {
+        RestApi api = getApi();
+        if (api == null || mFolder == null) {
+            return;
+        }
+        Completion completion = api.getCompletion();
+        if (completion.getFolderCompletion(mFolder.id) >= 100) {
+            binding.remoteCompletion.setVisibility(View.GONE);
+            return;
+        }
+        binding.remoteCompletion.setVisibility(View.VISIBLE);
+        binding.remoteCompletion.setText(
+                FoldersAdapter.getRemoteCompletionText(this, completion, mFolder.id));
     }
 
     @Override
@@ -332,21 +362,15 @@ public class FolderActivity extends SyncthingActivity
         }
 
         if (!mIsCreateMode) {
-            List<Folder> folders = getApi().getFolders();
             String passedId = getIntent().getStringExtra(EXTRA_FOLDER_ID);
-            mFolder = null;
-            for (Folder currentFolder : folders) {
-                if (currentFolder.id.equals(passedId)) {
-                    mFolder = currentFolder;
-                    break;
-                }
-            }
+            mFolder = getApi().getFolderForEdit(passedId);
             if (mFolder == null) {
                 Log.w(TAG, "Folder not found in API update, maybe it was deleted?");
                 finish();
                 return;
             }
             checkWriteAndUpdateUI();
+            updateRemoteCompletion();
         }
         if (getIntent().hasExtra(EXTRA_DEVICE_ID)) {
             mFolder.addDevice(getIntent().getStringExtra(EXTRA_DEVICE_ID));
@@ -3,29 +3,79 @@ package com.nutomic.syncthingandroid.activities;
 import android.content.Intent;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
 import androidx.core.view.MenuItemCompat;
 import androidx.appcompat.widget.ShareActionProvider;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.View;
+import android.widget.EditText;
+import android.widget.ListView;
 import android.widget.ScrollView;
 import android.widget.TextView;
 
+import com.google.android.material.chip.Chip;
+import com.google.android.material.chip.ChipGroup;
 import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.SyncthingApp;
+import com.nutomic.syncthingandroid.service.NativeLogBuffer;
+import com.nutomic.syncthingandroid.views.NativeLogAdapter;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.inject.Inject;
 
 /**
  * Shows the log information from Syncthing.
+ *
+ * Syncthing's log is shown from the {@link NativeLogBuffer} and new lines are appended while the
+ * activity is visible. It can be narrowed down with a search box and filter chips for warnings
+ * and for the facilities, folders and devices the buffer found in the log. The Android log is
+ * read from logcat.
  */
 public class LogActivity extends SyncthingActivity {
 
     private final static String TAG = "LogActivity";
 
+    /**
+     * Interval at which new lines of Syncthing's log are appended.
+     */
+    private static final long TAIL_UPDATE_INTERVAL = 1000;
+
+    private static final int[] CHIP_FIELDS = {NativeLogBuffer.FIELD_FACILITY,
+            NativeLogBuffer.FIELD_FOLDER, NativeLogBuffer.FIELD_DEVICE};
+
+    /**
+     * Field of the chip for warnings, which filters by priority instead.
+     */
+    private static final int CHIP_FIELD_WARNINGS = -1;
+
+    @Inject NativeLogBuffer mNativeLogBuffer;
+
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private NativeLogAdapter mNativeLogAdapter;
+    private ListView mNativeLog;
+    private View mNativeLogFilters;
+    private EditText mNativeLogSearch;
+    private ChipGroup mNativeLogChips;
+    private NativeLogBuffer.Filter mFilter = new NativeLogBuffer.Filter();
+
+    /**
+     * Value count of the buffer when the chips were created, -1 if they weren't yet.
+     */
+    private int mChipValueCount = -1;
+    private boolean mUpdatingChips = false;
+
     private TextView mLog;
     private boolean mSyncthingLog = true;
     private AsyncTask mFetchLogTask = null;
@@ -38,6 +88,7 @@ public class LogActivity extends SyncthingActivity {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        ((SyncthingApp) getApplication()).component().inject(this);
 
         setContentView(R.layout.activity_log);
         setTitle(R.string.syncthing_log_title);
@@ -49,10 +100,154 @@ public class LogActivity extends SyncthingActivity {
 
         mLog = findViewById(R.id.log);
         mScrollView = findViewById(R.id.scroller);
+        mNativeLog = findViewById(R.id.native_log);
+        mNativeLogAdapter = new NativeLogAdapter(this, mNativeLogBuffer);
+        mNativeLog.setAdapter(mNativeLogAdapter);
+        mNativeLogFilters = findViewById(R.id.native_log_filters);
+        mNativeLogChips = findViewById(R.id.native_log_chips);
+        mNativeLogSearch = findViewById(R.id.native_log_search);
+        mNativeLogSearch.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                applyFilter();
+            }
+        });
 
         updateLog();
     }
 
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (mSyncthingLog) {
+            mHandler.post(mUpdateNativeLog);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mHandler.removeCallbacks(mUpdateNativeLog);
+    }
+
+    private final Runnable mUpdateNativeLog = new Runnable() {
+        @Override
+        public void run() {
+            boolean wasEmpty = mNativeLogAdapter.getCount() == 0;
+            if (mNativeLogAdapter.update() && wasEmpty) {
+                mNativeLog.setSelection(mNativeLogAdapter.getCount() - 1);
+            }
+            if (mNativeLogBuffer.getValueCount() != mChipValueCount) {
+                updateChips();
+            }
+            mHandler.postDelayed(this, TAIL_UPDATE_INTERVAL);
+        }
+    };
+
+    /**
+     * Tag of a filter chip.
+     */
+    private static class ChipFilter {
+        final int field;
+        final String value;
+
+        ChipFilter(int field, String value) {
+            this.field = field;
+            this.value = value;
+        }
+    }
+
+    /**
+     * Recreates the filter chips from the values found in the buffer, keeping the current
+     * selection.
+     */
+    private void updateChips() {
+        mChipValueCount = mNativeLogBuffer.getValueCount();
+        mUpdatingChips = true;
+        mNativeLogChips.removeAllViews();
+        addChip(CHIP_FIELD_WARNINGS, null, getString(R.string.log_filter_warnings),
+                mFilter.minPriority >= Log.WARN);
+        for (int field : CHIP_FIELDS) {
+            String selected = mFilter.get(field);
+            List<String> values = new ArrayList<>(mNativeLogBuffer.getValues(field));
+            // Keep the selected chip even if its lines were evicted meanwhile.
+            if (selected != null && !values.contains(selected)) {
+                values.add(0, selected);
+            }
+            for (String value : values) {
+                addChip(field, value, getChipText(field, value), value.equals(selected));
+            }
+        }
+        mUpdatingChips = false;
+    }
+
+    private String getChipText(int field, String value) {
+        switch (field) {
+            case NativeLogBuffer.FIELD_FOLDER:
+                return getString(R.string.log_filter_folder, value);
+            case NativeLogBuffer.FIELD_DEVICE:
+                return getString(R.string.log_filter_device,
+                        value.substring(0, Math.min(7, value.length())));
+            default:
+                return value;
+        }
+    }
+
+    private void addChip(int field, String value, String text, boolean checked) {
+        Chip chip = (Chip) getLayoutInflater()
+                .inflate(R.layout.item_log_filter_chip, mNativeLogChips, false);
+        chip.setText(text);
+        chip.setTag(new ChipFilter(field, value));
+        chip.setChecked(checked);
+        chip.setOnCheckedChangeListener((button, isChecked) -> {
+            if (mUpdatingChips) {
+                return;
+            }
+            // Only one value per field can be selected.
+            mUpdatingChips = true;
+            for (int i = 0; i < mNativeLogChips.getChildCount(); i++) {
+                Chip other = (Chip) mNativeLogChips.getChildAt(i);
+                if (other != button && ((ChipFilter) other.getTag()).field == field) {
+                    other.setChecked(false);
+                }
+            }
+            mUpdatingChips = false;
+            applyFilter();
+        });
+        mNativeLogChips.addView(chip);
+    }
+
+    /**
+     * Shows only the lines matching the search text and the checked chips.
+     */
+    private void applyFilter() {
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.text = mNativeLogSearch.getText().toString();
+        for (int i = 0; i < mNativeLogChips.getChildCount(); i++) {
+            Chip chip = (Chip) mNativeLogChips.getChildAt(i);
+            if (!chip.isChecked()) {
+                continue;
+            }
+            ChipFilter chipFilter = (ChipFilter) chip.getTag();
+            if (chipFilter.field == CHIP_FIELD_WARNINGS) {
+                filter.minPriority = Log.WARN;
+            } else {
+                filter.set(chipFilter.field, chipFilter.value);
+            }
+        }
+        mFilter = filter;
+        mNativeLogAdapter.setFilter(filter);
+        mNativeLog.setSelection(mNativeLogAdapter.getCount() - 1);
+    }
+
     @Override
     protected void onSaveInstanceState(Bundle outState) {
         super.onSaveInstanceState(outState);
@@ -75,6 +270,13 @@ public class LogActivity extends SyncthingActivity {
         mShareIntent.setType("text/plain");
         mShareIntent.putExtra(android.content.Intent.EXTRA_TEXT, mLog.getText());
         actionProvider.setShareIntent(mShareIntent);
+        actionProvider.setOnShareTargetSelectedListener((source, intent) -> {
+            // Syncthing's log is only turned into text when it is actually shared.
+            if (mSyncthingLog) {
+                intent.putExtra(Intent.EXTRA_TEXT, mNativeLogAdapter.getText());
+            }
+            return false;
+        });
 
         return true;
     }
@@ -101,6 +303,15 @@ public class LogActivity extends SyncthingActivity {
     private void updateLog() {
         if (mFetchLogTask != null) {
             mFetchLogTask.cancel(true);
+            mFetchLogTask = null;
+        }
+        mNativeLog.setVisibility(mSyncthingLog ? View.VISIBLE : View.GONE);
+        mNativeLogFilters.setVisibility(mSyncthingLog ? View.VISIBLE : View.GONE);
+        mScrollView.setVisibility(mSyncthingLog ? View.GONE : View.VISIBLE);
+        mHandler.removeCallbacks(mUpdateNativeLog);
+        if (mSyncthingLog) {
+            mHandler.post(mUpdateNativeLog);
+            return;
         }
         mLog.setText(R.string.retrieving_logs);
         mFetchLogTask = new UpdateLogTask(this).execute();
@@ -120,7 +331,7 @@ public class LogActivity extends SyncthingActivity {
                 cancel(true);
                 return "";
             }
-            return getLog(logActivity.mSyncthingLog);
+            return getLog();
         }
 
         protected void onPostExecute(String log) {
@@ -138,19 +349,12 @@ public class LogActivity extends SyncthingActivity {
         }
 
         /**
-         * Queries logcat to obtain a log.
-         *
-         * @param syncthingLog Filter on Syncthing's native messages.
+         * Queries logcat to obtain the Android log.
          */
-        private String getLog(final boolean syncthingLog) {
+        private String getLog() {
             Process process = null;
             try {
-                ProcessBuilder pb;
-                if (syncthingLog) {
-                    pb = new ProcessBuilder("/system/bin/logcat", "-t", "300", "-v", "time", "-s", "SyncthingNativeCode");
-                } else {
-                    pb = new ProcessBuilder("/system/bin/logcat", "-t", "300", "-v", "time", "*:i ps:s art:s");
-                }
+                ProcessBuilder pb = new ProcessBuilder("/system/bin/logcat", "-t", "300", "-v", "time", "*:i ps:s art:s");
                 pb.redirectErrorStream(true);
                 process = pb.start();
                 BufferedReader bufferedReader = new BufferedReader(
@@ -0,0 +1,91 @@
+package com.nutomic.syncthingandroid.activities;
+
+import android.os.Bundle;
+import android.view.View;
+import android.widget.ListView;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.service.ProcessStatsSampler;
+import com.nutomic.syncthingandroid.service.SyncthingService;
+import com.nutomic.syncthingandroid.views.ProcessStatsAdapter;
+
+/**
+ * Shows the CPU, memory and storage usage of the syncthing binary, as sampled by
+ * {@link ProcessStatsSampler}. Sampling runs only while this activity is visible.
+ */
+public class ProcessStatsActivity extends SyncthingActivity
+        implements SyncthingActivity.OnServiceConnectedListener,
+        ProcessStatsSampler.OnSampleListener {
+
+    @Nullable private ProcessStatsSampler mSampler;
+    @Nullable private ProcessStatsAdapter mAdapter;
+    private ListView mList;
+    private TextView mCurrentUsage;
+    private TextView mCurrentIo;
+    private boolean mResumed = false;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_process_stats);
+        setTitle(R.string.process_stats_title);
+
+        mCurrentUsage = findViewById(R.id.current_usage);
+        mCurrentIo = findViewById(R.id.current_io);
+        mList = findViewById(R.id.list);
+        mList.setEmptyView(findViewById(R.id.empty));
+
+        registerOnServiceConnectedListener(this);
+    }
+
+    @Override
+    public void onServiceConnected() {
+        if (mSampler != null) {
+            return;
+        }
+        mSampler = ((SyncthingService) getService()).getProcessStatsSampler();
+        mAdapter = new ProcessStatsAdapter(this, mSampler);
+        mList.setAdapter(mAdapter);
+        onSample();
+        if (mResumed) {
+            mSampler.registerOnSampleListener(this);
+        }
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        mResumed = true;
+        if (mSampler != null) {
+            mSampler.registerOnSampleListener(this);
+        }
+    }
+
+    @Override
+    protected void onPause() {
+        super.onPause();
+        mResumed = false;
+        if (mSampler != null) {
+            mSampler.unregisterOnSampleListener(this);
+        }
+    }
+
+    @Override
+    public void onSample() {
+        if (mSampler == null || mAdapter == null) {
+            return;
+        }
+        mAdapter.update();
+        boolean hasSamples = mAdapter.getCount() > 0;
+        mCurrentUsage.setVisibility(hasSamples ? View.VISIBLE : View.GONE);
+        mCurrentIo.setVisibility(hasSamples ? View.VISIBLE : View.GONE);
+        if (hasSamples) {
+            ProcessStatsSampler.Sample sample = mAdapter.getItem(0);
+            mCurrentUsage.setText(ProcessStatsAdapter.getUsageText(this, sample));
+            mCurrentIo.setText(ProcessStatsAdapter.getIoText(this, sample));
+        }
+    }
+}
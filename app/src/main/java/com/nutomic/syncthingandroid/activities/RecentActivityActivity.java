@@ -0,0 +1,95 @@
+package com.nutomic.syncthingandroid.activities;
+
+import android.os.Bundle;
+import android.widget.AbsListView;
+import android.widget.ListView;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.service.EventJournal;
+import com.nutomic.syncthingandroid.service.SyncthingService;
+import com.nutomic.syncthingandroid.views.EventJournalAdapter;
+
+import java.util.List;
+
+/**
+ * Shows the recent events kept in the {@link EventJournal}, newest first. Further pages are
+ * loaded while scrolling down.
+ */
+public class RecentActivityActivity extends SyncthingActivity
+        implements SyncthingActivity.OnServiceConnectedListener {
+
+    public static final String EXTRA_FOLDER_ID =
+            "com.nutomic.syncthingandroid.activities.RecentActivityActivity.FOLDER_ID";
+    public static final String EXTRA_DEVICE_ID =
+            "com.nutomic.syncthingandroid.activities.RecentActivityActivity.DEVICE_ID";
+
+    private static final int PAGE_SIZE = 100;
+
+    /**
+     * Load the next page once the user scrolled this close to the end of the list.
+     */
+    private static final int LOAD_MORE_THRESHOLD = 20;
+
+    @Nullable private EventJournal mEventJournal;
+    private EventJournalAdapter mAdapter;
+
+    /**
+     * Sequence of the oldest loaded entry, or {@link Long#MAX_VALUE} if nothing was loaded yet.
+     */
+    private long mOldestSequence = Long.MAX_VALUE;
+    private boolean mEndReached = false;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_recent_activity);
+        setTitle(R.string.recent_activity_title);
+
+        mAdapter = new EventJournalAdapter(this);
+        ListView list = findViewById(R.id.list);
+        list.setEmptyView(findViewById(R.id.empty));
+        list.setAdapter(mAdapter);
+        list.setOnScrollListener(new AbsListView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(AbsListView view, int scrollState) {
+            }
+
+            @Override
+            public void onScroll(AbsListView view, int firstVisibleItem, int visibleItemCount,
+                                 int totalItemCount) {
+                if (firstVisibleItem + visibleItemCount >= totalItemCount - LOAD_MORE_THRESHOLD) {
+                    loadNextPage();
+                }
+            }
+        });
+
+        registerOnServiceConnectedListener(this);
+    }
+
+    @Override
+    public void onServiceConnected() {
+        if (mEventJournal != null) {
+            return;
+        }
+        mEventJournal = ((SyncthingService) getService()).getEventJournal();
+        loadNextPage();
+    }
+
+    private void loadNextPage() {
+        if (mEventJournal == null || mEndReached) {
+            return;
+        }
+        List<EventJournal.Entry> entries = mEventJournal.query(mOldestSequence, PAGE_SIZE, null,
+                getIntent().getStringExtra(EXTRA_FOLDER_ID),
+                getIntent().getStringExtra(EXTRA_DEVICE_ID));
+        if (entries.size() < PAGE_SIZE) {
+            mEndReached = true;
+        }
+        if (!entries.isEmpty()) {
+            mOldestSequence = entries.get(entries.size() - 1).sequence;
+            mAdapter.addAll(entries);
+        }
+    }
+}
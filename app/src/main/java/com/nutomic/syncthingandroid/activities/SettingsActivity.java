@@ -223,6 +223,7 @@ public class SettingsActivity extends SyncthingActivity {
             Preference environmentVariables         = findPreference("environment_variables");
             Preference stResetDatabase              = findPreference("st_reset_database");
             Preference stResetDeltas                = findPreference("st_reset_deltas");
+            Preference useUnixSocketApi             = findPreference(Constants.PREF_USE_UNIX_SOCKET_API);
 
             mUseRoot                        = (CheckBoxPreference) findPreference(Constants.PREF_USE_ROOT);
             mUseWakelock                    = (CheckBoxPreference) findPreference(Constants.PREF_USE_WAKE_LOCK);
@@ -260,6 +261,7 @@ public class SettingsActivity extends SyncthingActivity {
             mUseRoot.setOnPreferenceClickListener(this);
             mUseWakelock.setOnPreferenceChangeListener(this);
             mUseTor.setOnPreferenceChangeListener(this);
+            useUnixSocketApi.setOnPreferenceChangeListener(this);
 
             mSocksProxyAddress.setEnabled(!(Boolean) mUseTor.isChecked());
             mSocksProxyAddress.setOnPreferenceChangeListener(this);
@@ -334,8 +336,8 @@ public class SettingsActivity extends SyncthingActivity {
                 return;
 
             mSyncthingVersion.setSummary(mApi.getVersion());
-            mOptions = mApi.getOptions();
-            mGui = mApi.getGui();
+            mOptions = mApi.getOptionsForEdit();
+            mGui = mApi.getGuiForEdit();
 
             Joiner joiner = Joiner.on(", ");
             mDeviceName.setText(mApi.getLocalDevice().name);
@@ -405,7 +407,7 @@ public class SettingsActivity extends SyncthingActivity {
             Splitter splitter = Splitter.on(",").trimResults().omitEmptyStrings();
             switch (preference.getKey()) {
                 case "deviceName":
-                    Device localDevice = mApi.getLocalDevice();
+                    Device localDevice = mApi.getDeviceForEdit(mApi.getLocalDevice().deviceID);
                     localDevice.name = (String) o;
                     mApi.editDevice(localDevice);
                     break;
@@ -508,6 +510,9 @@ public class SettingsActivity extends SyncthingActivity {
                 case Constants.PREF_USE_WAKE_LOCK:
                     mPendingConfig = true;
                     break;
+                case Constants.PREF_USE_UNIX_SOCKET_API:
+                    mPendingConfig = true;
+                    break;
                 case Constants.PREF_USE_TOR:
                     mSocksProxyAddress.setEnabled(!(Boolean) o);
                     mHttpProxyAddress.setEnabled(!(Boolean) o);
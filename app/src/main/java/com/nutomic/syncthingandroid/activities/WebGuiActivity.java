@@ -23,6 +23,8 @@ import android.webkit.WebView;
 import android.webkit.WebViewClient;
 import android.widget.Toast;
 
+import androidx.annotation.Nullable;
+
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.databinding.ActivityWebGuiBinding;
 import com.nutomic.syncthingandroid.service.Constants;
@@ -38,6 +40,7 @@ import java.io.InputStream;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.net.URL;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
@@ -63,6 +66,12 @@ public class WebGuiActivity extends StateDialogActivity
 
     private ActivityWebGuiBinding binding;
 
+    /**
+     * URL the web GUI was loaded from, set once {@link SyncthingService#openWebGuiBridge} was
+     * called.
+     */
+    @Nullable private URL mWebGuiUrl;
+
     /**
      * Hides the loading screen and shows the WebView once it is fully loaded.
      */
@@ -97,7 +106,7 @@ public class WebGuiActivity extends StateDialogActivity
         @Override
         public boolean shouldOverrideUrlLoading(WebView view, String url) {
             Uri uri = Uri.parse(url);
-            if(uri.getHost().equals(getService().getWebGuiUrl().getHost())) {
+            if (mWebGuiUrl != null && uri.getHost().equals(mWebGuiUrl.getHost())) {
                 return false;
             } else {
                 startActivity(new Intent(Intent.ACTION_VIEW, uri));
@@ -164,7 +173,10 @@ public class WebGuiActivity extends StateDialogActivity
                 String b64Credentials = Base64.encodeToString(credentials.getBytes(UTF_8), Base64.NO_WRAP);
                 Map<String,String> headers = new HashMap<>();
                 headers.put("Authorization", "Basic " + b64Credentials);
-                binding.webview.loadUrl(getService().getWebGuiUrl().toString(), headers);
+                if (mWebGuiUrl == null) {
+                    mWebGuiUrl = getService().openWebGuiBridge();
+                }
+                binding.webview.loadUrl(mWebGuiUrl.toString(), headers);
             }
         }
     }
@@ -198,6 +210,9 @@ public class WebGuiActivity extends StateDialogActivity
         SyncthingService mSyncthingService = getService();
         if (mSyncthingService != null) {
             mSyncthingService.unregisterOnServiceStateChangeListener(this);
+            if (mWebGuiUrl != null) {
+                mSyncthingService.closeWebGuiBridge();
+            }
         }
         binding.webview.destroy();
         super.onDestroy();
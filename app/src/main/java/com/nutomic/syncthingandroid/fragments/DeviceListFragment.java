@@ -2,6 +2,7 @@ package com.nutomic.syncthingandroid.fragments;
 
 import android.content.Intent;
 import android.os.Bundle;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.ListFragment;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -14,6 +15,7 @@ import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.activities.DeviceActivity;
 import com.nutomic.syncthingandroid.activities.SyncthingActivity;
 import com.nutomic.syncthingandroid.model.Device;
+import com.nutomic.syncthingandroid.service.ConnectionTracker;
 import com.nutomic.syncthingandroid.service.Constants;
 import com.nutomic.syncthingandroid.service.RestApi;
 import com.nutomic.syncthingandroid.service.SyncthingService;
@@ -29,7 +31,7 @@ import java.util.TimerTask;
  * Displays a list of all existing devices.
  */
 public class DeviceListFragment extends ListFragment implements SyncthingService.OnServiceStateChangeListener,
-        ListView.OnItemClickListener {
+        ListView.OnItemClickListener, ConnectionTracker.OnConnectionsChangeListener {
 
     private final static Comparator<Device> DEVICES_COMPARATOR = (lhs, rhs) -> lhs.name.compareTo(rhs.name);
 
@@ -37,12 +39,15 @@ public class DeviceListFragment extends ListFragment implements SyncthingService
 
     private Timer mTimer;
 
+    @Nullable private ConnectionTracker mConnectionTracker;
+
     @Override
     public void onPause() {
         super.onPause();
         if (mTimer != null) {
             mTimer.cancel();
         }
+        setConnectionTracker(null);
     }
 
     @Override
@@ -100,11 +105,39 @@ public class DeviceListFragment extends ListFragment implements SyncthingService
         mAdapter.clear();
         Collections.sort(devices, DEVICES_COMPARATOR);
         mAdapter.addAll(devices);
+        setConnectionTracker(restApi.getConnectionTracker());
         mAdapter.updateConnections(restApi);
         mAdapter.notifyDataSetChanged();
         setListShown(true);
     }
 
+    /**
+     * Follows connection changes of the current RestApi, and keeps transfer rates updated while
+     * the list is visible.
+     */
+    private void setConnectionTracker(@Nullable ConnectionTracker connectionTracker) {
+        if (connectionTracker == mConnectionTracker) {
+            return;
+        }
+        if (mConnectionTracker != null) {
+            mConnectionTracker.removeOnConnectionsChangeListener(this);
+            mConnectionTracker.removeRateConsumer(this);
+        }
+        mConnectionTracker = connectionTracker;
+        if (mConnectionTracker != null) {
+            mConnectionTracker.addOnConnectionsChangeListener(this);
+            mConnectionTracker.addRateConsumer(this);
+        }
+    }
+
+    @Override
+    public void onConnectionsChange() {
+        SyncthingActivity activity = (SyncthingActivity) getActivity();
+        if (mAdapter != null && activity != null && activity.getApi() != null) {
+            mAdapter.updateConnections(activity.getApi());
+        }
+    }
+
     @Override
     public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
         Intent intent = new Intent(getActivity(), DeviceActivity.class);
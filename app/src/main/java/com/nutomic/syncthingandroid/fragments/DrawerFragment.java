@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.os.Bundle;
 import android.preference.PreferenceManager;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import androidx.core.content.ContextCompat;
 import androidx.appcompat.app.AlertDialog;
@@ -18,12 +19,14 @@ import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.activities.MainActivity;
+import com.nutomic.syncthingandroid.activities.RecentActivityActivity;
 import com.nutomic.syncthingandroid.activities.SettingsActivity;
 import com.nutomic.syncthingandroid.activities.WebGuiActivity;
 import com.nutomic.syncthingandroid.http.ImageGetRequest;
 import com.nutomic.syncthingandroid.model.Connections;
 import com.nutomic.syncthingandroid.model.SystemInfo;
 import com.nutomic.syncthingandroid.model.SystemVersion;
+import com.nutomic.syncthingandroid.service.ConnectionTracker;
 import com.nutomic.syncthingandroid.service.Constants;
 import com.nutomic.syncthingandroid.service.RestApi;
 import com.nutomic.syncthingandroid.service.SyncthingService;
@@ -52,10 +55,20 @@ public class DrawerFragment extends Fragment implements View.OnClickListener {
 
     private Timer mTimer;
 
+    /**
+     * Tracker that transfer rates are requested from while the drawer is open.
+     */
+    @Nullable private ConnectionTracker mConnectionTracker;
+
     private MainActivity mActivity;
     private SharedPreferences sharedPreferences = null;
 
     public void onDrawerOpened() {
+        RestApi restApi = (mActivity != null) ? mActivity.getApi() : null;
+        if (restApi != null) {
+            mConnectionTracker = restApi.getConnectionTracker();
+            mConnectionTracker.addRateConsumer(this);
+        }
         mTimer = new Timer();
         mTimer.schedule(new TimerTask() {
             @Override
@@ -77,6 +90,10 @@ public class DrawerFragment extends Fragment implements View.OnClickListener {
             mTimer.cancel();
             mTimer = null;
         }
+        if (mConnectionTracker != null) {
+            mConnectionTracker.removeRateConsumer(this);
+            mConnectionTracker = null;
+        }
     }
 
     @Override
@@ -109,6 +126,8 @@ public class DrawerFragment extends Fragment implements View.OnClickListener {
                 .setOnClickListener(this);
         view.findViewById(R.id.drawerActionRestart)
                 .setOnClickListener(this);
+        view.findViewById(R.id.drawerActionRecentActivity)
+                .setOnClickListener(this);
         view.findViewById(R.id.drawerActionSettings)
                 .setOnClickListener(this);
         view.findViewById(R.id.drawerActionShowQrCode)
@@ -239,6 +258,10 @@ public class DrawerFragment extends Fragment implements View.OnClickListener {
                 startActivity(new Intent(mActivity, WebGuiActivity.class));
                 mActivity.closeDrawer();
                 break;
+            case R.id.drawerActionRecentActivity:
+                startActivity(new Intent(mActivity, RecentActivityActivity.class));
+                mActivity.closeDrawer();
+                break;
             case R.id.drawerActionSettings:
                 startActivity(new Intent(mActivity, SettingsActivity.class));
                 mActivity.closeDrawer();
@@ -2,6 +2,7 @@ package com.nutomic.syncthingandroid.fragments;
 
 import android.content.Intent;
 import android.os.Bundle;
+import androidx.annotation.Nullable;
 import androidx.fragment.app.ListFragment;
 import android.view.Menu;
 import android.view.MenuInflater;
@@ -14,6 +15,7 @@ import com.nutomic.syncthingandroid.activities.FolderActivity;
 import com.nutomic.syncthingandroid.activities.SyncthingActivity;
 import com.nutomic.syncthingandroid.model.Folder;
 import com.nutomic.syncthingandroid.service.Constants;
+import com.nutomic.syncthingandroid.service.FolderStateStore;
 import com.nutomic.syncthingandroid.service.RestApi;
 import com.nutomic.syncthingandroid.service.SyncthingService;
 import com.nutomic.syncthingandroid.views.FoldersAdapter;
@@ -26,18 +28,21 @@ import java.util.TimerTask;
  * Displays a list of all existing folders.
  */
 public class FolderListFragment extends ListFragment implements SyncthingService.OnServiceStateChangeListener,
-        AdapterView.OnItemClickListener {
+        AdapterView.OnItemClickListener, FolderStateStore.OnFolderStateChangeListener {
 
     private FoldersAdapter mAdapter;
 
     private Timer mTimer;
 
+    @Nullable private FolderStateStore mFolderStateStore;
+
     @Override
     public void onPause() {
         super.onPause();
         if (mTimer != null) {
             mTimer.cancel();
         }
+        setFolderStateStore(null);
     }
 
     @Override
@@ -87,6 +92,7 @@ public class FolderListFragment extends ListFragment implements SyncthingService
         }
         if (mAdapter == null) {
             mAdapter = new FoldersAdapter(activity);
+            mAdapter.setFolderStateStore(mFolderStateStore);
             setListAdapter(mAdapter);
         }
 
@@ -94,11 +100,38 @@ public class FolderListFragment extends ListFragment implements SyncthingService
         mAdapter.setNotifyOnChange(false);
         mAdapter.clear();
         mAdapter.addAll(folders);
-        mAdapter.updateFolderStatus(restApi);
+        setFolderStateStore(restApi.getFolderStateStore());
+        mAdapter.setCompletion(restApi.getCompletion());
         mAdapter.notifyDataSetChanged();
         setListShown(true);
     }
 
+    /**
+     * Shows folder states from the store of the current RestApi, which is updated from events.
+     */
+    private void setFolderStateStore(@Nullable FolderStateStore folderStateStore) {
+        if (folderStateStore == mFolderStateStore) {
+            return;
+        }
+        if (mFolderStateStore != null) {
+            mFolderStateStore.removeOnFolderStateChangeListener(this);
+        }
+        mFolderStateStore = folderStateStore;
+        if (mFolderStateStore != null) {
+            mFolderStateStore.addOnFolderStateChangeListener(this);
+        }
+        if (mAdapter != null) {
+            mAdapter.setFolderStateStore(folderStateStore);
+        }
+    }
+
+    @Override
+    public void onFolderStateChange() {
+        if (mAdapter != null) {
+            mAdapter.notifyDataSetChanged();
+        }
+    }
+
     @Override
     public void onItemClick(AdapterView<?> adapterView, View view, int i, long l) {
         Intent intent = new Intent(getActivity(), FolderActivity.class)
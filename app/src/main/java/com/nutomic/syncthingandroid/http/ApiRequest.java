@@ -4,18 +4,27 @@ package com.nutomic.syncthingandroid.http;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.net.Uri;
+import android.os.SystemClock;
 import androidx.annotation.Nullable;
 import android.util.Log;
 import android.widget.ImageView;
 
 import com.android.volley.AuthFailureError;
 import com.android.volley.DefaultRetryPolicy;
+import com.android.volley.NetworkResponse;
+import com.android.volley.ParseError;
+import com.android.volley.Request;
 import com.android.volley.RequestQueue;
+import com.android.volley.Response;
 import com.android.volley.VolleyError;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpHeaderParser;
+import com.android.volley.toolbox.HttpResponse;
 import com.android.volley.toolbox.HurlStack;
 import com.android.volley.toolbox.ImageRequest;
 import com.android.volley.toolbox.StringRequest;
 import com.android.volley.toolbox.Volley;
+import com.google.common.base.Objects;
 import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
 import com.nutomic.syncthingandroid.service.Constants;
@@ -24,13 +33,17 @@ import java.io.File;
 import java.io.IOException;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.Charset;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
+import javax.net.ssl.HostnameVerifier;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 
@@ -43,6 +56,12 @@ public abstract class ApiRequest {
      */
     private static final String HEADER_API_KEY = "X-API-Key";
 
+    /**
+     * Socket timeout in ms and number of retries used for regular requests.
+     */
+    static final int DEFAULT_TIMEOUT_MS = 5000;
+    static final int DEFAULT_MAX_RETRIES = 5;
+
     public interface OnSuccessListener {
         void onSuccess(String result);
     }
@@ -55,14 +74,66 @@ public abstract class ApiRequest {
         void onError(VolleyError error);
     }
 
+    public interface OnTypedSuccessListener<T> {
+        void onSuccess(T result);
+    }
+
+    /**
+     * Decodes a raw response body. Called on a Volley network thread, must not touch the UI.
+     */
+    public interface Decoder<T> {
+        T decode(byte[] data, Charset charset);
+    }
+
     private static RequestQueue sVolleyQueue;
 
+    /**
+     * If set, requests are sent over this Unix domain socket instead of TCP.
+     */
+    private static File sUnixSocket;
+
+    /**
+     * Selects the transport for all following requests.
+     *
+     * @param unixSocket Syncthing's GUI socket, or null to connect via TCP to the request URL.
+     */
+    public static synchronized void setUnixSocket(@Nullable File unixSocket) {
+        if (Objects.equal(unixSocket, sUnixSocket)) {
+            return;
+        }
+        Log.i(TAG, "Using " + (unixSocket != null ? "unix socket " + unixSocket : "TCP") +
+                " for API requests");
+        sUnixSocket = unixSocket;
+        if (sVolleyQueue != null) {
+            sVolleyQueue.stop();
+            sVolleyQueue = null;
+        }
+    }
+
+    /**
+     * Sizes the keep-alive pool of the platform HttpURLConnection for API requests over TCP.
+     *
+     * The pool is shared by the whole process and reads these properties once, when the first
+     * connection is opened, so this is called at app start, see
+     * {@link com.nutomic.syncthingandroid.SyncthingApp#onCreate}. The app makes no other
+     * HttpURLConnection requests that could need different settings.
+     */
+    public static void setUpConnectionPool() {
+        System.setProperty("http.keepAlive", "true");
+        System.setProperty("http.maxConnections", Integer.toString(MAX_IDLE_CONNECTIONS));
+    }
+
     private RequestQueue getVolleyQueue() {
-        if (sVolleyQueue == null) {
-            Context context = mContext.getApplicationContext();
-            sVolleyQueue = Volley.newRequestQueue(context, new NetworkStack());
+        synchronized (ApiRequest.class) {
+            if (sVolleyQueue == null) {
+                Context context = mContext.getApplicationContext();
+                BaseHttpStack stack = (sUnixSocket != null)
+                        ? new UnixSocketStack(sUnixSocket)
+                        : new NetworkStack();
+                sVolleyQueue = Volley.newRequestQueue(context, stack);
+            }
+            return sVolleyQueue;
         }
-        return sVolleyQueue;
     }
 
     private final Context mContext;
@@ -92,6 +163,16 @@ public abstract class ApiRequest {
      */
     void connect(int requestMethod, Uri uri, @Nullable String requestBody,
                  @Nullable OnSuccessListener listener, @Nullable OnErrorListener errorListener) {
+        connect(requestMethod, uri, requestBody, listener, errorListener,
+                DEFAULT_TIMEOUT_MS, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Opens the connection with a custom socket timeout and retry count, e.g. for long polling.
+     */
+    void connect(int requestMethod, Uri uri, @Nullable String requestBody,
+                 @Nullable OnSuccessListener listener, @Nullable OnErrorListener errorListener,
+                 int timeoutMs, int maxRetries) {
         Log.v(TAG, "Performing request to " + uri.toString());
         StringRequest request = new StringRequest(requestMethod, uri.toString(), reply -> {
             if (listener != null) {
@@ -117,7 +198,53 @@ public abstract class ApiRequest {
 
         // Some requests seem to be slow or fail, make sure this doesn't break the app
         // (eg if an event request fails, new event requests won't be triggered).
-        request.setRetryPolicy(new DefaultRetryPolicy(5000, 5,
+        request.setRetryPolicy(new DefaultRetryPolicy(timeoutMs, maxRetries,
+                DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
+        getVolleyQueue().add(request);
+    }
+
+    /**
+     * Opens the connection and decodes the response on the network thread. Only the decoded
+     * object is delivered to listener on the main thread.
+     */
+    <T> void connectTyped(int requestMethod, Uri uri, Decoder<T> decoder,
+                          @Nullable OnTypedSuccessListener<T> listener,
+                          @Nullable OnErrorListener errorListener, int timeoutMs, int maxRetries) {
+        Log.v(TAG, "Performing typed request to " + uri.toString());
+        Request<T> request = new Request<T>(requestMethod, uri.toString(), error -> {
+            if (errorListener != null) {
+                errorListener.onError(error);
+            } else {
+                Log.w(TAG, "Request to " + uri + " failed, " + error.getMessage());
+            }
+        }) {
+            @Override
+            public Map<String, String> getHeaders() throws AuthFailureError {
+                return ImmutableMap.of(HEADER_API_KEY, mApiKey);
+            }
+
+            @Override
+            protected Response<T> parseNetworkResponse(NetworkResponse response) {
+                try {
+                    Charset charset = Charset.forName(
+                            HttpHeaderParser.parseCharset(response.headers, "UTF-8"));
+                    T result = decoder.decode(response.data, charset);
+                    return Response.success(result, HttpHeaderParser.parseCacheHeaders(response));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Failed to decode response from " + uri, e);
+                    return Response.error(new ParseError(e));
+                }
+            }
+
+            @Override
+            protected void deliverResponse(T response) {
+                if (listener != null) {
+                    listener.onSuccess(response);
+                }
+            }
+        };
+
+        request.setRetryPolicy(new DefaultRetryPolicy(timeoutMs, maxRetries,
                 DefaultRetryPolicy.DEFAULT_BACKOFF_MULT));
         getVolleyQueue().add(request);
     }
@@ -149,30 +276,71 @@ public abstract class ApiRequest {
     /**
      * Extends {@link HurlStack}, uses {@link #getSslSocketFactory()} and disables hostname
      * verification.
+     *
+     * The platform HttpURLConnection keeps idle connections alive in a pool keyed by host,
+     * socket factory and hostname verifier, so all of these are shared between requests.
      */
     private class NetworkStack extends HurlStack {
 
         public NetworkStack() {
             super(null, getSslSocketFactory());
         }
+
         @Override
         protected HttpURLConnection createConnection(URL url) throws IOException {
             if (mUrl.toString().startsWith("https://")) {
                 HttpsURLConnection connection = (HttpsURLConnection) super.createConnection(url);
-                connection.setHostnameVerifier((hostname, session) -> true);
+                connection.setHostnameVerifier(ACCEPT_ALL_HOSTNAMES);
                 return connection;
             }
             return super.createConnection(url);
         }
+
+        @Override
+        public HttpResponse executeRequest(Request<?> request,
+                                           Map<String, String> additionalHeaders)
+                throws IOException, AuthFailureError {
+            long start = SystemClock.elapsedRealtime();
+            try {
+                return super.executeRequest(request, additionalHeaders);
+            } finally {
+                Log.v(TAG, "Request to " + Uri.parse(request.getUrl()).getPath() + " took " +
+                        (SystemClock.elapsedRealtime() - start) + " ms");
+            }
+        }
     }
 
+    /**
+     * Syncthing's certificate is checked by {@link SyncthingTrustManager} instead. Must be a
+     * single instance, otherwise pooled connections are never reused.
+     */
+    private static final HostnameVerifier ACCEPT_ALL_HOSTNAMES = (hostname, session) -> true;
+
+    /**
+     * Number of idle keep-alive connections to the API. One more than Volley's network threads,
+     * so a pending event long poll does not push out connections of other requests.
+     */
+    private static final int MAX_IDLE_CONNECTIONS = 5;
+
+    /**
+     * Number and lifetime of TLS sessions cached for resumption. Only the local Syncthing
+     * instance is ever contacted, so a small cache is enough.
+     */
+    private static final int TLS_SESSION_CACHE_SIZE = 8;
+    private static final int TLS_SESSION_TIMEOUT_S = (int) TimeUnit.HOURS.toSeconds(1);
+
     private SSLSocketFactory getSslSocketFactory() {
         try {
             SSLContext sslContext = SSLContext.getInstance("TLS");
             File httpsCertPath = Constants.getHttpsCertFile(mContext);
             sslContext.init(null, new TrustManager[]{new SyncthingTrustManager(httpsCertPath)},
                     new SecureRandom());
-            return sslContext.getSocketFactory();
+            SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+            if (sessionContext != null) {
+                sessionContext.setSessionCacheSize(TLS_SESSION_CACHE_SIZE);
+                sessionContext.setSessionTimeout(TLS_SESSION_TIMEOUT_S);
+            }
+            return new TimingSSLSocketFactory(sslContext.getSocketFactory());
         } catch (NoSuchAlgorithmException | KeyManagementException e) {
             Log.w(TAG, e);
             return null;
@@ -0,0 +1,25 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+import com.android.volley.Request;
+
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Performs a DELETE request to the Syncthing API, used to remove single config objects.
+ */
+public class DeleteRequest extends ApiRequest {
+
+    public DeleteRequest(Context context, URL url, String path, String apiKey,
+                         @Nullable OnSuccessListener listener,
+                         @Nullable OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Uri uri = buildUri(Collections.emptyMap());
+        connect(Request.Method.DELETE, uri, null, listener, errorListener);
+    }
+
+}
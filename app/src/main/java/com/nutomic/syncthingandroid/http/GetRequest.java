@@ -25,6 +25,7 @@ public class GetRequest extends ApiRequest {
     public static final String URI_DEVICEID    = "/rest/svc/deviceid";
     public static final String URI_REPORT      = "/rest/svc/report";
     public static final String URI_EVENTS      = "/rest/events";
+    public static final String URI_EVENTS_DISK = "/rest/events/disk";
 
     public GetRequest(Context context, URL url, String path, String apiKey,
                       @Nullable Map<String, String> params, OnSuccessListener listener) {
@@ -34,4 +35,30 @@ public class GetRequest extends ApiRequest {
         connect(Request.Method.GET, uri, null, listener, null);
     }
 
+    /**
+     * Performs a GET request and reports failures to errorListener.
+     */
+    public GetRequest(Context context, URL url, String path, String apiKey,
+                      @Nullable Map<String, String> params,
+                      OnSuccessListener listener, OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Map<String, String> safeParams = Optional.fromNullable(params).or(Collections.emptyMap());
+        Uri uri = buildUri(safeParams);
+        connect(Request.Method.GET, uri, null, listener, errorListener);
+    }
+
+    /**
+     * Performs a GET request that may block on the server side for up to timeoutMs, e.g. a
+     * long poll on {@link #URI_EVENTS}. The request is not retried, failures are reported
+     * to errorListener instead.
+     */
+    public GetRequest(Context context, URL url, String path, String apiKey,
+                      @Nullable Map<String, String> params, int timeoutMs,
+                      OnSuccessListener listener, OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Map<String, String> safeParams = Optional.fromNullable(params).or(Collections.emptyMap());
+        Uri uri = buildUri(safeParams);
+        connect(Request.Method.GET, uri, null, listener, errorListener, timeoutMs, 0);
+    }
+
 }
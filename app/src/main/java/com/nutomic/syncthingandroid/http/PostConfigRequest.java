@@ -3,6 +3,8 @@ package com.nutomic.syncthingandroid.http;
 import android.content.Context;
 import android.net.Uri;
 
+import androidx.annotation.Nullable;
+
 import com.android.volley.Request;
 
 import java.net.URL;
@@ -14,9 +16,14 @@ public class PostConfigRequest extends ApiRequest {
 
     public PostConfigRequest(Context context, URL url, String apiKey, String config,
                              OnSuccessListener listener) {
+        this(context, url, apiKey, config, listener, null);
+    }
+
+    public PostConfigRequest(Context context, URL url, String apiKey, String config,
+                             OnSuccessListener listener, @Nullable OnErrorListener errorListener) {
         super(context, url, URI_CONFIG, apiKey);
         Uri uri = buildUri(Collections.emptyMap());
-        connect(Request.Method.POST, uri, config, listener, null);
+        connect(Request.Method.POST, uri, config, listener, errorListener);
     }
 
 }
@@ -0,0 +1,30 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+import com.android.volley.Request;
+
+import java.net.URL;
+import java.util.Collections;
+
+/**
+ * Performs a PUT request to the Syncthing API, used to replace single config objects.
+ */
+public class PutRequest extends ApiRequest {
+
+    public static final String URI_CONFIG_FOLDERS = "/rest/config/folders/";
+    public static final String URI_CONFIG_DEVICES = "/rest/config/devices/";
+    public static final String URI_CONFIG_OPTIONS = "/rest/config/options";
+    public static final String URI_CONFIG_GUI     = "/rest/config/gui";
+
+    public PutRequest(Context context, URL url, String path, String apiKey, String body,
+                      @Nullable OnSuccessListener listener,
+                      @Nullable OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Uri uri = buildUri(Collections.emptyMap());
+        connect(Request.Method.PUT, uri, body, listener, errorListener);
+    }
+
+}
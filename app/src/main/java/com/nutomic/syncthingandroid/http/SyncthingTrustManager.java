@@ -5,7 +5,6 @@ import android.util.Log;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.security.InvalidKeyException;
@@ -29,6 +28,18 @@ class SyncthingTrustManager implements X509TrustManager {
 
     private final File mHttpsCertPath;
 
+    /**
+     * The parsed CA certificate and the modification time of {@link #mHttpsCertPath} it was
+     * read at. Guarded by this.
+     */
+    private X509Certificate mCachedCa;
+    private long mCachedCaLastModified;
+
+    /**
+     * Server certificate that was last verified against {@link #mCachedCa}. Guarded by this.
+     */
+    private X509Certificate mLastVerifiedCert;
+
     SyncthingTrustManager(File httpsCertPath) {
         mHttpsCertPath = httpsCertPath;
     }
@@ -45,17 +56,40 @@ class SyncthingTrustManager implements X509TrustManager {
     @Override
     public void checkServerTrusted(X509Certificate[] certs,
                                    String authType) throws CertificateException {
-        InputStream is = null;
         try {
-            is = new FileInputStream(mHttpsCertPath);
-            CertificateFactory cf = CertificateFactory.getInstance("X.509");
-            X509Certificate ca = (X509Certificate) cf.generateCertificate(is);
-            for (X509Certificate cert : certs) {
-                cert.verify(ca.getPublicKey());
+            synchronized (this) {
+                X509Certificate ca = getCa();
+                if (certs.length == 1 && certs[0].equals(mLastVerifiedCert)) {
+                    return;
+                }
+                for (X509Certificate cert : certs) {
+                    cert.verify(ca.getPublicKey());
+                }
+                mLastVerifiedCert = (certs.length == 1) ? certs[0] : null;
             }
-        } catch (FileNotFoundException | NoSuchAlgorithmException | InvalidKeyException |
+        } catch (IOException | NoSuchAlgorithmException | InvalidKeyException |
                 NoSuchProviderException | SignatureException e) {
             throw new CertificateException("Untrusted Certificate!", e);
+        }
+    }
+
+    /**
+     * Returns the CA certificate, parsing it again only if the file was modified since.
+     */
+    private X509Certificate getCa() throws IOException, CertificateException {
+        long lastModified = mHttpsCertPath.lastModified();
+        if (mCachedCa != null && lastModified == mCachedCaLastModified) {
+            return mCachedCa;
+        }
+        InputStream is = null;
+        try {
+            is = new FileInputStream(mHttpsCertPath);
+            CertificateFactory cf = CertificateFactory.getInstance("X.509");
+            mCachedCa = (X509Certificate) cf.generateCertificate(is);
+            mCachedCaLastModified = lastModified;
+            mLastVerifiedCert = null;
+            Log.v(TAG, "Loaded CA certificate from " + mHttpsCertPath);
+            return mCachedCa;
         } finally {
             try {
                 if (is != null)
@@ -65,6 +99,7 @@ class SyncthingTrustManager implements X509TrustManager {
             }
         }
     }
+
     public X509Certificate[] getAcceptedIssuers() {
         return null;
     }
@@ -0,0 +1,99 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Wraps an {@link SSLSocketFactory} to log how long each TLS handshake takes and whether the
+ * session was resumed from the client session cache.
+ */
+class TimingSSLSocketFactory extends SSLSocketFactory {
+
+    private static final String TAG = "TimingSSLSocketFactory";
+
+    private final SSLSocketFactory mDelegate;
+
+    private final AtomicInteger mHandshakes = new AtomicInteger();
+    private final AtomicInteger mResumedHandshakes = new AtomicInteger();
+
+    TimingSSLSocketFactory(SSLSocketFactory delegate) {
+        mDelegate = delegate;
+    }
+
+    @Override
+    public String[] getDefaultCipherSuites() {
+        return mDelegate.getDefaultCipherSuites();
+    }
+
+    @Override
+    public String[] getSupportedCipherSuites() {
+        return mDelegate.getSupportedCipherSuites();
+    }
+
+    @Override
+    public Socket createSocket(Socket s, String host, int port, boolean autoClose)
+            throws IOException {
+        return track(mDelegate.createSocket(s, host, port, autoClose));
+    }
+
+    @Override
+    public Socket createSocket() throws IOException {
+        return track(mDelegate.createSocket());
+    }
+
+    @Override
+    public Socket createSocket(String host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(String host, int port, InetAddress localHost, int localPort)
+            throws IOException {
+        return track(mDelegate.createSocket(host, port, localHost, localPort));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress host, int port) throws IOException {
+        return track(mDelegate.createSocket(host, port));
+    }
+
+    @Override
+    public Socket createSocket(InetAddress address, int port, InetAddress localAddress,
+                               int localPort) throws IOException {
+        return track(mDelegate.createSocket(address, port, localAddress, localPort));
+    }
+
+    /**
+     * The handshake is started by the connection right after the socket is created, so the
+     * time until the handshake completes is a close approximation of the handshake duration.
+     */
+    private Socket track(Socket socket) {
+        if (!(socket instanceof SSLSocket)) {
+            return socket;
+        }
+        long createdAt = SystemClock.elapsedRealtime();
+        long createdAtWallClock = System.currentTimeMillis();
+        ((SSLSocket) socket).addHandshakeCompletedListener(event -> {
+            long durationMs = SystemClock.elapsedRealtime() - createdAt;
+            SSLSession session = event.getSession();
+            // A resumed session was created by an earlier handshake.
+            boolean resumed = session.getCreationTime() < createdAtWallClock;
+            int total = mHandshakes.incrementAndGet();
+            int resumedTotal = resumed
+                    ? mResumedHandshakes.incrementAndGet()
+                    : mResumedHandshakes.get();
+            Log.v(TAG, "TLS handshake took " + durationMs + " ms, resumed=" + resumed +
+                    " (" + resumedTotal + "/" + total + " handshakes resumed)");
+        });
+        return socket;
+    }
+}
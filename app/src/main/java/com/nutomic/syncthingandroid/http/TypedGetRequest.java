@@ -0,0 +1,54 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.content.Context;
+import android.net.Uri;
+import androidx.annotation.Nullable;
+
+import com.android.volley.Request;
+import com.google.common.base.Optional;
+import com.nutomic.syncthingandroid.model.JsonCodec;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Performs a GET request to the Syncthing API and decodes the response into a model object on
+ * the network thread, so that no JSON parsing happens on the main thread.
+ */
+public class TypedGetRequest<T> extends ApiRequest {
+
+    public TypedGetRequest(Context context, URL url, String path, String apiKey,
+                           @Nullable Map<String, String> params, Class<T> type,
+                           OnTypedSuccessListener<T> listener,
+                           @Nullable OnErrorListener errorListener) {
+        this(context, url, path, apiKey, params,
+                (data, charset) -> JsonCodec.fromJson(data, charset, type),
+                listener, errorListener);
+    }
+
+    public TypedGetRequest(Context context, URL url, String path, String apiKey,
+                           @Nullable Map<String, String> params, Decoder<T> decoder,
+                           OnTypedSuccessListener<T> listener,
+                           @Nullable OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Uri uri = buildUri(Optional.fromNullable(params).or(Collections.emptyMap()));
+        connectTyped(Request.Method.GET, uri, decoder, listener, errorListener,
+                DEFAULT_TIMEOUT_MS, DEFAULT_MAX_RETRIES);
+    }
+
+    /**
+     * Performs a GET request that may block on the server side for up to timeoutMs, see
+     * {@link GetRequest#GetRequest(Context, URL, String, String, Map, int,
+     * OnSuccessListener, OnErrorListener)}.
+     */
+    public TypedGetRequest(Context context, URL url, String path, String apiKey,
+                           @Nullable Map<String, String> params, int timeoutMs,
+                           Decoder<T> decoder, OnTypedSuccessListener<T> listener,
+                           @Nullable OnErrorListener errorListener) {
+        super(context, url, path, apiKey);
+        Uri uri = buildUri(Optional.fromNullable(params).or(Collections.emptyMap()));
+        connectTyped(Request.Method.GET, uri, decoder, listener, errorListener, timeoutMs, 0);
+    }
+
+}
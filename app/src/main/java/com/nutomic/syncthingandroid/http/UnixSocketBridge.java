@@ -0,0 +1,114 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Forwards TCP connections on a loopback port to Syncthing's GUI listener on a Unix domain
+ * socket, so the web GUI can still be shown in a WebView, which can only talk TCP.
+ *
+ * Bytes are copied unchanged in both directions, so keep-alive and all HTTP features of the
+ * WebView keep working.
+ */
+public class UnixSocketBridge {
+
+    private static final String TAG = "UnixSocketBridge";
+
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final LocalSocketAddress mAddress;
+    private final ServerSocket mServerSocket;
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    public UnixSocketBridge(File socketFile) throws IOException {
+        mAddress = new LocalSocketAddress(socketFile.getAbsolutePath(),
+                LocalSocketAddress.Namespace.FILESYSTEM);
+        mServerSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+        mExecutor.execute(this::acceptConnections);
+        Log.i(TAG, "Forwarding " + getUrl() + " to " + socketFile);
+    }
+
+    /**
+     * Returns the loopback URL that is forwarded to the socket.
+     */
+    public URL getUrl() {
+        try {
+            return new URL("http", "127.0.0.1", mServerSocket.getLocalPort(), "");
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to build bridge URL", e);
+        }
+    }
+
+    public void close() {
+        closeQuietly(mServerSocket);
+        mExecutor.shutdownNow();
+    }
+
+    private void acceptConnections() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                Socket client = mServerSocket.accept();
+                mExecutor.execute(() -> forward(client));
+            } catch (IOException e) {
+                if (!mServerSocket.isClosed()) {
+                    Log.w(TAG, "Failed to accept connection", e);
+                }
+            }
+        }
+    }
+
+    private void forward(Socket client) {
+        LocalSocket upstream = new LocalSocket();
+        try {
+            upstream.connect(mAddress);
+            InputStream upstreamIn = upstream.getInputStream();
+            OutputStream clientOut = client.getOutputStream();
+            mExecutor.execute(() -> {
+                copy(upstreamIn, clientOut);
+                closeQuietly(client);
+                closeQuietly(upstream);
+            });
+            copy(client.getInputStream(), upstream.getOutputStream());
+            // Let Syncthing finish its response before the connection is torn down.
+            upstream.shutdownOutput();
+        } catch (IOException e) {
+            Log.v(TAG, "Failed to forward connection to " + mAddress.getName(), e);
+            closeQuietly(client);
+            closeQuietly(upstream);
+        }
+    }
+
+    private static void copy(InputStream in, OutputStream out) {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+        } catch (IOException e) {
+            // Connection closed by either side.
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            Log.v(TAG, "Failed to close", e);
+        }
+    }
+}
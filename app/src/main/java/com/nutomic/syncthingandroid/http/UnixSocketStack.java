@@ -0,0 +1,203 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.net.LocalSocket;
+import android.net.LocalSocketAddress;
+import android.net.Uri;
+import android.os.SystemClock;
+import android.text.TextUtils;
+import android.util.Log;
+
+import com.android.volley.AuthFailureError;
+import com.android.volley.Header;
+import com.android.volley.Request;
+import com.android.volley.toolbox.BaseHttpStack;
+import com.android.volley.toolbox.HttpResponse;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ConnectException;
+import java.net.ProtocolException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Volley stack that talks plain HTTP to Syncthing's GUI listener on a Unix domain socket.
+ *
+ * Every request uses its own connection and HTTP/1.0, so the response body simply ends when
+ * Syncthing closes the connection and no chunked decoding is needed.
+ */
+class UnixSocketStack extends BaseHttpStack {
+
+    private static final String TAG = "UnixSocketStack";
+
+    private final LocalSocketAddress mAddress;
+
+    UnixSocketStack(File socketFile) {
+        mAddress = new LocalSocketAddress(socketFile.getAbsolutePath(),
+                LocalSocketAddress.Namespace.FILESYSTEM);
+    }
+
+    @Override
+    public HttpResponse executeRequest(Request<?> request, Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        long start = SystemClock.elapsedRealtime();
+        LocalSocket socket = new LocalSocket();
+        try {
+            socket.connect(mAddress);
+        } catch (IOException e) {
+            socket.close();
+            // Reported like a refused TCP connection, e.g. while Syncthing is still starting.
+            ConnectException connectException =
+                    new ConnectException("Failed to connect to " + mAddress.getName());
+            connectException.initCause(e);
+            throw connectException;
+        }
+        try {
+            socket.setSoTimeout(request.getTimeoutMs());
+            writeRequest(socket.getOutputStream(), request, additionalHeaders);
+            HttpResponse response = readResponse(socket, request.getMethod());
+            Log.v(TAG, "Request to " + Uri.parse(request.getUrl()).getPath() + " took " +
+                    (SystemClock.elapsedRealtime() - start) + " ms");
+            return response;
+        } catch (IOException | AuthFailureError | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private void writeRequest(OutputStream socketOut, Request<?> request,
+                              Map<String, String> additionalHeaders)
+            throws IOException, AuthFailureError {
+        Uri uri = Uri.parse(request.getUrl());
+        String target = TextUtils.isEmpty(uri.getEncodedPath()) ? "/" : uri.getEncodedPath();
+        if (uri.getEncodedQuery() != null) {
+            target += "?" + uri.getEncodedQuery();
+        }
+
+        Map<String, String> headers = new HashMap<>(request.getHeaders());
+        headers.putAll(additionalHeaders);
+        byte[] body = request.getBody();
+
+        StringBuilder head = new StringBuilder()
+                .append(getMethodName(request, body)).append(' ').append(target)
+                .append(" HTTP/1.0\r\n")
+                .append("Host: localhost\r\n");
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        if (body != null) {
+            head.append("Content-Type: ").append(request.getBodyContentType()).append("\r\n")
+                    .append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+
+        OutputStream out = new BufferedOutputStream(socketOut);
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private HttpResponse readResponse(LocalSocket socket, int method) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        String statusLine = readLine(in);
+        String[] status = (statusLine != null) ? statusLine.split(" ", 3) : new String[0];
+        if (status.length < 2 || !status[0].startsWith("HTTP/")) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+        int statusCode;
+        try {
+            statusCode = Integer.parseInt(status[1]);
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Invalid status line: " + statusLine);
+        }
+
+        List<Header> headers = new ArrayList<>();
+        int contentLength = -1;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            headers.add(new Header(name, value));
+            if (name.equalsIgnoreCase("Content-Length")) {
+                try {
+                    contentLength = Integer.parseInt(value);
+                } catch (NumberFormatException e) {
+                    Log.w(TAG, "Invalid Content-Length: " + value);
+                }
+            }
+        }
+
+        boolean hasBody = method != Request.Method.HEAD && !(100 <= statusCode && statusCode < 200)
+                && statusCode != 204 && statusCode != 304;
+        if (!hasBody) {
+            socket.close();
+            return new HttpResponse(statusCode, headers);
+        }
+        InputStream content = new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                socket.close();
+            }
+        };
+        return new HttpResponse(statusCode, headers, contentLength, content);
+    }
+
+    /**
+     * Reads a header line terminated by LF, without the line terminator. Returns null at EOF.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                break;
+            }
+            line.write(b);
+        }
+        if (b == -1 && line.size() == 0) {
+            return null;
+        }
+        String result = line.toString("ISO-8859-1");
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    private static String getMethodName(Request<?> request, byte[] body) {
+        switch (request.getMethod()) {
+            case Request.Method.DEPRECATED_GET_OR_POST:
+                return (body != null) ? "POST" : "GET";
+            case Request.Method.GET:
+                return "GET";
+            case Request.Method.POST:
+                return "POST";
+            case Request.Method.PUT:
+                return "PUT";
+            case Request.Method.DELETE:
+                return "DELETE";
+            case Request.Method.HEAD:
+                return "HEAD";
+            case Request.Method.OPTIONS:
+                return "OPTIONS";
+            case Request.Method.TRACE:
+                return "TRACE";
+            case Request.Method.PATCH:
+                return "PATCH";
+            default:
+                throw new IllegalStateException("Unknown method type " + request.getMethod());
+        }
+    }
+}
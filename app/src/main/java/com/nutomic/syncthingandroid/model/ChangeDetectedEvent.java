@@ -0,0 +1,23 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/remotechangedetected.html
+ * https://docs.syncthing.net/events/localchangedetected.html
+ *
+ * Used for both RemoteChangeDetected and LocalChangeDetected, which have the same data. The
+ * item's type is stored as itemType, as type is the event type.
+ */
+public class ChangeDetectedEvent extends Event {
+    public String folderID;
+    public String label;
+    public String path;
+    public String itemType;
+    public String action;
+    public String modifiedBy;
+
+    @Override
+    public String getFolderId() {
+        return folderID;
+    }
+}
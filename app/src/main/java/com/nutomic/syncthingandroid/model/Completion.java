@@ -1,141 +1,365 @@
-package com.nutomic.syncthingandroid.model;
-
-import android.util.Log;
-
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-/**
- * This class caches remote folder and device synchronization
- * completion indicators defined in {@link CompletionInfo#CompletionInfo}
- * according to syncthing's REST "/completion" JSON result schema.
- * Completion model of syncthing's web UI is completion[deviceId][folderId]
- */
-public class Completion {
-
-    private static final String TAG = "Completion";
-
-    HashMap<String, HashMap<String, CompletionInfo>> deviceFolderMap =
-        new HashMap<String, HashMap<String, CompletionInfo>>();
-
-    /**
-     * Removes a folder from the cache model.
-     */
-    private void removeFolder(String folderId) {
-        for (HashMap<String, CompletionInfo> folderMap : deviceFolderMap.values()) {
-            if (folderMap.containsKey(folderId)) {
-                folderMap.remove(folderId);
-                break;
-            }
-        }
-    }
-
-    /**
-     * Updates device and folder information in the cache model
-     * after a config update.
-     */
-    public void updateFromConfig(List<Device> newDevices, List<Folder> newFolders) {
-        HashMap<String, CompletionInfo> folderMap;
-
-        // Handle devices that were removed from the config.
-        List<String> removedDevices = new ArrayList<>();;
-        Boolean deviceFound;
-        for (String deviceId : deviceFolderMap.keySet()) {
-            deviceFound = false;
-            for (Device device : newDevices) {
-                if (device.deviceID.equals(deviceId)) {
-                    deviceFound = true;
-                    break;
-                }
-            }
-            if (!deviceFound) {
-                removedDevices.add(deviceId);
-            }
-        }
-        for (String deviceId : removedDevices) {
-            Log.v(TAG, "updateFromConfig: Remove device '" + deviceId + "' from cache model");
-            deviceFolderMap.remove(deviceId);
-        }
-
-        // Handle devices that were added to the config.
-        for (Device device : newDevices) {
-            if (!deviceFolderMap.containsKey(device.deviceID)) {
-                Log.v(TAG, "updateFromConfig: Add device '" + device.deviceID + "' to cache model");
-                deviceFolderMap.put(device.deviceID, new HashMap<String, CompletionInfo>());
-            }
-        }
-
-        // Handle folders that were removed from the config.
-        List<String> removedFolders = new ArrayList<>();;
-        Boolean folderFound;
-        for (Map.Entry<String, HashMap<String, CompletionInfo>> device : deviceFolderMap.entrySet()) {
-            for (String folderId : device.getValue().keySet()) {
-                folderFound = false;
-                for (Folder folder : newFolders) {
-                    if (folder.id.equals(folderId)) {
-                        folderFound = true;
-                        break;
-                    }
-                }
-                if (!folderFound) {
-                    removedFolders.add(folderId);
-                }
-            }
-        }
-        for (String folderId : removedFolders) {
-            Log.v(TAG, "updateFromConfig: Remove folder '" + folderId + "' from cache model");
-            removeFolder(folderId);
-        }
-
-        // Handle folders that were added to the config.
-        for (Folder folder : newFolders) {
-            for (Device device : newDevices) {
-                if (folder.getDevice(device.deviceID) != null) {
-                    // folder is shared with device.
-                    folderMap = deviceFolderMap.get(device.deviceID);
-                    if (!folderMap.containsKey(folder.id)) {
-                        Log.v(TAG, "updateFromConfig: Add folder '" + folder.id +
-                                    "' shared with device '" + device.deviceID + "' to cache model.");
-                        folderMap.put(folder.id, new CompletionInfo());
-                    }
-                }
-            }
-        }
-    }
-
-    /**
-     * Calculates remote device sync completion percentage across all folders
-     * shared with the device.
-     */
-    public int getDeviceCompletion(String deviceId) {
-        int folderCount = 0;
-        double sumCompletion = 0;
-        HashMap<String, CompletionInfo> folderMap = deviceFolderMap.get(deviceId);
-        if (folderMap != null) {
-            for (Map.Entry<String, CompletionInfo> folder : folderMap.entrySet()) {
-                sumCompletion += folder.getValue().completion;
-                folderCount++;
-            }
-        }
-        if (folderCount == 0) {
-            return 100;
-        } else {
-            return (int) Math.floor(sumCompletion / folderCount);
-        }
-    }
-
-    /**
-     * Set completionInfo within the completion[deviceId][folderId] model.
-     */
-    public void setCompletionInfo(String deviceId, String folderId,
-                                    CompletionInfo completionInfo) {
-        // Add device parent node if it does not exist.
-        if (!deviceFolderMap.containsKey(deviceId)) {
-            deviceFolderMap.put(deviceId, new HashMap<String, CompletionInfo>());
-        }
-        // Add folder or update existing folder entry.
-        deviceFolderMap.get(deviceId).put(folderId, completionInfo);
-    }
-}
+package com.nutomic.syncthingandroid.model;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Sets;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class caches remote folder and device synchronization
+ * completion indicators defined in {@link CompletionInfo#CompletionInfo}
+ * according to syncthing's REST "/completion" JSON result schema.
+ * Completion model of syncthing's web UI is completion[deviceId][folderId]
+ *
+ * Sums and counts per device and per folder are updated along with the model, so reading the
+ * completion of a device or folder doesn't have to iterate over its entries. For each folder, the
+ * rate at which the bytes needed by remote devices decrease is smoothed into an estimated time to
+ * completion. All methods are synchronized, so the model may be read and written from different
+ * threads.
+ */
+public class Completion {
+
+    private static final String TAG = "Completion";
+
+    /**
+     * Completion percentages are stored in fixed point with this many steps per percent, so the
+     * running sums don't accumulate rounding errors.
+     */
+    private static final long SCALE = 1000;
+
+    /**
+     * Weight of the latest sample in the smoothed transfer rate of a folder.
+     */
+    private static final double RATE_SMOOTHING = 0.3;
+
+    /**
+     * Minimum time between two transfer rate samples of a folder. Changes reported within this
+     * time, e.g. by several devices at once, are accumulated into one sample.
+     */
+    private static final long MIN_RATE_SAMPLE_INTERVAL_MS = 1000;
+
+    /**
+     * No time to completion is estimated if the needed bytes of a folder did not decrease
+     * for this long.
+     */
+    private static final long STALLED_TIMEOUT_MS = 30 * 1000;
+
+    /**
+     * completion[deviceId][folderId].
+     */
+    private final Map<String, Map<String, Entry>> mDeviceFolderMap = new HashMap<>();
+
+    /**
+     * Index of the device ids in {@link #mDeviceFolderMap} by folder id.
+     */
+    private final Map<String, Set<String>> mFolderDeviceMap = new HashMap<>();
+
+    private final Map<String, Aggregate> mDeviceAggregates = new HashMap<>();
+    private final Map<String, FolderAggregate> mFolderAggregates = new HashMap<>();
+
+    /**
+     * The local device is listed in the config of every folder, but is always up to date with
+     * itself. It is left out of the model, so it doesn't count towards the folder completion.
+     */
+    private String mLocalDeviceId;
+
+    /**
+     * Source of elapsedRealtime(), replaced in tests.
+     */
+    interface Clock {
+        long elapsedRealtime();
+    }
+
+    private final Clock mClock;
+
+    public Completion() {
+        this(SystemClock::elapsedRealtime);
+    }
+
+    Completion(Clock clock) {
+        mClock = clock;
+    }
+
+    private static class Entry {
+        /**
+         * Completion in fixed point, see {@link #SCALE}.
+         */
+        final long completion;
+        final long needBytes;
+
+        Entry(CompletionInfo completionInfo) {
+            completion = Math.round(completionInfo.completion * SCALE);
+            needBytes = completionInfo.needBytes;
+        }
+    }
+
+    private static class Aggregate {
+        long sum = 0;
+        long needBytes = 0;
+        int count = 0;
+
+        void add(Entry entry) {
+            sum += entry.completion;
+            needBytes += entry.needBytes;
+        }
+
+        void subtract(Entry entry) {
+            sum -= entry.completion;
+            needBytes -= entry.needBytes;
+        }
+
+        /**
+         * Returns the average in percent, rounded down, or 100 if there are no entries.
+         */
+        int average() {
+            return (count == 0) ? 100 : (int) (sum / (count * SCALE));
+        }
+    }
+
+    private static class FolderAggregate extends Aggregate {
+        /**
+         * Smoothed rate in bytes per second at which needBytes decreases, or -1 if unknown.
+         */
+        double rate = -1;
+
+        /**
+         * needBytes and elapsedRealtime() at the start of the current rate sample.
+         */
+        long sampleNeedBytes = 0;
+        long sampleTime = 0;
+
+        /**
+         * elapsedRealtime() when needBytes last decreased.
+         */
+        long progressTime = 0;
+
+        /**
+         * Called after needBytes changed.
+         */
+        void updateRate(long now) {
+            if (needBytes <= 0) {
+                rate = -1;
+                sampleTime = 0;
+                return;
+            }
+            if (sampleTime == 0 || needBytes > sampleNeedBytes) {
+                // New data to sync, the bytes transferred so far can't be told apart from it.
+                sampleNeedBytes = needBytes;
+                sampleTime = now;
+                return;
+            }
+            long elapsed = now - sampleTime;
+            if (elapsed < MIN_RATE_SAMPLE_INTERVAL_MS || needBytes == sampleNeedBytes) {
+                return;
+            }
+            double sample = (sampleNeedBytes - needBytes) * 1000.0 / elapsed;
+            rate = (rate < 0) ? sample : RATE_SMOOTHING * sample + (1 - RATE_SMOOTHING) * rate;
+            sampleNeedBytes = needBytes;
+            sampleTime = now;
+            progressTime = now;
+        }
+
+        /**
+         * Called after needBytes changed for another reason than transfers, e.g. because a
+         * device was removed.
+         */
+        void restartSample(long now) {
+            sampleNeedBytes = needBytes;
+            sampleTime = (needBytes > 0) ? now : 0;
+        }
+    }
+
+    /**
+     * Sets the id of the local device, and removes it from the model if it was added before the
+     * id was known.
+     */
+    public synchronized void setLocalDeviceId(String deviceId) {
+        mLocalDeviceId = deviceId;
+        Map<String, Entry> folderMap = mDeviceFolderMap.get(deviceId);
+        if (folderMap == null) {
+            return;
+        }
+        for (String folderId : ImmutableSet.copyOf(folderMap.keySet())) {
+            remove(deviceId, folderId);
+        }
+        mDeviceFolderMap.remove(deviceId);
+        mDeviceAggregates.remove(deviceId);
+    }
+
+    /**
+     * Updates device and folder information in the cache model
+     * after a config update.
+     */
+    public synchronized void updateFromConfig(ConfigSnapshot config) {
+        // Handle devices that were removed from the config.
+        for (String deviceId : ImmutableSet.copyOf(
+                Sets.difference(mDeviceFolderMap.keySet(), config.deviceById.keySet()))) {
+            Log.v(TAG, "updateFromConfig: Remove device '" + deviceId + "' from cache model");
+            for (String folderId : ImmutableSet.copyOf(mDeviceFolderMap.get(deviceId).keySet())) {
+                remove(deviceId, folderId);
+            }
+            mDeviceFolderMap.remove(deviceId);
+            mDeviceAggregates.remove(deviceId);
+        }
+
+        // Handle devices that were added to the config.
+        for (String deviceId : ImmutableSet.copyOf(
+                Sets.difference(config.deviceById.keySet(), mDeviceFolderMap.keySet()))) {
+            if (deviceId.equals(mLocalDeviceId)) {
+                continue;
+            }
+            Log.v(TAG, "updateFromConfig: Add device '" + deviceId + "' to cache model");
+            mDeviceFolderMap.put(deviceId, new HashMap<>());
+            mDeviceAggregates.put(deviceId, new Aggregate());
+        }
+
+        // Handle folders that were removed from the config, or unshared from devices.
+        for (String folderId : ImmutableSet.copyOf(mFolderDeviceMap.keySet())) {
+            Set<String> indexed = mFolderDeviceMap.get(folderId);
+            if (indexed == null) {
+                // All devices of the folder were removed above.
+                continue;
+            }
+            Set<String> sharedWith = config.folderDeviceIds.get(folderId);
+            if (sharedWith == null) {
+                Log.v(TAG, "updateFromConfig: Remove folder '" + folderId + "' from cache model");
+                sharedWith = Collections.emptySet();
+            }
+            for (String deviceId : ImmutableSet.copyOf(
+                    Sets.difference(indexed, sharedWith))) {
+                remove(deviceId, folderId);
+            }
+        }
+
+        // Handle folders that were added to the config, or shared with more devices.
+        for (Map.Entry<String, Set<String>> folder : config.folderDeviceIds.entrySet()) {
+            Set<String> indexed = mFolderDeviceMap.get(folder.getKey());
+            Set<String> added = (indexed != null)
+                    ? ImmutableSet.copyOf(Sets.difference(folder.getValue(), indexed))
+                    : folder.getValue();
+            for (String deviceId : added) {
+                // folder is shared with device.
+                if (mDeviceFolderMap.containsKey(deviceId)) {
+                    Log.v(TAG, "updateFromConfig: Add folder '" + folder.getKey() +
+                                "' shared with device '" + deviceId + "' to cache model.");
+                    put(deviceId, folder.getKey(), new CompletionInfo());
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns remote device sync completion percentage across all folders
+     * shared with the device.
+     */
+    public synchronized int getDeviceCompletion(String deviceId) {
+        Aggregate aggregate = mDeviceAggregates.get(deviceId);
+        return (aggregate != null) ? aggregate.average() : 100;
+    }
+
+    /**
+     * Returns folder sync completion percentage across all remote devices
+     * the folder is shared with.
+     */
+    public synchronized int getFolderCompletion(String folderId) {
+        Aggregate aggregate = mFolderAggregates.get(folderId);
+        return (aggregate != null) ? aggregate.average() : 100;
+    }
+
+    /**
+     * Returns the bytes remote devices still need of the folder, summed over all devices the
+     * folder is shared with.
+     */
+    public synchronized long getFolderNeedBytes(String folderId) {
+        Aggregate aggregate = mFolderAggregates.get(folderId);
+        return (aggregate != null) ? aggregate.needBytes : 0;
+    }
+
+    /**
+     * Returns the estimated time in seconds until all remote devices are in sync with the
+     * folder, or -1 if it can't be estimated because no progress was seen recently.
+     */
+    public synchronized long getFolderEta(String folderId) {
+        FolderAggregate aggregate = mFolderAggregates.get(folderId);
+        if (aggregate == null || aggregate.needBytes <= 0) {
+            return 0;
+        }
+        boolean stalled = mClock.elapsedRealtime() - aggregate.progressTime > STALLED_TIMEOUT_MS;
+        if (aggregate.rate <= 0 || stalled) {
+            return -1;
+        }
+        return (long) Math.ceil(aggregate.needBytes / aggregate.rate);
+    }
+
+    /**
+     * Set completionInfo within the completion[deviceId][folderId] model.
+     */
+    public synchronized void setCompletionInfo(String deviceId, String folderId,
+                                               CompletionInfo completionInfo) {
+        put(deviceId, folderId, completionInfo);
+    }
+
+    private void put(String deviceId, String folderId, CompletionInfo completionInfo) {
+        if (deviceId.equals(mLocalDeviceId)) {
+            return;
+        }
+        Entry entry = new Entry(completionInfo);
+        Map<String, Entry> folderMap = mDeviceFolderMap.get(deviceId);
+        if (folderMap == null) {
+            // Add device parent node if it does not exist.
+            folderMap = new HashMap<>();
+            mDeviceFolderMap.put(deviceId, folderMap);
+            mDeviceAggregates.put(deviceId, new Aggregate());
+        }
+        Aggregate deviceAggregate = mDeviceAggregates.get(deviceId);
+        FolderAggregate folderAggregate = mFolderAggregates.get(folderId);
+        if (folderAggregate == null) {
+            folderAggregate = new FolderAggregate();
+            mFolderAggregates.put(folderId, folderAggregate);
+            mFolderDeviceMap.put(folderId, new HashSet<>());
+        }
+
+        // Add folder or update existing folder entry.
+        Entry previous = folderMap.put(folderId, entry);
+        if (previous != null) {
+            deviceAggregate.subtract(previous);
+            folderAggregate.subtract(previous);
+        } else {
+            deviceAggregate.count++;
+            folderAggregate.count++;
+            mFolderDeviceMap.get(folderId).add(deviceId);
+        }
+        deviceAggregate.add(entry);
+        folderAggregate.add(entry);
+        folderAggregate.updateRate(mClock.elapsedRealtime());
+    }
+
+    private void remove(String deviceId, String folderId) {
+        Entry previous = mDeviceFolderMap.get(deviceId).remove(folderId);
+        if (previous == null) {
+            return;
+        }
+        Aggregate deviceAggregate = mDeviceAggregates.get(deviceId);
+        deviceAggregate.subtract(previous);
+        deviceAggregate.count--;
+
+        FolderAggregate folderAggregate = mFolderAggregates.get(folderId);
+        Set<String> deviceIds = mFolderDeviceMap.get(folderId);
+        deviceIds.remove(deviceId);
+        if (deviceIds.isEmpty()) {
+            mFolderDeviceMap.remove(folderId);
+            mFolderAggregates.remove(folderId);
+        } else {
+            folderAggregate.subtract(previous);
+            folderAggregate.count--;
+            folderAggregate.restartSample(mClock.elapsedRealtime());
+        }
+    }
+}
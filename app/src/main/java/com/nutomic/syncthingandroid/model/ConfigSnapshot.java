@@ -0,0 +1,181 @@
+package com.nutomic.syncthingandroid.model;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, versioned view of the syncthing config.
+ *
+ * All objects reachable from a snapshot are shared between readers and must not be modified.
+ * Changes are made by creating a new snapshot via the with* methods, which only replaces the
+ * changed part of the config and shares everything else with the previous snapshot.
+ */
+public final class ConfigSnapshot {
+
+    /**
+     * Compares folders by labels, uses the folder ID as fallback if the label is empty
+     */
+    private final static Comparator<Folder> FOLDERS_COMPARATOR = (lhs, rhs) -> {
+        String lhsLabel = lhs.label != null && !lhs.label.isEmpty() ? lhs.label : lhs.id;
+        String rhsLabel = rhs.label != null && !rhs.label.isEmpty() ? rhs.label : rhs.id;
+
+        return lhsLabel.compareTo(rhsLabel);
+    };
+
+    /**
+     * Incremented for every new snapshot, so readers can cheaply detect config changes.
+     */
+    public final long revision;
+
+    public final Config config;
+
+    /**
+     * Folders of {@link #config}, sorted by label.
+     */
+    public final List<Folder> sortedFolders;
+
+    /**
+     * Folders of {@link #config}, keyed by folder ID.
+     */
+    public final Map<String, Folder> folderById;
+
+    /**
+     * Devices of {@link #config} including the local device, keyed by device ID.
+     */
+    public final Map<String, Device> deviceById;
+
+    /**
+     * IDs of the devices each folder is shared with, keyed by folder ID.
+     */
+    public final Map<String, Set<String>> folderDeviceIds;
+
+    private ConfigSnapshot(long revision, Config config, List<Folder> sortedFolders,
+                           Map<String, Folder> folderById,
+                           Map<String, Set<String>> folderDeviceIds,
+                           Map<String, Device> deviceById) {
+        this.revision = revision;
+        this.config = config;
+        this.sortedFolders = sortedFolders;
+        this.folderById = folderById;
+        this.folderDeviceIds = folderDeviceIds;
+        this.deviceById = deviceById;
+    }
+
+    /**
+     * Returns the IDs of the devices the given folder is shared with, or an empty set if the
+     * folder does not exist.
+     */
+    public Set<String> getFolderDeviceIds(String folderId) {
+        Set<String> deviceIds = folderDeviceIds.get(folderId);
+        return (deviceIds != null) ? deviceIds : Collections.emptySet();
+    }
+
+    /**
+     * Creates a snapshot taking ownership of a freshly parsed config.
+     */
+    public static ConfigSnapshot of(long revision, Config config) {
+        config.devices = unmodifiable(config.devices);
+        config.folders = unmodifiable(config.folders);
+        config.remoteIgnoredDevices = unmodifiable(config.remoteIgnoredDevices);
+        return new ConfigSnapshot(revision, config, sortFolders(config.folders),
+                indexFolders(config.folders), indexFolderDevices(config.folders),
+                indexDevices(config.devices));
+    }
+
+    public ConfigSnapshot withFolders(List<Folder> folders) {
+        Config newConfig = shallowCopy();
+        newConfig.folders = unmodifiable(folders);
+        return new ConfigSnapshot(revision + 1, newConfig, sortFolders(newConfig.folders),
+                indexFolders(newConfig.folders), indexFolderDevices(newConfig.folders),
+                deviceById);
+    }
+
+    public ConfigSnapshot withDevices(List<Device> devices) {
+        Config newConfig = shallowCopy();
+        newConfig.devices = unmodifiable(devices);
+        return new ConfigSnapshot(revision + 1, newConfig, sortedFolders, folderById,
+                folderDeviceIds, indexDevices(newConfig.devices));
+    }
+
+    public ConfigSnapshot withRemoteIgnoredDevices(List<RemoteIgnoredDevice> remoteIgnoredDevices) {
+        Config newConfig = shallowCopy();
+        newConfig.remoteIgnoredDevices = unmodifiable(remoteIgnoredDevices);
+        return new ConfigSnapshot(revision + 1, newConfig, sortedFolders, folderById,
+                folderDeviceIds, deviceById);
+    }
+
+    public ConfigSnapshot withGuiAndOptions(Config.Gui gui, Options options) {
+        Config newConfig = shallowCopy();
+        newConfig.gui = gui;
+        newConfig.options = options;
+        return new ConfigSnapshot(revision + 1, newConfig, sortedFolders, folderById,
+                folderDeviceIds, deviceById);
+    }
+
+    private Config shallowCopy() {
+        Config copy = new Config();
+        copy.version = config.version;
+        copy.devices = config.devices;
+        copy.folders = config.folders;
+        copy.gui = config.gui;
+        copy.options = config.options;
+        copy.remoteIgnoredDevices = config.remoteIgnoredDevices;
+        return copy;
+    }
+
+    private static List<Folder> sortFolders(List<Folder> folders) {
+        List<Folder> sortedFolders = new ArrayList<>(folders);
+        Collections.sort(sortedFolders, FOLDERS_COMPARATOR);
+        return Collections.unmodifiableList(sortedFolders);
+    }
+
+    /**
+     * Syncthing rejects configs with duplicate IDs, so the first entry wins in all indexes.
+     */
+    private static Map<String, Folder> indexFolders(List<Folder> folders) {
+        Map<String, Folder> folderById = new HashMap<>();
+        for (Folder folder : folders) {
+            if (!folderById.containsKey(folder.id)) {
+                folderById.put(folder.id, folder);
+            }
+        }
+        return ImmutableMap.copyOf(folderById);
+    }
+
+    /**
+     * Also builds the device index of every folder, so it is published together with the
+     * snapshot instead of being built later by whichever thread reads it first.
+     */
+    private static Map<String, Set<String>> indexFolderDevices(List<Folder> folders) {
+        Map<String, Set<String>> folderDeviceIds = new HashMap<>();
+        for (Folder folder : folders) {
+            Set<String> deviceIds = folder.getDeviceIds();
+            if (!folderDeviceIds.containsKey(folder.id)) {
+                folderDeviceIds.put(folder.id, ImmutableSet.copyOf(deviceIds));
+            }
+        }
+        return ImmutableMap.copyOf(folderDeviceIds);
+    }
+
+    private static Map<String, Device> indexDevices(List<Device> devices) {
+        Map<String, Device> deviceById = new HashMap<>();
+        for (Device device : devices) {
+            if (!deviceById.containsKey(device.deviceID)) {
+                deviceById.put(device.deviceID, device);
+            }
+        }
+        return ImmutableMap.copyOf(deviceById);
+    }
+
+    private static <T> List<T> unmodifiable(List<T> list) {
+        return (list == null) ? Collections.emptyList() : Collections.unmodifiableList(list);
+    }
+}
@@ -23,9 +23,9 @@ public class Connections {
         public long outBits;
 
         public void setTransferRate(Connection previous, long msElapsed) {
-            long secondsElapsed = msElapsed / 1000;
-            long inBytes = 8 * (inBytesTotal - previous.inBytesTotal) / secondsElapsed;
-            long outBytes = 8 * (outBytesTotal - previous.outBytesTotal) / secondsElapsed;
+            msElapsed = Math.max(msElapsed, 1);
+            long inBytes = 8000 * (inBytesTotal - previous.inBytesTotal) / msElapsed;
+            long outBytes = 8000 * (outBytesTotal - previous.outBytesTotal) / msElapsed;
             inBits = Math.max(0, inBytes);
             outBits = Math.max(0, outBytes);
 
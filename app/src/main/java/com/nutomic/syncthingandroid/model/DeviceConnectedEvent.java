@@ -0,0 +1,22 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/deviceconnected.html
+ *
+ * id and type of the event data are stored as deviceID and connectionType, as they would
+ * clash with the fields of {@link Event}.
+ */
+public class DeviceConnectedEvent extends Event {
+    public String deviceID;
+    public String addr;
+    public String connectionType;
+    public String clientName;
+    public String clientVersion;
+    public String deviceName;
+
+    @Override
+    public String getDeviceId() {
+        return deviceID;
+    }
+}
@@ -0,0 +1,17 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/devicedisconnected.html
+ *
+ * id of the event data is stored as deviceID, as it would clash with {@link Event#id}.
+ */
+public class DeviceDisconnectedEvent extends Event {
+    public String deviceID;
+    public String error;
+
+    @Override
+    public String getDeviceId() {
+        return deviceID;
+    }
+}
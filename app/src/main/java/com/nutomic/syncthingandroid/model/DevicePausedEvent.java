@@ -0,0 +1,16 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/devicepaused.html
+ *
+ * Also used for DeviceResumed events, which have the same data.
+ */
+public class DevicePausedEvent extends Event {
+    public String device;
+
+    @Override
+    public String getDeviceId() {
+        return device;
+    }
+}
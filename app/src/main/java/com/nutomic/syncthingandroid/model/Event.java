@@ -1,13 +1,31 @@
 package com.nutomic.syncthingandroid.model;
 
-import java.util.Map;
-
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/dev/events.html
+ *
+ * Events of types handled by the app are decoded into subclasses holding the event data, e.g.
+ * {@link FolderCompletionEvent}. The data of all other events is skipped while decoding.
+ */
 public class Event {
 
     public int id;
     public int globalID;
     public String type;
     public String time;
-    public Object data;
+
+    /**
+     * Returns the id of the folder this event concerns, or null.
+     */
+    public String getFolderId() {
+        return null;
+    }
+
+    /**
+     * Returns the id of the device this event concerns, or null.
+     */
+    public String getDeviceId() {
+        return null;
+    }
 
 }
@@ -6,10 +6,12 @@ import com.nutomic.syncthingandroid.service.Constants;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Folder {
 
@@ -42,6 +44,14 @@ public class Folder {
     public String markerName = ".stfolder";
     public String invalid;
 
+    /**
+     * Index of {@link #devices} by device ID. Built lazily because Gson fills the list directly.
+     *
+     * Folders of a config snapshot are read from several threads, so the index is never modified
+     * after it was published. Changes to the devices drop it, and it is rebuilt on the next read.
+     */
+    private transient volatile Map<String, Device> deviceIndex;
+
     public static class Versioning implements Serializable {
         public String type;
         public Map<String, String> params = new HashMap<>();
@@ -56,15 +66,18 @@ public class Folder {
         Device d = new Device();
         d.deviceID = deviceId;
         devices.add(d);
+        deviceIndex = null;
     }
 
     public Device getDevice(String deviceId) {
-        for (Device d : devices) {
-            if (d.deviceID.equals(deviceId)) {
-                return d;
-            }
-        }
-        return null;
+        return getDeviceIndex().get(deviceId);
+    }
+
+    /**
+     * Returns the IDs of all devices this folder is shared with.
+     */
+    public Set<String> getDeviceIds() {
+        return Collections.unmodifiableSet(getDeviceIndex().keySet());
     }
 
     public void removeDevice(String deviceId) {
@@ -74,6 +87,22 @@ public class Folder {
                 it.remove();
             }
         }
+        deviceIndex = null;
+    }
+
+    private Map<String, Device> getDeviceIndex() {
+        Map<String, Device> index = deviceIndex;
+        if (index == null) {
+            Map<String, Device> newIndex = new HashMap<>();
+            for (Device d : devices) {
+                if (!newIndex.containsKey(d.deviceID)) {
+                    newIndex.put(d.deviceID, d);
+                }
+            }
+            index = Collections.unmodifiableMap(newIndex);
+            deviceIndex = index;
+        }
+        return index;
     }
 
     @Override
@@ -0,0 +1,25 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/foldercompletion.html
+ */
+public class FolderCompletionEvent extends Event {
+    public String device;
+    public String folder;
+    public double completion;
+    public long globalBytes;
+    public long needBytes;
+    public long needItems;
+    public long needDeletes;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+
+    @Override
+    public String getDeviceId() {
+        return device;
+    }
+}
@@ -0,0 +1,17 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/folderscanprogress.html
+ */
+public class FolderScanProgressEvent extends Event {
+    public String folder;
+    public long current;
+    public long total;
+    public double rate;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+}
@@ -0,0 +1,15 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/foldersummary.html
+ */
+public class FolderSummaryEvent extends Event {
+    public String folder;
+    public FolderStatus summary;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+}
@@ -0,0 +1,20 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/itemfinished.html
+ *
+ * The item's type is stored as itemType, as type is the event type.
+ */
+public class ItemFinishedEvent extends Event {
+    public String folder;
+    public String item;
+    public String itemType;
+    public String action;
+    public String error;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+}
@@ -0,0 +1,807 @@
+package com.nutomic.syncthingandroid.model;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonElement;
+import com.google.gson.TypeAdapter;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Type;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Shared JSON codec for the model classes.
+ *
+ * The objects that are polled frequently (connections, folder status, system info and version,
+ * events) are decoded by hand-written streaming adapters, which avoid reflection and
+ * intermediate trees. Everything else, most notably {@link Config}, still goes through Gson's
+ * reflective adapters, but shares a single Gson instance instead of creating one per call.
+ */
+public final class JsonCodec {
+
+    private static final Type EVENT_LIST_TYPE = new TypeToken<List<Event>>(){}.getType();
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Connections.class, new ConnectionsAdapter())
+            .registerTypeAdapter(Connections.Connection.class, new ConnectionAdapter())
+            .registerTypeAdapter(FolderStatus.class, new FolderStatusAdapter())
+            .registerTypeAdapter(SystemInfo.class, new SystemInfoAdapter())
+            .registerTypeAdapter(SystemVersion.class, new SystemVersionAdapter())
+            .registerTypeAdapter(Event.class, new EventAdapter())
+            .create();
+
+    private JsonCodec() {
+    }
+
+    public static Gson gson() {
+        return GSON;
+    }
+
+    public static <T> T fromJson(String json, Class<T> type) {
+        return GSON.fromJson(json, type);
+    }
+
+    /**
+     * Decodes directly from the raw response body, without creating an intermediate String.
+     */
+    public static <T> T fromJson(byte[] data, Charset charset, Class<T> type) {
+        return fromJson(new InputStreamReader(new ByteArrayInputStream(data), charset), type);
+    }
+
+    public static <T> T fromJson(Reader reader, Class<T> type) {
+        return GSON.fromJson(reader, type);
+    }
+
+    public static List<Event> eventsFromJson(String json) {
+        return eventsFromJson(new StringReader(json));
+    }
+
+    public static List<Event> eventsFromJson(byte[] data, Charset charset) {
+        return eventsFromJson(new InputStreamReader(new ByteArrayInputStream(data), charset));
+    }
+
+    public static List<Event> eventsFromJson(Reader reader) {
+        List<Event> events = GSON.fromJson(reader, EVENT_LIST_TYPE);
+        return (events != null) ? events : new ArrayList<>();
+    }
+
+    public static JsonElement parse(String json) {
+        return GSON.fromJson(json, JsonElement.class);
+    }
+
+    public static String toJson(Object object) {
+        return GSON.toJson(object);
+    }
+
+    /**
+     * Returns a deep copy of object. Only works with objects that can be converted by this codec.
+     */
+    public static <T> T deepCopy(T object, Type type) {
+        return GSON.fromJson(GSON.toJson(object, type), type);
+    }
+
+    private static class ConnectionsAdapter extends TypeAdapter<Connections> {
+
+        private final ConnectionAdapter mConnectionAdapter = new ConnectionAdapter();
+
+        @Override
+        public void write(JsonWriter out, Connections value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("total");
+            mConnectionAdapter.write(out, value.total);
+            out.name("connections");
+            if (value.connections == null) {
+                out.nullValue();
+            } else {
+                out.beginObject();
+                for (Map.Entry<String, Connections.Connection> e : value.connections.entrySet()) {
+                    out.name(e.getKey());
+                    mConnectionAdapter.write(out, e.getValue());
+                }
+                out.endObject();
+            }
+            out.endObject();
+        }
+
+        @Override
+        public Connections read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            Connections value = new Connections();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "total":
+                        value.total = mConnectionAdapter.read(in);
+                        break;
+                    case "connections":
+                        if (skipNull(in)) {
+                            break;
+                        }
+                        value.connections = new HashMap<>();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String deviceId = in.nextName();
+                            value.connections.put(deviceId, mConnectionAdapter.read(in));
+                        }
+                        in.endObject();
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class ConnectionAdapter extends TypeAdapter<Connections.Connection> {
+
+        @Override
+        public void write(JsonWriter out, Connections.Connection value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("paused").value(value.paused);
+            out.name("clientVersion").value(value.clientVersion);
+            out.name("at").value(value.at);
+            out.name("connected").value(value.connected);
+            out.name("inBytesTotal").value(value.inBytesTotal);
+            out.name("outBytesTotal").value(value.outBytesTotal);
+            out.name("type").value(value.type);
+            out.name("address").value(value.address);
+            out.name("completion").value(value.completion);
+            out.name("inBits").value(value.inBits);
+            out.name("outBits").value(value.outBits);
+            out.endObject();
+        }
+
+        @Override
+        public Connections.Connection read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            Connections.Connection value = new Connections.Connection();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "paused":        value.paused = nextBoolean(in);       break;
+                    case "clientVersion": value.clientVersion = nextString(in); break;
+                    case "at":            value.at = nextString(in);            break;
+                    case "connected":     value.connected = nextBoolean(in);    break;
+                    case "inBytesTotal":  value.inBytesTotal = nextLong(in);    break;
+                    case "outBytesTotal": value.outBytesTotal = nextLong(in);   break;
+                    case "type":          value.type = nextString(in);          break;
+                    case "address":       value.address = nextString(in);       break;
+                    case "completion":    value.completion = (int) nextLong(in); break;
+                    case "inBits":        value.inBits = nextLong(in);          break;
+                    case "outBits":       value.outBits = nextLong(in);         break;
+                    default:              in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class FolderStatusAdapter extends TypeAdapter<FolderStatus> {
+
+        @Override
+        public void write(JsonWriter out, FolderStatus value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("globalBytes").value(value.globalBytes);
+            out.name("globalDeleted").value(value.globalDeleted);
+            out.name("globalDirectories").value(value.globalDirectories);
+            out.name("globalFiles").value(value.globalFiles);
+            out.name("globalSymlinks").value(value.globalSymlinks);
+            out.name("ignorePatterns").value(value.ignorePatterns);
+            out.name("invalid").value(value.invalid);
+            out.name("localBytes").value(value.localBytes);
+            out.name("localDeleted").value(value.localDeleted);
+            out.name("localDirectories").value(value.localDirectories);
+            out.name("localSymlinks").value(value.localSymlinks);
+            out.name("localFiles").value(value.localFiles);
+            out.name("inSyncBytes").value(value.inSyncBytes);
+            out.name("inSyncFiles").value(value.inSyncFiles);
+            out.name("needBytes").value(value.needBytes);
+            out.name("needDeletes").value(value.needDeletes);
+            out.name("needDirectories").value(value.needDirectories);
+            out.name("needFiles").value(value.needFiles);
+            out.name("needSymlinks").value(value.needSymlinks);
+            out.name("pullErrors").value(value.pullErrors);
+            out.name("sequence").value(value.sequence);
+            out.name("state").value(value.state);
+            out.name("stateChanged").value(value.stateChanged);
+            out.name("version").value(value.version);
+            out.name("error").value(value.error);
+            out.name("watchError").value(value.watchError);
+            out.endObject();
+        }
+
+        @Override
+        public FolderStatus read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            FolderStatus value = new FolderStatus();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "globalBytes":       value.globalBytes = nextLong(in);       break;
+                    case "globalDeleted":     value.globalDeleted = nextLong(in);     break;
+                    case "globalDirectories": value.globalDirectories = nextLong(in); break;
+                    case "globalFiles":       value.globalFiles = nextLong(in);       break;
+                    case "globalSymlinks":    value.globalSymlinks = nextLong(in);    break;
+                    case "ignorePatterns":    value.ignorePatterns = nextBoolean(in); break;
+                    case "invalid":           value.invalid = nextString(in);         break;
+                    case "localBytes":        value.localBytes = nextLong(in);        break;
+                    case "localDeleted":      value.localDeleted = nextLong(in);      break;
+                    case "localDirectories":  value.localDirectories = nextLong(in);  break;
+                    case "localSymlinks":     value.localSymlinks = nextLong(in);     break;
+                    case "localFiles":        value.localFiles = nextLong(in);        break;
+                    case "inSyncBytes":       value.inSyncBytes = nextLong(in);       break;
+                    case "inSyncFiles":       value.inSyncFiles = nextLong(in);       break;
+                    case "needBytes":         value.needBytes = nextLong(in);         break;
+                    case "needDeletes":       value.needDeletes = nextLong(in);       break;
+                    case "needDirectories":   value.needDirectories = nextLong(in);   break;
+                    case "needFiles":         value.needFiles = nextLong(in);         break;
+                    case "needSymlinks":      value.needSymlinks = nextLong(in);      break;
+                    case "pullErrors":        value.pullErrors = nextLong(in);        break;
+                    case "sequence":          value.sequence = nextLong(in);          break;
+                    case "state":             value.state = nextString(in);           break;
+                    case "stateChanged":      value.stateChanged = nextString(in);    break;
+                    case "version":           value.version = nextLong(in);           break;
+                    case "error":             value.error = nextString(in);           break;
+                    case "watchError":        value.watchError = nextString(in);      break;
+                    default:                  in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class SystemInfoAdapter extends TypeAdapter<SystemInfo> {
+
+        @Override
+        public void write(JsonWriter out, SystemInfo value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("alloc").value(value.alloc);
+            out.name("cpuPercent").value(value.cpuPercent);
+            out.name("goroutines").value(value.goroutines);
+            out.name("myID").value(value.myID);
+            out.name("sys").value(value.sys);
+            out.name("discoveryEnabled").value(value.discoveryEnabled);
+            out.name("discoveryMethods").value(value.discoveryMethods);
+            out.name("discoveryErrors");
+            writeValue(out, value.discoveryErrors);
+            out.name("urVersionMax").value(value.urVersionMax);
+            out.endObject();
+        }
+
+        @Override
+        public SystemInfo read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            SystemInfo value = new SystemInfo();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "alloc":            value.alloc = nextLong(in);              break;
+                    case "cpuPercent":       value.cpuPercent = nextDouble(in);       break;
+                    case "goroutines":       value.goroutines = (int) nextLong(in);   break;
+                    case "myID":             value.myID = nextString(in);             break;
+                    case "sys":              value.sys = nextLong(in);                break;
+                    case "discoveryEnabled": value.discoveryEnabled = nextBoolean(in); break;
+                    case "discoveryMethods": value.discoveryMethods = (int) nextLong(in); break;
+                    case "discoveryErrors":
+                        if (skipNull(in)) {
+                            break;
+                        }
+                        value.discoveryErrors = new HashMap<>();
+                        in.beginObject();
+                        while (in.hasNext()) {
+                            String name = in.nextName();
+                            value.discoveryErrors.put(name, nextString(in));
+                        }
+                        in.endObject();
+                        break;
+                    case "urVersionMax":     value.urVersionMax = (int) nextLong(in); break;
+                    default:                 in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    private static class SystemVersionAdapter extends TypeAdapter<SystemVersion> {
+
+        @Override
+        public void write(JsonWriter out, SystemVersion value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("arch").value(value.arch);
+            out.name("codename").value(value.codename);
+            out.name("longVersion").value(value.longVersion);
+            out.name("os").value(value.os);
+            out.name("version").value(value.version);
+            out.endObject();
+        }
+
+        @Override
+        public SystemVersion read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            SystemVersion value = new SystemVersion();
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "arch":        value.arch = nextString(in);        break;
+                    case "codename":    value.codename = nextString(in);    break;
+                    case "longVersion": value.longVersion = nextString(in); break;
+                    case "os":          value.os = nextString(in);          break;
+                    case "version":     value.version = nextString(in);     break;
+                    default:            in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Decodes events into the subclass of {@link Event} for their type, reading the event data
+     * directly into it. The data of other types is skipped without being parsed.
+     *
+     * Only the envelope fields are written, as events are never sent to syncthing.
+     */
+    private static class EventAdapter extends TypeAdapter<Event> {
+
+        private final FolderStatusAdapter mFolderStatusAdapter = new FolderStatusAdapter();
+
+        @Override
+        public void write(JsonWriter out, Event value) throws IOException {
+            if (value == null) {
+                out.nullValue();
+                return;
+            }
+            out.beginObject();
+            out.name("id").value(value.id);
+            out.name("globalID").value(value.globalID);
+            out.name("type").value(value.type);
+            out.name("time").value(value.time);
+            out.endObject();
+        }
+
+        @Override
+        public Event read(JsonReader in) throws IOException {
+            if (skipNull(in)) {
+                return null;
+            }
+            int id = 0;
+            int globalID = 0;
+            String type = null;
+            String time = null;
+            Event value = null;
+            JsonElement deferredData = null;
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":       id = (int) nextLong(in);       break;
+                    case "globalID": globalID = (int) nextLong(in); break;
+                    case "type":     type = nextString(in);         break;
+                    case "time":     time = nextString(in);         break;
+                    case "data":
+                        // Syncthing sends the type before the data, but JSON doesn't guarantee it.
+                        if (type != null) {
+                            value = readData(type, in);
+                        } else {
+                            deferredData = GSON.getAdapter(JsonElement.class).read(in);
+                        }
+                        break;
+                    default:
+                        in.skipValue();
+                }
+            }
+            in.endObject();
+            if (deferredData != null && type != null) {
+                value = readData(type, new JsonReader(new StringReader(deferredData.toString())));
+            }
+            if (value == null) {
+                value = new Event();
+            }
+            value.id = id;
+            value.globalID = globalID;
+            value.type = type;
+            value.time = time;
+            return value;
+        }
+
+        /**
+         * Returns the event with the data of the given type, or null after skipping the data if
+         * the type is not handled.
+         */
+        private Event readData(String type, JsonReader in) throws IOException {
+            switch (type) {
+                case "DeviceConnected":       return readDeviceConnected(in);
+                case "DeviceDisconnected":    return readDeviceDisconnected(in);
+                case "DevicePaused":
+                case "DeviceResumed":         return readDevicePaused(in);
+                case "FolderCompletion":      return readFolderCompletion(in);
+                case "FolderScanProgress":    return readFolderScanProgress(in);
+                case "FolderSummary":         return readFolderSummary(in);
+                case "ItemFinished":          return readItemFinished(in);
+                case "LocalChangeDetected":
+                case "RemoteChangeDetected":  return readChangeDetected(in);
+                case "LocalIndexUpdated":     return readLocalIndexUpdated(in);
+                case "PendingDevicesChanged": return readPendingDevicesChanged(in);
+                case "PendingFoldersChanged": return readPendingFoldersChanged(in);
+                case "StateChanged":          return readStateChanged(in);
+                default:
+                    in.skipValue();
+                    return null;
+            }
+        }
+
+        private DeviceConnectedEvent readDeviceConnected(JsonReader in) throws IOException {
+            DeviceConnectedEvent value = new DeviceConnectedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":            value.deviceID = nextString(in);       break;
+                    case "addr":          value.addr = nextString(in);           break;
+                    case "type":          value.connectionType = nextString(in); break;
+                    case "clientName":    value.clientName = nextString(in);     break;
+                    case "clientVersion": value.clientVersion = nextString(in);  break;
+                    case "deviceName":    value.deviceName = nextString(in);     break;
+                    default:              in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private DeviceDisconnectedEvent readDeviceDisconnected(JsonReader in) throws IOException {
+            DeviceDisconnectedEvent value = new DeviceDisconnectedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "id":    value.deviceID = nextString(in); break;
+                    case "error": value.error = nextString(in);    break;
+                    default:      in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private DevicePausedEvent readDevicePaused(JsonReader in) throws IOException {
+            DevicePausedEvent value = new DevicePausedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "device": value.device = nextString(in); break;
+                    default:       in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private FolderCompletionEvent readFolderCompletion(JsonReader in) throws IOException {
+            FolderCompletionEvent value = new FolderCompletionEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "device":      value.device = nextString(in);      break;
+                    case "folder":      value.folder = nextString(in);      break;
+                    case "completion":  value.completion = nextDouble(in);  break;
+                    case "globalBytes": value.globalBytes = nextLong(in);   break;
+                    case "needBytes":   value.needBytes = nextLong(in);     break;
+                    case "needItems":   value.needItems = nextLong(in);     break;
+                    case "needDeletes": value.needDeletes = nextLong(in);   break;
+                    default:            in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private FolderScanProgressEvent readFolderScanProgress(JsonReader in) throws IOException {
+            FolderScanProgressEvent value = new FolderScanProgressEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folder":  value.folder = nextString(in); break;
+                    case "current": value.current = nextLong(in);  break;
+                    case "total":   value.total = nextLong(in);    break;
+                    case "rate":    value.rate = nextDouble(in);   break;
+                    default:        in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private FolderSummaryEvent readFolderSummary(JsonReader in) throws IOException {
+            FolderSummaryEvent value = new FolderSummaryEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folder":  value.folder = nextString(in);                 break;
+                    case "summary": value.summary = mFolderStatusAdapter.read(in); break;
+                    default:        in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private ItemFinishedEvent readItemFinished(JsonReader in) throws IOException {
+            ItemFinishedEvent value = new ItemFinishedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folder": value.folder = nextString(in);   break;
+                    case "item":   value.item = nextString(in);     break;
+                    case "type":   value.itemType = nextString(in); break;
+                    case "action": value.action = nextString(in);   break;
+                    case "error":  value.error = nextString(in);    break;
+                    default:       in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private ChangeDetectedEvent readChangeDetected(JsonReader in) throws IOException {
+            ChangeDetectedEvent value = new ChangeDetectedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folderID":   value.folderID = nextString(in);   break;
+                    case "label":      value.label = nextString(in);      break;
+                    case "path":       value.path = nextString(in);       break;
+                    case "type":       value.itemType = nextString(in);   break;
+                    case "action":     value.action = nextString(in);     break;
+                    case "modifiedBy": value.modifiedBy = nextString(in); break;
+                    default:           in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private LocalIndexUpdatedEvent readLocalIndexUpdated(JsonReader in) throws IOException {
+            LocalIndexUpdatedEvent value = new LocalIndexUpdatedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folder":   value.folder = nextString(in); break;
+                    case "items":    value.items = nextLong(in);    break;
+                    case "sequence": value.sequence = nextLong(in); break;
+                    case "version":  value.version = nextLong(in);  break;
+                    default:         in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+
+        private PendingDevicesChangedEvent readPendingDevicesChanged(JsonReader in)
+                throws IOException {
+            PendingDevicesChangedEvent value = new PendingDevicesChangedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("added")) {
+                    in.skipValue();
+                    continue;
+                }
+                if (skipNull(in)) {
+                    continue;
+                }
+                value.added = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    PendingDevicesChangedEvent.PendingDevice device =
+                            new PendingDevicesChangedEvent.PendingDevice();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "deviceID": device.deviceID = nextString(in); break;
+                            case "name":     device.name = nextString(in);     break;
+                            case "address":  device.address = nextString(in);  break;
+                            default:         in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    value.added.add(device);
+                }
+                in.endArray();
+            }
+            in.endObject();
+            return value;
+        }
+
+        private PendingFoldersChangedEvent readPendingFoldersChanged(JsonReader in)
+                throws IOException {
+            PendingFoldersChangedEvent value = new PendingFoldersChangedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                if (!in.nextName().equals("added")) {
+                    in.skipValue();
+                    continue;
+                }
+                if (skipNull(in)) {
+                    continue;
+                }
+                value.added = new ArrayList<>();
+                in.beginArray();
+                while (in.hasNext()) {
+                    PendingFoldersChangedEvent.PendingFolder folder =
+                            new PendingFoldersChangedEvent.PendingFolder();
+                    in.beginObject();
+                    while (in.hasNext()) {
+                        switch (in.nextName()) {
+                            case "deviceID":    folder.deviceID = nextString(in);    break;
+                            case "folderID":    folder.folderID = nextString(in);    break;
+                            case "folderLabel": folder.folderLabel = nextString(in); break;
+                            default:            in.skipValue();
+                        }
+                    }
+                    in.endObject();
+                    value.added.add(folder);
+                }
+                in.endArray();
+            }
+            in.endObject();
+            return value;
+        }
+
+        private StateChangedEvent readStateChanged(JsonReader in) throws IOException {
+            StateChangedEvent value = new StateChangedEvent();
+            if (skipNull(in)) {
+                return value;
+            }
+            in.beginObject();
+            while (in.hasNext()) {
+                switch (in.nextName()) {
+                    case "folder":   value.folder = nextString(in);   break;
+                    case "from":     value.from = nextString(in);     break;
+                    case "to":       value.to = nextString(in);       break;
+                    case "duration": value.duration = nextDouble(in); break;
+                    case "error":    value.error = nextString(in);    break;
+                    default:         in.skipValue();
+                }
+            }
+            in.endObject();
+            return value;
+        }
+    }
+
+    /**
+     * Returns true and consumes the token if the next value is null.
+     */
+    private static boolean skipNull(JsonReader in) throws IOException {
+        if (in.peek() == JsonToken.NULL) {
+            in.nextNull();
+            return true;
+        }
+        return false;
+    }
+
+    private static String nextString(JsonReader in) throws IOException {
+        return skipNull(in) ? null : in.nextString();
+    }
+
+    private static boolean nextBoolean(JsonReader in) throws IOException {
+        return !skipNull(in) && in.nextBoolean();
+    }
+
+    private static long nextLong(JsonReader in) throws IOException {
+        if (skipNull(in)) {
+            return 0;
+        }
+        try {
+            return in.nextLong();
+        } catch (NumberFormatException e) {
+            // Values such as 1.5e3 are valid JSON numbers, but not parseable as long.
+            return (long) in.nextDouble();
+        }
+    }
+
+    private static double nextDouble(JsonReader in) throws IOException {
+        return skipNull(in) ? 0 : in.nextDouble();
+    }
+
+    private static void writeValue(JsonWriter out, Object value) throws IOException {
+        if (value == null) {
+            out.nullValue();
+        } else if (value instanceof Map) {
+            out.beginObject();
+            for (Map.Entry<?, ?> e : ((Map<?, ?>) value).entrySet()) {
+                out.name(String.valueOf(e.getKey()));
+                writeValue(out, e.getValue());
+            }
+            out.endObject();
+        } else if (value instanceof List) {
+            out.beginArray();
+            for (Object item : (List<?>) value) {
+                writeValue(out, item);
+            }
+            out.endArray();
+        } else if (value instanceof Number) {
+            out.value((Number) value);
+        } else if (value instanceof Boolean) {
+            out.value((Boolean) value);
+        } else {
+            out.value(value.toString());
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/localindexupdated.html
+ *
+ * The list of changed filenames is not decoded.
+ */
+public class LocalIndexUpdatedEvent extends Event {
+    public String folder;
+    public long items;
+    public long sequence;
+    public long version;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+}
@@ -0,0 +1,19 @@
+package com.nutomic.syncthingandroid.model;
+
+import java.util.List;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/pendingdeviceschanged.html
+ *
+ * Only added devices are decoded.
+ */
+public class PendingDevicesChangedEvent extends Event {
+    public List<PendingDevice> added;
+
+    public static class PendingDevice {
+        public String deviceID;
+        public String name;
+        public String address;
+    }
+}
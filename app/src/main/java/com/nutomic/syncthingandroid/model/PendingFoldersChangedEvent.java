@@ -0,0 +1,19 @@
+package com.nutomic.syncthingandroid.model;
+
+import java.util.List;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/pendingfolderschanged.html
+ *
+ * Only added folders are decoded.
+ */
+public class PendingFoldersChangedEvent extends Event {
+    public List<PendingFolder> added;
+
+    public static class PendingFolder {
+        public String deviceID;
+        public String folderID;
+        public String folderLabel;
+    }
+}
@@ -0,0 +1,18 @@
+package com.nutomic.syncthingandroid.model;
+
+/**
+ * According to syncthing events API
+ * https://docs.syncthing.net/events/statechanged.html
+ */
+public class StateChangedEvent extends Event {
+    public String folder;
+    public String from;
+    public String to;
+    public double duration;
+    public String error;
+
+    @Override
+    public String getFolderId() {
+        return folder;
+    }
+}
@@ -0,0 +1,121 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.nutomic.syncthingandroid.http.ApiRequest;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Coalesces concurrent requests for the same resource into a single in-flight request, and
+ * caches the result for a per-call time to live.
+ *
+ * Results are always delivered on the main thread, whether they come from the cache or from a
+ * new request. Cached results are shared between callers and must not be modified.
+ */
+class ApiResponseCache {
+
+    private static final String TAG = "ApiResponseCache";
+
+    /**
+     * Use as time to live for results that never change while the binary is running.
+     */
+    static final long TTL_FOREVER = Long.MAX_VALUE;
+
+    /**
+     * Starts the actual request for a resource.
+     */
+    interface Fetcher<T> {
+        void fetch(ApiRequest.OnTypedSuccessListener<T> onSuccess,
+                   ApiRequest.OnErrorListener onError);
+    }
+
+    private static class Entry {
+        Object value;
+        boolean hasValue;
+        long fetchedAt;
+        boolean inFlight;
+        final List<RestApi.OnResultListener1<Object>> waiters = new ArrayList<>();
+    }
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    /**
+     * Entries by resource key. Guarded by itself.
+     */
+    private final Map<String, Entry> mEntries = new HashMap<>();
+
+    /**
+     * Delivers the result for key to listener, using the cached result if it is younger than
+     * ttlMs, joining a request that is already in flight, or starting a new one via fetcher.
+     */
+    @SuppressWarnings("unchecked")
+    <T> void get(String key, long ttlMs, Fetcher<T> fetcher,
+                 RestApi.OnResultListener1<T> listener) {
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(key);
+            if (entry == null) {
+                entry = new Entry();
+                mEntries.put(key, entry);
+            }
+            if (entry.hasValue && SystemClock.elapsedRealtime() - entry.fetchedAt < ttlMs) {
+                T value = (T) entry.value;
+                mMainThreadHandler.post(() -> listener.onResult(value));
+                return;
+            }
+            entry.waiters.add(value -> listener.onResult((T) value));
+            if (entry.inFlight) {
+                return;
+            }
+            entry.inFlight = true;
+        }
+        fetcher.fetch(result -> onFetched(key, result), error -> onFailed(key, error));
+    }
+
+    /**
+     * Drops the cached result for key, so the next call to {@link #get} fetches it again.
+     */
+    void invalidate(String key) {
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(key);
+            if (entry != null) {
+                entry.hasValue = false;
+                entry.value = null;
+            }
+        }
+    }
+
+    private void onFetched(String key, Object result) {
+        List<RestApi.OnResultListener1<Object>> waiters;
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(key);
+            entry.value = result;
+            entry.hasValue = true;
+            entry.fetchedAt = SystemClock.elapsedRealtime();
+            entry.inFlight = false;
+            waiters = new ArrayList<>(entry.waiters);
+            entry.waiters.clear();
+        }
+        for (RestApi.OnResultListener1<Object> waiter : waiters) {
+            waiter.onResult(result);
+        }
+    }
+
+    private void onFailed(String key, Exception error) {
+        int dropped;
+        synchronized (mEntries) {
+            Entry entry = mEntries.get(key);
+            entry.inFlight = false;
+            dropped = entry.waiters.size();
+            entry.waiters.clear();
+        }
+        Log.w(TAG, "Request for " + key + " failed, dropping " + dropped + " callbacks: " +
+                error.getMessage());
+    }
+}
@@ -0,0 +1,234 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.model.Connections;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the connection state of each device.
+ *
+ * Connection state is requested from syncthing once, and afterwards kept up to date from
+ * DeviceConnected, DeviceDisconnected, DevicePaused and DeviceResumed events. Byte counters,
+ * which transfer rates are calculated from, are only polled while at least one rate consumer is
+ * registered, e.g. a visible screen showing transfer rates.
+ *
+ * Must be used on the main thread, except for {@link #addRateConsumer} and
+ * {@link #removeRateConsumer}.
+ */
+public class ConnectionTracker {
+
+    /**
+     * Notified after the connection state or transfer rate of one or more devices changed.
+     */
+    public interface OnConnectionsChangeListener {
+        void onConnectionsChange();
+    }
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private final ApiResponseCache.Fetcher<Connections> mFetcher;
+
+    private final Connections mConnections = new Connections();
+
+    /**
+     * Time of the last byte counter update from elapsedRealtime(), or 0 if transfer rates are not
+     * being tracked.
+     */
+    private long mCountersTime = 0;
+
+    private final List<OnConnectionsChangeListener> mListeners = new ArrayList<>();
+
+    /**
+     * Objects currently interested in transfer rates. Guarded by itself.
+     */
+    private final Set<Object> mRateConsumers = new HashSet<>();
+
+    /**
+     * True while the byte counter polling loop is running. Guarded by {@link #mRateConsumers}.
+     */
+    private boolean mPolling = false;
+
+    /**
+     * @param fetcher Requests connections from syncthing, used for the initial state and to poll
+     *                byte counters.
+     */
+    ConnectionTracker(ApiResponseCache.Fetcher<Connections> fetcher) {
+        mFetcher = fetcher;
+        mConnections.total = new Connections.Connection();
+        mConnections.connections = new HashMap<>();
+    }
+
+    /**
+     * Returns the current connections. The result must not be modified.
+     */
+    public Connections getConnections() {
+        return mConnections;
+    }
+
+    public void addOnConnectionsChangeListener(OnConnectionsChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnConnectionsChangeListener(OnConnectionsChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Starts polling byte counters to calculate transfer rates, unless already running. May be
+     * called from any thread.
+     */
+    public void addRateConsumer(Object consumer) {
+        synchronized (mRateConsumers) {
+            mRateConsumers.add(consumer);
+            if (mPolling) {
+                return;
+            }
+            mPolling = true;
+        }
+        mMainThreadHandler.post(mPollCounters);
+    }
+
+    /**
+     * Polling stops once the last consumer was removed. May be called from any thread.
+     */
+    public void removeRateConsumer(Object consumer) {
+        synchronized (mRateConsumers) {
+            mRateConsumers.remove(consumer);
+        }
+    }
+
+    /**
+     * Requests the full connection state, e.g. after syncthing was restarted or unreachable and
+     * events may have been missed.
+     */
+    void refresh() {
+        mFetcher.fetch(connections -> {
+            mConnections.total = connections.total;
+            mConnections.connections = connections.connections;
+            // The counters of the next poll must not be compared to the replaced ones.
+            mCountersTime = 0;
+            notifyListeners();
+        }, error -> {});
+    }
+
+    /**
+     * Called for DeviceConnected events.
+     */
+    void onDeviceConnected(String deviceId, String address, String type, String clientVersion) {
+        Connections.Connection connection = getOrCreateConnection(deviceId);
+        connection.connected = true;
+        connection.address = address;
+        connection.type = type;
+        connection.clientVersion = clientVersion;
+        notifyListeners();
+    }
+
+    /**
+     * Called for DeviceDisconnected events.
+     */
+    void onDeviceDisconnected(String deviceId) {
+        Connections.Connection connection = getOrCreateConnection(deviceId);
+        connection.connected = false;
+        connection.address = "";
+        connection.type = "";
+        connection.clientVersion = "";
+        connection.inBits = 0;
+        connection.outBits = 0;
+        notifyListeners();
+    }
+
+    /**
+     * Called for DevicePaused and DeviceResumed events.
+     */
+    void onDevicePaused(String deviceId, boolean paused) {
+        getOrCreateConnection(deviceId).paused = paused;
+        notifyListeners();
+    }
+
+    private Connections.Connection getOrCreateConnection(String deviceId) {
+        Connections.Connection connection = mConnections.connections.get(deviceId);
+        if (connection == null) {
+            connection = new Connections.Connection();
+            mConnections.connections.put(deviceId, connection);
+        }
+        return connection;
+    }
+
+    private final Runnable mPollCounters = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (mRateConsumers) {
+                if (mRateConsumers.isEmpty()) {
+                    mPolling = false;
+                    stopTrackingRates();
+                    return;
+                }
+            }
+            mFetcher.fetch(connections -> {
+                onReceiveCounters(connections);
+                mMainThreadHandler.postDelayed(this, Constants.GUI_UPDATE_INTERVAL);
+            }, error -> mMainThreadHandler.postDelayed(this, Constants.GUI_UPDATE_INTERVAL));
+        }
+    };
+
+    /**
+     * Takes over byte counters from a polled result and calculates transfer rates. The connection
+     * state in the result is ignored, as it is maintained from events.
+     */
+    private void onReceiveCounters(Connections counters) {
+        long now = SystemClock.elapsedRealtime();
+        long msElapsed = now - mCountersTime;
+        boolean calculateRates = mCountersTime != 0;
+        mCountersTime = now;
+        updateCounters(mConnections.total, counters.total, calculateRates, msElapsed);
+        for (Map.Entry<String, Connections.Connection> e : counters.connections.entrySet()) {
+            updateCounters(getOrCreateConnection(e.getKey()), e.getValue(), calculateRates, msElapsed);
+        }
+        notifyListeners();
+    }
+
+    private static void updateCounters(Connections.Connection connection,
+                                       @Nullable Connections.Connection counters,
+                                       boolean calculateRates, long msElapsed) {
+        if (counters == null) {
+            return;
+        }
+        if (calculateRates) {
+            counters.setTransferRate(connection, msElapsed);
+            connection.inBits = counters.inBits;
+            connection.outBits = counters.outBits;
+        }
+        connection.inBytesTotal = counters.inBytesTotal;
+        connection.outBytesTotal = counters.outBytesTotal;
+    }
+
+    /**
+     * Rates calculated after a long pause would be averages over the pause, so start over.
+     */
+    private void stopTrackingRates() {
+        mCountersTime = 0;
+        mConnections.total.inBits = 0;
+        mConnections.total.outBits = 0;
+        for (Connections.Connection connection : mConnections.connections.values()) {
+            connection.inBits = 0;
+            connection.outBits = 0;
+        }
+    }
+
+    private void notifyListeners() {
+        for (OnConnectionsChangeListener listener : new ArrayList<>(mListeners)) {
+            listener.onConnectionsChange();
+        }
+    }
+}
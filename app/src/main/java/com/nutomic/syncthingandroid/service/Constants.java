@@ -37,6 +37,14 @@ public class Constants {
     public static final String PREF_SOCKS_PROXY_ADDRESS         = "socks_proxy_address";
     public static final String PREF_HTTP_PROXY_ADDRESS          = "http_proxy_address";
     public static final String PREF_UPGRADED_TO_API_LEVEL_30    = "upgraded_to_api_level_30";
+    public static final String PREF_EVENT_LONG_POLLING          = "event_long_polling";
+    public static final String PREF_USE_UNIX_SOCKET_API         = "use_unix_socket_api";
+
+    /**
+     * GUI address configured before switching to the Unix socket, restored when the socket is
+     * turned off again.
+     */
+    public static final String PREF_GUI_ADDRESS_BEFORE_SOCKET   = "gui_address_before_socket";
 
     /**
      * Available options cache for preference {@link app_settings#debug_facilities_enabled}
@@ -124,6 +132,16 @@ public class Constants {
         return new File(context.getFilesDir(), HTTPS_KEY_FILE);
     }
 
+    /**
+     * Name of the Unix domain socket Syncthing's GUI and REST API listen on, if enabled via
+     * {@link #PREF_USE_UNIX_SOCKET_API}.
+     */
+    static final String GUI_SOCKET_FILE = "gui.sock";
+
+    public static File getGuiSocketFile(Context context) {
+        return new File(context.getFilesDir(), GUI_SOCKET_FILE);
+    }
+
     static File getSyncthingBinary(Context context) {
         return new File(context.getApplicationInfo().nativeLibraryDir, FILENAME_SYNCTHING_BINARY);
     }
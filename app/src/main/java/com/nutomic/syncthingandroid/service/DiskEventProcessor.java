@@ -0,0 +1,253 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.SyncthingApp;
+import com.nutomic.syncthingandroid.model.ChangeDetectedEvent;
+import com.nutomic.syncthingandroid.model.Event;
+import com.nutomic.syncthingandroid.model.Folder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.inject.Inject;
+
+/**
+ * Run by the syncthing service to keep the MediaStore up to date with files changed by syncthing.
+ *
+ * It reads the disk event stream using {@link RestApi#getDiskEvents}, which only contains
+ * LocalChangeDetected and RemoteChangeDetected events, independently of {@link EventProcessor}.
+ * That way no progress events have to be transferred and decoded while files are synced. The
+ * disk event stream has its own event ids, so the last id is stored separately.
+ */
+public class DiskEventProcessor implements Runnable, RestApi.OnReceiveEventListener {
+
+    private static final String TAG = "DiskEventProcessor";
+    private static final String PREF_LAST_DISK_EVENT_ID = "last_disk_event_id";
+
+    /**
+     * Interval at which events are polled if long polling is disabled, or after an error.
+     */
+    private static final long EVENT_UPDATE_INTERVAL = TimeUnit.SECONDS.toMillis(15);
+
+    /**
+     * Time in seconds syncthing holds a long poll request open if no new events occur.
+     */
+    private static final int EVENT_LONG_POLL_TIMEOUT_S = 60;
+
+    /**
+     * Requests and handles events in order. Only set while running, guarded by {@link #mLock}.
+     */
+    @Nullable private HandlerThread mWorkerThread;
+    @Nullable private Handler mWorkerHandler;
+    @Nullable private MediaIndexUpdater mMediaIndexUpdater;
+    private final Object mLock = new Object();
+
+    /**
+     * Events of the request in flight, collected on the main thread until it is done.
+     */
+    private List<Event> mReceivedEvents = new ArrayList<>();
+
+    private volatile boolean mShutdown = true;
+
+    /**
+     * The following fields are only accessed on the worker thread, {@link #start()} posts their
+     * reset to it.
+     */
+    private long mLastEventId = 0;
+    private boolean mCheckEventIdReset = true;
+    private boolean mUseLongPolling = true;
+
+    private final Context mContext;
+    private final RestApi mApi;
+    private final EventJournal mEventJournal;
+    @Inject SharedPreferences mPreferences;
+
+    public DiskEventProcessor(Context context, RestApi api, EventJournal eventJournal) {
+        ((SyncthingApp) context.getApplicationContext()).component().inject(this);
+        mContext = context;
+        mApi = api;
+        mEventJournal = eventJournal;
+    }
+
+    @Override
+    public void run() {
+        // Restore the last event id if the processor may have been restarted.
+        if (mLastEventId == 0) {
+            mLastEventId = mPreferences.getLong(PREF_LAST_DISK_EVENT_ID, 0);
+        }
+
+        if (!mCheckEventIdReset) {
+            requestEvents();
+            return;
+        }
+
+        // First check if the event number ran backwards.
+        // If that's the case we've to start at zero because syncthing was restarted.
+        mApi.getDiskEvents(0, 1, 0, new RestApi.OnReceiveEventListener() {
+            @Override
+            public void onEvent(Event event) {
+            }
+
+            @Override
+            public void onDone(long lastId) {
+                postToWorker(() -> {
+                    if (lastId < mLastEventId) mLastEventId = 0;
+                    mCheckEventIdReset = false;
+                    Log.d(TAG, "Reading disk events starting with id " + mLastEventId);
+                    requestEvents();
+                });
+            }
+
+            @Override
+            public void onError() {
+                DiskEventProcessor.this.onError();
+            }
+        });
+    }
+
+    private void requestEvents() {
+        int timeoutS = mUseLongPolling ? EVENT_LONG_POLL_TIMEOUT_S : 0;
+        mApi.getDiskEvents(mLastEventId, 0, timeoutS, this);
+    }
+
+    /**
+     * Called on the main thread for each received event. Events are only collected here, and
+     * handled on the worker thread once the request is done.
+     */
+    @Override
+    public void onEvent(Event event) {
+        mReceivedEvents.add(event);
+    }
+
+    /**
+     * The media index updater belongs to the worker thread it is posted to, and is captured along
+     * with it, as stop() drops both.
+     */
+    @Override
+    public void onDone(long id) {
+        List<Event> events = mReceivedEvents;
+        mReceivedEvents = new ArrayList<>();
+        synchronized (mLock) {
+            if (!mShutdown && mWorkerHandler != null) {
+                MediaIndexUpdater mediaIndexUpdater = mMediaIndexUpdater;
+                mWorkerHandler.post(() -> handleEvents(events, id, mediaIndexUpdater));
+            }
+        }
+    }
+
+    /**
+     * Syncthing is not reachable. Fall back to the regular polling interval until it responds
+     * again, then check if the event id ran backwards because syncthing was restarted.
+     */
+    @Override
+    public void onError() {
+        mReceivedEvents = new ArrayList<>();
+        postToWorker(() -> {
+            mCheckEventIdReset = true;
+            scheduleNextRequest(EVENT_UPDATE_INTERVAL);
+        });
+    }
+
+    private void handleEvents(List<Event> events, long lastId,
+                              MediaIndexUpdater mediaIndexUpdater) {
+        for (Event event : events) {
+            if (mShutdown) {
+                return;
+            }
+            mEventJournal.record(event);
+            // Local changes were made by apps on this device, which update the MediaStore
+            // themselves.
+            if ("RemoteChangeDetected".equals(event.type)) {
+                onRemoteChangeDetected((ChangeDetectedEvent) event, mediaIndexUpdater);
+            }
+        }
+
+        if (mLastEventId < lastId) {
+            mLastEventId = lastId;
+
+            // Store the last EventId in case we get killed
+            mPreferences.edit().putLong(PREF_LAST_DISK_EVENT_ID, mLastEventId).apply();
+        }
+
+        scheduleNextRequest(mUseLongPolling ? 0 : EVENT_UPDATE_INTERVAL);
+    }
+
+    private void onRemoteChangeDetected(ChangeDetectedEvent event,
+                                        MediaIndexUpdater mediaIndexUpdater) {
+        if (!"file".equals(event.itemType) || event.path == null) {
+            return;
+        }
+        Folder folder = mApi.getFolder(event.folderID);
+        if (folder == null) {
+            Log.w(TAG, "Ignoring change in unknown folder " + event.folderID);
+            return;
+        }
+        File file = new File(folder.path, event.path);
+        mediaIndexUpdater.onFileChanged(file.getPath(), "deleted".equals(event.action));
+    }
+
+    private void postToWorker(Runnable runnable) {
+        synchronized (mLock) {
+            if (!mShutdown && mWorkerHandler != null) {
+                mWorkerHandler.post(runnable);
+            }
+        }
+    }
+
+    private void scheduleNextRequest(long delayMillis) {
+        synchronized (mLock) {
+            if (!mShutdown && mWorkerHandler != null) {
+                mWorkerHandler.removeCallbacks(this);
+                mWorkerHandler.postDelayed(this, delayMillis);
+            }
+        }
+    }
+
+    public void start() {
+        Log.d(TAG, "Starting disk event processor.");
+        boolean useLongPolling = mPreferences.getBoolean(Constants.PREF_EVENT_LONG_POLLING, true);
+
+        synchronized (mLock) {
+            mShutdown = false;
+            if (mWorkerThread == null) {
+                mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+                mWorkerThread.start();
+                mWorkerHandler = new Handler(mWorkerThread.getLooper());
+                mMediaIndexUpdater = new MediaIndexUpdater(mContext, mWorkerThread.getLooper());
+            }
+            // Runs before the request posted below.
+            mWorkerHandler.post(() -> {
+                mUseLongPolling = useLongPolling;
+                mCheckEventIdReset = true;
+            });
+            mWorkerHandler.removeCallbacks(this);
+            mWorkerHandler.post(this);
+        }
+    }
+
+    public void stop() {
+        Log.d(TAG, "Stopping disk event processor.");
+        synchronized (mLock) {
+            mShutdown = true;
+            if (mWorkerThread != null) {
+                // Let the media index updater submit pending items before the worker exits.
+                mWorkerHandler.removeCallbacks(this);
+                mMediaIndexUpdater.shutdown();
+                mWorkerThread.quitSafely();
+                mWorkerThread = null;
+                mWorkerHandler = null;
+                mMediaIndexUpdater = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.DefaultLifecycleObserver;
+import androidx.lifecycle.Lifecycle;
+import androidx.lifecycle.LifecycleOwner;
+
+import com.google.common.collect.ImmutableSet;
+import com.nutomic.syncthingandroid.model.Event;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Forwards syncthing events received by {@link EventProcessor} to activities and fragments, so
+ * they can react to changes instead of polling the REST API.
+ *
+ * Subscriptions are bound to the lifecycle of their owner: events are only delivered while the
+ * owner is started, and the subscription is removed when the owner is destroyed. Each
+ * subscription has a bounded queue, so a subscriber that falls behind drops its oldest events
+ * instead of holding up others. Events are always delivered on the main thread.
+ */
+public class EventBus {
+
+    private static final String TAG = "EventBus";
+
+    /**
+     * Maximum number of events queued for a single subscriber.
+     */
+    private static final int MAX_QUEUED_EVENTS = 100;
+
+    public interface OnEventListener {
+        void onEvent(Event event);
+    }
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+
+    private final List<Subscription> mSubscriptions = new CopyOnWriteArrayList<>();
+
+    /**
+     * Subscribes listener to events of the given types. Must be called on the main thread.
+     */
+    public void subscribe(LifecycleOwner owner, Collection<String> eventTypes,
+                          OnEventListener listener) {
+        subscribe(owner, eventTypes, null, listener);
+    }
+
+    /**
+     * Subscribes listener to events of the given types. Must be called on the main thread.
+     *
+     * @param eventTypes Must be requested from syncthing, i.e. part of
+     *                   {@link EventProcessor#SUBSCRIBED_EVENT_TYPES}.
+     * @param id If not null, only events concerning the folder or device with this id are
+     *           delivered, see {@link Event#getFolderId} and {@link Event#getDeviceId}.
+     */
+    public void subscribe(LifecycleOwner owner, Collection<String> eventTypes, @Nullable String id,
+                          OnEventListener listener) {
+        if (!EventProcessor.SUBSCRIBED_EVENT_TYPES.containsAll(eventTypes)) {
+            throw new IllegalArgumentException("Event types " + eventTypes +
+                    " are not requested from syncthing");
+        }
+        if (owner.getLifecycle().getCurrentState() == Lifecycle.State.DESTROYED) {
+            return;
+        }
+        Subscription subscription = new Subscription(eventTypes, id, listener);
+        mSubscriptions.add(subscription);
+        owner.getLifecycle().addObserver(subscription);
+    }
+
+    /**
+     * Queues event for all matching subscribers. May be called from any thread.
+     */
+    void publish(Event event) {
+        for (Subscription subscription : mSubscriptions) {
+            if (subscription.accepts(event)) {
+                subscription.offer(event);
+            }
+        }
+    }
+
+    private class Subscription implements DefaultLifecycleObserver, Runnable {
+
+        private final Set<String> mEventTypes;
+        @Nullable private final String mId;
+        private final OnEventListener mListener;
+
+        /**
+         * Queued events, guarded by itself together with {@link #mDrainPosted} and
+         * {@link #mDropped}.
+         */
+        private final ArrayDeque<Event> mQueue = new ArrayDeque<>();
+        private boolean mDrainPosted = false;
+        private int mDropped = 0;
+
+        private volatile boolean mActive = false;
+
+        Subscription(Collection<String> eventTypes, @Nullable String id, OnEventListener listener) {
+            mEventTypes = ImmutableSet.copyOf(eventTypes);
+            mId = id;
+            mListener = listener;
+        }
+
+        boolean accepts(Event event) {
+            return mActive && mEventTypes.contains(event.type)
+                    && (mId == null || mId.equals(event.getFolderId()) || mId.equals(event.getDeviceId()));
+        }
+
+        void offer(Event event) {
+            synchronized (mQueue) {
+                if (mQueue.size() >= MAX_QUEUED_EVENTS) {
+                    mQueue.poll();
+                    mDropped++;
+                }
+                mQueue.add(event);
+                if (mDrainPosted) {
+                    return;
+                }
+                mDrainPosted = true;
+            }
+            mMainThreadHandler.post(this);
+        }
+
+        /**
+         * Delivers all queued events.
+         */
+        @Override
+        public void run() {
+            int dropped;
+            synchronized (mQueue) {
+                dropped = mDropped;
+                mDropped = 0;
+            }
+            if (dropped > 0) {
+                Log.w(TAG, "Dropped " + dropped + " events for slow subscriber " + mListener);
+            }
+            while (true) {
+                Event event;
+                synchronized (mQueue) {
+                    event = mQueue.poll();
+                    if (event == null) {
+                        mDrainPosted = false;
+                        return;
+                    }
+                }
+                if (mActive) {
+                    mListener.onEvent(event);
+                }
+            }
+        }
+
+        @Override
+        public void onStart(@NonNull LifecycleOwner owner) {
+            mActive = true;
+        }
+
+        @Override
+        public void onStop(@NonNull LifecycleOwner owner) {
+            mActive = false;
+            synchronized (mQueue) {
+                mQueue.clear();
+            }
+        }
+
+        @Override
+        public void onDestroy(@NonNull LifecycleOwner owner) {
+            mSubscriptions.remove(this);
+            owner.getLifecycle().removeObserver(this);
+        }
+    }
+}
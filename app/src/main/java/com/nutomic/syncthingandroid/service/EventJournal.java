@@ -0,0 +1,171 @@
+package com.nutomic.syncthingandroid.service;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.model.ChangeDetectedEvent;
+import com.nutomic.syncthingandroid.model.DeviceConnectedEvent;
+import com.nutomic.syncthingandroid.model.DeviceDisconnectedEvent;
+import com.nutomic.syncthingandroid.model.Event;
+import com.nutomic.syncthingandroid.model.FolderCompletionEvent;
+import com.nutomic.syncthingandroid.model.FolderScanProgressEvent;
+import com.nutomic.syncthingandroid.model.LocalIndexUpdatedEvent;
+import com.nutomic.syncthingandroid.model.StateChangedEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the most recent events handled by {@link EventProcessor} and
+ * {@link DiskEventProcessor}, so sync problems can be looked into on the device after the fact.
+ *
+ * Events are stored in a ring buffer of {@link #CAPACITY} entries, as primitive fields and
+ * indexes into tables of interned strings, plus a short description. The oldest entries are
+ * overwritten once the buffer is full. All methods are synchronized.
+ */
+public class EventJournal {
+
+    static final int CAPACITY = 10000;
+
+    /**
+     * Maximum length of the description stored per entry.
+     */
+    private static final int MAX_DESCRIPTION_LENGTH = 200;
+
+    public static class Entry {
+        /**
+         * Position in the journal, increases by one for each recorded event. Used to page
+         * through the journal, as event ids of the general and the disk event stream overlap.
+         */
+        public final long sequence;
+        public final long eventId;
+        /**
+         * Time the event was recorded, from currentTimeMillis().
+         */
+        public final long time;
+        public final String type;
+        @Nullable public final String folderId;
+        @Nullable public final String deviceId;
+        @Nullable public final String description;
+
+        private Entry(long sequence, long eventId, long time, String type,
+                      @Nullable String folderId, @Nullable String deviceId,
+                      @Nullable String description) {
+            this.sequence = sequence;
+            this.eventId = eventId;
+            this.time = time;
+            this.type = type;
+            this.folderId = folderId;
+            this.deviceId = deviceId;
+            this.description = description;
+        }
+    }
+
+    private final long[] mEventIds = new long[CAPACITY];
+    private final long[] mTimes = new long[CAPACITY];
+    private final int[] mTypes = new int[CAPACITY];
+    private final int[] mFolders = new int[CAPACITY];
+    private final int[] mDevices = new int[CAPACITY];
+    private final String[] mDescriptions = new String[CAPACITY];
+
+    /**
+     * Sequence of the next entry. The entry with sequence s is stored at s % CAPACITY.
+     */
+    private long mNextSequence = 0;
+
+    private final StringTable mTypeTable = new StringTable();
+    private final StringTable mIdTable = new StringTable();
+
+    /**
+     * Adds event to the journal, replacing the oldest entry if it is full.
+     */
+    synchronized void record(Event event) {
+        int i = (int) (mNextSequence % CAPACITY);
+        mEventIds[i] = event.id;
+        mTimes[i] = System.currentTimeMillis();
+        mTypes[i] = mTypeTable.intern(event.type);
+        mFolders[i] = mIdTable.intern(event.getFolderId());
+        mDevices[i] = mIdTable.intern(event.getDeviceId());
+        mDescriptions[i] = describe(event);
+        mNextSequence++;
+    }
+
+    /**
+     * Returns up to limit entries matching all given filters, newest first.
+     *
+     * @param beforeSequence Only entries older than this are returned. Pass
+     *                       {@link Long#MAX_VALUE} for the first page, and the sequence of the
+     *                       last returned entry for the following pages.
+     * @param type If not null, only events of this type are returned.
+     * @param folderId If not null, only events concerning this folder are returned.
+     * @param deviceId If not null, only events concerning this device are returned.
+     */
+    public synchronized List<Entry> query(long beforeSequence, int limit, @Nullable String type,
+                                          @Nullable String folderId, @Nullable String deviceId) {
+        List<Entry> result = new ArrayList<>();
+        int typeIndex = (type != null) ? mTypeTable.indexOf(type) : -1;
+        int folderIndex = (folderId != null) ? mIdTable.indexOf(folderId) : -1;
+        int deviceIndex = (deviceId != null) ? mIdTable.indexOf(deviceId) : -1;
+        if ((type != null && typeIndex < 0) || (folderId != null && folderIndex < 0)
+                || (deviceId != null && deviceIndex < 0)) {
+            return result;
+        }
+
+        long oldest = Math.max(0, mNextSequence - CAPACITY);
+        long sequence = Math.min(beforeSequence, mNextSequence) - 1;
+        for (; sequence >= oldest && result.size() < limit; sequence--) {
+            int i = (int) (sequence % CAPACITY);
+            if ((type != null && mTypes[i] != typeIndex)
+                    || (folderId != null && mFolders[i] != folderIndex)
+                    || (deviceId != null && mDevices[i] != deviceIndex)) {
+                continue;
+            }
+            result.add(new Entry(sequence, mEventIds[i], mTimes[i], mTypeTable.get(mTypes[i]),
+                    mIdTable.get(mFolders[i]), mIdTable.get(mDevices[i]), mDescriptions[i]));
+        }
+        return result;
+    }
+
+    /**
+     * Returns a short description of the event data, or null if there is nothing beyond the type,
+     * folder and device worth keeping.
+     */
+    @Nullable
+    private static String describe(Event event) {
+        String description = null;
+        switch (event.type) {
+            case "DeviceConnected":
+                DeviceConnectedEvent deviceConnected = (DeviceConnectedEvent) event;
+                description = deviceConnected.addr + " (" + deviceConnected.connectionType + ")";
+                break;
+            case "DeviceDisconnected":
+                description = ((DeviceDisconnectedEvent) event).error;
+                break;
+            case "FolderCompletion":
+                FolderCompletionEvent folderCompletion = (FolderCompletionEvent) event;
+                description = Math.round(folderCompletion.completion) + "%, " +
+                        folderCompletion.needBytes + " bytes needed";
+                break;
+            case "FolderScanProgress":
+                FolderScanProgressEvent scanProgress = (FolderScanProgressEvent) event;
+                description = scanProgress.current + " / " + scanProgress.total + " bytes";
+                break;
+            case "LocalChangeDetected":
+            case "RemoteChangeDetected":
+                ChangeDetectedEvent changeDetected = (ChangeDetectedEvent) event;
+                description = changeDetected.action + " " + changeDetected.path;
+                break;
+            case "LocalIndexUpdated":
+                description = ((LocalIndexUpdatedEvent) event).items + " items";
+                break;
+            case "StateChanged":
+                StateChangedEvent stateChanged = (StateChangedEvent) event;
+                description = stateChanged.from + " -> " + stateChanged.to +
+                        ((stateChanged.error != null) ? ": " + stateChanged.error : "");
+                break;
+        }
+        if (description != null && description.length() > MAX_DESCRIPTION_LENGTH) {
+            description = description.substring(0, MAX_DESCRIPTION_LENGTH);
+        }
+        return description;
+    }
+}
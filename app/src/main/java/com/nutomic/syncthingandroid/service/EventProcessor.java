@@ -1,21 +1,19 @@
 package com.nutomic.syncthingandroid.service;
 
 import android.app.PendingIntent;
-import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
-import android.media.MediaScannerConnection;
-import android.net.Uri;
-import android.os.Build;
 import android.os.Handler;
+import android.os.HandlerThread;
 import android.os.Looper;
-import android.provider.MediaStore;
+import android.os.Process;
 import android.util.Log;
 
+import androidx.annotation.Nullable;
 import androidx.core.util.Consumer;
 
-import com.annimon.stream.Stream;
+import com.google.common.collect.ImmutableSet;
 import com.nutomic.syncthingandroid.BuildConfig;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.SyncthingApp;
@@ -23,12 +21,20 @@ import com.nutomic.syncthingandroid.activities.DeviceActivity;
 import com.nutomic.syncthingandroid.activities.FolderActivity;
 import com.nutomic.syncthingandroid.model.CompletionInfo;
 import com.nutomic.syncthingandroid.model.Device;
+import com.nutomic.syncthingandroid.model.DeviceConnectedEvent;
+import com.nutomic.syncthingandroid.model.DeviceDisconnectedEvent;
+import com.nutomic.syncthingandroid.model.DevicePausedEvent;
 import com.nutomic.syncthingandroid.model.Event;
-import com.nutomic.syncthingandroid.model.Folder;
-
-import java.io.File;
+import com.nutomic.syncthingandroid.model.FolderCompletionEvent;
+import com.nutomic.syncthingandroid.model.FolderScanProgressEvent;
+import com.nutomic.syncthingandroid.model.FolderSummaryEvent;
+import com.nutomic.syncthingandroid.model.LocalIndexUpdatedEvent;
+import com.nutomic.syncthingandroid.model.PendingDevicesChangedEvent;
+import com.nutomic.syncthingandroid.model.PendingFoldersChangedEvent;
+import com.nutomic.syncthingandroid.model.StateChangedEvent;
+
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
@@ -37,6 +43,13 @@ import javax.inject.Inject;
  * Run by the syncthing service to convert syncthing events into local broadcasts.
  *
  * It uses {@link RestApi#getEvents} to read the pending events and wait for new events.
+ * By default, one long poll request is kept open so events are processed as soon as they
+ * occur. If {@link Constants#PREF_EVENT_LONG_POLLING} is disabled, events are polled every
+ * {@link #EVENT_UPDATE_INTERVAL} instead.
+ *
+ * Events are handled in id order on a dedicated worker thread, so side effects like
+ * notifications don't block the UI. Only updates of state read by the UI, like
+ * {@link FolderStateStore}, are posted to the main thread.
  */
 public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener {
 
@@ -50,23 +63,78 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
     private static final long EVENT_UPDATE_INTERVAL = TimeUnit.SECONDS.toMillis(15);
 
     /**
-     * Use the MainThread for all callbacks and message handling
-     * or we have to track down nasty threading problems.
+     * Time in seconds syncthing holds a long poll request open if no new events occur.
+     */
+    private static final int EVENT_LONG_POLL_TIMEOUT_S = 60;
+
+    /**
+     * Event types handled in {@link #handleEvent} or delivered by {@link EventBus}, the only
+     * types requested from syncthing. Syncthing numbers the events of each subscription mask on
+     * its own, so every request, including the check for a reset event id, uses this same mask.
+     */
+    static final ImmutableSet<String> SUBSCRIBED_EVENT_TYPES = ImmutableSet.of(
+            "ConfigSaved",
+            "DeviceConnected",
+            "DeviceDisconnected",
+            "DevicePaused",
+            "DeviceResumed",
+            "FolderCompletion",
+            "FolderScanProgress",
+            "FolderSummary",
+            "LocalIndexUpdated",
+            "PendingDevicesChanged",
+            "PendingFoldersChanged",
+            "StateChanged"
+    );
+
+    /**
+     * Updates of state that is read by the UI are posted here.
      */
     private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
 
+    /**
+     * Requests and handles events in order. Only set while running, guarded by {@link #mLock}.
+     */
+    @Nullable private HandlerThread mWorkerThread;
+    @Nullable private Handler mWorkerHandler;
+    private final Object mLock = new Object();
+
+    /**
+     * Events of the request in flight, collected on the main thread until it is done.
+     */
+    private List<Event> mReceivedEvents = new ArrayList<>();
+
     private volatile long mLastEventId = 0;
     private volatile boolean mShutdown = true;
 
+    /**
+     * True if the event id may have run backwards since the last request, e.g. on first run
+     * or after syncthing was unreachable. This and the following fields are only accessed on the
+     * worker thread, {@link #start()} posts their reset to it.
+     */
+    private boolean mCheckEventIdReset = true;
+
+    /**
+     * True if events may have been missed because syncthing was unreachable, so the folder
+     * statuses and connections maintained from events must be requested in full again.
+     */
+    private boolean mRefreshState = false;
+
+    private boolean mUseLongPolling = true;
+
     private final Context mContext;
     private final RestApi mApi;
+    private final EventBus mEventBus;
+    private final EventJournal mEventJournal;
     @Inject SharedPreferences mPreferences;
     @Inject NotificationHandler mNotificationHandler;
 
-    public EventProcessor(Context context, RestApi api) {
+    public EventProcessor(Context context, RestApi api, EventBus eventBus, EventJournal eventJournal) {
         ((SyncthingApp) context.getApplicationContext()).component().inject(this);
         mContext = context;
         mApi = api;
+        mEventBus = eventBus;
+        mEventJournal = eventJournal;
     }
 
     @Override
@@ -76,33 +144,111 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
             mLastEventId = mPreferences.getLong(PREF_LAST_SYNC_ID, 0);
         }
 
+        if (!mCheckEventIdReset) {
+            requestEvents();
+            return;
+        }
+
         // First check if the event number ran backwards.
         // If that's the case we've to start at zero because syncthing was restarted.
-        mApi.getEvents(0, 1, new RestApi.OnReceiveEventListener() {
+        mApi.getEvents(0, 1, 0, SUBSCRIBED_EVENT_TYPES, new RestApi.OnReceiveEventListener() {
             @Override
             public void onEvent(Event event) {
             }
 
             @Override
             public void onDone(long lastId) {
-                if (lastId < mLastEventId) mLastEventId = 0;
+                postToWorker(() -> {
+                    if (lastId < mLastEventId) mLastEventId = 0;
+                    mCheckEventIdReset = false;
+                    if (mRefreshState) {
+                        mRefreshState = false;
+                        mMainThreadHandler.post(() -> {
+                            mApi.refreshFolderStatuses();
+                            mApi.refreshConnections();
+                        });
+                    }
+
+                    Log.d(TAG, "Reading events starting with id " + mLastEventId);
 
-                Log.d(TAG, "Reading events starting with id " + mLastEventId);
+                    requestEvents();
+                });
+            }
 
-                mApi.getEvents(mLastEventId, 0, EventProcessor.this);
+            @Override
+            public void onError() {
+                EventProcessor.this.onError();
             }
         });
     }
 
+    private void requestEvents() {
+        int timeoutS = mUseLongPolling ? EVENT_LONG_POLL_TIMEOUT_S : 0;
+        mApi.getEvents(mLastEventId, 0, timeoutS, SUBSCRIBED_EVENT_TYPES, this);
+    }
+
     /**
-     * Performs the actual event handling.
+     * Called on the main thread for each received event. Events are only collected here, and
+     * handled on the worker thread once the request is done.
      */
     @Override
     public void onEvent(Event event) {
-        Map<String,Object> mapData = null;
-        try {
-            mapData = (Map<String,Object>) event.data;
-        } catch (ClassCastException e) { }
+        mReceivedEvents.add(event);
+    }
+
+    /**
+     * Records the events in the journal and performs the actual event handling on the worker
+     * thread, then forwards the events to subscribers on the event bus.
+     */
+    private void handleEvents(List<Event> events, long lastId) {
+        List<Runnable> mainThreadUpdates = new ArrayList<>();
+        for (Event event : events) {
+            if (mShutdown) {
+                return;
+            }
+            mEventJournal.record(event);
+            handleEvent(event, mainThreadUpdates);
+            mEventBus.publish(event);
+        }
+        postMainThreadUpdates(mainThreadUpdates);
+
+        if (mLastEventId < lastId) {
+            mLastEventId = lastId;
+
+            // Store the last EventId in case we get killed
+            mPreferences.edit().putLong(PREF_LAST_SYNC_ID, mLastEventId).apply();
+        }
+
+        // Re-arm the long poll immediately, syncthing will hold it until new events occur.
+        scheduleNextRequest(mUseLongPolling ? 0 : EVENT_UPDATE_INTERVAL);
+    }
+
+    /**
+     * Applies all updates of a batch in a single main thread task, so listeners of the folder
+     * state store are notified once per batch instead of once per event.
+     */
+    private void postMainThreadUpdates(List<Runnable> updates) {
+        if (updates.isEmpty()) {
+            return;
+        }
+        mMainThreadHandler.post(() -> {
+            FolderStateStore folderStateStore = mApi.getFolderStateStore();
+            folderStateStore.beginUpdate();
+            try {
+                for (Runnable update : updates) {
+                    update.run();
+                }
+            } finally {
+                folderStateStore.endUpdate();
+            }
+        });
+    }
+
+    /**
+     * Handles a single event on the worker thread. Updates of state that is read by the UI are
+     * added to mainThreadUpdates instead of being applied here.
+     */
+    private void handleEvent(Event event, List<Runnable> mainThreadUpdates) {
         switch (event.type) {
             case "ConfigSaved":
                 if (mApi != null) {
@@ -111,74 +257,91 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
                 }
                 break;
             case "PendingDevicesChanged":
-                mapNullable((List<Map<String,String>>) mapData.get("added"), this::onPendingDevicesChanged);
+                mapNullable(((PendingDevicesChangedEvent) event).added, this::onPendingDevicesChanged);
                 break;
             case "FolderCompletion":
+                FolderCompletionEvent folderCompletion = (FolderCompletionEvent) event;
                 CompletionInfo completionInfo = new CompletionInfo();
-                completionInfo.completion = (Double) mapData.get("completion");
+                completionInfo.completion = folderCompletion.completion;
+                completionInfo.globalBytes = folderCompletion.globalBytes;
+                completionInfo.needBytes = folderCompletion.needBytes;
+                completionInfo.needDeletes = folderCompletion.needDeletes;
+                completionInfo.needItems = folderCompletion.needItems;
                 mApi.setCompletionInfo(
-                    (String) mapData.get("device"),          // deviceId
-                    (String) mapData.get("folder"),          // folderId
+                    folderCompletion.device,
+                    folderCompletion.folder,
                     completionInfo
                 );
                 break;
             case "PendingFoldersChanged":
-                mapNullable((List<Map<String,String>>) mapData.get("added"), this::onPendingFoldersChanged);
+                mapNullable(((PendingFoldersChangedEvent) event).added, this::onPendingFoldersChanged);
                 break;
-            case "ItemFinished":
-                String folder = (String) mapData.get("folder");
-                String folderPath = null;
-                for (Folder f : mApi.getFolders()) {
-                    if (f.id.equals(folder)) {
-                        folderPath = f.path;
-                    }
-                }
-                File updatedFile = new File(folderPath, (String) mapData.get("item"));
-                if (!"delete".equals(mapData.get("action"))) {
-                    Log.i(TAG, "Rescanned file via MediaScanner: " + updatedFile.toString());
-                    MediaScannerConnection.scanFile(mContext, new String[]{updatedFile.getPath()},
-                            null, null);
-                } else {
-                    // Starting with Android 10/Q and targeting API level 29/removing legacy storage flag,
-                    // reports of files being spuriously deleted came up.
-                    // Best guess is that Syncthing directly interacted with the filesystem before,
-                    // and there's a virtualisation layer there now. Also there's reports this API
-                    // changed behaviour with scoped storage. In any case it now does not only
-                    // update the media db, but actually delete the file on disk. Which is bad,
-                    // as it can race with the creation of the same file and thus delete it. See:
-                    // https://github.com/syncthing/syncthing-android/issues/1801
-                    // https://github.com/syncthing/syncthing/issues/7974
-                    if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                        break;
-                    }
-                    // https://stackoverflow.com/a/29881556/1837158
-                    Log.i(TAG, "Deleted file from MediaStore: " + updatedFile.toString());
-                    Uri contentUri = MediaStore.Files.getContentUri("external");
-                    ContentResolver resolver = mContext.getContentResolver();
-                    resolver.delete(contentUri, MediaStore.Images.ImageColumns.DATA + " = ?",
-                            new String[]{updatedFile.getPath()});
+            case "FolderSummary":
+                FolderSummaryEvent folderSummary = (FolderSummaryEvent) event;
+                if (folderSummary.summary != null) {
+                    mainThreadUpdates.add(() -> mApi.getFolderStateStore()
+                            .setFolderStatus(folderSummary.folder, folderSummary.summary));
                 }
                 break;
+            case "DeviceConnected":
+                DeviceConnectedEvent deviceConnected = (DeviceConnectedEvent) event;
+                mainThreadUpdates.add(() -> mApi.getConnectionTracker().onDeviceConnected(
+                    deviceConnected.deviceID,
+                    deviceConnected.addr,
+                    deviceConnected.connectionType,
+                    deviceConnected.clientVersion
+                ));
+                break;
+            case "DeviceDisconnected":
+                String disconnectedId = ((DeviceDisconnectedEvent) event).deviceID;
+                mainThreadUpdates.add(() -> mApi.getConnectionTracker().onDeviceDisconnected(disconnectedId));
+                break;
+            case "DevicePaused":
+                String pausedId = ((DevicePausedEvent) event).device;
+                mainThreadUpdates.add(() -> mApi.getConnectionTracker().onDevicePaused(pausedId, true));
+                break;
+            case "DeviceResumed":
+                String resumedId = ((DevicePausedEvent) event).device;
+                mainThreadUpdates.add(() -> mApi.getConnectionTracker().onDevicePaused(resumedId, false));
+                break;
+            case "StateChanged":
+                StateChangedEvent stateChanged = (StateChangedEvent) event;
+                mainThreadUpdates.add(() -> mApi.getFolderStateStore().onStateChanged(
+                    stateChanged.folder,
+                    stateChanged.to,
+                    stateChanged.error
+                ));
+                break;
+            case "FolderScanProgress":
+                FolderScanProgressEvent scanProgress = (FolderScanProgressEvent) event;
+                mainThreadUpdates.add(() -> mApi.getFolderStateStore().onScanProgress(
+                    scanProgress.folder,
+                    scanProgress.current,
+                    scanProgress.total
+                ));
+                break;
+            case "LocalIndexUpdated":
+                LocalIndexUpdatedEvent localIndexUpdated = (LocalIndexUpdatedEvent) event;
+                mainThreadUpdates.add(() -> mApi.getFolderStateStore().onLocalIndexUpdated(
+                    localIndexUpdated.folder,
+                    localIndexUpdated.sequence
+                ));
+                break;
             case "Ping":
                 // Ignored.
                 break;
-            case "DeviceConnected":
-            case "DeviceDisconnected":
             case "DeviceDiscovered":
             case "DownloadProgress":
             case "FolderPaused":
-            case "FolderScanProgress":
-            case "FolderSummary":
+            case "ItemFinished":
             case "ItemStarted":
-            case "LocalIndexUpdated":
             case "LoginAttempt":
             case "RemoteDownloadProgress":
             case "RemoteIndexUpdated":
             case "Starting":
             case "StartupComplete":
-            case "StateChanged":
                 if (BuildConfig.DEBUG) {
-                    Log.v(TAG, "Ignored event " + event.type + ", data " + event.data);
+                    Log.v(TAG, "Ignored event " + event.type);
                 }
                 break;
             default:
@@ -188,45 +351,81 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
 
     @Override
     public void onDone(long id) {
-        if (mLastEventId < id) {
-            mLastEventId = id;
+        List<Event> events = mReceivedEvents;
+        mReceivedEvents = new ArrayList<>();
+        postToWorker(() -> handleEvents(events, id));
+    }
 
-            // Store the last EventId in case we get killed
-            mPreferences.edit().putLong(PREF_LAST_SYNC_ID, mLastEventId).apply();
+    /**
+     * Syncthing is not reachable. Fall back to the regular polling interval until it responds
+     * again, then check if the event id ran backwards because syncthing was restarted.
+     */
+    @Override
+    public void onError() {
+        mReceivedEvents = new ArrayList<>();
+        postToWorker(() -> {
+            mCheckEventIdReset = true;
+            mRefreshState = true;
+            scheduleNextRequest(EVENT_UPDATE_INTERVAL);
+        });
+    }
+
+    private void postToWorker(Runnable runnable) {
+        synchronized (mLock) {
+            if (!mShutdown && mWorkerHandler != null) {
+                mWorkerHandler.post(runnable);
+            }
         }
+    }
 
-        synchronized (mMainThreadHandler) {
-            if (!mShutdown) {
-                mMainThreadHandler.removeCallbacks(this);
-                mMainThreadHandler.postDelayed(this, EVENT_UPDATE_INTERVAL);
+    private void scheduleNextRequest(long delayMillis) {
+        synchronized (mLock) {
+            if (!mShutdown && mWorkerHandler != null) {
+                mWorkerHandler.removeCallbacks(this);
+                mWorkerHandler.postDelayed(this, delayMillis);
             }
         }
     }
 
     public void start() {
         Log.d(TAG, "Starting event processor.");
+        boolean useLongPolling = mPreferences.getBoolean(Constants.PREF_EVENT_LONG_POLLING, true);
 
         // Remove all pending callbacks and add a new one. This makes sure that only one
         // event poller is running at any given time.
-        synchronized (mMainThreadHandler) {
+        synchronized (mLock) {
             mShutdown = false;
-            mMainThreadHandler.removeCallbacks(this);
-            mMainThreadHandler.postDelayed(this, EVENT_UPDATE_INTERVAL);
+            if (mWorkerThread == null) {
+                mWorkerThread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+                mWorkerThread.start();
+                mWorkerHandler = new Handler(mWorkerThread.getLooper());
+            }
+            // Runs before the request posted below.
+            mWorkerHandler.post(() -> {
+                mUseLongPolling = useLongPolling;
+                mCheckEventIdReset = true;
+            });
+            mWorkerHandler.removeCallbacks(this);
+            mWorkerHandler.postDelayed(this, useLongPolling ? 0 : EVENT_UPDATE_INTERVAL);
         }
     }
 
     public void stop() {
         Log.d(TAG, "Stopping event processor.");
-        synchronized (mMainThreadHandler) {
+        synchronized (mLock) {
             mShutdown = true;
-            mMainThreadHandler.removeCallbacks(this);
+            if (mWorkerThread != null) {
+                mWorkerThread.quit();
+                mWorkerThread = null;
+                mWorkerHandler = null;
+            }
         }
     }
 
-    private void onPendingDevicesChanged(Map<String, String> added) {
-        String deviceId = added.get("deviceID");
-        String deviceName = added.get("name");
-        String deviceAddress = added.get("address");
+    private void onPendingDevicesChanged(PendingDevicesChangedEvent.PendingDevice added) {
+        String deviceId = added.deviceID;
+        String deviceName = added.name;
+        String deviceAddress = added.address;
         if (deviceId == null) {
             return;
         }
@@ -259,10 +458,10 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
         mNotificationHandler.showConsentNotification(notificationId, title, piAccept, piIgnore);
     }
 
-    private void onPendingFoldersChanged(Map<String, String> added) {
-        String deviceId = added.get("deviceID");
-        String folderId = added.get("folderID");
-        String folderLabel = added.get("folderLabel");
+    private void onPendingFoldersChanged(PendingFoldersChangedEvent.PendingFolder added) {
+        String deviceId = added.deviceID;
+        String folderId = added.folderID;
+        String folderLabel = added.folderLabel;
         if (deviceId == null || folderId == null) {
             return;
         }
@@ -270,20 +469,14 @@ public class EventProcessor implements  Runnable, RestApi.OnReceiveEventListener
             folderLabel + " (" + folderId + ")");
 
         // Find the deviceName corresponding to the deviceId
-        String deviceName = null;
-        for (Device d : mApi.getDevices(false)) {
-            if (d.deviceID.equals(deviceId)) {
-                deviceName = d.getDisplayName();
-                break;
-            }
-        }
+        Device device = mApi.getDevice(deviceId);
+        String deviceName = (device != null) ? device.getDisplayName() : null;
         String title = mContext.getString(R.string.folder_rejected, deviceName,
                 folderLabel.isEmpty() ? folderId : folderLabel + " (" + folderId + ")");
         int notificationId = mNotificationHandler.getNotificationIdFromText(title);
 
         // Prepare "accept" action.
-        boolean isNewFolder = Stream.of(mApi.getFolders())
-                .noneMatch(f -> f.id.equals(folderId));
+        boolean isNewFolder = mApi.getFolder(folderId) == null;
         Intent intentAccept = new Intent(mContext, FolderActivity.class)
                 .putExtra(FolderActivity.EXTRA_NOTIFICATION_ID, notificationId)
                 .putExtra(FolderActivity.EXTRA_IS_CREATE, isNewFolder)
@@ -0,0 +1,160 @@
+package com.nutomic.syncthingandroid.service;
+
+import androidx.annotation.Nullable;
+
+import com.nutomic.syncthingandroid.model.FolderStatus;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Holds the latest known status of each folder.
+ *
+ * The status of each folder is requested from syncthing once, and afterwards kept up to date
+ * incrementally from FolderSummary, StateChanged, FolderScanProgress and LocalIndexUpdated
+ * events, so displaying folder states costs no requests while folders are idle.
+ *
+ * All methods must be called on the main thread.
+ */
+public class FolderStateStore {
+
+    /**
+     * Notified after the status of one or more folders changed.
+     */
+    public interface OnFolderStateChangeListener {
+        void onFolderStateChange();
+    }
+
+    private final Map<String, FolderStatus> mStatuses = new HashMap<>();
+
+    /**
+     * Scan progress in percent of folders that are currently scanning.
+     */
+    private final Map<String, Integer> mScanProgress = new HashMap<>();
+
+    private final List<OnFolderStateChangeListener> mListeners = new ArrayList<>();
+
+    /**
+     * Number of nested {@link #beginUpdate()} calls. While positive, listeners are notified once
+     * in {@link #endUpdate()} instead of after every change.
+     */
+    private int mUpdateDepth = 0;
+    private boolean mChangedDuringUpdate = false;
+
+    /**
+     * Returns the latest status of the folder, or null if it is not known yet. The result must not
+     * be modified.
+     */
+    @Nullable
+    public FolderStatus getFolderStatus(String folderId) {
+        return mStatuses.get(folderId);
+    }
+
+    /**
+     * Returns the scan progress of the folder in percent, or -1 if it is not scanning or
+     * syncthing did not report progress yet.
+     */
+    public int getScanProgress(String folderId) {
+        Integer progress = mScanProgress.get(folderId);
+        return (progress != null) ? progress : -1;
+    }
+
+    public boolean hasFolderStatus(String folderId) {
+        return mStatuses.containsKey(folderId);
+    }
+
+    public void addOnFolderStateChangeListener(OnFolderStateChangeListener listener) {
+        mListeners.add(listener);
+    }
+
+    public void removeOnFolderStateChangeListener(OnFolderStateChangeListener listener) {
+        mListeners.remove(listener);
+    }
+
+    /**
+     * Defers notifying listeners until the matching {@link #endUpdate()}, so applying all folder
+     * events of a batch rebinds the folder list only once.
+     */
+    void beginUpdate() {
+        mUpdateDepth++;
+    }
+
+    void endUpdate() {
+        if (--mUpdateDepth == 0 && mChangedDuringUpdate) {
+            mChangedDuringUpdate = false;
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Replaces the status of the folder with a full status, as returned by /rest/db/status or
+     * contained in a FolderSummary event.
+     */
+    void setFolderStatus(String folderId, FolderStatus folderStatus) {
+        mStatuses.put(folderId, folderStatus);
+        if (!"scanning".equals(folderStatus.state)) {
+            mScanProgress.remove(folderId);
+        }
+        notifyListeners();
+    }
+
+    /**
+     * Called for StateChanged events.
+     */
+    void onStateChanged(String folderId, String state, @Nullable String error) {
+        if (!"scanning".equals(state)) {
+            mScanProgress.remove(folderId);
+        }
+        FolderStatus folderStatus = mStatuses.get(folderId);
+        if (folderStatus == null) {
+            return;
+        }
+        folderStatus.state = state;
+        folderStatus.error = error;
+        notifyListeners();
+    }
+
+    /**
+     * Called for FolderScanProgress events.
+     */
+    void onScanProgress(String folderId, long current, long total) {
+        int progress = (total > 0) ? (int) Math.min(100 * current / total, 100) : 0;
+        Integer previous = mScanProgress.put(folderId, progress);
+        if (previous == null || previous != progress) {
+            notifyListeners();
+        }
+    }
+
+    /**
+     * Called for LocalIndexUpdated events. The counters are updated by the FolderSummary event
+     * syncthing sends shortly after, so only the sequence is taken over here.
+     */
+    void onLocalIndexUpdated(String folderId, long sequence) {
+        FolderStatus folderStatus = mStatuses.get(folderId);
+        if (folderStatus != null) {
+            folderStatus.sequence = sequence;
+        }
+    }
+
+    /**
+     * Drops the status of all folders that are not in folderIds, e.g. after a folder was removed.
+     */
+    void retainFolders(Collection<String> folderIds) {
+        if (mStatuses.keySet().retainAll(folderIds) | mScanProgress.keySet().retainAll(folderIds)) {
+            notifyListeners();
+        }
+    }
+
+    private void notifyListeners() {
+        if (mUpdateDepth > 0) {
+            mChangedDuringUpdate = true;
+            return;
+        }
+        for (OnFolderStateChangeListener listener : new ArrayList<>(mListeners)) {
+            listener.onFolderStateChange();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.MediaStore;
+import android.text.TextUtils;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tells the MediaStore about files that were changed or deleted by syncthing.
+ *
+ * Changed files are collected for {@link #FLUSH_DELAY_MS}, so a burst of changes, e.g. while
+ * syncing a camera folder, results in a few multi-path scans and deletes instead of one
+ * scanner connection per file. Files changed repeatedly within the window are only submitted
+ * once, with the last action winning.
+ *
+ * All methods except {@link #shutdown} must be called on the thread of the looper passed to the
+ * constructor.
+ */
+class MediaIndexUpdater {
+
+    private static final String TAG = "MediaIndexUpdater";
+
+    /**
+     * Time to wait for more changes before submitting them.
+     */
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    /**
+     * Pending paths are submitted right away once there are this many.
+     */
+    private static final int MAX_PENDING_PATHS = 5000;
+
+    /**
+     * Maximum number of paths per scanFile call or delete query. Stays well below the SQLite
+     * limit of 999 parameters per query.
+     */
+    private static final int CHUNK_SIZE = 200;
+
+    private final Context mContext;
+    private final Handler mHandler;
+
+    /**
+     * Pending paths in the order they changed, mapped to true if the file was deleted.
+     */
+    private final Map<String, Boolean> mPending = new LinkedHashMap<>();
+
+    /**
+     * Time the oldest pending path changed, from elapsedRealtime().
+     */
+    private long mOldestPendingTime = 0;
+
+    private long mFilesScanned = 0;
+    private long mFilesDeleted = 0;
+    private long mBatches = 0;
+    private long mMaxLatencyMs = 0;
+
+    MediaIndexUpdater(Context context, Looper looper) {
+        mContext = context;
+        mHandler = new Handler(looper);
+    }
+
+    /**
+     * Called for RemoteChangeDetected events.
+     *
+     * @param deleted True if the file was deleted, false if it was added or modified.
+     */
+    void onFileChanged(String path, boolean deleted) {
+        if (mPending.isEmpty()) {
+            mOldestPendingTime = SystemClock.elapsedRealtime();
+            mHandler.postDelayed(mFlush, FLUSH_DELAY_MS);
+        }
+        // Remove first, so the path moves to the end if it changed again.
+        mPending.remove(path);
+        mPending.put(path, deleted);
+        if (mPending.size() >= MAX_PENDING_PATHS) {
+            mHandler.removeCallbacks(mFlush);
+            flush();
+        }
+    }
+
+    /**
+     * Submits pending paths without waiting for the rest of the window, e.g. because the service
+     * is shutting down. May be called from any thread, the paths are submitted on the looper
+     * thread. Quit the looper with quitSafely() afterwards so the flush still runs.
+     */
+    void shutdown() {
+        mHandler.removeCallbacks(mFlush);
+        mHandler.post(() -> {
+            flush();
+            Log.i(TAG, "Scanned " + mFilesScanned + " and deleted " + mFilesDeleted +
+                    " files in " + mBatches + " batches, max latency " + mMaxLatencyMs + "ms");
+        });
+    }
+
+    private final Runnable mFlush = this::flush;
+
+    private void flush() {
+        if (mPending.isEmpty()) {
+            return;
+        }
+        List<String> scans = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        for (Map.Entry<String, Boolean> e : mPending.entrySet()) {
+            (e.getValue() ? deletes : scans).add(e.getKey());
+        }
+        long latency = SystemClock.elapsedRealtime() - mOldestPendingTime;
+        mPending.clear();
+
+        for (List<String> chunk : chunks(scans)) {
+            MediaScannerConnection.scanFile(mContext, chunk.toArray(new String[0]), null, null);
+            mFilesScanned += chunk.size();
+            mBatches++;
+        }
+
+        // Starting with Android 10/Q and targeting API level 29/removing legacy storage flag,
+        // reports of files being spuriously deleted came up.
+        // Best guess is that Syncthing directly interacted with the filesystem before,
+        // and there's a virtualisation layer there now. Also there's reports this API
+        // changed behaviour with scoped storage. In any case it now does not only
+        // update the media db, but actually delete the file on disk. Which is bad,
+        // as it can race with the creation of the same file and thus delete it. See:
+        // https://github.com/syncthing/syncthing-android/issues/1801
+        // https://github.com/syncthing/syncthing/issues/7974
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) {
+            // https://stackoverflow.com/a/29881556/1837158
+            Uri contentUri = MediaStore.Files.getContentUri("external");
+            ContentResolver resolver = mContext.getContentResolver();
+            for (List<String> chunk : chunks(deletes)) {
+                String selection = MediaStore.Images.ImageColumns.DATA + " IN (" +
+                        TextUtils.join(",", Collections.nCopies(chunk.size(), "?")) + ")";
+                resolver.delete(contentUri, selection, chunk.toArray(new String[0]));
+                mFilesDeleted += chunk.size();
+                mBatches++;
+            }
+        }
+
+        mMaxLatencyMs = Math.max(mMaxLatencyMs, latency);
+        Log.v(TAG, "Submitted " + scans.size() + " scans and " + deletes.size() +
+                " deletes after " + latency + "ms");
+    }
+
+    private static List<List<String>> chunks(List<String> paths) {
+        List<List<String>> chunks = new ArrayList<>();
+        for (int i = 0; i < paths.size(); i += CHUNK_SIZE) {
+            chunks.add(paths.subList(i, Math.min(i + CHUNK_SIZE, paths.size())));
+        }
+        return chunks;
+    }
+}
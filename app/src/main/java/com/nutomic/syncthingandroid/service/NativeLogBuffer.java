@@ -0,0 +1,531 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.text.TextUtils;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the most recent lines of syncthing's output in memory, so they can be shown and filtered
+ * without reading logcat or the log file.
+ *
+ * Lines are stored UTF-8 encoded in one circular byte array of {@link #DATA_CAPACITY} bytes,
+ * with their time and priority in primitive arrays, so no String is retained per line. The oldest
+ * lines are evicted once either the byte array or the {@link #LINE_CAPACITY} line slots are full.
+ * The arrays start small and grow up to these limits as lines arrive, so a short log doesn't
+ * take the full amount of memory.
+ *
+ * When a line is added, {@link NativeLogParser} extracts its level, facility, folder id and device
+ * id. The level replaces the priority of the stream where the line has one. The other fields are
+ * stored as indexes into tables of interned strings, and for each value the buffer keeps the
+ * sequences of the lines containing it, so {@link #query} only has to look at matching lines.
+ *
+ * Each line gets a sequence number that increases by one per line. Readers remember the next
+ * sequence they expect and ask for newer lines only. All methods are synchronized.
+ */
+public class NativeLogBuffer {
+
+    private static final int LINE_CAPACITY = 50000;
+    private static final int DATA_CAPACITY = 8 * 1024 * 1024;
+
+    private static final int INITIAL_LINE_CAPACITY = 1024;
+    private static final int INITIAL_DATA_CAPACITY = 64 * 1024;
+
+    /**
+     * Longer lines are cut off.
+     */
+    private static final int MAX_LINE_BYTES = 4096;
+
+    public static final int FIELD_FACILITY = 0;
+    public static final int FIELD_FOLDER = 1;
+    public static final int FIELD_DEVICE = 2;
+    private static final int FIELD_COUNT = 3;
+
+    /**
+     * Maximum number of distinct values kept per field, further values are not indexed. Guards
+     * against lines that are parsed wrongly and produce a new value each time.
+     */
+    private static final int MAX_FIELD_VALUES = 1000;
+
+    private static final long[] EMPTY = new long[0];
+
+    public static class Line {
+        /**
+         * Time the line was received, from currentTimeMillis().
+         */
+        public final long time;
+        /**
+         * Priority as used by {@link android.util.Log}.
+         */
+        public final int priority;
+        public final String text;
+
+        private Line(long time, int priority, String text) {
+            this.time = time;
+            this.priority = priority;
+            this.text = text;
+        }
+    }
+
+    /**
+     * Conditions for {@link #query}, lines have to match all that are set.
+     */
+    public static class Filter {
+        /**
+         * Only lines with at least this priority match.
+         */
+        public int minPriority = 0;
+        @Nullable public String facility;
+        @Nullable public String folderId;
+        @Nullable public String deviceId;
+        /**
+         * Only lines containing this text match, ignoring case for ASCII letters.
+         */
+        @Nullable public String text;
+
+        @Nullable
+        public String get(int field) {
+            switch (field) {
+                case FIELD_FACILITY: return facility;
+                case FIELD_FOLDER:   return folderId;
+                case FIELD_DEVICE:   return deviceId;
+                default:             return null;
+            }
+        }
+
+        public void set(int field, @Nullable String value) {
+            switch (field) {
+                case FIELD_FACILITY: facility = value; break;
+                case FIELD_FOLDER:   folderId = value; break;
+                case FIELD_DEVICE:   deviceId = value; break;
+            }
+        }
+
+        public boolean isEmpty() {
+            return minPriority <= 0 && facility == null && folderId == null && deviceId == null
+                    && TextUtils.isEmpty(text);
+        }
+    }
+
+    /**
+     * Ascending sequences of the lines with one field value, in a circular array that grows as
+     * needed. Lines are only added at the end and evicted at the start.
+     */
+    private static class SequenceList {
+        private long[] mValues = new long[16];
+        private int mStart = 0;
+        private int mSize = 0;
+
+        void add(long sequence) {
+            if (mSize == mValues.length) {
+                long[] values = new long[mValues.length * 2];
+                for (int i = 0; i < mSize; i++) {
+                    values[i] = get(i);
+                }
+                mValues = values;
+                mStart = 0;
+            }
+            mValues[(mStart + mSize) % mValues.length] = sequence;
+            mSize++;
+        }
+
+        void removeFirst() {
+            mStart = (mStart + 1) % mValues.length;
+            mSize--;
+        }
+
+        long get(int index) {
+            return mValues[(mStart + index) % mValues.length];
+        }
+
+        int size() {
+            return mSize;
+        }
+
+        /**
+         * Returns the index of the first sequence that is not smaller than sequence.
+         */
+        int search(long sequence) {
+            int low = 0;
+            int high = mSize;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (get(middle) < sequence) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Growable array of query results.
+     */
+    private static class SequenceArray {
+        long[] values = new long[64];
+        int size = 0;
+
+        void add(long sequence) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = sequence;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(values, size);
+        }
+    }
+
+    private final int mLineCapacity;
+    private final int mDataCapacity;
+
+    /**
+     * Grows until it reaches {@link #mDataCapacity}, and only wraps around after that. Until then,
+     * the stored lines are always contiguous.
+     */
+    private byte[] mData;
+
+    /**
+     * Position in {@link #mData} where the next line is written.
+     */
+    private int mDataEnd = 0;
+    private int mDataUsed = 0;
+
+    /**
+     * Line slots, the line with sequence s is stored in slot s % mOffsets.length. They grow until
+     * they reach {@link #mLineCapacity}.
+     */
+    private int[] mOffsets;
+    private int[] mLengths;
+    private long[] mTimes;
+    private byte[] mPriorities;
+    private int[][] mFields;
+
+    private long mFirstSequence = 0;
+    private long mNextSequence = 0;
+
+    private final NativeLogParser mParser = new NativeLogParser();
+    private final SequenceList[] mPriorityIndex = new SequenceList[Log.ASSERT + 1];
+    private final StringTable[] mFieldTables = new StringTable[FIELD_COUNT];
+    private final List<List<SequenceList>> mFieldIndexes = new ArrayList<>(FIELD_COUNT);
+
+    public NativeLogBuffer() {
+        this(LINE_CAPACITY, DATA_CAPACITY);
+    }
+
+    /**
+     * Creates a buffer keeping at most lineCapacity lines and dataCapacity bytes.
+     */
+    NativeLogBuffer(int lineCapacity, int dataCapacity) {
+        mLineCapacity = lineCapacity;
+        mDataCapacity = dataCapacity;
+        mData = new byte[Math.min(INITIAL_DATA_CAPACITY, dataCapacity)];
+        int lines = Math.min(INITIAL_LINE_CAPACITY, lineCapacity);
+        mOffsets = new int[lines];
+        mLengths = new int[lines];
+        mTimes = new long[lines];
+        mPriorities = new byte[lines];
+        mFields = new int[FIELD_COUNT][lines];
+        for (int i = 0; i < mPriorityIndex.length; i++) {
+            mPriorityIndex[i] = new SequenceList();
+        }
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            mFieldTables[field] = new StringTable();
+            mFieldIndexes.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Appends line, evicting the oldest lines if needed. Called by {@link NativeLogPipeline}.
+     *
+     * @param priority Priority of the stream, used if the line has no level.
+     */
+    synchronized void add(int priority, String line) {
+        byte[] bytes = line.getBytes(Charsets.UTF_8);
+        int length = Math.min(Math.min(bytes.length, MAX_LINE_BYTES), mDataCapacity);
+        while (mNextSequence > mFirstSequence
+                && (mNextSequence - mFirstSequence >= mLineCapacity
+                        || mDataUsed + length > mDataCapacity)) {
+            evictFirst();
+        }
+        if (mNextSequence - mFirstSequence == mOffsets.length) {
+            growLines();
+        }
+        if (mDataEnd + length > mData.length && mData.length < mDataCapacity) {
+            growData(mDataEnd + length);
+        }
+
+        mParser.parse(line, priority);
+        int slot = slot(mNextSequence);
+        mOffsets[slot] = mDataEnd;
+        mLengths[slot] = length;
+        mTimes[slot] = System.currentTimeMillis();
+        mPriorities[slot] = (byte) Math.max(0, Math.min(mParser.priority, Log.ASSERT));
+        mPriorityIndex[mPriorities[slot]].add(mNextSequence);
+        index(FIELD_FACILITY, slot, mParser.facility);
+        index(FIELD_FOLDER, slot, mParser.folderId);
+        index(FIELD_DEVICE, slot, mParser.deviceId);
+        int head = Math.min(length, mData.length - mDataEnd);
+        System.arraycopy(bytes, 0, mData, mDataEnd, head);
+        System.arraycopy(bytes, head, mData, 0, length - head);
+        mDataEnd += length;
+        if (mDataEnd >= mDataCapacity) {
+            mDataEnd -= mDataCapacity;
+        }
+        mDataUsed += length;
+        mNextSequence++;
+    }
+
+    /**
+     * Doubles the line slots, up to {@link #mLineCapacity}, and moves the kept lines to their
+     * new slots.
+     */
+    private void growLines() {
+        int capacity = (int) Math.min(mLineCapacity, 2L * mOffsets.length);
+        int[] offsets = new int[capacity];
+        int[] lengths = new int[capacity];
+        long[] times = new long[capacity];
+        byte[] priorities = new byte[capacity];
+        int[][] fields = new int[FIELD_COUNT][capacity];
+        for (long sequence = mFirstSequence; sequence < mNextSequence; sequence++) {
+            int from = slot(sequence);
+            int to = (int) (sequence % capacity);
+            offsets[to] = mOffsets[from];
+            lengths[to] = mLengths[from];
+            times[to] = mTimes[from];
+            priorities[to] = mPriorities[from];
+            for (int field = 0; field < FIELD_COUNT; field++) {
+                fields[field][to] = mFields[field][from];
+            }
+        }
+        mOffsets = offsets;
+        mLengths = lengths;
+        mTimes = times;
+        mPriorities = priorities;
+        mFields = fields;
+    }
+
+    /**
+     * Grows {@link #mData} to hold at least minCapacity bytes, up to {@link #mDataCapacity}. The
+     * data has not wrapped around yet, so the offsets of the kept lines stay valid.
+     */
+    private void growData(int minCapacity) {
+        long capacity = Math.max(2L * mData.length, minCapacity);
+        mData = Arrays.copyOf(mData, (int) Math.min(mDataCapacity, capacity));
+    }
+
+    private void index(int field, int slot, @Nullable String value) {
+        StringTable table = mFieldTables[field];
+        int index = (value != null && (table.size() < MAX_FIELD_VALUES || table.indexOf(value) >= 0))
+                ? table.intern(value)
+                : -1;
+        mFields[field][slot] = index;
+        if (index < 0) {
+            return;
+        }
+        List<SequenceList> lists = mFieldIndexes.get(field);
+        if (index == lists.size()) {
+            lists.add(new SequenceList());
+        }
+        lists.get(index).add(mNextSequence);
+    }
+
+    private void evictFirst() {
+        int slot = slot(mFirstSequence);
+        mDataUsed -= mLengths[slot];
+        mPriorityIndex[mPriorities[slot]].removeFirst();
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            int index = mFields[field][slot];
+            if (index >= 0) {
+                mFieldIndexes.get(field).get(index).removeFirst();
+            }
+        }
+        mFirstSequence++;
+    }
+
+    /**
+     * Returns the sequence of the oldest line still kept.
+     */
+    public synchronized long getFirstSequence() {
+        return mFirstSequence;
+    }
+
+    /**
+     * Returns the sequence the next added line will get.
+     */
+    public synchronized long getNextSequence() {
+        return mNextSequence;
+    }
+
+    /**
+     * Returns the line with the given sequence, or null if it was evicted or not added yet.
+     */
+    @Nullable
+    public synchronized Line get(long sequence) {
+        if (sequence < mFirstSequence || sequence >= mNextSequence) {
+            return null;
+        }
+        int slot = slot(sequence);
+        int offset = mOffsets[slot];
+        int length = mLengths[slot];
+        byte[] bytes = new byte[length];
+        int head = Math.min(length, mData.length - offset);
+        System.arraycopy(mData, offset, bytes, 0, head);
+        System.arraycopy(mData, 0, bytes, head, length - head);
+        return new Line(mTimes[slot], mPriorities[slot], new String(bytes, Charsets.UTF_8));
+    }
+
+    /**
+     * Returns the sorted values of field that appear in lines still kept.
+     *
+     * @param field One of the FIELD_ constants.
+     */
+    public synchronized List<String> getValues(int field) {
+        List<String> values = new ArrayList<>();
+        List<SequenceList> lists = mFieldIndexes.get(field);
+        for (int i = 0; i < lists.size(); i++) {
+            if (lists.get(i).size() > 0) {
+                values.add(mFieldTables[field].get(i));
+            }
+        }
+        Collections.sort(values);
+        return values;
+    }
+
+    /**
+     * Returns the number of distinct values of all fields indexed so far. Changes whenever
+     * {@link #getValues} may return a new value.
+     */
+    public synchronized int getValueCount() {
+        int count = 0;
+        for (StringTable table : mFieldTables) {
+            count += table.size();
+        }
+        return count;
+    }
+
+    /**
+     * Returns the sequences of the lines matching filter, in ascending order.
+     *
+     * The candidates are taken from the shortest index of the set fields, or of the priority if
+     * that is shorter, and only those are checked against the remaining conditions.
+     *
+     * @param fromSequence Only lines with this or a later sequence are returned.
+     * @param toSequence   Only lines before this sequence are returned.
+     */
+    public synchronized long[] query(Filter filter, long fromSequence, long toSequence) {
+        long from = Math.max(fromSequence, mFirstSequence);
+        long to = Math.min(toSequence, mNextSequence);
+        if (from >= to) {
+            return EMPTY;
+        }
+
+        int[] wanted = new int[FIELD_COUNT];
+        SequenceList candidates = null;
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            String value = filter.get(field);
+            wanted[field] = (value != null) ? mFieldTables[field].indexOf(value) : -1;
+            if (value == null) {
+                continue;
+            }
+            if (wanted[field] < 0) {
+                return EMPTY;
+            }
+            SequenceList list = mFieldIndexes.get(field).get(wanted[field]);
+            if (candidates == null || list.size() < candidates.size()) {
+                candidates = list;
+            }
+        }
+        byte[] text = TextUtils.isEmpty(filter.text)
+                ? null
+                : filter.text.toLowerCase(Locale.ROOT).getBytes(Charsets.UTF_8);
+
+        SequenceArray result = new SequenceArray();
+        int minPriority = Math.max(0, filter.minPriority);
+        int priorityCount = 0;
+        for (int priority = minPriority; priority < mPriorityIndex.length; priority++) {
+            priorityCount += mPriorityIndex[priority].size();
+        }
+        if (minPriority > 0 && (candidates == null || priorityCount < candidates.size())) {
+            // Merge the indexes of all wanted priorities.
+            SequenceArray merged = new SequenceArray();
+            for (int priority = minPriority; priority < mPriorityIndex.length; priority++) {
+                SequenceList list = mPriorityIndex[priority];
+                for (int i = list.search(from); i < list.size() && list.get(i) < to; i++) {
+                    merged.add(list.get(i));
+                }
+            }
+            Arrays.sort(merged.values, 0, merged.size);
+            for (int i = 0; i < merged.size; i++) {
+                addIfMatches(result, merged.values[i], minPriority, wanted, text);
+            }
+        } else if (candidates != null) {
+            for (int i = candidates.search(from); i < candidates.size() && candidates.get(i) < to; i++) {
+                addIfMatches(result, candidates.get(i), minPriority, wanted, text);
+            }
+        } else {
+            for (long sequence = from; sequence < to; sequence++) {
+                addIfMatches(result, sequence, minPriority, wanted, text);
+            }
+        }
+        return result.toArray();
+    }
+
+    private void addIfMatches(SequenceArray result, long sequence, int minPriority, int[] wanted,
+                              @Nullable byte[] text) {
+        int slot = slot(sequence);
+        if (mPriorities[slot] < minPriority) {
+            return;
+        }
+        for (int field = 0; field < FIELD_COUNT; field++) {
+            if (wanted[field] >= 0 && mFields[field][slot] != wanted[field]) {
+                return;
+            }
+        }
+        if (text != null && !contains(slot, text)) {
+            return;
+        }
+        result.add(sequence);
+    }
+
+    /**
+     * Searches the stored bytes of a line for text, which must be lower case.
+     */
+    private boolean contains(int slot, byte[] text) {
+        int offset = mOffsets[slot];
+        int length = mLengths[slot];
+        outer:
+        for (int i = 0; i <= length - text.length; i++) {
+            for (int j = 0; j < text.length; j++) {
+                int position = offset + i + j;
+                if (position >= mData.length) {
+                    position -= mData.length;
+                }
+                byte b = mData[position];
+                if (b >= 'A' && b <= 'Z') {
+                    b += 'a' - 'A';
+                }
+                if (b != text[j]) {
+                    continue outer;
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % mOffsets.length);
+    }
+}
@@ -0,0 +1,213 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Extracts the level, facility, folder id and device id from a line of syncthing's output.
+ *
+ * Understands the plain format used with -logflags=0, like
+ * {@code [ABCDE] INFO: Ready to synchronize "Camera" (abcd-1234) (sendreceive)}, and the
+ * key=value format of newer versions, like
+ * {@code 2024-01-01 12:00:00 INF Ready to synchronize (folder=abcd-1234 log.pkg=model)}.
+ *
+ * Parsing only uses index and region comparisons on the line, a String is only allocated for a
+ * field that is actually found. The results are kept in the fields of the parser, which is
+ * reused for every line and therefore not thread-safe.
+ */
+class NativeLogParser {
+
+    private static final String[] LEVEL_PREFIXES =
+            {"DEBUG: ", "VERBOSE: ", "INFO: ", "OK: ", "WARNING: ", "FATAL: "};
+    private static final int[] LEVEL_PRIORITIES =
+            {Log.DEBUG, Log.INFO, Log.INFO, Log.INFO, Log.WARN, Log.ERROR};
+
+    private static final String[] LEVEL_TOKENS = {" DBG ", " INF ", " WRN ", " ERR "};
+    private static final int[] LEVEL_TOKEN_PRIORITIES = {Log.DEBUG, Log.INFO, Log.WARN, Log.ERROR};
+
+    /**
+     * Level tokens of the key=value format only appear after the timestamp.
+     */
+    private static final int MAX_LEVEL_TOKEN_POSITION = 40;
+
+    private static final int MAX_FACILITY_LENGTH = 16;
+    private static final int MAX_ID_LENGTH = 64;
+    private static final int DEVICE_ID_GROUP_LENGTH = 7;
+    private static final int DEVICE_ID_GROUPS = 8;
+
+    /**
+     * Priority as used by {@link Log}, or the fallback priority if the line has no level.
+     */
+    int priority;
+    @Nullable String facility;
+    @Nullable String folderId;
+    @Nullable String deviceId;
+
+    void parse(String line, int fallbackPriority) {
+        priority = fallbackPriority;
+        facility = null;
+        folderId = null;
+        deviceId = null;
+
+        // Skip the "[ABCDE] " prefix with the short id of the local device.
+        int start = 0;
+        if (line.startsWith("[")) {
+            int end = line.indexOf("] ");
+            if (end > 0) {
+                start = end + 2;
+            }
+        }
+
+        int message = parseLevel(line, start);
+        if (message >= 0) {
+            facility = parseFacilityPrefix(line, message);
+        }
+        if (facility == null) {
+            facility = parseValue(line, "log.pkg=");
+        }
+        folderId = parseValue(line, "folder=");
+        if (folderId == null) {
+            folderId = parseValue(line, "folder.id=");
+        }
+        if (folderId == null) {
+            folderId = parseQuotedLabelId(line, start);
+        }
+        deviceId = parseValue(line, "device=");
+        if (deviceId == null) {
+            deviceId = parseDeviceId(line, start);
+        }
+    }
+
+    /**
+     * Sets {@link #priority} from the level of the line.
+     *
+     * @return Position where the message starts after a plain format level, or -1.
+     */
+    private int parseLevel(String line, int start) {
+        for (int i = 0; i < LEVEL_PREFIXES.length; i++) {
+            if (line.startsWith(LEVEL_PREFIXES[i], start)) {
+                priority = LEVEL_PRIORITIES[i];
+                return start + LEVEL_PREFIXES[i].length();
+            }
+        }
+        for (int i = 0; i < LEVEL_TOKENS.length; i++) {
+            int position = line.indexOf(LEVEL_TOKENS[i], start);
+            if (position >= 0 && position <= start + MAX_LEVEL_TOKEN_POSITION) {
+                priority = LEVEL_TOKEN_PRIORITIES[i];
+                return -1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Debug messages of the plain format mostly start with the facility, as in
+     * "model@0x1234: ..." or "sendreceive/abcd-1234: ...". Returns that word if it is lower case
+     * and followed by one of ':', '@' or '/'.
+     */
+    @Nullable
+    private static String parseFacilityPrefix(String line, int start) {
+        int end = start;
+        while (end < line.length() && end - start <= MAX_FACILITY_LENGTH) {
+            char c = line.charAt(end);
+            if (c >= 'a' && c <= 'z') {
+                end++;
+                continue;
+            }
+            if (end - start >= 2 && (c == ':' || c == '@' || c == '/')) {
+                return line.substring(start, end);
+            }
+            break;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of a key=value pair, without quotes.
+     */
+    @Nullable
+    private static String parseValue(String line, String key) {
+        int position = line.indexOf(key);
+        // The key must not be the end of a longer key.
+        while (position > 0 && line.charAt(position - 1) != ' ' && line.charAt(position - 1) != '(') {
+            position = line.indexOf(key, position + key.length());
+        }
+        if (position < 0) {
+            return null;
+        }
+        int start = position + key.length();
+        if (start < line.length() && line.charAt(start) == '"') {
+            int end = line.indexOf('"', start + 1);
+            return (end > start + 1 && end - start <= MAX_ID_LENGTH)
+                    ? line.substring(start + 1, end)
+                    : null;
+        }
+        int end = start;
+        while (end < line.length() && end - start <= MAX_ID_LENGTH) {
+            char c = line.charAt(end);
+            if (c == ' ' || c == ')' || c == ',') {
+                break;
+            }
+            end++;
+        }
+        return (end > start && end - start <= MAX_ID_LENGTH) ? line.substring(start, end) : null;
+    }
+
+    /**
+     * The plain format mentions folders as {@code "label" (id)}.
+     */
+    @Nullable
+    private static String parseQuotedLabelId(String line, int start) {
+        int position = line.indexOf("\" (", start);
+        if (position < 0) {
+            return null;
+        }
+        int idStart = position + 3;
+        int idEnd = line.indexOf(')', idStart);
+        if (idEnd <= idStart || idEnd - idStart > MAX_ID_LENGTH) {
+            return null;
+        }
+        for (int i = idStart; i < idEnd; i++) {
+            if (Character.isWhitespace(line.charAt(i))) {
+                return null;
+            }
+        }
+        return line.substring(idStart, idEnd);
+    }
+
+    /**
+     * Finds a full device id, eight groups of seven base32 characters separated by '-'.
+     */
+    @Nullable
+    private static String parseDeviceId(String line, int start) {
+        int length = DEVICE_ID_GROUPS * (DEVICE_ID_GROUP_LENGTH + 1) - 1;
+        int position = line.indexOf('-', start + DEVICE_ID_GROUP_LENGTH);
+        while (position >= 0 && position - DEVICE_ID_GROUP_LENGTH + length <= line.length()) {
+            int candidate = position - DEVICE_ID_GROUP_LENGTH;
+            if (isDeviceId(line, candidate, length)) {
+                return line.substring(candidate, candidate + length);
+            }
+            position = line.indexOf('-', position + 1);
+        }
+        return null;
+    }
+
+    private static boolean isDeviceId(String line, int start, int length) {
+        if (start > 0 && isBase32(line.charAt(start - 1))) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = line.charAt(start + i);
+            boolean separator = (i % (DEVICE_ID_GROUP_LENGTH + 1)) == DEVICE_ID_GROUP_LENGTH;
+            if (separator ? c != '-' : !isBase32(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isBase32(char c) {
+        return (c >= 'A' && c <= 'Z') || (c >= '2' && c <= '7');
+    }
+}
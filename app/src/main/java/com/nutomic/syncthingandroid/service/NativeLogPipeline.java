@@ -0,0 +1,260 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Forwards the output of the syncthing binary to logcat and the log file, without ever making
+ * the binary wait for us.
+ *
+ * One reader thread per stream only reads lines and adds them to a bounded queue. A single writer
+ * thread takes the lines of all streams in batches, prints them to logcat, appends them to the
+ * log file and adds them to the {@link NativeLogBuffer}. If the writer falls behind, e.g. with
+ * STTRACE enabled, new lines are dropped and counted instead of blocking the reader, and the
+ * number of dropped lines is logged once the writer caught up.
+ *
+ * The log file is split into segments of {@link #SEGMENT_SIZE} bytes. The current segment is
+ * {@link Constants#getLogFile}, older ones have the suffixes .1 to .{@link #MAX_SEGMENTS}-1.
+ * When a segment is full, and whenever syncthing starts, the segments are rotated by renaming,
+ * and the oldest one is deleted.
+ */
+class NativeLogPipeline {
+
+    private static final String TAG = "NativeLogPipeline";
+    private static final String TAG_NATIVE = "SyncthingNativeCode";
+
+    /**
+     * Maximum number of lines queued per stream.
+     */
+    private static final int QUEUE_CAPACITY = 10000;
+
+    /**
+     * Maximum number of lines the writer takes from a stream at once, so one busy stream doesn't
+     * hold back the other.
+     */
+    private static final int BATCH_SIZE = 500;
+
+    private static final long SEGMENT_SIZE = 1024 * 1024;
+    private static final int MAX_SEGMENTS = 4;
+
+    /**
+     * Time the writer waits for new lines before checking again, if it isn't woken up.
+     */
+    private static final long IDLE_WAIT_NS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final File mLogFile;
+    private final NativeLogBuffer mBuffer;
+    private final StreamQueue[] mStreams;
+    private final Thread mWriterThread;
+    private volatile boolean mClosed = false;
+
+    private Writer mWriter;
+    private long mSegmentBytes;
+
+    /**
+     * Output of one stream of the binary, read by its own thread.
+     */
+    private static class StreamQueue {
+        final InputStream stream;
+        final int priority;
+        final ConcurrentLinkedQueue<String> lines = new ConcurrentLinkedQueue<>();
+        final AtomicInteger size = new AtomicInteger();
+        final AtomicLong dropped = new AtomicLong();
+        volatile boolean finished = false;
+
+        StreamQueue(InputStream stream, int priority) {
+            this.stream = stream;
+            this.priority = priority;
+        }
+
+        boolean offer(String line) {
+            if (size.incrementAndGet() > QUEUE_CAPACITY) {
+                size.decrementAndGet();
+                dropped.incrementAndGet();
+                return false;
+            }
+            lines.add(line);
+            return true;
+        }
+
+        String poll() {
+            String line = lines.poll();
+            if (line != null) {
+                size.decrementAndGet();
+            }
+            return line;
+        }
+    }
+
+    /**
+     * Rotates the log file and starts reading the given streams.
+     *
+     * @param stdout Logged with priority INFO.
+     * @param stderr Logged with priority WARN.
+     */
+    NativeLogPipeline(File logFile, NativeLogBuffer buffer, InputStream stdout, InputStream stderr) {
+        mLogFile = logFile;
+        mBuffer = buffer;
+        mStreams = new StreamQueue[]{
+                new StreamQueue(stdout, Log.INFO),
+                new StreamQueue(stderr, Log.WARN)
+        };
+        mWriterThread = new Thread(this::writeLoop, TAG);
+        mWriterThread.start();
+        for (StreamQueue stream : mStreams) {
+            new Thread(() -> readLoop(stream), TAG + "Reader").start();
+        }
+    }
+
+    /**
+     * Waits until the streams ended, e.g. because the binary exited, and all their lines were
+     * written.
+     */
+    void join() throws InterruptedException {
+        mWriterThread.join();
+    }
+
+    /**
+     * Stops reading and writing, lines still queued are lost. The reader threads exit once their
+     * stream returns, so destroy the binary afterwards. Does nothing after {@link #join()}
+     * returned.
+     */
+    void close() {
+        mClosed = true;
+        LockSupport.unpark(mWriterThread);
+    }
+
+    private void readLoop(StreamQueue stream) {
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(stream.stream, Charsets.UTF_8))) {
+            String line;
+            while (!mClosed && (line = br.readLine()) != null) {
+                if (stream.offer(line)) {
+                    LockSupport.unpark(mWriterThread);
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read Syncthing's command line output", e);
+        } finally {
+            stream.finished = true;
+            LockSupport.unpark(mWriterThread);
+        }
+    }
+
+    private void writeLoop() {
+        rotate();
+        while (!mClosed) {
+            boolean finished = true;
+            int written = 0;
+            for (StreamQueue stream : mStreams) {
+                // Read finished before draining, so no line added before finishing is missed.
+                finished &= stream.finished;
+                written += writeBatch(stream);
+            }
+            if (written > 0) {
+                flush();
+            } else if (finished) {
+                break;
+            } else {
+                LockSupport.parkNanos(this, IDLE_WAIT_NS);
+            }
+        }
+        closeWriter();
+    }
+
+    private int writeBatch(StreamQueue stream) {
+        long dropped = stream.dropped.getAndSet(0);
+        if (dropped > 0) {
+            write(Log.WARN, TAG, "Dropped " + dropped + " lines of Syncthing's output, " +
+                    "logging could not keep up");
+        }
+        int count = 0;
+        String line;
+        while (count < BATCH_SIZE && (line = stream.poll()) != null) {
+            write(stream.priority, TAG_NATIVE, line);
+            count++;
+        }
+        return count;
+    }
+
+    private void write(int priority, String tag, String line) {
+        Log.println(priority, tag, line);
+        mBuffer.add(priority, line);
+        if (mWriter == null) {
+            return;
+        }
+        try {
+            mWriter.write(line);
+            mWriter.write('\n');
+            // Lines are mostly ASCII, so the length is a good enough estimate of the size.
+            mSegmentBytes += line.length() + 1;
+            if (mSegmentBytes >= SEGMENT_SIZE) {
+                rotate();
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write log file", e);
+            closeWriter();
+        }
+    }
+
+    private void flush() {
+        if (mWriter == null) {
+            return;
+        }
+        try {
+            mWriter.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write log file", e);
+            closeWriter();
+        }
+    }
+
+    /**
+     * Moves each segment one suffix up, deleting the oldest, and starts a new current segment.
+     */
+    private void rotate() {
+        closeWriter();
+        File directory = mLogFile.getParentFile();
+        if (directory == null) {
+            return;
+        }
+        String name = mLogFile.getName();
+        new File(directory, name + "." + (MAX_SEGMENTS - 1)).delete();
+        for (int i = MAX_SEGMENTS - 2; i >= 1; i--) {
+            new File(directory, name + "." + i).renameTo(new File(directory, name + "." + (i + 1)));
+        }
+        mLogFile.renameTo(new File(directory, name + ".1"));
+        try {
+            mWriter = new OutputStreamWriter(new FileOutputStream(mLogFile), Charsets.UTF_8);
+            mSegmentBytes = 0;
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to open log file", e);
+        }
+    }
+
+    private void closeWriter() {
+        if (mWriter == null) {
+            return;
+        }
+        try {
+            mWriter.close();
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to close log file", e);
+        }
+        mWriter = null;
+    }
+}
@@ -0,0 +1,190 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds running processes by reading /proc directly, instead of starting a shell and parsing
+ * the output of ps.
+ *
+ * A process matches if the first argument in /proc/[pid]/cmdline is the given binary, and
+ * /proc/[pid]/stat shows it is neither a zombie nor dead. The root directory can be replaced,
+ * e.g. by a fake tree.
+ */
+class ProcScanner {
+
+    private static final String TAG = "ProcScanner";
+
+    /**
+     * Only the start of cmdline is read, the first argument is all we need.
+     */
+    private static final int MAX_READ_BYTES = 1024;
+
+    private static final int INIT_PID = 1;
+
+    private static Field sPidField;
+    private static boolean sPidFieldLookedUp = false;
+
+    private final File mProcRoot;
+    private final byte[] mBuffer = new byte[MAX_READ_BYTES];
+
+    ProcScanner() {
+        this(new File("/proc"));
+    }
+
+    ProcScanner(File procRoot) {
+        mProcRoot = procRoot;
+    }
+
+    /**
+     * Returns true if processes of other users are hidden, as with hidepid=2 since Android 7.
+     * Detected by the init process not being visible.
+     */
+    boolean isRestricted() {
+        return !new File(mProcRoot, Integer.toString(INIT_PID)).exists();
+    }
+
+    /**
+     * Returns the pids of all visible, running processes of binaryName, or null if the
+     * directory can't be listed.
+     *
+     * @param binaryName File name of the executable, without directory.
+     */
+    @Nullable
+    synchronized List<Integer> findProcesses(String binaryName) {
+        String[] entries = mProcRoot.list();
+        if (entries == null) {
+            return null;
+        }
+        byte[] name = binaryName.getBytes(Charsets.UTF_8);
+        List<Integer> pids = new ArrayList<>();
+        for (String entry : entries) {
+            int pid = parsePid(entry);
+            if (pid > 0 && isRunning(pid, name)) {
+                pids.add(pid);
+            }
+        }
+        return pids;
+    }
+
+    /**
+     * Returns true if pid is a running process of binaryName.
+     */
+    synchronized boolean isRunning(int pid, String binaryName) {
+        return isRunning(pid, binaryName.getBytes(Charsets.UTF_8));
+    }
+
+    private boolean isRunning(int pid, byte[] name) {
+        File directory = new File(mProcRoot, Integer.toString(pid));
+        return matchesBinary(new File(directory, "cmdline"), name)
+                && isAlive(new File(directory, "stat"));
+    }
+
+    /**
+     * Checks if the first argument of cmdline, up to the first NUL byte, is name or ends with
+     * "/" + name.
+     */
+    private boolean matchesBinary(File cmdline, byte[] name) {
+        int length = read(cmdline);
+        int end = 0;
+        while (end < length && mBuffer[end] != 0) {
+            end++;
+        }
+        int start = end - name.length;
+        if (start < 0 || (start > 0 && mBuffer[start - 1] != '/')) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (mBuffer[start + i] != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The state follows the command name in parentheses, which may itself contain ')'. Zombie
+     * and dead processes can't be signalled anymore and are ignored.
+     */
+    private boolean isAlive(File stat) {
+        int length = read(stat);
+        int end = length - 1;
+        while (end >= 0 && mBuffer[end] != ')') {
+            end--;
+        }
+        if (end < 0 || end + 2 >= length) {
+            return false;
+        }
+        byte state = mBuffer[end + 2];
+        return state != 'Z' && state != 'X' && state != 'x';
+    }
+
+    /**
+     * Reads the start of file into {@link #mBuffer}.
+     *
+     * @return Number of bytes read, 0 if the file doesn't exist or can't be read, e.g. because
+     *         the process exited meanwhile.
+     */
+    private int read(File file) {
+        try (FileInputStream in = new FileInputStream(file)) {
+            int length = 0;
+            int read;
+            while (length < mBuffer.length
+                    && (read = in.read(mBuffer, length, mBuffer.length - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static int parsePid(String entry) {
+        int pid = 0;
+        for (int i = 0; i < entry.length(); i++) {
+            char c = entry.charAt(i);
+            if (c < '0' || c > '9' || pid > (Integer.MAX_VALUE - 9) / 10) {
+                return -1;
+            }
+            pid = pid * 10 + (c - '0');
+        }
+        return pid;
+    }
+
+    /**
+     * Returns the pid of a process started by this app, or -1 if it can't be determined.
+     *
+     * Android's Process has no public method for it, so it is read from the "pid" field of the
+     * implementation. The field is looked up only once.
+     */
+    static synchronized int getPid(Process process) {
+        if (!sPidFieldLookedUp) {
+            sPidFieldLookedUp = true;
+            try {
+                sPidField = process.getClass().getDeclaredField("pid");
+                sPidField.setAccessible(true);
+            } catch (NoSuchFieldException | SecurityException e) {
+                Log.w(TAG, "Failed to look up pid field of " + process.getClass().getName(), e);
+            }
+        }
+        if (sPidField == null) {
+            return -1;
+        }
+        try {
+            return sPidField.getInt(process);
+        } catch (IllegalAccessException | IllegalArgumentException e) {
+            Log.w(TAG, "Failed to read pid of process", e);
+            return -1;
+        }
+    }
+}
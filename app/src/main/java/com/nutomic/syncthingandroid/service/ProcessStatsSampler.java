@@ -0,0 +1,424 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.Nullable;
+
+import com.google.common.base.Charsets;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Periodically records what the syncthing binary costs: CPU usage, resident memory, bytes read
+ * from and written to storage, and thread count, read from /proc/[pid]/stat, statm, io and
+ * status.
+ *
+ * Samples are kept in a ring buffer of {@link #CAPACITY} entries stored in primitive arrays,
+ * the oldest ones are overwritten. Sampling only runs while at least one
+ * {@link OnSampleListener} is registered, e.g. while the stats screen is visible. {@link #dump}
+ * takes one extra sample and prints all kept samples.
+ *
+ * Listeners are registered and called on the main thread. Samples are taken on a worker thread,
+ * methods reading samples are synchronized.
+ */
+public class ProcessStatsSampler {
+
+    private static final String TAG = "ProcessStatsSampler";
+
+    /**
+     * One hour of samples.
+     */
+    private static final int CAPACITY = 1800;
+    private static final long SAMPLE_INTERVAL = 2000;
+
+    /**
+     * Enough for the files read, status being the largest with about 1.5 KiB.
+     */
+    private static final int BUFFER_SIZE = 4096;
+
+    /**
+     * Fields of /proc/[pid]/stat, counted from 1 as in proc(5).
+     */
+    private static final int STAT_FIELD_STATE = 3;
+    private static final int STAT_FIELD_UTIME = 14;
+    private static final int STAT_FIELD_STIME = 15;
+
+    private static final byte[] KEY_READ_BYTES = "read_bytes:".getBytes(Charsets.US_ASCII);
+    private static final byte[] KEY_WRITE_BYTES = "write_bytes:".getBytes(Charsets.US_ASCII);
+    private static final byte[] KEY_THREADS = "Threads:".getBytes(Charsets.US_ASCII);
+
+    public interface OnSampleListener {
+        /**
+         * Called on the main thread after each sample.
+         */
+        void onSample();
+    }
+
+    /**
+     * Values that could not be read are -1.
+     */
+    public static class Sample {
+        /**
+         * Time of the sample, from currentTimeMillis().
+         */
+        public final long time;
+        public final int pid;
+        /**
+         * CPU time used since the previous sample, in percent of one core.
+         */
+        public final float cpuPercent;
+        public final long rssBytes;
+        /**
+         * Bytes read from and written to storage since the process started.
+         */
+        public final long readBytes;
+        public final long writeBytes;
+        /**
+         * Bytes per second read and written since the previous sample.
+         */
+        public final long readRate;
+        public final long writeRate;
+        public final int threads;
+
+        private Sample(long time, int pid, float cpuPercent, long rssBytes, long readBytes,
+                       long writeBytes, long readRate, long writeRate, int threads) {
+            this.time = time;
+            this.pid = pid;
+            this.cpuPercent = cpuPercent;
+            this.rssBytes = rssBytes;
+            this.readBytes = readBytes;
+            this.writeBytes = writeBytes;
+            this.readRate = readRate;
+            this.writeRate = writeRate;
+            this.threads = threads;
+        }
+    }
+
+    private final long[] mTimes = new long[CAPACITY];
+    private final int[] mPids = new int[CAPACITY];
+    private final float[] mCpuPercents = new float[CAPACITY];
+    private final long[] mRssBytes = new long[CAPACITY];
+    private final long[] mReadBytes = new long[CAPACITY];
+    private final long[] mWriteBytes = new long[CAPACITY];
+    private final long[] mReadRates = new long[CAPACITY];
+    private final long[] mWriteRates = new long[CAPACITY];
+    private final int[] mThreads = new int[CAPACITY];
+
+    /**
+     * Number of samples taken, the sample n is stored at n % CAPACITY.
+     */
+    private long mSampleCount = 0;
+
+    /**
+     * Values of the previous sample, to compute CPU usage and rates.
+     */
+    private int mLastPid = -1;
+    private long mLastElapsedTime;
+    private long mLastCpuTicks = -1;
+    private long mLastReadBytes = -1;
+    private long mLastWriteBytes = -1;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private final ProcScanner mProcScanner = new ProcScanner();
+    private final long mTicksPerSecond = Os.sysconf(OsConstants._SC_CLK_TCK);
+    private final long mPageSize = Os.sysconf(OsConstants._SC_PAGESIZE);
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
+    private final Set<OnSampleListener> mListeners = new LinkedHashSet<>();
+    @Nullable private HandlerThread mWorkerThread;
+    @Nullable private volatile Handler mWorkerHandler;
+    private volatile boolean mSampling = false;
+
+    private final Runnable mSampleRunnable = new Runnable() {
+        @Override
+        public void run() {
+            sample();
+            mMainThreadHandler.post(ProcessStatsSampler.this::notifyListeners);
+            Handler handler = mWorkerHandler;
+            if (mSampling && handler != null) {
+                handler.postDelayed(this, SAMPLE_INTERVAL);
+            }
+        }
+    };
+
+    /**
+     * Starts sampling if this is the first listener. Must be called on the main thread.
+     */
+    public void registerOnSampleListener(OnSampleListener listener) {
+        if (!mListeners.add(listener) || mListeners.size() > 1) {
+            return;
+        }
+        if (mWorkerThread == null) {
+            mWorkerThread = new HandlerThread(TAG);
+            mWorkerThread.start();
+            mWorkerHandler = new Handler(mWorkerThread.getLooper());
+        }
+        mSampling = true;
+        mWorkerHandler.post(mSampleRunnable);
+    }
+
+    /**
+     * Pauses sampling if this was the last listener. Must be called on the main thread.
+     */
+    public void unregisterOnSampleListener(OnSampleListener listener) {
+        if (mListeners.remove(listener) && mListeners.isEmpty() && mWorkerHandler != null) {
+            mSampling = false;
+            mWorkerHandler.removeCallbacks(mSampleRunnable);
+        }
+    }
+
+    private void notifyListeners() {
+        for (OnSampleListener listener : new ArrayList<>(mListeners)) {
+            listener.onSample();
+        }
+    }
+
+    /**
+     * Stops the worker thread. Called when the service is destroyed.
+     */
+    void shutdown() {
+        mListeners.clear();
+        mSampling = false;
+        if (mWorkerThread != null) {
+            mWorkerHandler.removeCallbacks(mSampleRunnable);
+            mWorkerThread.quitSafely();
+            mWorkerThread = null;
+            mWorkerHandler = null;
+        }
+    }
+
+    /**
+     * Returns the number of samples kept.
+     */
+    public synchronized int getCount() {
+        return (int) Math.min(mSampleCount, CAPACITY);
+    }
+
+    /**
+     * Returns a kept sample, index 0 being the oldest.
+     */
+    public synchronized Sample get(int index) {
+        int i = (int) ((mSampleCount - getCount() + index) % CAPACITY);
+        return new Sample(mTimes[i], mPids[i], mCpuPercents[i], mRssBytes[i], mReadBytes[i],
+                mWriteBytes[i], mReadRates[i], mWriteRates[i], mThreads[i]);
+    }
+
+    /**
+     * Takes a sample and prints all kept samples as CSV, oldest first. Used by
+     * {@link SyncthingService#dump}, e.g. through "adb shell dumpsys activity service".
+     */
+    public void dump(PrintWriter writer) {
+        sample();
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
+        synchronized (this) {
+            writer.println("Syncthing process stats, sampling "
+                    + (mSampling ? "active" : "paused"));
+            writer.println("time,pid,cpu_percent,rss_bytes,read_bytes,write_bytes," +
+                    "read_bytes_per_second,write_bytes_per_second,threads");
+            for (int index = 0; index < getCount(); index++) {
+                Sample s = get(index);
+                writer.println(format.format(new Date(s.time)) + "," + s.pid + ","
+                        + String.format(Locale.US, "%.1f", s.cpuPercent) + "," + s.rssBytes + ","
+                        + s.readBytes + "," + s.writeBytes + "," + s.readRate + ","
+                        + s.writeRate + "," + s.threads);
+            }
+        }
+    }
+
+    /**
+     * Reads the values of the syncthing process and stores them as the newest sample. Does
+     * nothing if syncthing isn't running.
+     */
+    private synchronized void sample() {
+        int pid = mLastPid;
+        long elapsedTime = SystemClock.elapsedRealtime();
+        // The pid may have been reused by another process after syncthing exited.
+        boolean running = pid > 0
+                && mProcScanner.isRunning(pid, Constants.FILENAME_SYNCTHING_BINARY);
+        long cpuTicks = running ? readCpuTicks(pid) : -1;
+        if (cpuTicks < 0) {
+            // Syncthing was restarted, or this is the first sample.
+            pid = SyncthingRunnable.findSyncthingPid();
+            cpuTicks = (pid > 0) ? readCpuTicks(pid) : -1;
+            if (cpuTicks < 0) {
+                mLastPid = -1;
+                return;
+            }
+        }
+        boolean restarted = pid != mLastPid;
+        File directory = new File("/proc", Integer.toString(pid));
+        long rssPages = readStatmResident(new File(directory, "statm"));
+        int length = read(new File(directory, "io"));
+        long readBytes = findValue(length, KEY_READ_BYTES);
+        long writeBytes = findValue(length, KEY_WRITE_BYTES);
+        length = read(new File(directory, "status"));
+        int threads = (int) findValue(length, KEY_THREADS);
+
+        long interval = elapsedTime - mLastElapsedTime;
+        boolean hasPrevious = !restarted && interval > 0;
+        float cpuPercent = (hasPrevious && mLastCpuTicks >= 0)
+                ? 100f * (cpuTicks - mLastCpuTicks) * 1000 / mTicksPerSecond / interval
+                : -1;
+
+        int i = (int) (mSampleCount % CAPACITY);
+        mTimes[i] = System.currentTimeMillis();
+        mPids[i] = pid;
+        mCpuPercents[i] = cpuPercent;
+        mRssBytes[i] = (rssPages >= 0) ? rssPages * mPageSize : -1;
+        mReadBytes[i] = readBytes;
+        mWriteBytes[i] = writeBytes;
+        mReadRates[i] = rate(hasPrevious, mLastReadBytes, readBytes, interval);
+        mWriteRates[i] = rate(hasPrevious, mLastWriteBytes, writeBytes, interval);
+        mThreads[i] = threads;
+        mSampleCount++;
+
+        mLastPid = pid;
+        mLastElapsedTime = elapsedTime;
+        mLastCpuTicks = cpuTicks;
+        mLastReadBytes = readBytes;
+        mLastWriteBytes = writeBytes;
+    }
+
+    private static long rate(boolean hasPrevious, long last, long current, long interval) {
+        return (hasPrevious && last >= 0 && current >= last)
+                ? (current - last) * 1000 / interval
+                : -1;
+    }
+
+    /**
+     * Returns utime + stime from /proc/[pid]/stat, or -1 if the process doesn't exist.
+     */
+    private long readCpuTicks(int pid) {
+        int length = read(new File("/proc/" + pid + "/stat"));
+        // The command name in parentheses may contain spaces, fields are counted after it.
+        int position = length - 1;
+        while (position >= 0 && mBuffer[position] != ')') {
+            position--;
+        }
+        if (position < 0) {
+            return -1;
+        }
+        position += 2;
+        long ticks = 0;
+        for (int field = STAT_FIELD_STATE; field <= STAT_FIELD_STIME && position < length; field++) {
+            int end = position;
+            while (end < length && mBuffer[end] != ' ') {
+                end++;
+            }
+            if (field == STAT_FIELD_UTIME || field == STAT_FIELD_STIME) {
+                long value = parseNumber(position, end);
+                if (value < 0) {
+                    return -1;
+                }
+                ticks += value;
+                if (field == STAT_FIELD_STIME) {
+                    return ticks;
+                }
+            }
+            position = end + 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the second value of statm, the resident size in pages.
+     */
+    private long readStatmResident(File statm) {
+        int length = read(statm);
+        int start = 0;
+        while (start < length && mBuffer[start] != ' ') {
+            start++;
+        }
+        start++;
+        int end = start;
+        while (end < length && mBuffer[end] != ' ' && mBuffer[end] != '\n') {
+            end++;
+        }
+        return parseNumber(start, end);
+    }
+
+    /**
+     * Returns the number following key at the start of a line of the buffer, or -1.
+     */
+    private long findValue(int length, byte[] key) {
+        int lineStart = 0;
+        while (lineStart < length) {
+            if (startsWith(lineStart, length, key)) {
+                int start = lineStart + key.length;
+                while (start < length && (mBuffer[start] == ' ' || mBuffer[start] == '\t')) {
+                    start++;
+                }
+                int end = start;
+                while (end < length && mBuffer[end] >= '0' && mBuffer[end] <= '9') {
+                    end++;
+                }
+                return parseNumber(start, end);
+            }
+            while (lineStart < length && mBuffer[lineStart] != '\n') {
+                lineStart++;
+            }
+            lineStart++;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int position, int length, byte[] key) {
+        if (position + key.length > length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (mBuffer[position + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long parseNumber(int start, int end) {
+        if (start >= end) {
+            return -1;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            byte b = mBuffer[i];
+            if (b < '0' || b > '9') {
+                return -1;
+            }
+            value = value * 10 + (b - '0');
+        }
+        return value;
+    }
+
+    /**
+     * Reads file into {@link #mBuffer}.
+     *
+     * @return Number of bytes read, 0 if the file can't be read.
+     */
+    private int read(File file) {
+        try (FileInputStream in = new FileInputStream(file)) {
+            int length = 0;
+            int read;
+            while (length < mBuffer.length
+                    && (read = in.read(mBuffer, length, mBuffer.length - length)) > 0) {
+                length += read;
+            }
+            return length;
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+}
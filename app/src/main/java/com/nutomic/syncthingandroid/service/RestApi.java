@@ -2,26 +2,35 @@ package com.nutomic.syncthingandroid.service;
 
 import android.content.Context;
 import android.content.Intent;
+import android.os.Handler;
+import android.os.Looper;
 import android.preference.PreferenceManager;
+import android.text.TextUtils;
 import android.util.Log;
+import android.widget.Toast;
 
+import androidx.annotation.Nullable;
+
+import com.android.volley.VolleyError;
 import com.google.common.base.Objects;
-import com.google.common.base.Optional;
 import com.google.common.collect.ImmutableMap;
-import com.google.common.reflect.TypeToken;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
 import com.nutomic.syncthingandroid.BuildConfig;
+import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.SyncthingApp;
 import com.nutomic.syncthingandroid.activities.ShareActivity;
+import com.nutomic.syncthingandroid.http.ApiRequest;
 import com.nutomic.syncthingandroid.http.GetRequest;
 import com.nutomic.syncthingandroid.http.PostRequest;
+import com.nutomic.syncthingandroid.http.PutRequest;
+import com.nutomic.syncthingandroid.http.TypedGetRequest;
+import com.nutomic.syncthingandroid.http.DeleteRequest;
 import com.nutomic.syncthingandroid.http.PostConfigRequest;
 import com.nutomic.syncthingandroid.model.Config;
+import com.nutomic.syncthingandroid.model.ConfigSnapshot;
 import com.nutomic.syncthingandroid.model.Completion;
 import com.nutomic.syncthingandroid.model.CompletionInfo;
 import com.nutomic.syncthingandroid.model.Connections;
@@ -29,6 +38,7 @@ import com.nutomic.syncthingandroid.model.Device;
 import com.nutomic.syncthingandroid.model.Event;
 import com.nutomic.syncthingandroid.model.Folder;
 import com.nutomic.syncthingandroid.model.FolderStatus;
+import com.nutomic.syncthingandroid.model.JsonCodec;
 import com.nutomic.syncthingandroid.model.IgnoredFolder;
 import com.nutomic.syncthingandroid.model.Options;
 import com.nutomic.syncthingandroid.model.RemoteIgnoredDevice;
@@ -38,8 +48,8 @@ import com.nutomic.syncthingandroid.model.SystemVersion;
 import java.lang.reflect.Type;
 import java.net.URL;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -47,6 +57,7 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 import javax.inject.Inject;
 
@@ -57,6 +68,24 @@ public class RestApi {
 
     private static final String TAG = "RestApi";
 
+    /**
+     * Time in seconds we wait on top of a long poll timeout before giving up on the request.
+     */
+    private static final int LONG_POLL_TIMEOUT_MARGIN_S = 10;
+
+    /**
+     * Time to live of cached results of {@link #getSystemInfo}. Short enough that every GUI
+     * update interval gets fresh data, long enough that all screens updating at the same time
+     * share one request.
+     */
+    private static final long SYSTEM_INFO_CACHE_TTL_MS = Constants.GUI_UPDATE_INTERVAL / 2;
+
+    /**
+     * Maximum number of folder status requests {@link #refreshFolderStatuses} runs at the same
+     * time.
+     */
+    private static final int MAX_CONCURRENT_FOLDER_STATUS_REQUESTS = 4;
+
     private static final SimpleDateFormat dateFormat;
     static {
         if (android.os.Build.VERSION.SDK_INT < 24) {
@@ -66,16 +95,6 @@ public class RestApi {
         }
     }
 
-    /**
-     * Compares folders by labels, uses the folder ID as fallback if the label is empty
-     */
-    private final static Comparator<Folder> FOLDERS_COMPARATOR = (lhs, rhs) -> {
-        String lhsLabel = lhs.label != null && !lhs.label.isEmpty() ? lhs.label : lhs.id;
-        String rhsLabel = rhs.label != null && !rhs.label.isEmpty() ? rhs.label : rhs.id;
-
-        return lhsLabel.compareTo(rhsLabel);
-    };
-
     public interface OnConfigChangedListener {
         void onConfigChanged();
     }
@@ -84,33 +103,23 @@ public class RestApi {
         void onResult(T t);
     }
 
-    public interface OnResultListener2<T, R> {
-        void onResult(T t, R r);
-    }
-
     private final Context mContext;
     private final URL mUrl;
     private final String mApiKey;
 
     private String mVersion;
-    private Config mConfig;
 
     /**
-     * Results cached from systemInfo
+     * The current config. Readers access it without locking, writers replace it while holding
+     * {@link #mConfigLock}. See {@link ConfigSnapshot}.
      */
-    private String mLocalDeviceId;
-    private Integer mUrVersionMax;
+    private volatile ConfigSnapshot mConfig;
 
     /**
-     * Stores the result of the last successful request to {@link GetRequest#URI_CONNECTIONS},
-     * or an empty Map.
-     */
-    private Optional<Connections> mPreviousConnections = Optional.absent();
-
-    /**
-     * Stores the timestamp of the last successful request to {@link GetRequest#URI_CONNECTIONS}.
+     * Results cached from systemInfo
      */
-    private long mPreviousConnectionTime = 0;
+    private String mLocalDeviceId;
+    private Integer mUrVersionMax;
 
     /**
      * In the last-finishing {@link readConfigFromRestApi} callback, we have to call
@@ -131,19 +140,44 @@ public class RestApi {
     private final Object mAsyncQueryCompleteLock = new Object();
 
     /**
-     * Object that must be locked upon accessing mConfig
+     * Object that must be locked upon replacing mConfig
      */
     private final Object mConfigLock = new Object();
 
     /**
-     * Stores the latest result of {@link #getFolderStatus} for each folder
+     * Parts of the config changed locally and not yet sent, see {@link #saveConfigAndRestart}.
+     * Guarded by {@link #mConfigLock}.
+     */
+    private boolean mOptionsChanged = false;
+    private boolean mGuiChanged = false;
+    private boolean mIgnoredDevicesChanged = false;
+
+    /**
+     * Stores the latest status of each folder, kept up to date by {@link EventProcessor}.
      */
-    private HashMap<String, FolderStatus> mCachedFolderStatuses = new HashMap<>();
+    private final FolderStateStore mFolderStateStore = new FolderStateStore();
+
+    /**
+     * Folders with a status request queued or in flight, so overlapping refreshes don't request
+     * them twice.
+     */
+    private final Set<String> mFolderStatusRequestsInFlight = new HashSet<>();
 
     /**
      * Stores the latest result of device and folder completion events.
      */
-    private Completion mCompletion = new Completion();
+    private final Completion mCompletion = new Completion();
+
+    private final ApiResponseCache mResponseCache = new ApiResponseCache();
+
+    /**
+     * Stores the connection state of each device, kept up to date by {@link EventProcessor}.
+     */
+    private final ConnectionTracker mConnectionTracker = new ConnectionTracker((onSuccess, onError) ->
+            new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_CONNECTIONS, mApiKey, null,
+                    Connections.class, onSuccess, onError));
+
+    private final Handler mMainThreadHandler = new Handler(Looper.getMainLooper());
 
     @Inject NotificationHandler mNotificationHandler;
 
@@ -175,9 +209,8 @@ public class RestApi {
             asyncQueryConfigComplete = false;
             asyncQuerySystemInfoComplete = false;
         }
-        new GetRequest(mContext, mUrl, GetRequest.URI_VERSION, mApiKey, null, result -> {
-            JsonObject json = new JsonParser().parse(result).getAsJsonObject();
-            mVersion = json.get("version").getAsString();
+        getSystemVersion(systemVersion -> {
+            mVersion = systemVersion.version;
             Log.i(TAG, "Syncthing version is " + mVersion);
             updateDebugFacilitiesCache();
             synchronized (mAsyncQueryCompleteLock) {
@@ -185,15 +218,17 @@ public class RestApi {
                 checkReadConfigFromRestApiCompleted();
             }
         });
-        new GetRequest(mContext, mUrl, GetRequest.URI_CONFIG, mApiKey, null, result -> {
-            onReloadConfigComplete(result);
+        new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_CONFIG, mApiKey, null, Config.class,
+                config -> {
+            onReloadConfigComplete(config);
             synchronized (mAsyncQueryCompleteLock) {
                 asyncQueryConfigComplete = true;
                 checkReadConfigFromRestApiCompleted();
             }
-        });
+        }, null);
         getSystemInfo(info -> {
             mLocalDeviceId = info.myID;
+            mCompletion.setLocalDeviceId(info.myID);
             mUrVersionMax = info.urVersionMax;
             synchronized (mAsyncQueryCompleteLock) {
                 asyncQuerySystemInfoComplete = true;
@@ -205,30 +240,34 @@ public class RestApi {
     private void checkReadConfigFromRestApiCompleted() {
         if (asyncQueryVersionComplete && asyncQueryConfigComplete && asyncQuerySystemInfoComplete) {
             Log.v(TAG, "Reading config from REST completed.");
+            mConnectionTracker.refresh();
             mOnApiAvailableListener.onApiAvailable();
         }
     }
 
     public void reloadConfig() {
-        new GetRequest(mContext, mUrl, GetRequest.URI_CONFIG, mApiKey, null, this::onReloadConfigComplete);
+        new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_CONFIG, mApiKey, null, Config.class,
+                this::onReloadConfigComplete, null);
     }
 
-    private void onReloadConfigComplete(String result) {
-        Boolean configParseSuccess;
-        synchronized(mConfigLock) {
-            mConfig = new Gson().fromJson(result, Config.class);
-            configParseSuccess = mConfig != null;
+    private void onReloadConfigComplete(Config config) {
+        if (config == null) {
+            throw new RuntimeException("config is null");
         }
-        if (!configParseSuccess) {
-            throw new RuntimeException("config is null: " + result);
+        synchronized(mConfigLock) {
+            long revision = (mConfig != null) ? mConfig.revision + 1 : 0;
+            mConfig = ConfigSnapshot.of(revision, config);
         }
         Log.v(TAG, "onReloadConfigComplete: Successfully parsed configuration.");
         if (BuildConfig.DEBUG) {
-            Log.v(TAG, "mConfig.remoteIgnoredDevices = " + new Gson().toJson(mConfig.remoteIgnoredDevices));
+            Log.v(TAG, "mConfig.remoteIgnoredDevices = " + JsonCodec.toJson(config.remoteIgnoredDevices));
         }
 
         // Update cached device and folder information stored in the mCompletion model.
-        mCompletion.updateFromConfig(getDevices(true), getFolders());
+        mCompletion.updateFromConfig(mConfig);
+        updateFolderStateStore(mConfig);
+        // Parts of the system status, like discovery and relays, follow the options.
+        mResponseCache.invalidate(GetRequest.URI_SYSTEM);
     }
 
     /**
@@ -244,7 +283,7 @@ public class RestApi {
             new GetRequest(mContext, mUrl, GetRequest.URI_DEBUG, mApiKey, null, result -> {
                 try {
                     Set<String> facilitiesToStore = new HashSet<String>();
-                    JsonObject json = new JsonParser().parse(result).getAsJsonObject();
+                    JsonObject json = JsonCodec.parse(result).getAsJsonObject();
                     JsonObject jsonFacilities = json.getAsJsonObject("facilities");
                     for (String facilityName : jsonFacilities.keySet()) {
                         facilitiesToStore.add(facilityName);
@@ -273,7 +312,7 @@ public class RestApi {
     public void ignoreDevice(String deviceId, String deviceName, String deviceAddress) {
         synchronized (mConfigLock) {
             // Check if the device has already been ignored.
-            for (RemoteIgnoredDevice remoteIgnoredDevice : mConfig.remoteIgnoredDevices) {
+            for (RemoteIgnoredDevice remoteIgnoredDevice : mConfig.config.remoteIgnoredDevices) {
                 if (deviceId.equals(remoteIgnoredDevice.deviceID)) {
                     // Device already ignored.
                     Log.d(TAG, "Device already ignored [" + deviceId + "]");
@@ -286,7 +325,10 @@ public class RestApi {
             remoteIgnoredDevice.address = deviceAddress;
             remoteIgnoredDevice.name = deviceName;
             remoteIgnoredDevice.time = dateFormat.format(new Date());
-            mConfig.remoteIgnoredDevices.add(remoteIgnoredDevice);
+            List<RemoteIgnoredDevice> remoteIgnoredDevices =
+                    new ArrayList<>(mConfig.config.remoteIgnoredDevices);
+            remoteIgnoredDevices.add(remoteIgnoredDevice);
+            mConfig = mConfig.withRemoteIgnoredDevices(remoteIgnoredDevices);
             sendConfig();
             Log.d(TAG, "Ignored device [" + deviceId + "]");
         }
@@ -299,38 +341,40 @@ public class RestApi {
      */
     public void ignoreFolder(String deviceId, String folderId, String folderLabel) {
         synchronized (mConfigLock) {
-            for (Device device : mConfig.devices) {
-                if (deviceId.equals(device.deviceID)) {
-                    /**
-                     * Check if the folder has already been ignored.
-                     */
-                    for (IgnoredFolder ignoredFolder : device.ignoredFolders) {
-                        if (folderId.equals(ignoredFolder.id)) {
-                            // Folder already ignored.
-                            Log.d(TAG, "Folder [" + folderId + "] already ignored on device [" + deviceId + "]");
-                            return;
-                        }
-                    }
-
-                    /**
-                     * Ignore folder by moving its corresponding "pendingFolder" entry to
-                     * a newly created "ignoredFolder" entry.
-                     */
-                    IgnoredFolder ignoredFolder = new IgnoredFolder();
-                    ignoredFolder.id = folderId;
-                    ignoredFolder.label = folderLabel;
-                    ignoredFolder.time = dateFormat.format(new Date());
-                    device.ignoredFolders.add(ignoredFolder);
-                    if (BuildConfig.DEBUG) {
-                        Log.v(TAG, "device.ignoredFolders = " + new Gson().toJson(device.ignoredFolders));
-                    }
-                    sendConfig();
-                    Log.d(TAG, "Ignored folder [" + folderId + "] announced by device [" + deviceId + "]");
+            Device device = mConfig.deviceById.get(deviceId);
+            if (device == null) {
+                return;
+            }
 
-                    // Given deviceId handled.
-                    break;
+            /**
+             * Check if the folder has already been ignored.
+             */
+            for (IgnoredFolder ignoredFolder : device.ignoredFolders) {
+                if (folderId.equals(ignoredFolder.id)) {
+                    // Folder already ignored.
+                    Log.d(TAG, "Folder [" + folderId + "] already ignored on device [" + deviceId + "]");
+                    return;
                 }
             }
+
+            /**
+             * Ignore folder by moving its corresponding "pendingFolder" entry to
+             * a newly created "ignoredFolder" entry.
+             */
+            IgnoredFolder ignoredFolder = new IgnoredFolder();
+            ignoredFolder.id = folderId;
+            ignoredFolder.label = folderLabel;
+            ignoredFolder.time = dateFormat.format(new Date());
+            Device newDevice = deepCopy(device, Device.class);
+            newDevice.ignoredFolders.add(ignoredFolder);
+            if (BuildConfig.DEBUG) {
+                Log.v(TAG, "device.ignoredFolders = " + JsonCodec.toJson(newDevice.ignoredFolders));
+            }
+            List<Device> devices = new ArrayList<>(mConfig.config.devices);
+            devices.set(devices.indexOf(device), newDevice);
+            mConfig = mConfig.withDevices(devices);
+            sendDevice(newDevice);
+            Log.d(TAG, "Ignored folder [" + folderId + "] announced by device [" + deviceId + "]");
         }
     }
 
@@ -340,10 +384,18 @@ public class RestApi {
     public void undoIgnoredDevicesAndFolders() {
         Log.d(TAG, "Undo ignoring devices and folders ...");
         synchronized (mConfigLock) {
-            mConfig.remoteIgnoredDevices.clear();
-            for (Device device : mConfig.devices) {
-                device.ignoredFolders.clear();
+            List<Device> devices = new ArrayList<>(mConfig.config.devices);
+            for (int i = 0; i < devices.size(); i++) {
+                Device device = devices.get(i);
+                if (device.ignoredFolders != null && !device.ignoredFolders.isEmpty()) {
+                    Device newDevice = deepCopy(device, Device.class);
+                    newDevice.ignoredFolders.clear();
+                    devices.set(i, newDevice);
+                }
             }
+            mConfig = mConfig.withRemoteIgnoredDevices(new ArrayList<>())
+                    .withDevices(devices);
+            mIgnoredDevicesChanged = true;
         }
     }
 
@@ -357,36 +409,115 @@ public class RestApi {
             ImmutableMap.of("folder", folderId), null);
     }
 
+    private void sendFolder(Folder folder) {
+        sendConfigObject(PutRequest.URI_CONFIG_FOLDERS + folder.id, folder);
+    }
+
+    private void sendDevice(Device device) {
+        sendConfigObject(PutRequest.URI_CONFIG_DEVICES + device.deviceID, device);
+    }
+
+    /**
+     * Replaces a single config object in Syncthing, so only the changed object is transferred.
+     * Will result in a "ConfigSaved" event.
+     * EventProcessor will trigger this.reloadConfig().
+     */
+    private void sendConfigObject(String path, Object object) {
+        String json = JsonCodec.toJson(object);
+        new PutRequest(mContext, mUrl, path, mApiKey, json, null, this::onConfigObjectError);
+        mOnConfigChangedListener.onConfigChanged();
+    }
+
+    /**
+     * Removes a single config object from Syncthing.
+     * Will result in a "ConfigSaved" event.
+     */
+    private void deleteConfigObject(String path) {
+        new DeleteRequest(mContext, mUrl, path, mApiKey, null, this::onConfigObjectError);
+        mOnConfigChangedListener.onConfigChanged();
+    }
+
+    /**
+     * Our snapshot already contains the change, so reload the config to get back in sync with
+     * Syncthing if it was rejected.
+     */
+    private void onConfigObjectError(VolleyError error) {
+        Log.w(TAG, "Failed to update config object, reloading config", error);
+        reloadConfig();
+    }
+
     /**
      * Sends current config to Syncthing.
      * Will result in a "ConfigSaved" event.
      * EventProcessor will trigger this.reloadConfig().
      */
     private void sendConfig() {
-        String jsonConfig;
-        synchronized (mConfigLock) {
-            jsonConfig = new Gson().toJson(mConfig);
-        }
+        String jsonConfig = JsonCodec.toJson(mConfig.config);
         new PostConfigRequest(mContext, mUrl, mApiKey, jsonConfig, null);
         mOnConfigChangedListener.onConfigChanged();
     }
 
     /**
-     * Sends current config and restarts Syncthing.
+     * Sends the locally changed parts of the config and restarts Syncthing.
+     *
+     * Options and GUI settings are replaced with PUT requests to their own endpoints. If ignored
+     * devices were changed, which have no endpoint of their own, or one of the PUT requests fails,
+     * the whole config is sent instead.
      */
     public void saveConfigAndRestart() {
-        String jsonConfig;
+        ConfigSnapshot config;
+        boolean optionsChanged;
+        boolean guiChanged;
+        boolean ignoredDevicesChanged;
         synchronized (mConfigLock) {
-            jsonConfig = new Gson().toJson(mConfig);
+            config = mConfig;
+            optionsChanged = mOptionsChanged;
+            guiChanged = mGuiChanged;
+            ignoredDevicesChanged = mIgnoredDevicesChanged;
+            mOptionsChanged = false;
+            mGuiChanged = false;
+            mIgnoredDevicesChanged = false;
         }
-        new PostConfigRequest(mContext, mUrl, mApiKey, jsonConfig, result -> {
-            Intent intent = new Intent(mContext, SyncthingService.class)
-                    .setAction(SyncthingService.ACTION_RESTART);
-            mContext.startService(intent);
+
+        Runnable sendConfig = () -> new PostConfigRequest(mContext, mUrl, mApiKey,
+                JsonCodec.toJson(config.config), result -> restart(), error -> {
+            Log.w(TAG, "Failed to save config", error);
+            // Keep the local changes, so they are sent again with the next save.
+            synchronized (mConfigLock) {
+                mOptionsChanged |= optionsChanged;
+                mGuiChanged |= guiChanged;
+                mIgnoredDevicesChanged |= ignoredDevicesChanged;
+            }
+            Toast.makeText(mContext, R.string.config_save_failed, Toast.LENGTH_LONG).show();
         });
+        ApiRequest.OnErrorListener onPutError = error -> {
+            Log.w(TAG, "Failed to update config object, sending whole config", error);
+            sendConfig.run();
+        };
+        if (ignoredDevicesChanged) {
+            sendConfig.run();
+        } else {
+            Runnable sendGui = guiChanged
+                    ? () -> new PutRequest(mContext, mUrl, PutRequest.URI_CONFIG_GUI, mApiKey,
+                            JsonCodec.toJson(config.config.gui), result -> restart(), onPutError)
+                    : this::restart;
+            if (optionsChanged) {
+                new PutRequest(mContext, mUrl, PutRequest.URI_CONFIG_OPTIONS, mApiKey,
+                        JsonCodec.toJson(config.config.options), result -> sendGui.run(),
+                        onPutError);
+            } else {
+                sendGui.run();
+            }
+        }
         mOnConfigChangedListener.onConfigChanged();
     }
 
+    private void restart() {
+        Intent intent = new Intent(mContext, SyncthingService.class)
+                .setAction(SyncthingService.ACTION_RESTART);
+        mContext.startService(intent);
+    }
+
     public void shutdown() {
         mNotificationHandler.cancelRestartNotification();
     }
@@ -398,13 +529,31 @@ public class RestApi {
         return mVersion;
     }
 
+    /**
+     * Returns all folders sorted by label.
+     *
+     * The returned list and folders are shared with the current config snapshot and must not
+     * be modified. Use {@link #getFolderForEdit} to obtain a folder that can be changed.
+     */
     public List<Folder> getFolders() {
-        List<Folder> folders;
-        synchronized (mConfigLock) {
-            folders = deepCopy(mConfig.folders, new TypeToken<List<Folder>>(){}.getType());
-        }
-        Collections.sort(folders, FOLDERS_COMPARATOR);
-        return folders;
+        return mConfig.sortedFolders;
+    }
+
+    /**
+     * Returns a private copy of the folder with the given id that may be modified and passed
+     * to {@link #updateFolder}, or null if the folder does not exist.
+     */
+    public Folder getFolderForEdit(String folderId) {
+        Folder folder = getFolder(folderId);
+        return (folder != null) ? deepCopy(folder, Folder.class) : null;
+    }
+
+    /**
+     * Returns the folder with the given id, or null if it does not exist. The folder is shared
+     * with the current config snapshot and must not be modified.
+     */
+    public Folder getFolder(String folderId) {
+        return mConfig.folderById.get(folderId);
     }
 
     /**
@@ -413,25 +562,30 @@ public class RestApi {
     public void createFolder(Folder folder) {
         synchronized (mConfigLock) {
             // Add the new folder to the model.
-            mConfig.folders.add(folder);
+            Folder newFolder = deepCopy(folder, Folder.class);
+            List<Folder> folders = new ArrayList<>(mConfig.config.folders);
+            folders.add(newFolder);
+            mConfig = mConfig.withFolders(folders);
             // Send model changes to syncthing, does not require a restart.
-            sendConfig();
+            sendFolder(newFolder);
         }
     }
 
     public void updateFolder(Folder newFolder) {
         synchronized (mConfigLock) {
-            removeFolderInternal(newFolder.id);
-            mConfig.folders.add(newFolder);
-            sendConfig();
+            Folder folder = deepCopy(newFolder, Folder.class);
+            List<Folder> folders = removeFolderInternal(folder.id);
+            folders.add(folder);
+            mConfig = mConfig.withFolders(folders);
+            sendFolder(folder);
         }
     }
 
     public void removeFolder(String id) {
         synchronized (mConfigLock) {
-            removeFolderInternal(id);
+            mConfig = mConfig.withFolders(removeFolderInternal(id));
             // mCompletion will be updated after the ConfigSaved event.
-            sendConfig();
+            deleteConfigObject(PutRequest.URI_CONFIG_FOLDERS + id);
             // Remove saved data from share activity for this folder.
         }
         PreferenceManager.getDefaultSharedPreferences(mContext).edit()
@@ -439,29 +593,28 @@ public class RestApi {
                 .apply();
     }
 
-    private void removeFolderInternal(String id) {
-        synchronized (mConfigLock) {
-            Iterator<Folder> it = mConfig.folders.iterator();
-            while (it.hasNext()) {
-                Folder f = it.next();
-                if (f.id.equals(id)) {
-                    it.remove();
-                    break;
-                }
-            }
+    /**
+     * Returns a copy of the current folder list without the folder with the given id.
+     */
+    private List<Folder> removeFolderInternal(String id) {
+        List<Folder> folders = new ArrayList<>(mConfig.config.folders);
+        Folder folder = mConfig.folderById.get(id);
+        if (folder != null) {
+            folders.remove(folder);
         }
+        return folders;
     }
 
     /**
      * Returns a list of all existing devices.
      *
+     * The devices are shared with the current config snapshot and must not be modified.
+     * Use {@link #getDeviceForEdit} to obtain a device that can be changed.
+     *
      * @param includeLocal True if the local device should be included in the result.
      */
     public List<Device> getDevices(boolean includeLocal) {
-        List<Device> devices;
-        synchronized (mConfigLock) {
-            devices = deepCopy(mConfig.devices, new TypeToken<List<Device>>(){}.getType());
-        }
+        List<Device> devices = new ArrayList<>(mConfig.config.devices);
 
         Iterator<Device> it = devices.iterator();
         while (it.hasNext()) {
@@ -475,16 +628,36 @@ public class RestApi {
         return devices;
     }
 
+    /**
+     * Returns a private copy of the device with the given id that may be modified and passed
+     * to {@link #editDevice}, or null if the device does not exist.
+     */
+    public Device getDeviceForEdit(String deviceId) {
+        Device device = getDevice(deviceId);
+        return (device != null) ? deepCopy(device, Device.class) : null;
+    }
+
+    /**
+     * Returns the device with the given id including the local device, or null if it does not
+     * exist. The device is shared with the current config snapshot and must not be modified.
+     */
+    public Device getDevice(String deviceId) {
+        return mConfig.deviceById.get(deviceId);
+    }
+
+    /**
+     * Returns the local device. It is shared with the current config snapshot and must not be
+     * modified.
+     */
     public Device getLocalDevice() {
-        List<Device> devices = getDevices(true);
-        if (devices.isEmpty()) {
+        ConfigSnapshot config = mConfig;
+        if (config.config.devices.isEmpty()) {
             throw new RuntimeException("RestApi.getLocalDevice: devices is empty.");
         }
         Log.v(TAG, "getLocalDevice: Looking for local device ID " + mLocalDeviceId);
-        for (Device d : devices) {
-            if (d.deviceID.equals(mLocalDeviceId)) {
-                return deepCopy(d, Device.class);
-            }
+        Device localDevice = config.deviceById.get(mLocalDeviceId);
+        if (localDevice != null) {
+            return localDevice;
         }
         throw new RuntimeException("RestApi.getLocalDevice: Failed to get the local device crucial to continuing execution.");
     }
@@ -492,134 +665,228 @@ public class RestApi {
     public void addDevice(Device device, OnResultListener1<String> errorListener) {
         normalizeDeviceId(device.deviceID, normalizedId -> {
             synchronized (mConfigLock) {
-                mConfig.devices.add(device);
-                sendConfig();
+                Device newDevice = deepCopy(device, Device.class);
+                List<Device> devices = new ArrayList<>(mConfig.config.devices);
+                devices.add(newDevice);
+                mConfig = mConfig.withDevices(devices);
+                sendDevice(newDevice);
             }
         }, errorListener);
     }
 
     public void editDevice(Device newDevice) {
         synchronized (mConfigLock) {
-            removeDeviceInternal(newDevice.deviceID);
-            mConfig.devices.add(newDevice);
-            sendConfig();
+            Device device = deepCopy(newDevice, Device.class);
+            List<Device> devices = removeDeviceInternal(device.deviceID);
+            devices.add(device);
+            mConfig = mConfig.withDevices(devices);
+            sendDevice(device);
         }
     }
 
     public void removeDevice(String deviceId) {
         synchronized (mConfigLock) {
-            removeDeviceInternal(deviceId);
+            mConfig = mConfig.withDevices(removeDeviceInternal(deviceId));
             // mCompletion will be updated after the ConfigSaved event.
-            sendConfig();
+            deleteConfigObject(PutRequest.URI_CONFIG_DEVICES + deviceId);
         }
     }
 
-    private void removeDeviceInternal(String deviceId) {
-        synchronized (mConfigLock) {
-            Iterator<Device> it = mConfig.devices.iterator();
-            while (it.hasNext()) {
-                Device d = it.next();
-                if (d.deviceID.equals(deviceId)) {
-                    it.remove();
-                    break;
-                }
-            }
+    /**
+     * Returns a copy of the current device list without the device with the given id.
+     */
+    private List<Device> removeDeviceInternal(String deviceId) {
+        List<Device> devices = new ArrayList<>(mConfig.config.devices);
+        Device device = mConfig.deviceById.get(deviceId);
+        if (device != null) {
+            devices.remove(device);
         }
+        return devices;
     }
 
+    /**
+     * Returns the options, shared with the current config snapshot. They must not be modified,
+     * use {@link #getOptionsForEdit} instead.
+     */
     public Options getOptions() {
-        synchronized (mConfigLock) {
-            return deepCopy(mConfig.options, Options.class);
-        }
+        return mConfig.config.options;
     }
 
+    public Options getOptionsForEdit() {
+        return deepCopy(mConfig.config.options, Options.class);
+    }
+
+    /**
+     * Returns the GUI config, shared with the current config snapshot. It must not be modified,
+     * use {@link #getGuiForEdit} instead.
+     */
     public Config.Gui getGui() {
-        synchronized (mConfigLock) {
-            return deepCopy(mConfig.gui, Config.Gui.class);
-        }
+        return mConfig.config.gui;
+    }
+
+    public Config.Gui getGuiForEdit() {
+        return deepCopy(mConfig.config.gui, Config.Gui.class);
     }
 
     public void editSettings(Config.Gui newGui, Options newOptions) {
         synchronized (mConfigLock) {
-            mConfig.gui = newGui;
-            mConfig.options = newOptions;
+            mGuiChanged |= !JsonCodec.toJson(newGui).equals(JsonCodec.toJson(mConfig.config.gui));
+            mOptionsChanged |=
+                    !JsonCodec.toJson(newOptions).equals(JsonCodec.toJson(mConfig.config.options));
+            mConfig = mConfig.withGuiAndOptions(deepCopy(newGui, Config.Gui.class),
+                    deepCopy(newOptions, Options.class));
         }
     }
 
     /**
      * Returns a deep copy of object.
      *
-     * This method uses Gson and only works with objects that can be converted with Gson.
+     * This method uses {@link JsonCodec} and only works with objects that can be converted by it.
      */
     private <T> T deepCopy(T object, Type type) {
-        Gson gson = new Gson();
-        return gson.fromJson(gson.toJson(object, type), type);
+        return JsonCodec.deepCopy(object, type);
     }
 
     /**
      * Requests and parses information about current system status and resource usage.
+     *
+     * Concurrent calls share one request, and results are reused for
+     * {@link #SYSTEM_INFO_CACHE_TTL_MS}.
      */
     public void getSystemInfo(OnResultListener1<SystemInfo> listener) {
-        new GetRequest(mContext, mUrl, GetRequest.URI_SYSTEM, mApiKey, null, result ->
-                listener.onResult(new Gson().fromJson(result, SystemInfo.class)));
+        mResponseCache.get(GetRequest.URI_SYSTEM, SYSTEM_INFO_CACHE_TTL_MS, (onSuccess, onError) ->
+                new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_SYSTEM, mApiKey, null,
+                        SystemInfo.class, onSuccess, onError),
+                listener);
     }
 
     public boolean isConfigLoaded() {
-        synchronized(mConfigLock) {
-            return mConfig != null;
-        }
+        return mConfig != null;
     }
 
     /**
-     * Requests and parses system version information.
+     * Requests and parses system version information. The version can only change by
+     * restarting the binary, which also creates a new RestApi, so it is requested only once.
      */
     public void getSystemVersion(OnResultListener1<SystemVersion> listener) {
-        new GetRequest(mContext, mUrl, GetRequest.URI_VERSION, mApiKey, null, result -> {
-            SystemVersion systemVersion = new Gson().fromJson(result, SystemVersion.class);
-            listener.onResult(systemVersion);
-        });
+        mResponseCache.get(GetRequest.URI_VERSION, ApiResponseCache.TTL_FOREVER, (onSuccess, onError) ->
+                new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_VERSION, mApiKey, null,
+                        SystemVersion.class, onSuccess, onError),
+                listener);
     }
 
     /**
-     * Returns connection info for the local device and all connected devices.
+     * Returns connection info for the local device and all connected devices from
+     * {@link #mConnectionTracker}, without a request. The result is delivered on the main thread
+     * and must not be modified.
+     *
+     * Transfer rates are only up to date while a rate consumer is registered with
+     * {@link #getConnectionTracker}.
      */
     public void getConnections(final OnResultListener1<Connections> listener) {
-        new GetRequest(mContext, mUrl, GetRequest.URI_CONNECTIONS, mApiKey, null, result -> {
-            Long now = System.currentTimeMillis();
-            Long msElapsed = now - mPreviousConnectionTime;
-            if (msElapsed < Constants.GUI_UPDATE_INTERVAL) {
-                listener.onResult(deepCopy(mPreviousConnections.get(), Connections.class));
-                return;
-            }
-
-            mPreviousConnectionTime = now;
-            Connections connections = new Gson().fromJson(result, Connections.class);
+        mMainThreadHandler.post(() -> {
+            Connections connections = mConnectionTracker.getConnections();
             for (Map.Entry<String, Connections.Connection> e : connections.connections.entrySet()) {
                 e.getValue().completion = mCompletion.getDeviceCompletion(e.getKey());
-
-                Connections.Connection prev =
-                        (mPreviousConnections.isPresent() && mPreviousConnections.get().connections.containsKey(e.getKey()))
-                                ? mPreviousConnections.get().connections.get(e.getKey())
-                                : new Connections.Connection();
-                e.getValue().setTransferRate(prev, msElapsed);
             }
-            Connections.Connection prev =
-                    mPreviousConnections.transform(c -> c.total).or(new Connections.Connection());
-            connections.total.setTransferRate(prev, msElapsed);
-            mPreviousConnections = Optional.of(connections);
-            listener.onResult(deepCopy(connections, Connections.class));
+            listener.onResult(connections);
         });
     }
 
     /**
-     * Returns status information about the folder with the given id.
+     * Returns the tracker holding the connection state of each device.
+     */
+    public ConnectionTracker getConnectionTracker() {
+        return mConnectionTracker;
+    }
+
+    /**
+     * Requests the full connection state, e.g. after syncthing was unreachable and events may
+     * have been missed. Afterwards, it is kept up to date from events.
+     */
+    public void refreshConnections() {
+        mConnectionTracker.refresh();
+    }
+
+    /**
+     * Returns the store holding the latest status of each folder.
      */
-    public void getFolderStatus(final String folderId, final OnResultListener2<String, FolderStatus> listener) {
-        new GetRequest(mContext, mUrl, GetRequest.URI_STATUS, mApiKey,
-                    ImmutableMap.of("folder", folderId), result -> {
-            FolderStatus m = new Gson().fromJson(result, FolderStatus.class);
-            mCachedFolderStatuses.put(folderId, m);
-            listener.onResult(folderId, m);
+    public FolderStateStore getFolderStateStore() {
+        return mFolderStateStore;
+    }
+
+    /**
+     * Returns the completion of remote devices, which is updated from FolderCompletion events.
+     * It may be read from any thread.
+     */
+    public Completion getCompletion() {
+        return mCompletion;
+    }
+
+    /**
+     * Requests the full status of all folders, e.g. after syncthing was restarted or unreachable
+     * and events may have been missed. Afterwards, statuses are kept up to date from events.
+     *
+     * At most {@link #MAX_CONCURRENT_FOLDER_STATUS_REQUESTS} requests run at the same time.
+     */
+    public void refreshFolderStatuses() {
+        if (mConfig == null) {
+            return;
+        }
+        requestFolderStatuses(mConfig.folderById.keySet());
+    }
+
+    /**
+     * Requests the status of folders that are configured but not in the store yet, e.g. after a
+     * folder was added, and drops the status of removed folders.
+     */
+    private void updateFolderStateStore(ConfigSnapshot config) {
+        mFolderStateStore.retainFolders(config.folderById.keySet());
+        List<String> missing = new ArrayList<>();
+        for (String folderId : config.folderById.keySet()) {
+            if (!mFolderStateStore.hasFolderStatus(folderId)) {
+                missing.add(folderId);
+            }
+        }
+        requestFolderStatuses(missing);
+    }
+
+    private void requestFolderStatuses(Collection<String> folderIds) {
+        final List<String> queue = new ArrayList<>();
+        for (String folderId : folderIds) {
+            // Queued folders count as in flight, too.
+            if (mFolderStatusRequestsInFlight.add(folderId)) {
+                queue.add(folderId);
+            }
+        }
+        Runnable requestNext = new Runnable() {
+            @Override
+            public void run() {
+                if (!queue.isEmpty()) {
+                    requestFolderStatus(queue.remove(queue.size() - 1), this);
+                }
+            }
+        };
+        int concurrent = Math.min(queue.size(), MAX_CONCURRENT_FOLDER_STATUS_REQUESTS);
+        for (int i = 0; i < concurrent; i++) {
+            requestNext.run();
+        }
+    }
+
+    /**
+     * Requests the status of a single folder and stores it in {@link #mFolderStateStore}.
+     * onDone is called after the request finished, whether it succeeded or not.
+     */
+    private void requestFolderStatus(final String folderId, final Runnable onDone) {
+        mFolderStatusRequestsInFlight.add(folderId);
+        new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_STATUS, mApiKey,
+                    ImmutableMap.of("folder", folderId), FolderStatus.class, m -> {
+            mFolderStatusRequestsInFlight.remove(folderId);
+            mFolderStateStore.setFolderStatus(folderId, m);
+            onDone.run();
+        }, error -> {
+            mFolderStatusRequestsInFlight.remove(folderId);
+            onDone.run();
         });
     }
 
@@ -638,6 +905,11 @@ public class RestApi {
          *               the next round of event processing.
          */
         void onDone(long lastId);
+
+        /**
+         * Called if the events could not be retrieved, e.g. because Syncthing is not reachable.
+         */
+        void onError();
     }
 
     /**
@@ -646,16 +918,48 @@ public class RestApi {
      * The OnReceiveEventListeners onEvent method is called for each event.
      */
     public final void getEvents(final long sinceId, final long limit, final OnReceiveEventListener listener) {
-        Map<String, String> params =
-                ImmutableMap.of("since", String.valueOf(sinceId), "limit", String.valueOf(limit));
-        new GetRequest(mContext, mUrl, GetRequest.URI_EVENTS, mApiKey, params, result -> {
-            JsonArray jsonEvents = new JsonParser().parse(result).getAsJsonArray();
-            long lastId = 0;
+        getEvents(sinceId, limit, 0, null, listener);
+    }
 
-            for (int i = 0; i < jsonEvents.size(); i++) {
-                JsonElement json = jsonEvents.get(i);
-                Event event = new Gson().fromJson(json, Event.class);
+    /**
+     * Retrieves the events that have accumulated since the given event id.
+     *
+     * @param timeoutS If greater than zero, syncthing holds the request open for up to this many
+     *                 seconds until at least one new event is available (long polling).
+     * @param eventTypes If not null, only events of these types are returned.
+     */
+    public void getEvents(final long sinceId, final long limit, final int timeoutS,
+                          @Nullable final Collection<String> eventTypes,
+                          final OnReceiveEventListener listener) {
+        getEvents(GetRequest.URI_EVENTS, sinceId, limit, timeoutS, eventTypes, listener);
+    }
 
+    /**
+     * Retrieves the LocalChangeDetected and RemoteChangeDetected events that have accumulated
+     * since the given event id. These are kept in a separate, much smaller stream by syncthing,
+     * with its own event ids.
+     *
+     * @param timeoutS If greater than zero, syncthing holds the request open for up to this many
+     *                 seconds until at least one new event is available (long polling).
+     */
+    public final void getDiskEvents(final long sinceId, final long limit, final int timeoutS,
+                                    final OnReceiveEventListener listener) {
+        getEvents(GetRequest.URI_EVENTS_DISK, sinceId, limit, timeoutS, null, listener);
+    }
+
+    private void getEvents(String uri, long sinceId, long limit, int timeoutS,
+                           @Nullable Collection<String> eventTypes,
+                           OnReceiveEventListener listener) {
+        Map<String, String> params = new HashMap<>();
+        params.put("since", String.valueOf(sinceId));
+        params.put("limit", String.valueOf(limit));
+        if (eventTypes != null) {
+            params.put("events", TextUtils.join(",", eventTypes));
+        }
+        ApiRequest.OnTypedSuccessListener<List<Event>> onSuccess = events -> {
+            long lastId = 0;
+
+            for (Event event : events) {
                 if (lastId < event.id)
                     lastId = event.id;
 
@@ -663,7 +967,20 @@ public class RestApi {
             }
 
             listener.onDone(lastId);
-        });
+        };
+        ApiRequest.OnErrorListener onError = error -> {
+            Log.w(TAG, "getEvents: Failed to retrieve events from " + uri + ", " + error.getMessage());
+            listener.onError();
+        };
+        if (timeoutS > 0) {
+            params.put("timeout", String.valueOf(timeoutS));
+            int requestTimeoutMs = (int) TimeUnit.SECONDS.toMillis(timeoutS + LONG_POLL_TIMEOUT_MARGIN_S);
+            new TypedGetRequest<>(mContext, mUrl, uri, mApiKey, params,
+                    requestTimeoutMs, JsonCodec::eventsFromJson, onSuccess, onError);
+        } else {
+            new TypedGetRequest<>(mContext, mUrl, uri, mApiKey, params,
+                    JsonCodec::eventsFromJson, onSuccess, onError);
+        }
     }
 
     /**
@@ -673,7 +990,7 @@ public class RestApi {
                                    OnResultListener1<String> errorListener) {
         new GetRequest(mContext, mUrl, GetRequest.URI_DEVICEID, mApiKey,
                 ImmutableMap.of("id", id), result -> {
-            JsonObject json = new JsonParser().parse(result).getAsJsonObject();
+            JsonObject json = JsonCodec.parse(result).getAsJsonObject();
             JsonElement normalizedId = json.get("id");
             JsonElement error = json.get("error");
             if (normalizedId != null)
@@ -696,7 +1013,7 @@ public class RestApi {
      */
     public void getUsageReport(final OnResultListener1<String> listener) {
         new GetRequest(mContext, mUrl, GetRequest.URI_REPORT, mApiKey, null, result -> {
-            JsonElement json = new JsonParser().parse(result);
+            JsonElement json = JsonCodec.parse(result);
             Gson gson = new GsonBuilder().setPrettyPrinting().create();
             listener.onResult(gson.toJson(json));
         });
@@ -716,14 +1033,15 @@ public class RestApi {
     }
 
     public void setUsageReporting(Boolean acceptUsageReporting) {
-        Options options = getOptions();
-        if (options == null) {
+        if (getOptions() == null) {
             Log.e(TAG, "setUsageReporting called while options == null");
             return;
         }
-        options.urAccepted = acceptUsageReporting ? mUrVersionMax : Options.USAGE_REPORTING_DENIED;
         synchronized (mConfigLock) {
-            mConfig.options = options;
+            Options options = deepCopy(mConfig.config.options, Options.class);
+            options.urAccepted = acceptUsageReporting ? mUrVersionMax : Options.USAGE_REPORTING_DENIED;
+            mConfig = mConfig.withGuiAndOptions(mConfig.config.gui, options);
+            mOptionsChanged = true;
         }
     }
 
@@ -0,0 +1,52 @@
+package com.nutomic.syncthingandroid.service;
+
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interns strings that repeat across many entries, like event types and folder or device ids,
+ * so entries can refer to them by index. The table only grows with the number of distinct
+ * values, which is small. Not thread-safe.
+ */
+class StringTable {
+
+    private final List<String> mValues = new ArrayList<>();
+    private final Map<String, Integer> mIndexes = new HashMap<>();
+
+    /**
+     * Returns the index of value, or -1 if value is null.
+     */
+    int intern(@Nullable String value) {
+        if (value == null) {
+            return -1;
+        }
+        Integer index = mIndexes.get(value);
+        if (index == null) {
+            index = mValues.size();
+            mValues.add(value);
+            mIndexes.put(value, index);
+        }
+        return index;
+    }
+
+    /**
+     * Returns the index of value, or -1 if it was never interned.
+     */
+    int indexOf(String value) {
+        Integer index = mIndexes.get(value);
+        return (index != null) ? index : -1;
+    }
+
+    @Nullable
+    String get(int index) {
+        return (index >= 0) ? mValues.get(index) : null;
+    }
+
+    int size() {
+        return mValues.size();
+    }
+}
@@ -11,28 +11,23 @@ import android.text.TextUtils;
 import android.util.Log;
 
 import com.google.common.base.Charsets;
-import com.google.common.io.Files;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.SyncthingApp;
 import com.nutomic.syncthingandroid.service.Constants;
 import com.nutomic.syncthingandroid.util.Util;
 
 import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.LineNumberReader;
 import java.security.InvalidParameterException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
 import javax.inject.Inject;
@@ -49,9 +44,26 @@ public class SyncthingRunnable implements Runnable {
     private static final String TAG = "SyncthingRunnable";
     private static final String TAG_NATIVE = "SyncthingNativeCode";
     private static final String TAG_NICE = "SyncthingRunnableIoNice";
-    private static final int LOG_FILE_MAX_LINES = 10;
+
+    /**
+     * Signal numbers for {@link android.os.Process#sendSignal}, which only defines some of them.
+     */
+    private static final int SIGINT = 2;
+    private static final int SIGKILL = android.os.Process.SIGNAL_KILL;
+
+    /**
+     * Interval at which killSyncthing() checks if a process exited.
+     */
+    private static final long EXIT_POLL_INTERVAL = 50;
 
     private static final AtomicReference<Process> mSyncthing = new AtomicReference<>();
+
+    /**
+     * Pid of {@link #mSyncthing}, or -1. In root mode this is the pid of su rather than syncthing,
+     * and is ignored because its cmdline doesn't match.
+     */
+    private static final AtomicInteger mSyncthingPid = new AtomicInteger(-1);
+    private static final ProcScanner mProcScanner = new ProcScanner();
     private final Context mContext;
     private final File mSyncthingBinary;
     private String[] mCommand;
@@ -59,6 +71,7 @@ public class SyncthingRunnable implements Runnable {
     @Inject SharedPreferences mPreferences;
     private final boolean mUseRoot;
     @Inject NotificationHandler mNotificationHandler;
+    @Inject NativeLogBuffer mNativeLogBuffer;
 
     public enum Command {
         deviceid,           // Output the device ID to the command line.
@@ -109,7 +122,6 @@ public class SyncthingRunnable implements Runnable {
 
     @SuppressLint("WakelockTimeout")
     public String run(boolean returnStdOut) {
-        trimLogFile();
         int ret;
         String capturedStdOut = "";
         // Make sure Syncthing is executable
@@ -122,6 +134,7 @@ public class SyncthingRunnable implements Runnable {
         }
         // Loop Syncthing
         Process process = null;
+        NativeLogPipeline logPipeline = null;
         // Potential fix for #498, keep the CPU running while native binary is running
         PowerManager pm = (PowerManager) mContext.getSystemService(Context.POWER_SERVICE);
         PowerManager.WakeLock wakeLock = useWakeLock()
@@ -136,9 +149,8 @@ public class SyncthingRunnable implements Runnable {
             process = setupAndLaunch(targetEnv);
 
             mSyncthing.set(process);
+            mSyncthingPid.set(ProcScanner.getPid(process));
 
-            Thread lInfo = null;
-            Thread lWarn = null;
             if (returnStdOut) {
                 BufferedReader br = null;
                 try {
@@ -155,8 +167,8 @@ public class SyncthingRunnable implements Runnable {
                         br.close();
                 }
             } else {
-                lInfo = log(process.getInputStream(), Log.INFO, true);
-                lWarn = log(process.getErrorStream(), Log.WARN, true);
+                logPipeline = new NativeLogPipeline(mLogFile, mNativeLogBuffer,
+                        process.getInputStream(), process.getErrorStream());
             }
 
             niceSyncthing();
@@ -164,10 +176,9 @@ public class SyncthingRunnable implements Runnable {
             ret = process.waitFor();
             Log.i(TAG, "Syncthing exited with code " + ret);
             mSyncthing.set(null);
-            if (lInfo != null)
-                lInfo.join();
-            if (lWarn != null)
-                lWarn.join();
+            mSyncthingPid.set(-1);
+            if (logPipeline != null)
+                logPipeline.join();
 
             switch (ret) {
                 case 0:
@@ -192,6 +203,10 @@ public class SyncthingRunnable implements Runnable {
         } finally {
             if (wakeLock != null)
                 wakeLock.release();
+            // Only stops the threads if they didn't finish yet, e.g. because waiting for the
+            // binary was interrupted.
+            if (logPipeline != null)
+                logPipeline.close();
             if (process != null)
                 process.destroy();
         }
@@ -217,16 +232,61 @@ public class SyncthingRunnable implements Runnable {
     }
 
     /**
-     * Look for running libsyncthing.so processes and return an array
+     * Look for running libsyncthing.so processes and return a list
      * containing the PIDs of found instances.
+     *
+     * The process started by us is taken from its cached pid, other instances, e.g. left over
+     * from a previous app process, are found by reading /proc. Only in root mode, when /proc
+     * hides the processes of other users like syncthing running as root, this falls back to
+     * running ps in a root shell.
+     */
+    private List<Integer> getSyncthingPIDs() {
+        long start = SystemClock.elapsedRealtime();
+        List<Integer> syncthingPIDs = new ArrayList<>();
+        int ownPID = mSyncthingPid.get();
+        if (ownPID > 0 && mProcScanner.isRunning(ownPID, Constants.FILENAME_SYNCTHING_BINARY)) {
+            syncthingPIDs.add(ownPID);
+        }
+
+        List<Integer> foundPIDs = (mUseRoot && mProcScanner.isRestricted())
+                ? null
+                : mProcScanner.findProcesses(Constants.FILENAME_SYNCTHING_BINARY);
+        if (foundPIDs == null) {
+            foundPIDs = getSyncthingPIDsFromShell();
+        }
+        for (Integer syncthingPID : foundPIDs) {
+            if (!syncthingPIDs.contains(syncthingPID)) {
+                Log.v(TAG, "getSyncthingPIDs: Found process PID [" + syncthingPID + "]");
+                syncthingPIDs.add(syncthingPID);
+            }
+        }
+        Log.v(TAG, "getSyncthingPIDs: Took " + (SystemClock.elapsedRealtime() - start) + " ms");
+        return syncthingPIDs;
+    }
+
+    /**
+     * Returns the pid of the running syncthing binary, or -1 if it isn't running or hidden from
+     * us in /proc. Used by {@link ProcessStatsSampler}.
      */
-    private List<String> getSyncthingPIDs() {
-        List<String> syncthingPIDs = new ArrayList<String>();
+    static int findSyncthingPid() {
+        int ownPID = mSyncthingPid.get();
+        if (ownPID > 0 && mProcScanner.isRunning(ownPID, Constants.FILENAME_SYNCTHING_BINARY)) {
+            return ownPID;
+        }
+        List<Integer> foundPIDs = mProcScanner.findProcesses(Constants.FILENAME_SYNCTHING_BINARY);
+        return (foundPIDs != null && !foundPIDs.isEmpty()) ? foundPIDs.get(0) : -1;
+    }
+
+    /**
+     * Lists running libsyncthing.so processes by parsing the output of ps in a root shell.
+     */
+    private List<Integer> getSyncthingPIDsFromShell() {
+        List<Integer> syncthingPIDs = new ArrayList<>();
         Process ps = null;
         DataOutputStream psOut = null;
         BufferedReader br = null;
         try {
-            ps = Runtime.getRuntime().exec((mUseRoot) ? "su" : "sh");
+            ps = Runtime.getRuntime().exec("su");
             psOut = new DataOutputStream(ps.getOutputStream());
             psOut.writeBytes("ps\n");
             psOut.writeBytes("exit\n");
@@ -236,9 +296,11 @@ public class SyncthingRunnable implements Runnable {
             String line;
             while ((line = br.readLine()) != null) {
                 if (line.contains(Constants.FILENAME_SYNCTHING_BINARY)) {
-                    String syncthingPID = line.trim().split("\\s+")[1];
-                    Log.v(TAG, "getSyncthingPIDs: Found process PID [" + syncthingPID + "]");
-                    syncthingPIDs.add(syncthingPID);
+                    try {
+                        syncthingPIDs.add(Integer.parseInt(line.trim().split("\\s+")[1]));
+                    } catch (NumberFormatException | ArrayIndexOutOfBoundsException e) {
+                        Log.w(TAG, "Failed to parse ps output: " + line);
+                    }
                 }
             }
         } catch (IOException | InterruptedException e) {
@@ -284,14 +346,14 @@ public class SyncthingRunnable implements Runnable {
             return;
         }
 
-        List<String> syncthingPIDs = getSyncthingPIDs();
+        List<Integer> syncthingPIDs = getSyncthingPIDs();
         if (syncthingPIDs.isEmpty()) {
             Log.i(TAG_NICE, "Found no running instances of " + Constants.FILENAME_SYNCTHING_BINARY);
             return;
         }
 
         // Ionice all running syncthing processes.
-        for (String syncthingPID : syncthingPIDs) {
+        for (Integer syncthingPID : syncthingPIDs) {
             // Set best-effort, low priority using ionice.
             int exitCode = Util.runShellCommand("/system/bin/ionice " + syncthingPID + " be 7\n", true);
             Log.i(TAG_NICE, "ionice returned " + Integer.toString(exitCode) +
@@ -308,21 +370,25 @@ public class SyncthingRunnable implements Runnable {
      */
     public void killSyncthing() {
         for (int i = 0; i < 2; i++) {
-            List<String> syncthingPIDs = getSyncthingPIDs();
+            List<Integer> syncthingPIDs = getSyncthingPIDs();
             if (syncthingPIDs.isEmpty()) {
                 Log.d(TAG, "killSyncthing: Found no more running instances of " + Constants.FILENAME_SYNCTHING_BINARY);
                 break;
             }
 
             int exitCode;
-            for (String syncthingPID : syncthingPIDs) {
+            for (Integer syncthingPID : syncthingPIDs) {
                 if (i > 0) {
-                    // Force termination of the process by sending SIGKILL.
-                    SystemClock.sleep(3000);
-                    exitCode = Util.runShellCommand("kill -SIGKILL " + syncthingPID + "\n", mUseRoot);
+                    // Force termination of the process by sending SIGKILL,
+                    // unless it exits by itself meanwhile.
+                    if (waitForExit(syncthingPID, 3000)) {
+                        Log.d(TAG, "Syncthing process " + syncthingPID + " exited");
+                        continue;
+                    }
+                    exitCode = sendSignal(syncthingPID, SIGKILL);
                 } else {
-                    exitCode = Util.runShellCommand("kill -SIGINT " + syncthingPID + "\n", mUseRoot);
-                    SystemClock.sleep(1000);
+                    exitCode = sendSignal(syncthingPID, SIGINT);
+                    waitForExit(syncthingPID, 1000);
                 }
                 if (exitCode == 0) {
                     Log.d(TAG, "Killed Syncthing process " + syncthingPID);
@@ -335,72 +401,40 @@ public class SyncthingRunnable implements Runnable {
     }
 
     /**
-     * Logs the outputs of a stream to logcat and mNativeLog.
+     * Sends signal to pid, directly if it belongs to our user, otherwise through a root shell.
      *
-     * @param is The stream to log.
-     * @param priority The priority level.
-     * @param saveLog True if the log should be stored to {@link #mLogFile}.
+     * @return Exit code of kill, always 0 without root.
      */
-    private Thread log(final InputStream is, final int priority, final boolean saveLog) {
-        Thread t = new Thread(() -> {
-            BufferedReader br = null;
-            try {
-                br = new BufferedReader(new InputStreamReader(is, Charsets.UTF_8));
-                String line;
-                while ((line = br.readLine()) != null) {
-                    Log.println(priority, TAG_NATIVE, line);
-
-                    if (saveLog) {
-                        Files.append(line + "\n", mLogFile, Charsets.UTF_8);
-                    }
-                }
-            } catch (IOException e) {
-                Log.w(TAG, "Failed to read Syncthing's command line output", e);
-            }
-            if (br != null) {
-                try {
-                    br.close();
-                } catch (IOException e) {
-                    Log.w(TAG, "log: Failed to close bufferedReader", e);
-                }
-            }
-        });
-        t.start();
-        return t;
+    private int sendSignal(int pid, int signal) {
+        if (mUseRoot) {
+            return Util.runShellCommand("kill -" + signal + " " + pid + "\n", true);
+        }
+        android.os.Process.sendSignal(pid, signal);
+        return 0;
     }
 
     /**
-     * Only keep last {@link #LOG_FILE_MAX_LINES} lines in log file, to avoid bloat.
+     * Waits until pid exited, at most timeout milliseconds.
+     *
+     * @return True if the process exited.
      */
-    private void trimLogFile() {
-        if (!mLogFile.exists())
-            return;
-
-        try {
-            LineNumberReader lnr = new LineNumberReader(new FileReader(mLogFile));
-            lnr.skip(Long.MAX_VALUE);
-
-            int lineCount = lnr.getLineNumber();
-            lnr.close();
-
-            File tempFile = new File(mContext.getExternalFilesDir(null), "syncthing.log.tmp");
-
-            BufferedReader reader = new BufferedReader(new FileReader(mLogFile));
-            BufferedWriter writer = new BufferedWriter(new FileWriter(tempFile));
-
-            String currentLine;
-            int startFrom = lineCount - LOG_FILE_MAX_LINES;
-            for (int i = 0; (currentLine = reader.readLine()) != null; i++) {
-                if (i > startFrom) {
-                    writer.write(currentLine + "\n");
-                }
+    private boolean waitForExit(int pid, long timeout) {
+        long deadline = SystemClock.elapsedRealtime() + timeout;
+        while (isRunning(pid)) {
+            if (SystemClock.elapsedRealtime() >= deadline) {
+                return false;
             }
-            writer.close();
-            reader.close();
-            tempFile.renameTo(mLogFile);
-        } catch (IOException e) {
-            Log.w(TAG, "Failed to trim log file", e);
+            SystemClock.sleep(EXIT_POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    private boolean isRunning(int pid) {
+        if (mUseRoot && mProcScanner.isRestricted()) {
+            // We can't see the process, so wait as long as allowed.
+            return true;
         }
+        return mProcScanner.isRunning(pid, Constants.FILENAME_SYNCTHING_BINARY);
     }
 
     private HashMap<String, String> buildEnvironment() {
@@ -12,13 +12,17 @@ import androidx.annotation.Nullable;
 import com.google.common.io.Files;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.SyncthingApp;
+import com.nutomic.syncthingandroid.http.ApiRequest;
 import com.nutomic.syncthingandroid.http.PollWebGuiAvailableTask;
+import com.nutomic.syncthingandroid.http.UnixSocketBridge;
 import com.nutomic.syncthingandroid.model.RunConditionCheckResult;
 import com.nutomic.syncthingandroid.util.ConfigXml;
 import com.nutomic.syncthingandroid.util.PermissionUtil;
 
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.util.HashSet;
@@ -146,8 +150,31 @@ public class SyncthingService extends Service {
 
     private ConfigXml mConfig;
     private @Nullable PollWebGuiAvailableTask mPollWebGuiAvailableTask = null;
+    /**
+     * Forwards a loopback port to the GUI socket for the web GUI. Any app on the device can
+     * connect to the port, so it is only open while the web GUI is shown.
+     */
+    private @Nullable UnixSocketBridge mGuiBridge = null;
+    private int mGuiBridgeUsers = 0;
     private @Nullable RestApi mApi = null;
     private @Nullable EventProcessor mEventProcessor = null;
+    private @Nullable DiskEventProcessor mDiskEventProcessor = null;
+
+    /**
+     * Forwards events to activities and fragments. Outlives restarts of syncthing, so
+     * subscriptions stay valid.
+     */
+    private final EventBus mEventBus = new EventBus();
+
+    /**
+     * Recent events for troubleshooting. Kept across restarts of syncthing.
+     */
+    private final EventJournal mEventJournal = new EventJournal();
+
+    /**
+     * Resource usage of the syncthing binary, sampled while someone is looking.
+     */
+    private final ProcessStatsSampler mProcessStatsSampler = new ProcessStatsSampler();
     private @Nullable RunConditionMonitor mRunConditionMonitor = null;
     private @Nullable SyncthingRunnable mSyncthingRunnable = null;
     private StartupTask mStartupTask = null;
@@ -391,10 +418,14 @@ public class SyncthingService extends Service {
       * Callback on {@link StartupTask#onPostExecute}.
       */
      private void onStartupTaskCompleteListener() {
+         // Route API requests over the GUI socket if enabled.
+         File guiSocket = mConfig.getGuiSocketFile();
+         ApiRequest.setUnixSocket(guiSocket);
+
          if (mApi == null) {
-             mApi = new RestApi(this, mConfig.getWebGuiUrl(), mConfig.getApiKey(),
+             mApi = new RestApi(this, getWebGuiUrl(), mConfig.getApiKey(),
                                  this::onApiAvailable, () -> onServiceStateChange(mCurrentState));
-             Log.i(TAG, "Web GUI will be available at " + mConfig.getWebGuiUrl());
+             Log.i(TAG, "Web GUI will be available at " + getWebGuiUrl());
          }
 
          // Start the syncthing binary.
@@ -402,6 +433,10 @@ public class SyncthingService extends Service {
              Log.e(TAG, "onStartupTaskCompleteListener: Syncthing binary lifecycle violated");
              return;
          }
+         // Syncthing cannot listen on its socket if a killed instance left the file behind.
+         if (guiSocket != null && guiSocket.exists() && !guiSocket.delete()) {
+             Log.w(TAG, "Failed to delete stale GUI socket " + guiSocket);
+         }
          mSyncthingRunnable = new SyncthingRunnable(this, SyncthingRunnable.Command.main);
          mSyncthingRunnableThread = new Thread(mSyncthingRunnable);
          mSyncthingRunnableThread.start();
@@ -416,7 +451,7 @@ public class SyncthingService extends Service {
          if (mPollWebGuiAvailableTask == null) {
              mPollWebGuiAvailableTask = new PollWebGuiAvailableTask(
                 this, getWebGuiUrl(), mConfig.getApiKey(), result -> {
-                    Log.i(TAG, "Web GUI has come online at " + mConfig.getWebGuiUrl());
+                    Log.i(TAG, "Web GUI has come online at " + getWebGuiUrl());
                     if (mApi != null) {
                         mApi.readConfigFromRestApi();
                     }
@@ -456,9 +491,13 @@ public class SyncthingService extends Service {
         }
 
         if (mEventProcessor == null) {
-            mEventProcessor = new EventProcessor(SyncthingService.this, mApi);
+            mEventProcessor = new EventProcessor(SyncthingService.this, mApi, mEventBus, mEventJournal);
             mEventProcessor.start();
         }
+        if (mDiskEventProcessor == null) {
+            mDiskEventProcessor = new DiskEventProcessor(SyncthingService.this, mApi, mEventJournal);
+            mDiskEventProcessor.start();
+        }
     }
 
     @Override
@@ -499,6 +538,7 @@ public class SyncthingService extends Service {
             Log.i(TAG, "Shutting down syncthing binary due to missing storage permission.");
             shutdown(State.DISABLED, () -> {});
         }
+        mProcessStatsSampler.shutdown();
         super.onDestroy();
     }
 
@@ -523,11 +563,22 @@ public class SyncthingService extends Service {
             mEventProcessor = null;
         }
 
+        if (mDiskEventProcessor != null) {
+            mDiskEventProcessor.stop();
+            mDiskEventProcessor = null;
+        }
+
         if (mApi != null) {
             mApi.shutdown();
             mApi = null;
         }
 
+        if (mGuiBridge != null) {
+            mGuiBridge.close();
+            mGuiBridge = null;
+        }
+        mGuiBridgeUsers = 0;
+
         if (mSyncthingRunnable != null) {
             mSyncthingRunnable.killSyncthing();
             if (mSyncthingRunnableThread != null) {
@@ -638,9 +689,42 @@ public class SyncthingService extends Service {
 
 
     public URL getWebGuiUrl() {
+        if (mGuiBridge != null) {
+            return mGuiBridge.getUrl();
+        }
         return mConfig.getWebGuiUrl();
     }
 
+    /**
+     * Returns the URL to load the web GUI from in a WebView. If syncthing listens on a Unix
+     * socket, a loopback port is forwarded to it until {@link #closeWebGuiBridge} was called
+     * as often as this.
+     */
+    public URL openWebGuiBridge() {
+        mGuiBridgeUsers++;
+        File guiSocket = mConfig.getGuiSocketFile();
+        if (guiSocket != null && mGuiBridge == null) {
+            try {
+                mGuiBridge = new UnixSocketBridge(guiSocket);
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to forward web GUI to " + guiSocket, e);
+            }
+        }
+        return getWebGuiUrl();
+    }
+
+    public void closeWebGuiBridge() {
+        if (mGuiBridgeUsers == 0) {
+            // Already closed by onDestroy.
+            return;
+        }
+        mGuiBridgeUsers--;
+        if (mGuiBridgeUsers == 0 && mGuiBridge != null) {
+            mGuiBridge.close();
+            mGuiBridge = null;
+        }
+    }
+
     public State getCurrentState() {
         return mCurrentState;
     }
@@ -649,6 +733,26 @@ public class SyncthingService extends Service {
         return mCurrentCheckResult.get();
     }
 
+    public EventBus getEventBus() {
+        return mEventBus;
+    }
+
+    public EventJournal getEventJournal() {
+        return mEventJournal;
+    }
+
+    public ProcessStatsSampler getProcessStatsSampler() {
+        return mProcessStatsSampler;
+    }
+
+    /**
+     * Prints the resource usage of the syncthing binary, see {@link ProcessStatsSampler#dump}.
+     */
+    @Override
+    protected void dump(FileDescriptor fd, PrintWriter writer, String[] args) {
+        mProcessStatsSampler.dump(writer);
+    }
+
     public NotificationHandler getNotificationHandler() {
         return mNotificationHandler;
     }
@@ -53,6 +53,11 @@ public class ConfigXml {
     private static final String TAG = "ConfigXml";
     private static final int FOLDER_ID_APPENDIX_LENGTH = 4;
 
+    /**
+     * GUI address restored when switching back from the Unix socket to TCP.
+     */
+    private static final String DEFAULT_GUI_ADDRESS = "127.0.0.1:8384";
+
     private final Context mContext;
     @Inject SharedPreferences mPreferences;
 
@@ -105,15 +110,39 @@ public class ConfigXml {
         Log.i(TAG, "Loaded Syncthing config file");
     }
 
+    /**
+     * Returns the URL of the web interface. If it listens on a Unix socket, the host is a
+     * placeholder and requests have to be routed over {@link #getGuiSocketFile()}.
+     */
     public URL getWebGuiUrl() {
+        if (getGuiSocketFile() != null) {
+            try {
+                return new URL("http://localhost");
+            } catch (MalformedURLException e) {
+                throw new RuntimeException(e);
+            }
+        }
         String urlProtocol = Constants.osSupportsTLS12() ? "https" : "http";
         try {
-            return new URL(urlProtocol + "://" + getGuiElement().getElementsByTagName("address").item(0).getTextContent());
+            return new URL(urlProtocol + "://" + getGuiAddress());
         } catch (MalformedURLException e) {
             throw new RuntimeException("Failed to parse web interface URL", e);
         }
     }
 
+    /**
+     * Returns the Unix socket the web interface listens on, or null if it listens on TCP.
+     * Syncthing treats absolute paths as Unix socket addresses.
+     */
+    public File getGuiSocketFile() {
+        String address = getGuiAddress();
+        return address.startsWith("/") ? new File(address) : null;
+    }
+
+    private String getGuiAddress() {
+        return getGuiElement().getElementsByTagName("address").item(0).getTextContent();
+    }
+
     public String getApiKey() {
         return getGuiElement().getElementsByTagName("apikey").item(0).getTextContent();
     }
@@ -125,8 +154,8 @@ public class ConfigXml {
     /**
      * Updates the config file.
      *
-     * Sets ignorePerms flag to true on every folder, force enables TLS, sets the
-     * username/password, and disables weak hash checking.
+     * Sets ignorePerms flag to true on every folder, force enables TLS or the Unix socket
+     * address, sets the username/password, and disables weak hash checking.
      */
     @SuppressWarnings("SdCardPath")
     public void updateIfNeeded() {
@@ -157,8 +186,31 @@ public class ConfigXml {
         /* Section - GUI */
         Element gui = getGuiElement();
 
+        // Listen on a Unix socket in our files dir if enabled. This is not possible when running
+        // as root, as the socket would not be accessible to the app.
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        boolean useUnixSocket = prefs.getBoolean(Constants.PREF_USE_UNIX_SOCKET_API, false) &&
+                !prefs.getBoolean(Constants.PREF_USE_ROOT, false);
+        // Remember the address the user configured, so it can be restored when the socket is
+        // turned off again.
+        if (useUnixSocket) {
+            if (getGuiSocketFile() == null) {
+                prefs.edit()
+                        .putString(Constants.PREF_GUI_ADDRESS_BEFORE_SOCKET, getGuiAddress())
+                        .apply();
+            }
+            String socketPath = Constants.getGuiSocketFile(mContext).getAbsolutePath();
+            changed = setConfigElement(gui, "address", socketPath) || changed;
+        } else if (getGuiSocketFile() != null) {
+            String address = prefs.getString(Constants.PREF_GUI_ADDRESS_BEFORE_SOCKET,
+                    DEFAULT_GUI_ADDRESS);
+            prefs.edit().remove(Constants.PREF_GUI_ADDRESS_BEFORE_SOCKET).apply();
+            changed = setConfigElement(gui, "address", address) || changed;
+        }
+
         // Platform-specific: Force REST API and Web UI access to use TLS 1.2 or not.
-        Boolean forceHttps = Constants.osSupportsTLS12();
+        // The Unix socket is only reachable from within the app, so it never uses TLS.
+        Boolean forceHttps = Constants.osSupportsTLS12() && !useUnixSocket;
         if (!gui.hasAttribute("tls") ||
                 Boolean.parseBoolean(gui.getAttribute("tls")) != forceHttps) {
             gui.setAttribute("tls", forceHttps ? "true" : "false");
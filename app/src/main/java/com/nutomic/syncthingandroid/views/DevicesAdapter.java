@@ -95,9 +95,8 @@ public class DevicesAdapter extends ArrayAdapter<Device> {
      * Requests new connection info for all devices visible in listView.
      */
     public void updateConnections(RestApi api) {
-        for (int i = 0; i < getCount(); i++) {
-            api.getConnections(this::onReceiveConnections);
-        }
+        // One response contains the connections of all devices.
+        api.getConnections(this::onReceiveConnections);
     }
 
     private void onReceiveConnections(Connections connections) {
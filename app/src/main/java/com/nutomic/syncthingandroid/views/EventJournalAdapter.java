@@ -0,0 +1,61 @@
+package com.nutomic.syncthingandroid.views;
+
+import android.content.Context;
+import android.text.TextUtils;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ArrayAdapter;
+import android.widget.TextView;
+
+import androidx.annotation.NonNull;
+
+import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.service.EventJournal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Generates item views for entries of the {@link EventJournal}.
+ */
+public class EventJournalAdapter extends ArrayAdapter<EventJournal.Entry> {
+
+    public EventJournalAdapter(Context context) {
+        super(context, R.layout.item_event_journal);
+    }
+
+    @Override
+    @NonNull
+    public View getView(int position, View convertView, @NonNull ViewGroup parent) {
+        if (convertView == null) {
+            convertView = LayoutInflater.from(getContext())
+                    .inflate(R.layout.item_event_journal, parent, false);
+        }
+
+        TextView type = convertView.findViewById(R.id.type);
+        TextView time = convertView.findViewById(R.id.time);
+        TextView details = convertView.findViewById(R.id.details);
+
+        EventJournal.Entry entry = getItem(position);
+        type.setText(entry.type);
+        time.setText(DateUtils.formatDateTime(getContext(), entry.time,
+                DateUtils.FORMAT_SHOW_TIME | DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NUMERIC_DATE));
+
+        List<String> parts = new ArrayList<>();
+        if (entry.folderId != null) {
+            parts.add(getContext().getString(R.string.recent_activity_folder, entry.folderId));
+        }
+        if (entry.deviceId != null) {
+            parts.add(getContext().getString(R.string.recent_activity_device,
+                    entry.deviceId.substring(0, Math.min(7, entry.deviceId.length()))));
+        }
+        if (!TextUtils.isEmpty(entry.description)) {
+            parts.add(entry.description);
+        }
+        details.setText(TextUtils.join("\n", parts));
+        details.setVisibility(parts.isEmpty() ? View.GONE : View.VISIBLE);
+        return convertView;
+    }
+}
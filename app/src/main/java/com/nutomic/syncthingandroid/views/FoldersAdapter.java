@@ -7,8 +7,10 @@ import androidx.databinding.DataBindingUtil;
 import android.graphics.Color;
 import android.net.Uri;
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 import android.text.TextUtils;
+import android.text.format.DateUtils;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -20,15 +22,15 @@ import android.widget.Toast;
 import com.google.android.material.color.MaterialColors;
 import com.nutomic.syncthingandroid.R;
 import com.nutomic.syncthingandroid.databinding.ItemFolderListBinding;
+import com.nutomic.syncthingandroid.model.Completion;
 import com.nutomic.syncthingandroid.model.Folder;
 import com.nutomic.syncthingandroid.model.FolderStatus;
 import com.nutomic.syncthingandroid.service.Constants;
-import com.nutomic.syncthingandroid.service.RestApi;
+import com.nutomic.syncthingandroid.service.FolderStateStore;
 import com.nutomic.syncthingandroid.service.SyncthingService;
 import com.nutomic.syncthingandroid.util.Util;
 
 import java.io.File;
-import java.util.HashMap;
 
 import static android.view.View.GONE;
 import static android.view.View.VISIBLE;
@@ -40,7 +42,8 @@ public class FoldersAdapter extends ArrayAdapter<Folder> {
 
     private static final String TAG = "FoldersAdapter";
 
-    private final HashMap<String, FolderStatus> mLocalFolderStatuses = new HashMap<>();
+    @Nullable private FolderStateStore mFolderStateStore;
+    @Nullable private Completion mCompletion;
 
     private final Context mContext;
 
@@ -87,11 +90,38 @@ public class FoldersAdapter extends ArrayAdapter<Folder> {
         });
 
         updateFolderStatusView(binding, folder);
+        updateRemoteCompletionView(binding, folder);
         return binding.getRoot();
     }
 
+    private void updateRemoteCompletionView(ItemFolderListBinding binding, Folder folder) {
+        int completion = (mCompletion != null) ? mCompletion.getFolderCompletion(folder.id) : 100;
+        if (completion >= 100 || folder.paused) {
+            binding.remoteCompletion.setVisibility(GONE);
+            return;
+        }
+        binding.remoteCompletion.setVisibility(VISIBLE);
+        binding.remoteCompletion.setText(getRemoteCompletionText(mContext, mCompletion, folder.id));
+    }
+
+    /**
+     * Returns how far remote devices are in syncing the folder, with the remaining bytes and the
+     * estimated time to completion if known.
+     */
+    public static String getRemoteCompletionText(Context c, Completion completion, String folderId) {
+        int percentage = completion.getFolderCompletion(folderId);
+        String needBytes = Util.readableFileSize(c, completion.getFolderNeedBytes(folderId));
+        long eta = completion.getFolderEta(folderId);
+        return (eta > 0)
+                ? c.getString(R.string.folder_remote_completion_eta, percentage, needBytes,
+                        DateUtils.formatElapsedTime(eta))
+                : c.getString(R.string.folder_remote_completion, percentage, needBytes);
+    }
+
     private void updateFolderStatusView(ItemFolderListBinding binding, Folder folder) {
-        FolderStatus folderStatus = mLocalFolderStatuses.get(folder.id);
+        FolderStatus folderStatus = (mFolderStateStore != null)
+                ? mFolderStateStore.getFolderStatus(folder.id)
+                : null;
         if (folderStatus == null) {
             binding.items.setVisibility(GONE);
             binding.override.setVisibility(GONE);
@@ -112,7 +142,8 @@ public class FoldersAdapter extends ArrayAdapter<Folder> {
                 binding.state.setText(mContext.getString(R.string.state_paused));
                 binding.state.setTextColor(MaterialColors.getColor(mContext, android.R.attr.textColorPrimary, Color.BLACK));
             } else {
-                binding.state.setText(getLocalizedState(mContext, folderStatus));
+                binding.state.setText(getLocalizedState(mContext, folderStatus,
+                        mFolderStateStore.getScanProgress(folder.id)));
                 switch(folderStatus.state) {
                     case "idle":
                         binding.state.setTextColor(ContextCompat.getColor(mContext, R.color.text_green));
@@ -140,12 +171,14 @@ public class FoldersAdapter extends ArrayAdapter<Folder> {
     /**
      * Returns the folder's state as a localized string.
      */
-    private static String getLocalizedState(Context c, FolderStatus folderStatus) {
+    private static String getLocalizedState(Context c, FolderStatus folderStatus, int scanProgress) {
         switch (folderStatus.state) {
             case "idle":
                 return c.getString(R.string.state_idle);
             case "scanning":
-                return c.getString(R.string.state_scanning);
+                return (scanProgress >= 0)
+                        ? c.getString(R.string.state_scanning_progress, scanProgress)
+                        : c.getString(R.string.state_scanning);
             case "syncing":
                 int percentage = (folderStatus.globalBytes != 0)
                         ? Math.round(100 * folderStatus.inSyncBytes / folderStatus.globalBytes)
@@ -164,17 +197,18 @@ public class FoldersAdapter extends ArrayAdapter<Folder> {
     }
 
     /**
-     * Requests updated folder status from the api for all visible items.
+     * Sets the store that folder statuses are shown from. Call {@link #notifyDataSetChanged}
+     * whenever it reports changes.
      */
-    public void updateFolderStatus(RestApi api) {
-        for (int i = 0; i < getCount(); i++) {
-            api.getFolderStatus(getItem(i).id, this::onReceiveFolderStatus);
-        }
+    public void setFolderStateStore(@Nullable FolderStateStore folderStateStore) {
+        mFolderStateStore = folderStateStore;
     }
 
-    private void onReceiveFolderStatus(String folderId, FolderStatus folderStatus) {
-        mLocalFolderStatuses.put(folderId, folderStatus);
-        notifyDataSetChanged();
+    /**
+     * Sets the model that the completion of remote devices is shown from.
+     */
+    public void setCompletion(@Nullable Completion completion) {
+        mCompletion = completion;
     }
 
     private void setTextOrHide(TextView view, String text) {
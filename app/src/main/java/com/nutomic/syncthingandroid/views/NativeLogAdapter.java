@@ -0,0 +1,167 @@
+package com.nutomic.syncthingandroid.views;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.google.android.material.color.MaterialColors;
+import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.service.NativeLogBuffer;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+
+/**
+ * Shows the lines of a {@link NativeLogBuffer}, optionally only those matching a
+ * {@link NativeLogBuffer.Filter}. Lines are only decoded while their view is visible, so the
+ * number of lines doesn't affect memory or rendering time.
+ */
+public class NativeLogAdapter extends BaseAdapter {
+
+    private final Context mContext;
+    private final NativeLogBuffer mBuffer;
+    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS", Locale.US);
+
+    @Nullable private NativeLogBuffer.Filter mFilter;
+
+    /**
+     * Range of sequences shown without filter, updated by {@link #update}.
+     */
+    private long mFirstSequence;
+    private int mCount = 0;
+
+    /**
+     * Sequences of the matching lines while a filter is set, and the sequence the next query
+     * starts at.
+     */
+    private long[] mMatches = new long[0];
+    private long mNextQuerySequence;
+
+    public NativeLogAdapter(Context context, NativeLogBuffer buffer) {
+        mContext = context;
+        mBuffer = buffer;
+        mFirstSequence = buffer.getFirstSequence();
+    }
+
+    /**
+     * Shows only lines matching filter, or all lines if it is null or empty. The adapter keeps a
+     * reference, so the filter must not be changed afterwards.
+     */
+    public void setFilter(@Nullable NativeLogBuffer.Filter filter) {
+        mFilter = (filter != null && !filter.isEmpty()) ? filter : null;
+        mFirstSequence = mBuffer.getFirstSequence();
+        mCount = 0;
+        mMatches = new long[0];
+        mNextQuerySequence = mFirstSequence;
+        update();
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Takes over lines added to the buffer since the last call.
+     *
+     * @return True if there were new lines.
+     */
+    public boolean update() {
+        long first = mBuffer.getFirstSequence();
+        long next = mBuffer.getNextSequence();
+        if (mFilter != null) {
+            return updateMatches(first, next);
+        }
+        if (first == mFirstSequence && next - first == mCount) {
+            return false;
+        }
+        mFirstSequence = first;
+        mCount = (int) (next - first);
+        notifyDataSetChanged();
+        return true;
+    }
+
+    /**
+     * Drops matches that were evicted from the buffer and appends those added since the last
+     * query.
+     */
+    private boolean updateMatches(long first, long next) {
+        int evicted = 0;
+        while (evicted < mMatches.length && mMatches[evicted] < first) {
+            evicted++;
+        }
+        long[] added = mBuffer.query(mFilter, mNextQuerySequence, next);
+        mNextQuerySequence = next;
+        if (evicted == 0 && added.length == 0) {
+            return false;
+        }
+        long[] matches = new long[mMatches.length - evicted + added.length];
+        System.arraycopy(mMatches, evicted, matches, 0, mMatches.length - evicted);
+        System.arraycopy(added, 0, matches, mMatches.length - evicted, added.length);
+        mMatches = matches;
+        mCount = matches.length;
+        notifyDataSetChanged();
+        return added.length > 0;
+    }
+
+    /**
+     * Returns all shown lines as text, e.g. for sharing.
+     */
+    public String getText() {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < mCount; i++) {
+            NativeLogBuffer.Line line = getItem(i);
+            if (line != null) {
+                text.append(format(line)).append('\n');
+            }
+        }
+        return text.toString();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public NativeLogBuffer.Line getItem(int position) {
+        return mBuffer.get(getItemId(position));
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return (mFilter != null) ? mMatches[position] : mFirstSequence + position;
+    }
+
+    @Override
+    public boolean hasStableIds() {
+        return true;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView view = (TextView) ((convertView != null)
+                ? convertView
+                : LayoutInflater.from(mContext).inflate(R.layout.item_log_line, parent, false));
+        NativeLogBuffer.Line line = getItem(position);
+        if (line == null) {
+            // Evicted from the buffer since the last update.
+            view.setText("");
+            return view;
+        }
+        view.setText(format(line));
+        view.setTextColor((line.priority >= Log.WARN)
+                ? ContextCompat.getColor(mContext, R.color.text_red)
+                : MaterialColors.getColor(mContext, android.R.attr.textColorPrimary, Color.BLACK));
+        return view;
+    }
+
+    private String format(NativeLogBuffer.Line line) {
+        return mTimeFormat.format(new Date(line.time)) + " " + line.text;
+    }
+}
@@ -0,0 +1,99 @@
+package com.nutomic.syncthingandroid.views;
+
+import android.content.Context;
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.TextView;
+
+import com.nutomic.syncthingandroid.R;
+import com.nutomic.syncthingandroid.service.ProcessStatsSampler;
+import com.nutomic.syncthingandroid.util.Util;
+
+import java.util.Locale;
+
+/**
+ * Shows the samples of a {@link ProcessStatsSampler}, newest first.
+ */
+public class ProcessStatsAdapter extends BaseAdapter {
+
+    private final Context mContext;
+    private final ProcessStatsSampler mSampler;
+    private int mCount;
+
+    public ProcessStatsAdapter(Context context, ProcessStatsSampler sampler) {
+        mContext = context;
+        mSampler = sampler;
+        mCount = sampler.getCount();
+    }
+
+    /**
+     * Takes over samples taken since the last call.
+     */
+    public void update() {
+        mCount = mSampler.getCount();
+        notifyDataSetChanged();
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public ProcessStatsSampler.Sample getItem(int position) {
+        return mSampler.get(mCount - 1 - position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        if (convertView == null) {
+            convertView = LayoutInflater.from(mContext)
+                    .inflate(R.layout.item_process_stats, parent, false);
+        }
+
+        TextView usage = convertView.findViewById(R.id.usage);
+        TextView time = convertView.findViewById(R.id.time);
+        TextView io = convertView.findViewById(R.id.io);
+
+        ProcessStatsSampler.Sample sample = getItem(position);
+        usage.setText(getUsageText(mContext, sample));
+        time.setText(DateUtils.formatDateTime(mContext, sample.time, DateUtils.FORMAT_SHOW_TIME));
+        io.setText(getIoText(mContext, sample));
+        return convertView;
+    }
+
+    /**
+     * Returns CPU usage, memory and thread count of sample.
+     */
+    public static String getUsageText(Context context, ProcessStatsSampler.Sample sample) {
+        String unknown = context.getString(R.string.process_stats_unknown);
+        return context.getString(R.string.process_stats_usage,
+                (sample.cpuPercent >= 0)
+                        ? String.format(Locale.getDefault(), "%.1f", sample.cpuPercent)
+                        : unknown,
+                (sample.rssBytes >= 0) ? Util.readableFileSize(context, sample.rssBytes) : unknown,
+                (sample.threads >= 0) ? Integer.toString(sample.threads) : unknown);
+    }
+
+    /**
+     * Returns the storage read and write rates of sample.
+     */
+    public static String getIoText(Context context, ProcessStatsSampler.Sample sample) {
+        String unknown = context.getString(R.string.process_stats_unknown);
+        return context.getString(R.string.process_stats_io,
+                (sample.readRate >= 0)
+                        ? Util.readableTransferRate(context, sample.readRate * 8)
+                        : unknown,
+                (sample.writeRate >= 0)
+                        ? Util.readableTransferRate(context, sample.writeRate * 8)
+                        : unknown);
+    }
+}
@@ -0,0 +1,187 @@
+package com.nutomic.syncthingandroid.http;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.android.volley.ParseError;
+import com.android.volley.VolleyError;
+import com.google.common.base.Charsets;
+import com.nutomic.syncthingandroid.model.Event;
+import com.nutomic.syncthingandroid.model.FolderCompletionEvent;
+import com.nutomic.syncthingandroid.model.JsonCodec;
+import com.nutomic.syncthingandroid.service.RestApi;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Sends requests to a local HTTP server and checks that responses are decoded on a Volley
+ * network thread, and only the result is delivered on the main looper.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class TypedGetRequestTest {
+
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(30);
+
+    private static final String EVENTS =
+            "[{\"id\": 1, \"globalID\": 1, \"time\": \"2024-01-01T12:00:00Z\", " +
+            "\"type\": \"FolderCompletion\", \"data\": {\"completion\": 50, " +
+            "\"device\": \"AAAAAAA\", \"folder\": \"abcd-1234\", \"globalBytes\": 2000, " +
+            "\"needBytes\": 1000, \"needDeletes\": 0, \"needItems\": 1}}, " +
+            "{\"id\": 2, \"globalID\": 2, \"time\": \"2024-01-01T12:00:01Z\", " +
+            "\"type\": \"ItemStarted\", \"data\": {\"item\": \"a.jpg\", " +
+            "\"folder\": \"abcd-1234\", \"type\": \"file\", \"action\": \"update\"}}]";
+
+    private HttpServer mServer;
+    private URL mUrl;
+    private Context mContext;
+
+    @Before
+    public void setUp() throws IOException {
+        mContext = ApplicationProvider.getApplicationContext();
+        mServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        mServer.createContext(GetRequest.URI_EVENTS, exchange -> respond(exchange, EVENTS));
+        mServer.createContext("/rest/broken", exchange -> respond(exchange, "[{\"id\": "));
+        mServer.start();
+        mUrl = new URL("http://127.0.0.1:" + mServer.getAddress().getPort());
+    }
+
+    @After
+    public void tearDown() {
+        mServer.stop(0);
+    }
+
+    @Test
+    public void decodesOnNetworkThread() {
+        AtomicReference<Thread> decodeThread = new AtomicReference<>();
+        List<List<Event>> results = new ArrayList<>();
+        new TypedGetRequest<>(mContext, mUrl, GetRequest.URI_EVENTS, "", null,
+                (data, charset) -> {
+                    decodeThread.set(Thread.currentThread());
+                    return JsonCodec.eventsFromJson(data, charset);
+                },
+                result -> {
+                    assertMainLooper();
+                    results.add(result);
+                },
+                error -> fail("Request failed: " + error));
+
+        idleMainLooperUntil(() -> !results.isEmpty());
+        assertNotNull(decodeThread.get());
+        assertNotSame(Looper.getMainLooper().getThread(), decodeThread.get());
+        List<Event> events = results.get(0);
+        assertEquals(2, events.size());
+        assertTrue(events.get(0) instanceof FolderCompletionEvent);
+        assertEquals(1000, ((FolderCompletionEvent) events.get(0)).needBytes);
+        assertEquals("ItemStarted", events.get(1).type);
+    }
+
+    @Test
+    public void decodeErrorIsDeliveredAsError() {
+        AtomicReference<Thread> decodeThread = new AtomicReference<>();
+        List<VolleyError> errors = new ArrayList<>();
+        new TypedGetRequest<>(mContext, mUrl, "/rest/broken", "", null,
+                (data, charset) -> {
+                    decodeThread.set(Thread.currentThread());
+                    return JsonCodec.eventsFromJson(data, charset);
+                },
+                result -> fail("Broken response was delivered"),
+                error -> {
+                    assertMainLooper();
+                    errors.add(error);
+                });
+
+        idleMainLooperUntil(() -> !errors.isEmpty());
+        assertNotSame(Looper.getMainLooper().getThread(), decodeThread.get());
+        assertTrue(errors.get(0) instanceof ParseError);
+    }
+
+    @Test
+    public void restApiDeliversDecodedEvents() {
+        RestApi api = new RestApi(mContext, mUrl, "", () -> {}, () -> {});
+        List<Event> events = new ArrayList<>();
+        AtomicReference<Long> lastId = new AtomicReference<>();
+        api.getEvents(0, 0, 0, null, new RestApi.OnReceiveEventListener() {
+            @Override
+            public void onEvent(Event event) {
+                assertMainLooper();
+                events.add(event);
+            }
+
+            @Override
+            public void onDone(long id) {
+                assertMainLooper();
+                lastId.set(id);
+            }
+
+            @Override
+            public void onError() {
+                fail("Request failed");
+            }
+        });
+
+        idleMainLooperUntil(() -> lastId.get() != null);
+        assertEquals(2, (long) lastId.get());
+        assertEquals(2, events.size());
+        assertTrue(events.get(0) instanceof FolderCompletionEvent);
+        assertEquals("ItemStarted", events.get(1).type);
+    }
+
+    private static void assertMainLooper() {
+        assertSame(Looper.getMainLooper(), Looper.myLooper());
+    }
+
+    /**
+     * Runs tasks posted to the main looper until condition is met. Volley's network threads run
+     * on their own and post their results to the main looper.
+     */
+    private static void idleMainLooperUntil(BooleanSupplier condition) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("No response within " + TIMEOUT_MS + " ms");
+            }
+            shadowOf(Looper.getMainLooper()).idle();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] data = body.getBytes(Charsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(200, data.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(data);
+        }
+    }
+}
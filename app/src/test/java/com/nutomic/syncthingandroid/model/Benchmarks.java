@@ -0,0 +1,283 @@
+package com.nutomic.syncthingandroid.model;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Measures time and allocations per call for the benchmarks in the unit tests, and generates
+ * payloads in the format syncthing sends them.
+ *
+ * Benchmarks are skipped unless the tests run with -Pbenchmark, e.g.
+ * {@code ./gradlew testDebugUnitTest --tests '*Benchmark' -Pbenchmark}.
+ */
+public final class Benchmarks {
+
+    private static final int ROUNDS = 5;
+
+    static final String DEVICE_ID_PREFIX = "AAAAAAA-BBBBBBB-CCCCCCC-DDDDDDD-EEEEEEE-FFFFFFF-GGGGGGG-";
+
+    /**
+     * Keeps results reachable, so the measured calls can't be optimized away.
+     */
+    private static volatile Object sSink;
+
+    public static final class Result {
+        public final double micros;
+
+        /**
+         * Bytes allocated per call, or -1 if the JVM can't tell.
+         */
+        public final long bytes;
+
+        Result(double micros, long bytes) {
+            this.micros = micros;
+            this.bytes = bytes;
+        }
+    }
+
+    private Benchmarks() {
+    }
+
+    public static void assumeEnabled() {
+        Assume.assumeTrue("Benchmarks only run with -Pbenchmark", Boolean.getBoolean("benchmark"));
+    }
+
+    /**
+     * Warms up, then runs operation iterations times in each of several rounds and returns the
+     * best round.
+     */
+    public static Result measure(int iterations, Supplier<?> operation) {
+        for (int i = 0; i < iterations * 2; i++) {
+            sSink = operation.get();
+        }
+        double bestMicros = Double.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startBytes = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                sSink = operation.get();
+            }
+            long elapsed = System.nanoTime() - start;
+            long bytes = allocatedBytes() - startBytes;
+            bestMicros = Math.min(bestMicros, elapsed / 1000.0 / iterations);
+            bestBytes = Math.min(bestBytes, bytes / iterations);
+        }
+        return new Result(bestMicros, (allocatedBytes() < 0) ? -1 : bestBytes);
+    }
+
+    public static void print(String name, String variant, Result result) {
+        System.out.println(String.format(Locale.US, "%-40s %-18s %10.1f us %12d B",
+                name, variant, result.micros, result.bytes));
+    }
+
+    /**
+     * Prints the median, 95th percentile and maximum of the given latencies.
+     */
+    public static void printLatency(String name, String variant, List<Long> millis) {
+        List<Long> sorted = new ArrayList<>(millis);
+        Collections.sort(sorted);
+        long median = sorted.get(sorted.size() / 2);
+        long p95 = sorted.get(Math.min(sorted.size() - 1, sorted.size() * 95 / 100));
+        long max = sorted.get(sorted.size() - 1);
+        System.out.println(String.format(Locale.US,
+                "%-40s %-18s median %6d ms  p95 %6d ms  max %6d ms",
+                name, variant, median, p95, max));
+    }
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) bean)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    public static String deviceId(int index) {
+        return DEVICE_ID_PREFIX + String.format(Locale.US, "%07d", index);
+    }
+
+    /**
+     * Returns /rest/config of an instance with the given number of folders, each shared with all
+     * devices.
+     */
+    static String config(int folderCount, int deviceCount) {
+        StringBuilder json = new StringBuilder("{\"version\": 37, \"folders\": [");
+        for (int f = 0; f < folderCount; f++) {
+            if (f > 0) {
+                json.append(", ");
+            }
+            json.append("{\"id\": \"folder-").append(f)
+                    .append("\", \"label\": \"Folder ").append(folderCount - f)
+                    .append("\", \"filesystemType\": \"basic\", \"path\": ")
+                    .append("\"/storage/emulated/0/Sync/folder-").append(f)
+                    .append("\", \"type\": \"sendreceive\", \"devices\": [");
+            for (int d = 0; d < deviceCount; d++) {
+                if (d > 0) {
+                    json.append(", ");
+                }
+                json.append("{\"deviceID\": \"").append(deviceId(d))
+                        .append("\", \"introducedBy\": \"\", \"encryptionPassword\": \"\"}");
+            }
+            json.append("], \"rescanIntervalS\": 3600, \"fsWatcherEnabled\": true, ")
+                    .append("\"fsWatcherDelayS\": 10, \"ignorePerms\": true, ")
+                    .append("\"autoNormalize\": true, ")
+                    .append("\"minDiskFree\": {\"value\": 1, \"unit\": \"%\"}, ")
+                    .append("\"versioning\": {\"type\": \"\", \"params\": {}, ")
+                    .append("\"cleanupIntervalS\": 3600, \"fsPath\": \"\", ")
+                    .append("\"fsType\": \"basic\"}, ")
+                    .append("\"copiers\": 0, \"pullerMaxPendingKiB\": 0, \"hashers\": 0, ")
+                    .append("\"order\": \"random\", \"ignoreDelete\": false, ")
+                    .append("\"scanProgressIntervalS\": 0, \"pullerPauseS\": 0, ")
+                    .append("\"maxConflicts\": 10, \"disableSparseFiles\": false, ")
+                    .append("\"disableTempIndexes\": false, \"paused\": false, ")
+                    .append("\"weakHashThresholdPct\": 25, \"markerName\": \".stfolder\", ")
+                    .append("\"copyOwnershipFromParent\": false, \"modTimeWindowS\": 0, ")
+                    .append("\"maxConcurrentWrites\": 2, \"disableFsync\": false, ")
+                    .append("\"blockPullOrder\": \"standard\", \"copyRangeMethod\": \"standard\", ")
+                    .append("\"caseSensitiveFS\": false, \"junctionsAsDirs\": false}");
+        }
+        json.append("], \"devices\": [");
+        for (int d = 0; d < deviceCount; d++) {
+            if (d > 0) {
+                json.append(", ");
+            }
+            json.append("{\"deviceID\": \"").append(deviceId(d))
+                    .append("\", \"name\": \"Device ").append(d)
+                    .append("\", \"addresses\": [\"dynamic\"], \"compression\": \"metadata\", ")
+                    .append("\"certName\": \"\", \"introducer\": false, ")
+                    .append("\"skipIntroductionRemovals\": false, \"introducedBy\": \"\", ")
+                    .append("\"paused\": false, \"allowedNetworks\": [], ")
+                    .append("\"autoAcceptFolders\": false, \"maxSendKbps\": 0, ")
+                    .append("\"maxRecvKbps\": 0, \"ignoredFolders\": [], ")
+                    .append("\"maxRequestKiB\": 0, \"untrusted\": false, ")
+                    .append("\"remoteGUIPort\": 0}");
+        }
+        json.append("], \"gui\": {\"enabled\": true, \"address\": \"127.0.0.1:8384\", ")
+                .append("\"user\": \"syncthing\", \"password\": \"\", \"useTLS\": true, ")
+                .append("\"apiKey\": \"abcdefghijklmnopqrstuvwxyz123456\", ")
+                .append("\"insecureAdminAccess\": false, \"theme\": \"default\"}, ")
+                .append("\"options\": {\"listenAddresses\": [\"default\"], ")
+                .append("\"globalAnnounceServers\": [\"default\"], ")
+                .append("\"globalAnnounceEnabled\": true, \"localAnnounceEnabled\": true, ")
+                .append("\"localAnnouncePort\": 21027, ")
+                .append("\"localAnnounceMCAddr\": \"[ff12::8384]:21027\", ")
+                .append("\"maxSendKbps\": 0, \"maxRecvKbps\": 0, ")
+                .append("\"reconnectionIntervalS\": 60, \"relaysEnabled\": true, ")
+                .append("\"relayReconnectIntervalM\": 10, \"startBrowser\": false, ")
+                .append("\"natEnabled\": true, \"natLeaseMinutes\": 60, ")
+                .append("\"natRenewalMinutes\": 30, \"natTimeoutSeconds\": 10, ")
+                .append("\"urAccepted\": -1, \"urSeen\": 3, \"urUniqueId\": \"\", ")
+                .append("\"urURL\": \"https://data.syncthing.net/newdata\", ")
+                .append("\"urPostInsecurely\": false, \"urInitialDelayS\": 1800, ")
+                .append("\"autoUpgradeIntervalH\": 12, \"keepTemporariesH\": 24, ")
+                .append("\"cacheIgnoredFiles\": false, \"progressUpdateIntervalS\": 5, ")
+                .append("\"limitBandwidthInLan\": false, \"minHomeDiskFree\": ")
+                .append("{\"value\": 1, \"unit\": \"%\"}, ")
+                .append("\"releasesURL\": \"https://upgrades.syncthing.net/meta.json\", ")
+                .append("\"alwaysLocalNets\": [], ")
+                .append("\"overwriteRemoteDeviceNamesOnConnect\": false, ")
+                .append("\"tempIndexMinBlocks\": 10}, ")
+                .append("\"remoteIgnoredDevices\": [], \"defaults\": {}}");
+        return json.toString();
+    }
+
+    /**
+     * Returns /rest/system/connections with the given number of connected devices.
+     */
+    static String connections(int deviceCount) {
+        StringBuilder json = new StringBuilder("{\"connections\": {");
+        for (int d = 0; d < deviceCount; d++) {
+            if (d > 0) {
+                json.append(", ");
+            }
+            json.append('"').append(deviceId(d)).append("\": {")
+                    .append("\"at\": \"2024-01-01T12:00:00.123456789+01:00\", ")
+                    .append("\"inBytesTotal\": ").append(123456789L * (d + 1))
+                    .append(", \"outBytesTotal\": ").append(98765432L * (d + 1))
+                    .append(", \"startedAt\": \"2024-01-01T10:00:00+01:00\", ")
+                    .append("\"address\": \"192.168.1.").append(d + 2)
+                    .append(":22000\", \"clientVersion\": \"v1.27.2\", ")
+                    .append("\"connected\": true, \"paused\": false, ")
+                    .append("\"type\": \"tcp-client\", \"isLocal\": true, ")
+                    .append("\"crypto\": \"TLS1.3-TLS_AES_128_GCM_SHA256\"}");
+        }
+        json.append("}, \"total\": {\"at\": \"2024-01-01T12:00:00.123456789+01:00\", ")
+                .append("\"inBytesTotal\": 1234567890, \"outBytesTotal\": 987654321}}");
+        return json.toString();
+    }
+
+    /**
+     * Returns /rest/db/status of a folder.
+     */
+    static String folderStatus() {
+        return "{\"errors\": 0, \"pullErrors\": 0, \"invalid\": \"\", "
+                + "\"globalFiles\": 12345, \"globalDirectories\": 678, \"globalSymlinks\": 0, "
+                + "\"globalDeleted\": 90, \"globalBytes\": 12345678901, "
+                + "\"globalTotalItems\": 13113, \"localFiles\": 12340, "
+                + "\"localDirectories\": 678, \"localSymlinks\": 0, \"localDeleted\": 90, "
+                + "\"localBytes\": 12345000000, \"localTotalItems\": 13108, "
+                + "\"needFiles\": 5, \"needDirectories\": 0, \"needSymlinks\": 0, "
+                + "\"needDeletes\": 0, \"needBytes\": 678901, \"needTotalItems\": 5, "
+                + "\"receiveOnlyChangedFiles\": 0, \"receiveOnlyChangedDirectories\": 0, "
+                + "\"receiveOnlyChangedSymlinks\": 0, \"receiveOnlyChangedDeletes\": 0, "
+                + "\"receiveOnlyChangedBytes\": 0, \"receiveOnlyTotalItems\": 0, "
+                + "\"inSyncFiles\": 12340, \"inSyncBytes\": 12345000000, "
+                + "\"state\": \"syncing\", \"stateChanged\": \"2024-01-01T12:00:00+01:00\", "
+                + "\"error\": \"\", \"version\": 123456, \"sequence\": 123456, "
+                + "\"ignorePatterns\": false, \"watchError\": \"\"}";
+    }
+
+    /**
+     * Returns /rest/events with count events, as sent while a folder syncs.
+     */
+    static String events(int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int id = 1; id <= count; id++) {
+            if (id > 1) {
+                json.append(", ");
+            }
+            json.append("{\"id\": ").append(id).append(", \"globalID\": ").append(id)
+                    .append(", \"time\": \"2024-01-01T12:00:00.123456789+01:00\", ");
+            String folder = "folder-" + (id % 5);
+            switch (id % 4) {
+                case 0:
+                    json.append("\"type\": \"ItemFinished\", \"data\": {\"item\": ")
+                            .append("\"DCIM/Camera/IMG_").append(id).append(".jpg\", ")
+                            .append("\"folder\": \"").append(folder)
+                            .append("\", \"error\": null, \"type\": \"file\", ")
+                            .append("\"action\": \"update\"}}");
+                    break;
+                case 1:
+                    json.append("\"type\": \"FolderCompletion\", \"data\": {")
+                            .append("\"completion\": 99.5, \"device\": \"").append(deviceId(0))
+                            .append("\", \"folder\": \"").append(folder)
+                            .append("\", \"globalBytes\": 12345678901, \"needBytes\": ")
+                            .append(id).append(", \"needDeletes\": 0, \"needItems\": 1, ")
+                            .append("\"remoteState\": \"valid\", \"sequence\": ").append(id)
+                            .append("}}");
+                    break;
+                case 2:
+                    json.append("\"type\": \"StateChanged\", \"data\": {\"folder\": \"")
+                            .append(folder).append("\", \"from\": \"idle\", ")
+                            .append("\"to\": \"syncing\", \"duration\": 12.3456}}");
+                    break;
+                default:
+                    json.append("\"type\": \"LocalIndexUpdated\", \"data\": {\"folder\": \"")
+                            .append(folder).append("\", \"items\": 1, \"filenames\": ")
+                            .append("[\"DCIM/Camera/IMG_").append(id).append(".jpg\"], ")
+                            .append("\"sequence\": ").append(id)
+                            .append(", \"version\": ").append(id).append("}}");
+            }
+        }
+        return json.append(']').toString();
+    }
+}
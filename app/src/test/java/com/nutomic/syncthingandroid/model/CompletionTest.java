@@ -0,0 +1,172 @@
+package com.nutomic.syncthingandroid.model;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompletionTest {
+
+    private static final String LOCAL_DEVICE_ID =
+            "AAAAAAA-AAAAAAA-AAAAAAA-AAAAAAA-AAAAAAA-AAAAAAA-AAAAAAA-AAAAAAA";
+    private static final String REMOTE_DEVICE_ID =
+            "BBBBBBB-BBBBBBB-BBBBBBB-BBBBBBB-BBBBBBB-BBBBBBB-BBBBBBB-BBBBBBB";
+    private static final String FOLDER_ID = "abcd-1234";
+
+    /**
+     * elapsedRealtime() at the start of each test. Not 0, which stands for no sample.
+     */
+    private static final long START_TIME = 100000;
+
+    private ConfigSnapshot mConfig;
+    private Completion mCompletion;
+
+    /**
+     * Time returned as elapsedRealtime() to mCompletion.
+     */
+    private long mNow = START_TIME;
+
+    @Before
+    public void setUp() {
+        String json = "{\"devices\": [{\"deviceID\": \"" + LOCAL_DEVICE_ID + "\"}, "
+                + "{\"deviceID\": \"" + REMOTE_DEVICE_ID + "\"}], "
+                + "\"folders\": [{\"id\": \"" + FOLDER_ID + "\", \"devices\": ["
+                + "{\"deviceID\": \"" + LOCAL_DEVICE_ID + "\"}, "
+                + "{\"deviceID\": \"" + REMOTE_DEVICE_ID + "\"}]}], "
+                + "\"remoteIgnoredDevices\": []}";
+        mConfig = ConfigSnapshot.of(0, JsonCodec.fromJson(json, Config.class));
+        mCompletion = new Completion(() -> mNow);
+    }
+
+    @Test
+    public void localDeviceIdKnownBeforeConfig() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        mCompletion.setCompletionInfo(REMOTE_DEVICE_ID, FOLDER_ID, completionInfo(0, 1000));
+
+        assertEquals(0, mCompletion.getFolderCompletion(FOLDER_ID));
+        assertEquals(1000, mCompletion.getFolderNeedBytes(FOLDER_ID));
+        assertEquals(0, mCompletion.getDeviceCompletion(REMOTE_DEVICE_ID));
+    }
+
+    @Test
+    public void localDeviceIdKnownAfterConfig() {
+        mCompletion.updateFromConfig(mConfig);
+        mCompletion.setCompletionInfo(REMOTE_DEVICE_ID, FOLDER_ID, completionInfo(0, 1000));
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+
+        assertEquals(0, mCompletion.getFolderCompletion(FOLDER_ID));
+        assertEquals(1000, mCompletion.getFolderNeedBytes(FOLDER_ID));
+    }
+
+    @Test
+    public void localDeviceCompletionIgnored() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        mCompletion.setCompletionInfo(REMOTE_DEVICE_ID, FOLDER_ID, completionInfo(40, 600));
+        mCompletion.setCompletionInfo(LOCAL_DEVICE_ID, FOLDER_ID, completionInfo(100, 0));
+
+        assertEquals(40, mCompletion.getFolderCompletion(FOLDER_ID));
+        assertEquals(600, mCompletion.getFolderNeedBytes(FOLDER_ID));
+        assertEquals(100, mCompletion.getDeviceCompletion(LOCAL_DEVICE_ID));
+    }
+
+    @Test
+    public void remoteDevicesAveraged() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        mCompletion.setCompletionInfo(REMOTE_DEVICE_ID, FOLDER_ID, completionInfo(50, 500));
+        mCompletion.setCompletionInfo("CCCCCCC", FOLDER_ID, completionInfo(100, 0));
+
+        assertEquals(75, mCompletion.getFolderCompletion(FOLDER_ID));
+        assertEquals(500, mCompletion.getFolderNeedBytes(FOLDER_ID));
+    }
+
+    @Test
+    public void etaSamplesAtMostEverySecond() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        assertEquals(0, mCompletion.getFolderEta(FOLDER_ID));
+
+        setNeedBytes(0, 10000);
+        assertEquals(-1, mCompletion.getFolderEta(FOLDER_ID));
+
+        // Too soon after the start of the sample.
+        setNeedBytes(500, 9000);
+        assertEquals(-1, mCompletion.getFolderEta(FOLDER_ID));
+
+        // 2000 bytes in one second.
+        setNeedBytes(1000, 8000);
+        assertEquals(4, mCompletion.getFolderEta(FOLDER_ID));
+
+        // The rate is kept until the next sample, the estimate follows the needed bytes.
+        setNeedBytes(1500, 7000);
+        assertEquals(4, mCompletion.getFolderEta(FOLDER_ID));
+        setNeedBytes(2000, 6000);
+        assertEquals(3, mCompletion.getFolderEta(FOLDER_ID));
+
+        // 1000 bytes in one second are smoothed to 0.3 * 1000 + 0.7 * 2000 = 1700 bytes/s.
+        setNeedBytes(3000, 5000);
+        assertEquals(3, mCompletion.getFolderEta(FOLDER_ID));
+
+        setNeedBytes(4000, 0);
+        assertEquals(0, mCompletion.getFolderEta(FOLDER_ID));
+    }
+
+    @Test
+    public void etaSampleRestartsWhenNeedBytesIncrease() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        setNeedBytes(0, 10000);
+        setNeedBytes(1000, 8000);
+        assertEquals(4, mCompletion.getFolderEta(FOLDER_ID));
+
+        // New data to sync restarts the sample, the rate is kept.
+        setNeedBytes(1500, 20000);
+        assertEquals(10, mCompletion.getFolderEta(FOLDER_ID));
+
+        // Less than a second after the restart.
+        setNeedBytes(2000, 19500);
+        assertEquals(10, mCompletion.getFolderEta(FOLDER_ID));
+
+        // 1000 bytes in the second since the restart, smoothed to 1700 bytes/s.
+        setNeedBytes(2500, 19000);
+        assertEquals(12, mCompletion.getFolderEta(FOLDER_ID));
+    }
+
+    @Test
+    public void etaUnknownAfter30sWithoutProgress() {
+        mCompletion.setLocalDeviceId(LOCAL_DEVICE_ID);
+        mCompletion.updateFromConfig(mConfig);
+        setNeedBytes(0, 10000);
+        setNeedBytes(1000, 8000);
+        assertEquals(4, mCompletion.getFolderEta(FOLDER_ID));
+
+        // Updates without a decrease are no progress.
+        setNeedBytes(20000, 8000);
+        mNow = START_TIME + 31000;
+        assertEquals(4, mCompletion.getFolderEta(FOLDER_ID));
+        mNow++;
+        assertEquals(-1, mCompletion.getFolderEta(FOLDER_ID));
+
+        // Progress resumes.
+        setNeedBytes(32000, 7000);
+        assertTrue(mCompletion.getFolderEta(FOLDER_ID) > 0);
+    }
+
+    /**
+     * Sets the bytes needed by the remote device at elapsed milliseconds after the test started.
+     */
+    private void setNeedBytes(long elapsed, long needBytes) {
+        mNow = START_TIME + elapsed;
+        mCompletion.setCompletionInfo(REMOTE_DEVICE_ID, FOLDER_ID, completionInfo(50, needBytes));
+    }
+
+    private static CompletionInfo completionInfo(double completion, long needBytes) {
+        CompletionInfo info = new CompletionInfo();
+        info.completion = completion;
+        info.needBytes = needBytes;
+        return info;
+    }
+}
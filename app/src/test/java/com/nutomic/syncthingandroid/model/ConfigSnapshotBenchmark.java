@@ -0,0 +1,70 @@
+package com.nutomic.syncthingandroid.model;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares reading folders from a {@link ConfigSnapshot} with the way RestApi#getFolders worked
+ * before, which deep copied and sorted all folders on every call. Also measures what the
+ * snapshot costs when the config changes.
+ */
+public class ConfigSnapshotBenchmark {
+
+    private static final int DEVICES = 10;
+
+    private static final Comparator<Folder> FOLDERS_COMPARATOR = (lhs, rhs) -> {
+        String lhsLabel = lhs.label != null && !lhs.label.isEmpty() ? lhs.label : lhs.id;
+        String rhsLabel = rhs.label != null && !rhs.label.isEmpty() ? rhs.label : rhs.id;
+
+        return lhsLabel.compareTo(rhsLabel);
+    };
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void getFolders() {
+        compare(10, 2000);
+        compare(100, 200);
+        compare(1000, 20);
+    }
+
+    private static void compare(int folderCount, int iterations) {
+        String json = Benchmarks.config(folderCount, DEVICES);
+        Config config = JsonCodec.fromJson(json, Config.class);
+        ConfigSnapshot snapshot = ConfigSnapshot.of(1, JsonCodec.fromJson(json, Config.class));
+        assertEquals(folderCount, legacyGetFolders(config.folders).size());
+        assertEquals(folderCount, snapshot.sortedFolders.size());
+
+        String name = "getFolders, " + folderCount + " folders";
+        Benchmarks.print(name, "deep copy + sort", Benchmarks.measure(iterations,
+                () -> legacyGetFolders(config.folders)));
+        Benchmarks.print(name, "snapshot", Benchmarks.measure(iterations * 100,
+                () -> snapshot.sortedFolders));
+
+        List<Folder> folders = new ArrayList<>(snapshot.config.folders);
+        Benchmarks.print("withFolders, " + folderCount + " folders", "snapshot",
+                Benchmarks.measure(iterations, () -> snapshot.withFolders(folders)));
+    }
+
+    private static List<Folder> legacyGetFolders(List<Folder> folders) {
+        Type type = new TypeToken<List<Folder>>() {}.getType();
+        Gson gson = new Gson();
+        List<Folder> copy = gson.fromJson(gson.toJson(folders, type), type);
+        Collections.sort(copy, FOLDERS_COMPARATOR);
+        return copy;
+    }
+}
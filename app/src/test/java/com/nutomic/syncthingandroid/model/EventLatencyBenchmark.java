@@ -0,0 +1,260 @@
+package com.nutomic.syncthingandroid.model;
+
+import android.content.Context;
+import android.os.Looper;
+import android.preference.PreferenceManager;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import com.google.common.base.Charsets;
+import com.nutomic.syncthingandroid.http.GetRequest;
+import com.nutomic.syncthingandroid.service.Constants;
+import com.nutomic.syncthingandroid.service.EventBus;
+import com.nutomic.syncthingandroid.service.EventJournal;
+import com.nutomic.syncthingandroid.service.EventProcessor;
+import com.nutomic.syncthingandroid.service.RestApi;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.Assert.fail;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Measures the time from an event occurring in syncthing until {@link EventProcessor} handled
+ * it, with events polled every 15 seconds and with long polling. Events are served by a local
+ * HTTP server and requested through the real {@link RestApi} and Volley stack.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class EventLatencyBenchmark {
+
+    private static final int LONG_POLL_EVENTS = 50;
+    private static final long LONG_POLL_MAX_GAP_MS = 500;
+
+    /**
+     * Events occur at random times within the polling interval, so a few of them suffice and
+     * keep the benchmark under two minutes.
+     */
+    private static final int INTERVAL_EVENTS = 6;
+    private static final long INTERVAL_MAX_GAP_MS = TimeUnit.SECONDS.toMillis(15);
+
+    private static final long TIMEOUT_MS = TimeUnit.SECONDS.toMillis(60);
+
+    private Context mContext;
+    private FakeEventServer mServer;
+
+    /**
+     * Time at which each event was handled, keyed by event id.
+     */
+    private final Map<Long, Long> mHandledAt = new ConcurrentHashMap<>();
+
+    /**
+     * Real time up to which the Robolectric clock was advanced.
+     */
+    private long mClockSyncedAt;
+
+    @Before
+    public void setUp() throws IOException {
+        Benchmarks.assumeEnabled();
+        mContext = ApplicationProvider.getApplicationContext();
+        mServer = new FakeEventServer();
+    }
+
+    @After
+    public void tearDown() {
+        if (mServer != null) {
+            mServer.stop();
+        }
+    }
+
+    @Test
+    public void longPolling() throws InterruptedException {
+        Benchmarks.printLatency("event latency, " + LONG_POLL_EVENTS + " events", "long polling",
+                measure(true, LONG_POLL_EVENTS, LONG_POLL_MAX_GAP_MS));
+    }
+
+    @Test
+    public void interval() throws InterruptedException {
+        Benchmarks.printLatency("event latency, " + INTERVAL_EVENTS + " events", "15 s interval",
+                measure(false, INTERVAL_EVENTS, INTERVAL_MAX_GAP_MS));
+    }
+
+    /**
+     * Publishes count events, each after a random gap of up to maxGapMs once the previous event
+     * was handled.
+     *
+     * @return Latency of each event in milliseconds.
+     */
+    private List<Long> measure(boolean longPolling, int count, long maxGapMs)
+            throws InterruptedException {
+        PreferenceManager.getDefaultSharedPreferences(mContext).edit()
+                .putBoolean(Constants.PREF_EVENT_LONG_POLLING, longPolling)
+                .commit();
+        RestApi api = new RestApi(mContext, mServer.getUrl(), "", () -> {}, () -> {}) {
+            @Override
+            public void setCompletionInfo(String deviceId, String folderId,
+                                          CompletionInfo completionInfo) {
+                mHandledAt.putIfAbsent(completionInfo.needBytes, System.nanoTime());
+            }
+        };
+        EventProcessor eventProcessor =
+                new EventProcessor(mContext, api, new EventBus(), new EventJournal());
+        mClockSyncedAt = System.nanoTime();
+        eventProcessor.start();
+        try {
+            Random random = new Random(1);
+            List<Long> latencies = new ArrayList<>();
+            for (long id = 1; id <= count; id++) {
+                long gapEnd = System.nanoTime()
+                        + TimeUnit.MILLISECONDS.toNanos(random.nextInt((int) maxGapMs));
+                runLoopersUntil(() -> System.nanoTime() >= gapEnd);
+
+                long publishedAt = System.nanoTime();
+                mServer.publish(id);
+                long handledId = id;
+                runLoopersUntil(() -> mHandledAt.containsKey(handledId));
+                latencies.add(TimeUnit.NANOSECONDS.toMillis(mHandledAt.get(id) - publishedAt));
+            }
+            return latencies;
+        } finally {
+            eventProcessor.stop();
+        }
+    }
+
+    /**
+     * Runs the main looper, where Volley delivers responses, and keeps the Robolectric clock in
+     * step with real time, so delayed tasks on the event processor's worker thread run on time.
+     */
+    private void runLoopersUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(TIMEOUT_MS);
+        while (!condition.getAsBoolean()) {
+            long now = System.nanoTime();
+            if (now > deadline) {
+                fail("Event was not handled within " + TIMEOUT_MS + " ms");
+            }
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(now - mClockSyncedAt);
+            mClockSyncedAt += TimeUnit.MILLISECONDS.toNanos(elapsedMs);
+            shadowOf(Looper.getMainLooper()).idleFor(Duration.ofMillis(elapsedMs));
+            Thread.sleep(1);
+        }
+    }
+
+    /**
+     * Serves /rest/events like syncthing: a request with a timeout is held open until an event
+     * newer than since exists, and limit returns only the latest events.
+     */
+    private static class FakeEventServer {
+
+        private final HttpServer mServer;
+        private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+        /**
+         * Published events as JSON, the event with id n at index n - 1. Guarded by this.
+         */
+        private final List<String> mEvents = new ArrayList<>();
+        private boolean mStopped = false;
+
+        FakeEventServer() throws IOException {
+            mServer = HttpServer.create(
+                    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+            mServer.createContext(GetRequest.URI_EVENTS, this::handleEvents);
+            // Each held long poll occupies a thread.
+            mServer.setExecutor(mExecutor);
+            mServer.start();
+        }
+
+        URL getUrl() {
+            try {
+                return new URL("http://127.0.0.1:" + mServer.getAddress().getPort());
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        synchronized void publish(long id) {
+            mEvents.add("{\"id\":" + id + ",\"globalID\":" + id +
+                    ",\"time\":\"2024-01-01T12:00:00.000000000Z\"," +
+                    "\"type\":\"FolderCompletion\",\"data\":{\"completion\":50," +
+                    "\"device\":\"" + Benchmarks.deviceId(0) + "\",\"folder\":\"folder-0\"," +
+                    "\"globalBytes\":2000000,\"needBytes\":" + id +
+                    ",\"needDeletes\":0,\"needItems\":1}}");
+            notifyAll();
+        }
+
+        void stop() {
+            synchronized (this) {
+                mStopped = true;
+                notifyAll();
+            }
+            mServer.stop(0);
+            mExecutor.shutdownNow();
+        }
+
+        private void handleEvents(HttpExchange exchange) throws IOException {
+            Map<String, String> params = new HashMap<>();
+            String query = exchange.getRequestURI().getRawQuery();
+            if (query != null) {
+                for (String param : query.split("&")) {
+                    int separator = param.indexOf('=');
+                    if (separator > 0) {
+                        params.put(param.substring(0, separator), param.substring(separator + 1));
+                    }
+                }
+            }
+            long since = Long.parseLong(params.getOrDefault("since", "0"));
+            long limit = Long.parseLong(params.getOrDefault("limit", "0"));
+            long timeoutMs = TimeUnit.SECONDS.toMillis(
+                    Long.parseLong(params.getOrDefault("timeout", "0")));
+
+            String body;
+            synchronized (this) {
+                long deadline = System.currentTimeMillis() + timeoutMs;
+                while (mEvents.size() <= since && !mStopped) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        break;
+                    }
+                    try {
+                        wait(remaining);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                }
+                int from = (int) Math.min(since, mEvents.size());
+                if (limit > 0) {
+                    from = Math.max(from, mEvents.size() - (int) limit);
+                }
+                body = "[" + String.join(",", mEvents.subList(from, mEvents.size())) + "]";
+            }
+
+            byte[] data = body.getBytes(Charsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(200, data.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(data);
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package com.nutomic.syncthingandroid.model;
+
+import com.google.common.base.Charsets;
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Compares {@link JsonCodec} with the way responses were decoded before: a new Gson instance per
+ * response, reflective adapters, the body converted to a String first, and events parsed into
+ * a tree with untyped data.
+ */
+public class JsonCodecBenchmark {
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+    }
+
+    /**
+     * Event as it was decoded before, with the data as nested maps.
+     */
+    private static class LegacyEvent {
+        public int id;
+        public int globalID;
+        public String type;
+        public String time;
+        public Object data;
+    }
+
+    @Test
+    public void config() {
+        compare("config, 20 folders, 5 devices", Benchmarks.config(20, 5), Config.class, 200);
+        compare("config, 200 folders, 10 devices", Benchmarks.config(200, 10), Config.class, 20);
+    }
+
+    @Test
+    public void connections() {
+        compare("connections, 10 devices", Benchmarks.connections(10), Connections.class, 2000);
+    }
+
+    @Test
+    public void folderStatus() {
+        compare("folder status", Benchmarks.folderStatus(), FolderStatus.class, 5000);
+    }
+
+    @Test
+    public void events() {
+        compareEvents("events, 100", 100, 200);
+        compareEvents("events, 1000", 1000, 20);
+    }
+
+    private static <T> void compare(String name, String json, Class<T> type, int iterations) {
+        byte[] data = json.getBytes(Charsets.UTF_8);
+        Benchmarks.print(name, "new Gson()", Benchmarks.measure(iterations,
+                () -> new Gson().fromJson(new String(data, Charsets.UTF_8), type)));
+        Benchmarks.print(name, "JsonCodec", Benchmarks.measure(iterations,
+                () -> JsonCodec.fromJson(data, Charsets.UTF_8, type)));
+    }
+
+    private static void compareEvents(String name, int count, int iterations) {
+        byte[] data = Benchmarks.events(count).getBytes(Charsets.UTF_8);
+        assertEquals(count, decodeLegacyEvents(data).size());
+        assertEquals(count, JsonCodec.eventsFromJson(data, Charsets.UTF_8).size());
+
+        Benchmarks.print(name, "tree + new Gson()", Benchmarks.measure(iterations,
+                () -> decodeLegacyEvents(data)));
+        Benchmarks.print(name, "JsonCodec", Benchmarks.measure(iterations,
+                () -> JsonCodec.eventsFromJson(data, Charsets.UTF_8)));
+    }
+
+    private static List<LegacyEvent> decodeLegacyEvents(byte[] data) {
+        JsonArray jsonEvents = JsonParser.parseString(new String(data, Charsets.UTF_8))
+                .getAsJsonArray();
+        List<LegacyEvent> events = new ArrayList<>();
+        for (int i = 0; i < jsonEvents.size(); i++) {
+            events.add(new Gson().fromJson(jsonEvents.get(i), LegacyEvent.class));
+        }
+        return events;
+    }
+}
@@ -0,0 +1,101 @@
+package com.nutomic.syncthingandroid.model;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JsonCodecTest {
+
+    private static final String DEVICE_ID =
+            "AAAAAAA-BBBBBBB-CCCCCCC-DDDDDDD-EEEEEEE-FFFFFFF-GGGGGGG-HHHHHHH";
+
+    @Test
+    public void pendingDevicesChanged_nullAdded() {
+        PendingDevicesChangedEvent event = decode(PendingDevicesChangedEvent.class,
+                "PendingDevicesChanged", "{\"added\": null, \"removed\": null}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingDevicesChanged_absentAdded() {
+        PendingDevicesChangedEvent event = decode(PendingDevicesChangedEvent.class,
+                "PendingDevicesChanged", "{\"removed\": [{\"deviceID\": \"" + DEVICE_ID + "\"}]}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingDevicesChanged_nullAddedBeforeRemoved() {
+        PendingDevicesChangedEvent event = decode(PendingDevicesChangedEvent.class,
+                "PendingDevicesChanged",
+                "{\"added\": null, \"removed\": [{\"deviceID\": \"" + DEVICE_ID + "\"}]}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingDevicesChanged_added() {
+        PendingDevicesChangedEvent event = decode(PendingDevicesChangedEvent.class,
+                "PendingDevicesChanged",
+                "{\"removed\": null, \"added\": [{\"deviceID\": \"" + DEVICE_ID + "\", "
+                        + "\"name\": \"phone\", \"address\": \"192.168.1.2:22000\"}]}");
+        assertEquals(1, event.added.size());
+        assertEquals(DEVICE_ID, event.added.get(0).deviceID);
+        assertEquals("phone", event.added.get(0).name);
+        assertEquals("192.168.1.2:22000", event.added.get(0).address);
+    }
+
+    @Test
+    public void pendingFoldersChanged_nullAdded() {
+        PendingFoldersChangedEvent event = decode(PendingFoldersChangedEvent.class,
+                "PendingFoldersChanged", "{\"added\": null, \"removed\": null}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingFoldersChanged_absentAdded() {
+        PendingFoldersChangedEvent event = decode(PendingFoldersChangedEvent.class,
+                "PendingFoldersChanged",
+                "{\"removed\": [{\"deviceID\": \"" + DEVICE_ID + "\", \"folderID\": \"abcd\"}]}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingFoldersChanged_nullAddedBeforeRemoved() {
+        PendingFoldersChangedEvent event = decode(PendingFoldersChangedEvent.class,
+                "PendingFoldersChanged", "{\"added\": null, "
+                        + "\"removed\": [{\"deviceID\": \"" + DEVICE_ID + "\", \"folderID\": \"abcd\"}]}");
+        assertNull(event.added);
+    }
+
+    @Test
+    public void pendingFoldersChanged_added() {
+        PendingFoldersChangedEvent event = decode(PendingFoldersChangedEvent.class,
+                "PendingFoldersChanged", "{\"removed\": null, \"added\": [{\"deviceID\": \""
+                        + DEVICE_ID + "\", \"folderID\": \"abcd\", \"folderLabel\": \"Camera\"}]}");
+        assertEquals(1, event.added.size());
+        assertEquals(DEVICE_ID, event.added.get(0).deviceID);
+        assertEquals("abcd", event.added.get(0).folderID);
+        assertEquals("Camera", event.added.get(0).folderLabel);
+    }
+
+    /**
+     * The event must be followed by another one, so that a reader left in the wrong position
+     * fails the test.
+     */
+    private static <T extends Event> T decode(Class<T> type, String eventType, String data) {
+        String json = "[{\"id\": 1, \"globalID\": 1, \"type\": \"" + eventType + "\", "
+                + "\"time\": \"2024-01-01T00:00:00Z\", \"data\": " + data + "}, "
+                + "{\"id\": 2, \"globalID\": 2, \"type\": \"Ping\", "
+                + "\"time\": \"2024-01-01T00:00:01Z\", \"data\": null}]";
+        List<Event> events = JsonCodec.eventsFromJson(json);
+        assertEquals(2, events.size());
+        assertEquals(2, events.get(1).id);
+        assertEquals("Ping", events.get(1).type);
+        assertTrue(type.isInstance(events.get(0)));
+        assertEquals(1, events.get(0).id);
+        return type.cast(events.get(0));
+    }
+}
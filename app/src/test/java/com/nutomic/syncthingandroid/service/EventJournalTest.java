@@ -0,0 +1,171 @@
+package com.nutomic.syncthingandroid.service;
+
+import com.nutomic.syncthingandroid.model.Event;
+import com.nutomic.syncthingandroid.model.FolderCompletionEvent;
+import com.nutomic.syncthingandroid.model.StateChangedEvent;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EventJournalTest {
+
+    private static final String DEVICE_ID =
+            "AAAAAAA-BBBBBBB-CCCCCCC-DDDDDDD-EEEEEEE-FFFFFFF-GGGGGGG-HHHHHHH";
+
+    private final EventJournal mJournal = new EventJournal();
+
+    @Test
+    public void queryReturnsNewestFirst() {
+        mJournal.record(stateChanged(1, "folder-0", "idle", "scanning"));
+        mJournal.record(completion(2, "folder-0", 1000));
+
+        List<EventJournal.Entry> entries = mJournal.query(Long.MAX_VALUE, 10, null, null, null);
+        assertEquals(2, entries.size());
+        EventJournal.Entry completion = entries.get(0);
+        assertEquals(1, completion.sequence);
+        assertEquals(2, completion.eventId);
+        assertEquals("FolderCompletion", completion.type);
+        assertEquals("folder-0", completion.folderId);
+        assertEquals(DEVICE_ID, completion.deviceId);
+        assertEquals("50%, 1000 bytes needed", completion.description);
+
+        EventJournal.Entry stateChanged = entries.get(1);
+        assertEquals(0, stateChanged.sequence);
+        assertEquals("StateChanged", stateChanged.type);
+        assertNull(stateChanged.deviceId);
+        assertEquals("idle -> scanning", stateChanged.description);
+    }
+
+    @Test
+    public void queryPages() {
+        for (int i = 0; i < 25; i++) {
+            mJournal.record(completion(i, "folder-0", i));
+        }
+
+        long before = Long.MAX_VALUE;
+        long expected = 24;
+        for (int page = 0; page < 3; page++) {
+            List<EventJournal.Entry> entries = mJournal.query(before, 10, null, null, null);
+            assertEquals((page < 2) ? 10 : 5, entries.size());
+            for (EventJournal.Entry entry : entries) {
+                assertEquals(expected--, entry.sequence);
+            }
+            before = entries.get(entries.size() - 1).sequence;
+        }
+        assertTrue(mJournal.query(before, 10, null, null, null).isEmpty());
+    }
+
+    @Test
+    public void ringWrapsAround() {
+        int count = EventJournal.CAPACITY + 5;
+        for (int i = 0; i < count; i++) {
+            mJournal.record(completion(i, "folder-" + (i % 2), i));
+        }
+
+        List<EventJournal.Entry> entries =
+                mJournal.query(Long.MAX_VALUE, Integer.MAX_VALUE, null, null, null);
+        assertEquals(EventJournal.CAPACITY, entries.size());
+        assertEquals(count - 1, entries.get(0).sequence);
+        assertEquals(count - 1, entries.get(0).eventId);
+        // The oldest five entries were overwritten.
+        EventJournal.Entry oldest = entries.get(entries.size() - 1);
+        assertEquals(5, oldest.sequence);
+        assertEquals(5, oldest.eventId);
+        assertEquals("folder-1", oldest.folderId);
+
+        // Paging stops at the oldest entry that is still kept.
+        List<EventJournal.Entry> last = mJournal.query(7, 10, null, null, null);
+        assertEquals(2, last.size());
+        assertEquals(6, last.get(0).sequence);
+        assertEquals(5, last.get(1).sequence);
+    }
+
+    @Test
+    public void queryFilters() {
+        mJournal.record(completion(1, "folder-0", 10));
+        mJournal.record(stateChanged(2, "folder-0", "idle", "syncing"));
+        mJournal.record(completion(3, "folder-1", 20));
+        mJournal.record(stateChanged(4, "folder-1", "syncing", "idle"));
+
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, "StateChanged", null, null), 3, 1);
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, null, "folder-1", null), 3, 2);
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, null, null, DEVICE_ID), 2, 0);
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, "FolderCompletion", "folder-0",
+                DEVICE_ID), 0);
+        // The device id is not the id of a folder.
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, null, DEVICE_ID, null));
+    }
+
+    @Test
+    public void queryUnknownIdsReturnsNothing() {
+        mJournal.record(completion(1, "folder-0", 10));
+
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, "DeviceConnected", null, null));
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, null, "unknown", null));
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, null, null, "unknown"));
+        assertSequences(mJournal.query(Long.MAX_VALUE, 10, "FolderCompletion", "folder-0",
+                "unknown"));
+    }
+
+    @Test
+    public void longDescriptionIsCut() {
+        StringBuilder error = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            error.append('x');
+        }
+        StateChangedEvent event = stateChanged(1, "folder-0", "syncing", "error");
+        event.error = error.toString();
+        mJournal.record(event);
+
+        String description = mJournal.query(Long.MAX_VALUE, 1, null, null, null)
+                .get(0).description;
+        assertTrue(description.startsWith("syncing -> error: xxx"));
+        assertTrue(description.length() < error.length());
+    }
+
+    @Test
+    public void eventWithoutDataHasNoDescription() {
+        Event event = new Event();
+        event.id = 1;
+        event.type = "Ping";
+        mJournal.record(event);
+
+        EventJournal.Entry entry = mJournal.query(Long.MAX_VALUE, 1, null, null, null).get(0);
+        assertEquals("Ping", entry.type);
+        assertNull(entry.folderId);
+        assertNull(entry.description);
+    }
+
+    private static void assertSequences(List<EventJournal.Entry> entries, long... sequences) {
+        assertEquals(sequences.length, entries.size());
+        for (int i = 0; i < sequences.length; i++) {
+            assertEquals(sequences[i], entries.get(i).sequence);
+        }
+    }
+
+    private static FolderCompletionEvent completion(int id, String folder, long needBytes) {
+        FolderCompletionEvent event = new FolderCompletionEvent();
+        event.id = id;
+        event.type = "FolderCompletion";
+        event.folder = folder;
+        event.device = DEVICE_ID;
+        event.completion = 50;
+        event.needBytes = needBytes;
+        return event;
+    }
+
+    private static StateChangedEvent stateChanged(int id, String folder, String from, String to) {
+        StateChangedEvent event = new StateChangedEvent();
+        event.id = id;
+        event.type = "StateChanged";
+        event.folder = folder;
+        event.from = from;
+        event.to = to;
+        return event;
+    }
+}
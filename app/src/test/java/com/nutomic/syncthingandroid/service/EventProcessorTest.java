@@ -0,0 +1,296 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.content.Context;
+import android.os.Looper;
+
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+
+import com.nutomic.syncthingandroid.model.CompletionInfo;
+import com.nutomic.syncthingandroid.model.Event;
+import com.nutomic.syncthingandroid.model.FolderCompletionEvent;
+import com.nutomic.syncthingandroid.model.JsonCodec;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+@RunWith(RobolectricTestRunner.class)
+public class EventProcessorTest {
+
+    private static final int WARMUP_EVENTS = 500;
+    private static final int BURST_EVENTS = 10000;
+
+    /**
+     * Longest time any single task may block the main thread while a burst is handled. Handling
+     * the burst on the main thread, as before, took several seconds.
+     */
+    private static final long MAIN_THREAD_BUDGET_MS = 50;
+
+    private static final long REQUEST_TIMEOUT_S = 30;
+
+    private static final String DEVICE_ID =
+            "AAAAAAA-BBBBBBB-CCCCCCC-DDDDDDD-EEEEEEE-FFFFFFF-GGGGGGG-HHHHHHH";
+
+    private FakeRestApi mApi;
+    private EventProcessor mEventProcessor;
+    private ShadowLooper mMainLooper;
+
+    @Before
+    public void setUp() throws MalformedURLException {
+        Context context = ApplicationProvider.getApplicationContext();
+        mApi = new FakeRestApi(context);
+        mEventProcessor = new EventProcessor(context, mApi, new EventBus(), new EventJournal());
+        mMainLooper = shadowOf(Looper.getMainLooper());
+    }
+
+    @After
+    public void tearDown() {
+        mEventProcessor.stop();
+    }
+
+    @Test
+    public void handlesBurstInOrderOffMainThread() throws InterruptedException {
+        mEventProcessor.start();
+
+        // The first request checks if the event id ran backwards.
+        EventRequest resetCheck = takeRequest();
+        assertEquals(0, resetCheck.sinceId);
+        assertEquals(1, resetCheck.limit);
+        assertEquals(EventProcessor.SUBSCRIBED_EVENT_TYPES, resetCheck.eventTypes);
+        resetCheck.listener.onDone(0);
+
+        EventRequest request = takeRequest();
+        assertEquals(0, request.sinceId);
+        assertEquals(EventProcessor.SUBSCRIBED_EVENT_TYPES, request.eventTypes);
+        assertTrue(request.timeoutS > 0);
+
+        // Loads the classes involved, so they don't count towards the budget.
+        List<Event> warmup = replay(1, WARMUP_EVENTS);
+        deliver(request, warmup);
+        request = takeRequest();
+        assertEquals(WARMUP_EVENTS, request.sinceId);
+        drainMainLooper();
+        mApi.mCompletionNeedBytes.clear();
+
+        List<Event> burst = replay(WARMUP_EVENTS + 1, BURST_EVENTS);
+        long deliveryMs = deliver(request, burst);
+        request = takeRequest();
+        assertEquals(WARMUP_EVENTS + BURST_EVENTS, request.sinceId);
+        long longestTaskMs = drainMainLooper();
+
+        assertTrue("Delivering the burst blocked the main thread for " + deliveryMs + " ms",
+                deliveryMs < MAIN_THREAD_BUDGET_MS);
+        assertTrue("A task posted while handling the burst blocked the main thread for " +
+                longestTaskMs + " ms", longestTaskMs < MAIN_THREAD_BUDGET_MS);
+
+        assertEquals("Completion was set on the main thread", 0,
+                mApi.mCompletionOnMainThread.get());
+        List<Long> expected = new ArrayList<>();
+        for (Event event : burst) {
+            if (event instanceof FolderCompletionEvent) {
+                expected.add((long) event.id);
+            }
+        }
+        assertEquals(expected, mApi.mCompletionNeedBytes);
+    }
+
+    @Test
+    public void restartsFromZeroIfEventIdRanBackwards() throws InterruptedException {
+        mEventProcessor.start();
+        takeRequest().listener.onDone(0);
+        EventRequest request = takeRequest();
+        deliver(request, replay(1, 100));
+        assertEquals(100, takeRequest().sinceId);
+
+        // Syncthing was restarted, and its event ids started over.
+        mEventProcessor.start();
+        EventRequest resetCheck = takeRequest();
+        assertEquals(1, resetCheck.limit);
+        assertEquals(EventProcessor.SUBSCRIBED_EVENT_TYPES, resetCheck.eventTypes);
+        resetCheck.listener.onDone(5);
+        assertEquals(0, takeRequest().sinceId);
+    }
+
+    @Test
+    public void notifiesFolderStateListenersOncePerBatch() throws InterruptedException {
+        AtomicInteger notifications = new AtomicInteger();
+        FolderStateStore store = mApi.getFolderStateStore();
+        store.addOnFolderStateChangeListener(notifications::incrementAndGet);
+        mEventProcessor.start();
+        takeRequest().listener.onDone(0);
+
+        StringBuilder json = new StringBuilder("[");
+        for (int id = 1; id <= 100; id++) {
+            if (id > 1) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id)
+                    .append(",\"globalID\":").append(id)
+                    .append(",\"time\":\"2024-01-01T12:00:00.000000000Z\",")
+                    .append("\"type\":\"FolderSummary\",\"data\":{")
+                    .append("\"folder\":\"folder-").append(id % 5)
+                    .append("\",\"summary\":{\"state\":\"syncing\",\"sequence\":")
+                    .append(id).append("}}}");
+        }
+        json.append(']');
+        deliver(takeRequest(), JsonCodec.eventsFromJson(json.toString()));
+        takeRequest();
+        drainMainLooper();
+
+        assertEquals(1, notifications.get());
+        assertEquals(99, store.getFolderStatus("folder-4").sequence);
+    }
+
+    /**
+     * Calls the listener as the network layer does, in a single task on the main thread.
+     *
+     * @return Time the task took.
+     */
+    private static long deliver(EventRequest request, List<Event> events) {
+        long start = System.nanoTime();
+        long lastId = 0;
+        for (Event event : events) {
+            lastId = Math.max(lastId, event.id);
+            request.listener.onEvent(event);
+        }
+        request.listener.onDone(lastId);
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Runs all tasks posted to the main thread.
+     *
+     * @return Time the longest task took.
+     */
+    private long drainMainLooper() {
+        long longest = 0;
+        while (!mMainLooper.isIdle()) {
+            long start = System.nanoTime();
+            mMainLooper.runOneTask();
+            longest = Math.max(longest, System.nanoTime() - start);
+        }
+        return TimeUnit.NANOSECONDS.toMillis(longest);
+    }
+
+    private EventRequest takeRequest() throws InterruptedException {
+        EventRequest request = mApi.mRequests.poll(REQUEST_TIMEOUT_S, TimeUnit.SECONDS);
+        assertNotNull("No event request within " + REQUEST_TIMEOUT_S + " s", request);
+        return request;
+    }
+
+    /**
+     * Returns count events as syncthing sends them while a folder syncs, decoded by the same
+     * codec as real responses.
+     */
+    private static List<Event> replay(int firstId, int count) {
+        StringBuilder json = new StringBuilder("[");
+        for (int id = firstId; id < firstId + count; id++) {
+            if (id > firstId) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(id)
+                    .append(",\"globalID\":").append(id)
+                    .append(",\"time\":\"2024-01-01T12:00:00.000000000Z\",");
+            String folder = "folder-" + (id % 5);
+            switch (id % 3) {
+                case 0:
+                    // needBytes identifies the event, to check the order they were handled in.
+                    json.append("\"type\":\"FolderCompletion\",\"data\":{")
+                            .append("\"completion\":50,\"device\":\"").append(DEVICE_ID)
+                            .append("\",\"folder\":\"").append(folder)
+                            .append("\",\"globalBytes\":2000000,\"needBytes\":").append(id)
+                            .append(",\"needDeletes\":0,\"needItems\":1}}");
+                    break;
+                case 1:
+                    json.append("\"type\":\"StateChanged\",\"data\":{")
+                            .append("\"folder\":\"").append(folder)
+                            .append("\",\"from\":\"idle\",\"to\":\"syncing\",\"duration\":0.5}}");
+                    break;
+                default:
+                    json.append("\"type\":\"LocalIndexUpdated\",\"data\":{")
+                            .append("\"folder\":\"").append(folder)
+                            .append("\",\"items\":1,\"sequence\":").append(id)
+                            .append(",\"version\":").append(id).append("}}");
+            }
+        }
+        json.append(']');
+        return JsonCodec.eventsFromJson(json.toString());
+    }
+
+    private static class EventRequest {
+        final long sinceId;
+        final long limit;
+        final int timeoutS;
+        @Nullable final Collection<String> eventTypes;
+        final RestApi.OnReceiveEventListener listener;
+
+        EventRequest(long sinceId, long limit, int timeoutS,
+                     @Nullable Collection<String> eventTypes,
+                     RestApi.OnReceiveEventListener listener) {
+            this.sinceId = sinceId;
+            this.limit = limit;
+            this.timeoutS = timeoutS;
+            this.eventTypes = eventTypes;
+            this.listener = listener;
+        }
+    }
+
+    /**
+     * Hands event requests to the test instead of sending them to syncthing, and records the
+     * completion updates made by the event processor.
+     */
+    private static class FakeRestApi extends RestApi {
+
+        final BlockingQueue<EventRequest> mRequests = new LinkedBlockingQueue<>();
+        final List<Long> mCompletionNeedBytes = Collections.synchronizedList(new ArrayList<>());
+        final AtomicInteger mCompletionOnMainThread = new AtomicInteger();
+
+        FakeRestApi(Context context) throws MalformedURLException {
+            super(context, new URL("http://127.0.0.1:8384"), "", () -> {}, () -> {});
+        }
+
+        @Override
+        public void getEvents(long sinceId, long limit, int timeoutS,
+                              @Nullable Collection<String> eventTypes,
+                              OnReceiveEventListener listener) {
+            mRequests.add(new EventRequest(sinceId, limit, timeoutS, eventTypes, listener));
+        }
+
+        @Override
+        public void setCompletionInfo(String deviceId, String folderId,
+                                      CompletionInfo completionInfo) {
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                mCompletionOnMainThread.incrementAndGet();
+            }
+            mCompletionNeedBytes.add(completionInfo.needBytes);
+        }
+
+        @Override
+        public void refreshFolderStatuses() {
+        }
+
+        @Override
+        public void refreshConnections() {
+        }
+    }
+}
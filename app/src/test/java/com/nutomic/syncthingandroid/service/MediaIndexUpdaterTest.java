@@ -0,0 +1,172 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.content.Context;
+import android.media.MediaScannerConnection;
+import android.os.Build;
+import android.os.Looper;
+
+import androidx.test.core.app.ApplicationProvider;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowContentResolver;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Drives {@link MediaIndexUpdater} on the paused main looper and checks the scans and deletes it
+ * submits. Deletes are only submitted before Android 10, so those tests run on Android 9.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(shadows = MediaIndexUpdaterTest.RecordingMediaScannerConnection.class)
+public class MediaIndexUpdaterTest {
+
+    private static final long FLUSH_DELAY_MS = 2000;
+
+    /**
+     * Records the paths of each scanFile call instead of connecting to the media scanner.
+     */
+    @Implements(MediaScannerConnection.class)
+    public static class RecordingMediaScannerConnection {
+        static final List<List<String>> sScans = new ArrayList<>();
+
+        @Implementation
+        protected static void scanFile(Context context, String[] paths, String[] mimeTypes,
+                                       MediaScannerConnection.OnScanCompletedListener callback) {
+            sScans.add(Arrays.asList(paths));
+        }
+    }
+
+    private Context mContext;
+    private ShadowLooper mLooper;
+    private MediaIndexUpdater mUpdater;
+
+    @Before
+    public void setUp() {
+        RecordingMediaScannerConnection.sScans.clear();
+        mContext = ApplicationProvider.getApplicationContext();
+        mLooper = shadowOf(Looper.getMainLooper());
+        mUpdater = new MediaIndexUpdater(mContext, Looper.getMainLooper());
+    }
+
+    @Test
+    public void waitsForMoreChanges() {
+        mUpdater.onFileChanged("/sdcard/DCIM/a.jpg", false);
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS - 1));
+        assertEquals(0, RecordingMediaScannerConnection.sScans.size());
+
+        mUpdater.onFileChanged("/sdcard/DCIM/b.jpg", false);
+        mLooper.idleFor(Duration.ofMillis(1));
+        assertEquals(Collections.singletonList(Arrays.asList("/sdcard/DCIM/a.jpg",
+                "/sdcard/DCIM/b.jpg")), RecordingMediaScannerConnection.sScans);
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.P)
+    public void lastActionWins() {
+        mUpdater.onFileChanged("/sdcard/a.jpg", false);
+        mUpdater.onFileChanged("/sdcard/a.jpg", true);
+        mUpdater.onFileChanged("/sdcard/b.jpg", false);
+        mUpdater.onFileChanged("/sdcard/b.jpg", false);
+        mUpdater.onFileChanged("/sdcard/c.jpg", true);
+        mUpdater.onFileChanged("/sdcard/c.jpg", false);
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+
+        assertEquals(Collections.singletonList(Arrays.asList("/sdcard/b.jpg", "/sdcard/c.jpg")),
+                RecordingMediaScannerConnection.sScans);
+        List<ShadowContentResolver.DeleteStatement> deletes = getDeletes();
+        assertEquals(1, deletes.size());
+        assertEquals(Collections.singletonList("/sdcard/a.jpg"),
+                Arrays.asList(deletes.get(0).getSelectionArgs()));
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.P)
+    public void submitsChunksOf200Paths() {
+        for (int i = 0; i < 450; i++) {
+            mUpdater.onFileChanged("/sdcard/changed-" + i, false);
+            mUpdater.onFileChanged("/sdcard/deleted-" + i, true);
+        }
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+
+        List<List<String>> scans = RecordingMediaScannerConnection.sScans;
+        assertEquals(Arrays.asList(200, 200, 50),
+                Arrays.asList(scans.get(0).size(), scans.get(1).size(), scans.get(2).size()));
+        assertEquals(3, scans.size());
+        assertEquals("/sdcard/changed-0", scans.get(0).get(0));
+        assertEquals("/sdcard/changed-449", scans.get(2).get(49));
+
+        List<ShadowContentResolver.DeleteStatement> deletes = getDeletes();
+        assertEquals(3, deletes.size());
+        int[] sizes = {200, 200, 50};
+        for (int i = 0; i < deletes.size(); i++) {
+            ShadowContentResolver.DeleteStatement delete = deletes.get(i);
+            assertEquals(sizes[i], delete.getSelectionArgs().length);
+            // One placeholder per path.
+            assertEquals(sizes[i], delete.getWhere().split("\\?", -1).length - 1);
+        }
+    }
+
+    @Test
+    public void flushesEarlyAtMaxPendingPaths() {
+        for (int i = 0; i < 4999; i++) {
+            mUpdater.onFileChanged("/sdcard/file-" + i, false);
+        }
+        // Changing a pending path again doesn't add to the pending paths.
+        mUpdater.onFileChanged("/sdcard/file-0", false);
+        assertEquals(0, RecordingMediaScannerConnection.sScans.size());
+
+        mUpdater.onFileChanged("/sdcard/file-4999", false);
+        assertEquals(25, RecordingMediaScannerConnection.sScans.size());
+        // file-0 moved to the end when it changed again.
+        assertEquals("/sdcard/file-0", RecordingMediaScannerConnection.sScans.get(24).get(198));
+
+        // The flush that was scheduled for the submitted paths doesn't submit anything.
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+        assertEquals(25, RecordingMediaScannerConnection.sScans.size());
+
+        // The next change starts a new window.
+        mUpdater.onFileChanged("/sdcard/next", false);
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+        assertEquals(26, RecordingMediaScannerConnection.sScans.size());
+    }
+
+    @Test
+    public void shutdownFlushesWithoutWaiting() {
+        mUpdater.onFileChanged("/sdcard/a.jpg", false);
+        mUpdater.shutdown();
+        mLooper.idle();
+        assertEquals(Collections.singletonList(Collections.singletonList("/sdcard/a.jpg")),
+                RecordingMediaScannerConnection.sScans);
+
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+        assertEquals(1, RecordingMediaScannerConnection.sScans.size());
+    }
+
+    @Test
+    @Config(sdk = Build.VERSION_CODES.Q)
+    public void noDeletesOnAndroid10() {
+        mUpdater.onFileChanged("/sdcard/a.jpg", true);
+        mLooper.idleFor(Duration.ofMillis(FLUSH_DELAY_MS));
+        assertTrue(getDeletes().isEmpty());
+        assertTrue(RecordingMediaScannerConnection.sScans.isEmpty());
+    }
+
+    private List<ShadowContentResolver.DeleteStatement> getDeletes() {
+        return shadowOf(mContext.getContentResolver()).getDeleteStatements();
+    }
+}
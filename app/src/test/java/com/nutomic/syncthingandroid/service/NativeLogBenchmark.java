@@ -0,0 +1,120 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import com.google.common.base.Charsets;
+import com.nutomic.syncthingandroid.model.Benchmarks;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.Locale;
+
+/**
+ * Measures what parsing and indexing costs per line of syncthing's output, compared with only
+ * encoding the line as before, and how long filtered queries over a full buffer take.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NativeLogBenchmark {
+
+    private static final int LINES = 50000;
+
+    private static final String[] FACILITIES = {"model", "scanner", "connections", "fs"};
+
+    private String[] mLines;
+    private int mNext = 0;
+
+    @Before
+    public void setUp() {
+        Benchmarks.assumeEnabled();
+        mLines = new String[LINES];
+        for (int i = 0; i < LINES; i++) {
+            mLines[i] = line(i);
+        }
+    }
+
+    @Test
+    public void add() {
+        NativeLogParser parser = new NativeLogParser();
+        Benchmarks.print("log line", "encode only", Benchmarks.measure(LINES,
+                () -> nextLine().getBytes(Charsets.UTF_8)));
+        Benchmarks.print("log line", "parse", Benchmarks.measure(LINES, () -> {
+            parser.parse(nextLine(), Log.INFO);
+            return parser.folderId;
+        }));
+
+        // Starts evicting after the first round, as a long running instance does.
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        Benchmarks.print("log line", "buffer add", Benchmarks.measure(LINES, () -> {
+            buffer.add(Log.INFO, nextLine());
+            return buffer;
+        }));
+    }
+
+    @Test
+    public void query() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        for (String line : mLines) {
+            buffer.add(Log.INFO, line);
+        }
+
+        NativeLogBuffer.Filter none = new NativeLogBuffer.Filter();
+        NativeLogBuffer.Filter folder = new NativeLogBuffer.Filter();
+        folder.folderId = "folder-3";
+        NativeLogBuffer.Filter warnings = new NativeLogBuffer.Filter();
+        warnings.minPriority = Log.WARN;
+        NativeLogBuffer.Filter folderWarnings = new NativeLogBuffer.Filter();
+        folderWarnings.folderId = "folder-3";
+        folderWarnings.minPriority = Log.WARN;
+        NativeLogBuffer.Filter text = new NativeLogBuffer.Filter();
+        text.text = "Connection";
+
+        String name = "query, " + LINES + " lines";
+        Benchmarks.print(name, "no filter", Benchmarks.measure(20,
+                () -> buffer.query(none, 0, Long.MAX_VALUE)));
+        Benchmarks.print(name, "folder", Benchmarks.measure(20,
+                () -> buffer.query(folder, 0, Long.MAX_VALUE)));
+        Benchmarks.print(name, "warnings", Benchmarks.measure(20,
+                () -> buffer.query(warnings, 0, Long.MAX_VALUE)));
+        Benchmarks.print(name, "folder + warnings", Benchmarks.measure(20,
+                () -> buffer.query(folderWarnings, 0, Long.MAX_VALUE)));
+        Benchmarks.print(name, "text", Benchmarks.measure(20,
+                () -> buffer.query(text, 0, Long.MAX_VALUE)));
+    }
+
+    private String nextLine() {
+        String line = mLines[mNext];
+        mNext = (mNext + 1) % mLines.length;
+        return line;
+    }
+
+    /**
+     * Returns lines in both of syncthing's formats, mostly debug output, with a few warnings.
+     */
+    private static String line(int i) {
+        String folder = "folder-" + (i % 20);
+        String device = Benchmarks.deviceId(i % 5);
+        String level = (i % 50 == 0) ? "WRN" : (i % 4 == 0) ? "INF" : "DBG";
+        if (i % 2 == 0) {
+            return String.format(Locale.ROOT,
+                    "2024-01-01 12:00:%02d %s Connection to peer closed, retrying in %d s " +
+                    "(device=%s folder=%s log.pkg=%s)",
+                    i % 60, level, i % 30, device, folder, FACILITIES[i % FACILITIES.length]);
+        }
+        switch (i % 3) {
+            case 0:
+                return String.format(Locale.ROOT,
+                        "[ABCDE] INFO: Ready to synchronize \"Folder %d\" (%s) (sendreceive)",
+                        i % 20, folder);
+            case 1:
+                return String.format(Locale.ROOT,
+                        "[ABCDE] DEBUG: model@0xc000123456: Index update from %s for %s, " +
+                        "%d files", device, folder, i % 100);
+            default:
+                return String.format(Locale.ROOT,
+                        "[ABCDE] DEBUG: scanner: Walking DCIM/Camera/IMG_%05d.jpg", i);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs with Robolectric for {@link android.text.TextUtils}, which the buffer uses for filters.
+ */
+@RunWith(RobolectricTestRunner.class)
+public class NativeLogBufferTest {
+
+    @Test
+    public void addAndGet() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        buffer.add(Log.INFO, "[ABCDE] WARNING: first");
+        buffer.add(Log.ERROR, "second, without level");
+
+        assertEquals(0, buffer.getFirstSequence());
+        assertEquals(2, buffer.getNextSequence());
+        NativeLogBuffer.Line first = buffer.get(0);
+        assertNotNull(first);
+        assertEquals("[ABCDE] WARNING: first", first.text);
+        assertEquals(Log.WARN, first.priority);
+        assertEquals(Log.ERROR, buffer.get(1).priority);
+        assertNull(buffer.get(2));
+    }
+
+    @Test
+    public void lineCapacityEvictsOldestLines() {
+        NativeLogBuffer buffer = new NativeLogBuffer(4, 1024);
+        for (int i = 0; i < 10; i++) {
+            buffer.add(Log.INFO, "line " + i);
+        }
+        assertEquals(6, buffer.getFirstSequence());
+        assertEquals(10, buffer.getNextSequence());
+        assertNull(buffer.get(5));
+        assertEquals("line 6", buffer.get(6).text);
+        assertEquals("line 9", buffer.get(9).text);
+    }
+
+    @Test
+    public void dataWrapsAround() {
+        // Room for three lines of 30 bytes, so every line is written at a different offset.
+        NativeLogBuffer buffer = new NativeLogBuffer(100, 100);
+        for (int i = 0; i < 50; i++) {
+            buffer.add(Log.INFO, line(i));
+            assertEquals(i + 1, buffer.getNextSequence());
+            assertEquals(Math.max(0, i - 2), buffer.getFirstSequence());
+            for (long sequence = buffer.getFirstSequence(); sequence <= i; sequence++) {
+                assertEquals(line((int) sequence), buffer.get(sequence).text);
+            }
+        }
+    }
+
+    @Test
+    public void growsUpToCapacity() {
+        // More lines and bytes than initially allocated.
+        NativeLogBuffer buffer = new NativeLogBuffer(5000, 4 * 1024 * 1024);
+        for (int i = 0; i < 3000; i++) {
+            buffer.add(Log.INFO, line(i) + " (folder=folder-" + (i % 3) + ")");
+        }
+        assertEquals(0, buffer.getFirstSequence());
+        for (int i = 0; i < 3000; i++) {
+            assertEquals(line(i) + " (folder=folder-" + (i % 3) + ")", buffer.get(i).text);
+        }
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.folderId = "folder-1";
+        long[] result = buffer.query(filter, 0, Long.MAX_VALUE);
+        assertEquals(1000, result.length);
+        for (long sequence : result) {
+            assertEquals(1, sequence % 3);
+        }
+    }
+
+    @Test
+    public void evictionTrimsIndexes() {
+        NativeLogBuffer buffer = new NativeLogBuffer(4, 1024);
+        for (int i = 0; i < 4; i++) {
+            buffer.add(Log.INFO, "[ABCDE] INFO: old (folder=old-folder)");
+        }
+        assertEquals(Collections.singletonList("old-folder"),
+                buffer.getValues(NativeLogBuffer.FIELD_FOLDER));
+
+        buffer.add(Log.INFO, "[ABCDE] INFO: new (folder=new-folder)");
+        buffer.add(Log.INFO, "[ABCDE] INFO: new (folder=new-folder)");
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.folderId = "old-folder";
+        assertArrayEquals(new long[] {2, 3}, buffer.query(filter, 0, Long.MAX_VALUE));
+
+        buffer.add(Log.INFO, "[ABCDE] INFO: new (folder=new-folder)");
+        buffer.add(Log.INFO, "[ABCDE] INFO: new (folder=new-folder)");
+        assertEquals(0, buffer.query(filter, 0, Long.MAX_VALUE).length);
+        assertEquals(Collections.singletonList("new-folder"),
+                buffer.getValues(NativeLogBuffer.FIELD_FOLDER));
+        filter.folderId = "new-folder";
+        assertArrayEquals(new long[] {4, 5, 6, 7}, buffer.query(filter, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void queryByFields() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        buffer.add(Log.INFO, "2024-01-01 12:00:00 INF a (folder=f1 log.pkg=model)");
+        buffer.add(Log.INFO, "2024-01-01 12:00:00 INF b (folder=f2 log.pkg=model)");
+        buffer.add(Log.INFO, "2024-01-01 12:00:00 INF c (folder=f1 log.pkg=scanner)");
+
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.facility = "model";
+        assertArrayEquals(new long[] {0, 1}, buffer.query(filter, 0, Long.MAX_VALUE));
+        filter.folderId = "f1";
+        assertArrayEquals(new long[] {0}, buffer.query(filter, 0, Long.MAX_VALUE));
+        filter.folderId = "unknown";
+        assertEquals(0, buffer.query(filter, 0, Long.MAX_VALUE).length);
+
+        assertEquals(Arrays.asList("model", "scanner"),
+                buffer.getValues(NativeLogBuffer.FIELD_FACILITY));
+        assertEquals(Arrays.asList("f1", "f2"), buffer.getValues(NativeLogBuffer.FIELD_FOLDER));
+    }
+
+    @Test
+    public void queryRange() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        for (int i = 0; i < 10; i++) {
+            buffer.add(Log.INFO, line(i));
+        }
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        assertArrayEquals(new long[] {3, 4, 5}, buffer.query(filter, 3, 6));
+        assertEquals(0, buffer.query(filter, 10, 20).length);
+    }
+
+    @Test
+    public void mergesPriorityIndexesInOrder() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String level = (i % 10 == 3) ? "WRN" : (i % 10 == 7) ? "ERR" : "DBG";
+            buffer.add(Log.INFO, "2024-01-01 12:00:00 " + level + " message " + i +
+                    " (folder=folder-" + (i % 3) + ")");
+            if (!level.equals("DBG")) {
+                expected.add((long) i);
+            }
+        }
+
+        // Fewer warnings and errors than lines, so their merged indexes are the candidates.
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.minPriority = Log.WARN;
+        assertArrayEquals(toArray(expected), buffer.query(filter, 0, Long.MAX_VALUE));
+        assertArrayEquals(new long[] {13, 17, 23}, buffer.query(filter, 10, 24));
+
+        // The folder index is longer than the priority indexes, so the folder is checked on the
+        // merged candidates.
+        filter.folderId = "folder-0";
+        List<Long> inFolder = new ArrayList<>();
+        for (long sequence : expected) {
+            if (sequence % 3 == 0) {
+                inFolder.add(sequence);
+            }
+        }
+        assertArrayEquals(toArray(inFolder), buffer.query(filter, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void textFilterIgnoresCase() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        buffer.add(Log.INFO, "Connection to Device closed");
+        buffer.add(Log.INFO, "Scanning folder");
+        buffer.add(Log.INFO, "DEVICE paused");
+
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        filter.text = "device";
+        assertArrayEquals(new long[] {0, 2}, buffer.query(filter, 0, Long.MAX_VALUE));
+        filter.text = "Device Closed";
+        assertArrayEquals(new long[] {0}, buffer.query(filter, 0, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void textFilterFindsTextAcrossTheEndOfTheData() {
+        NativeLogBuffer buffer = new NativeLogBuffer(100, 100);
+        for (int i = 0; i < 50; i++) {
+            buffer.add(Log.INFO, line(i));
+        }
+        NativeLogBuffer.Filter filter = new NativeLogBuffer.Filter();
+        for (long sequence = buffer.getFirstSequence(); sequence < 50; sequence++) {
+            filter.text = line((int) sequence).toUpperCase(Locale.ROOT);
+            assertArrayEquals(new long[] {sequence}, buffer.query(filter, 0, Long.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void longLinesAreCut() {
+        NativeLogBuffer buffer = new NativeLogBuffer();
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            line.append('x');
+        }
+        buffer.add(Log.INFO, line.toString());
+        assertTrue(buffer.get(0).text.length() < line.length());
+    }
+
+    /**
+     * Returns a line of 30 bytes.
+     */
+    private static String line(int index) {
+        return String.format(Locale.ROOT, "line %04d of the log, padding.", index);
+    }
+
+    private static long[] toArray(List<Long> values) {
+        long[] array = new long[values.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = values.get(i);
+        }
+        return array;
+    }
+}
@@ -0,0 +1,190 @@
+package com.nutomic.syncthingandroid.service;
+
+import android.util.Log;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class NativeLogParserTest {
+
+    private static final String DEVICE_ID =
+            "AAAAAAA-BBBBBBB-CCCCCCC-DDDDDDD-EEEEEEE-FFFFFFF-GGGGGGG-HHHHHHH";
+
+    private final NativeLogParser mParser = new NativeLogParser();
+
+    @Test
+    public void plainFormatLevels() {
+        assertPriority(Log.DEBUG, "[ABCDE] DEBUG: message");
+        assertPriority(Log.INFO, "[ABCDE] VERBOSE: message");
+        assertPriority(Log.INFO, "[ABCDE] INFO: message");
+        assertPriority(Log.INFO, "[ABCDE] OK: message");
+        assertPriority(Log.WARN, "[ABCDE] WARNING: message");
+        assertPriority(Log.ERROR, "[ABCDE] FATAL: message");
+        assertPriority(Log.INFO, "INFO: message without device prefix");
+    }
+
+    @Test
+    public void plainFormatFacility() {
+        mParser.parse("[ABCDE] DEBUG: model@0xc000123456: Folder changed", Log.INFO);
+        assertEquals("model", mParser.facility);
+
+        mParser.parse("[ABCDE] DEBUG: sendreceive/abcd-1234: pulling", Log.INFO);
+        assertEquals("sendreceive", mParser.facility);
+
+        mParser.parse("[ABCDE] DEBUG: fs: Watching", Log.INFO);
+        assertEquals("fs", mParser.facility);
+    }
+
+    @Test
+    public void plainFormatFacilityNeedsLowerCaseWordAndSeparator() {
+        // Ordinary messages start with an upper case word.
+        mParser.parse("[ABCDE] INFO: Ready to synchronize: all", Log.INFO);
+        assertNull(mParser.facility);
+
+        // Too short.
+        mParser.parse("[ABCDE] DEBUG: a: message", Log.INFO);
+        assertNull(mParser.facility);
+
+        // Not followed by a separator.
+        mParser.parse("[ABCDE] DEBUG: model changed: message", Log.INFO);
+        assertNull(mParser.facility);
+
+        // Longer than any facility.
+        mParser.parse("[ABCDE] DEBUG: abcdefghijklmnopqrstuvwxyz: message", Log.INFO);
+        assertNull(mParser.facility);
+    }
+
+    @Test
+    public void keyValueFormat() {
+        mParser.parse("2024-01-01 12:00:00 INF Ready to synchronize " +
+                "(folder=abcd-1234 folder.type=sendreceive log.pkg=model)", Log.DEBUG);
+        assertEquals(Log.INFO, mParser.priority);
+        assertEquals("model", mParser.facility);
+        assertEquals("abcd-1234", mParser.folderId);
+        assertNull(mParser.deviceId);
+
+        assertPriority(Log.DEBUG, "2024-01-01 12:00:00 DBG message (log.pkg=model)");
+        assertPriority(Log.WARN, "2024-01-01 12:00:00 WRN message (log.pkg=model)");
+        assertPriority(Log.ERROR, "2024-01-01 12:00:00 ERR message (log.pkg=model)");
+    }
+
+    @Test
+    public void keyValueFormatIds() {
+        mParser.parse("2024-01-01 12:00:00 INF Connected (device=" + DEVICE_ID +
+                " folder.id=abcd-1234 log.pkg=connections)", Log.INFO);
+        assertEquals("abcd-1234", mParser.folderId);
+        assertEquals(DEVICE_ID, mParser.deviceId);
+        assertEquals("connections", mParser.facility);
+    }
+
+    @Test
+    public void keyValueFormatQuotedValue() {
+        mParser.parse("2024-01-01 12:00:00 INF Paused (folder=\"My Camera\" log.pkg=model)",
+                Log.INFO);
+        assertEquals("My Camera", mParser.folderId);
+    }
+
+    @Test
+    public void keyMustNotBeTheEndOfALongerKey() {
+        mParser.parse("2024-01-01 12:00:00 INF Scan (subfolder=photos log.pkg=scanner)",
+                Log.INFO);
+        assertNull(mParser.folderId);
+
+        mParser.parse("2024-01-01 12:00:00 INF Scan (subfolder=photos folder=abcd-1234)",
+                Log.INFO);
+        assertEquals("abcd-1234", mParser.folderId);
+    }
+
+    @Test
+    public void tooLongValueIsIgnored() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 70; i++) {
+            value.append('x');
+        }
+        mParser.parse("2024-01-01 12:00:00 INF Scan (folder=" + value + ")", Log.INFO);
+        assertNull(mParser.folderId);
+    }
+
+    @Test
+    public void levelTokenOnlyAfterTimestamp() {
+        // " ERR " far into the message is not a level.
+        mParser.parse("Some message long enough to be past the timestamp: ERR 42", Log.INFO);
+        assertEquals(Log.INFO, mParser.priority);
+    }
+
+    @Test
+    public void quotedLabelId() {
+        mParser.parse("[ABCDE] INFO: Ready to synchronize \"Camera\" (abcd-1234) (sendreceive)",
+                Log.INFO);
+        assertEquals("abcd-1234", mParser.folderId);
+    }
+
+    @Test
+    public void quotedLabelIdMustNotContainWhitespace() {
+        mParser.parse("[ABCDE] INFO: Renamed \"a.txt\" (see the conflict copy)", Log.INFO);
+        assertNull(mParser.folderId);
+    }
+
+    @Test
+    public void deviceIdInMessage() {
+        mParser.parse("[ABCDE] INFO: Established secure connection to " + DEVICE_ID +
+                " at 192.168.1.2:22000", Log.INFO);
+        assertEquals(DEVICE_ID, mParser.deviceId);
+
+        mParser.parse("[ABCDE] INFO: Device " + DEVICE_ID, Log.INFO);
+        assertEquals(DEVICE_ID, mParser.deviceId);
+    }
+
+    @Test
+    public void deviceIdMustNotBePartOfALongerWord() {
+        mParser.parse("[ABCDE] INFO: Hash X" + DEVICE_ID, Log.INFO);
+        assertNull(mParser.deviceId);
+    }
+
+    @Test
+    public void deviceIdNeedsBase32Groups() {
+        // Lower case.
+        mParser.parse("[ABCDE] INFO: " + DEVICE_ID.toLowerCase(Locale.ROOT), Log.INFO);
+        assertNull(mParser.deviceId);
+
+        // 1 and 8 are not base32 digits.
+        mParser.parse("[ABCDE] INFO: " + DEVICE_ID.replace('B', '1'), Log.INFO);
+        assertNull(mParser.deviceId);
+
+        // A group is too short.
+        mParser.parse("[ABCDE] INFO: " + DEVICE_ID.replace("CCCCCCC", "CCCCCC"), Log.INFO);
+        assertNull(mParser.deviceId);
+
+        // Not enough groups.
+        mParser.parse("[ABCDE] INFO: " + DEVICE_ID.substring(0, 47), Log.INFO);
+        assertNull(mParser.deviceId);
+    }
+
+    @Test
+    public void keyWinsOverDeviceIdInMessage() {
+        String other = DEVICE_ID.replace('A', 'Z');
+        mParser.parse("2024-01-01 12:00:00 INF Introduced " + other + " (device=" + DEVICE_ID +
+                ")", Log.INFO);
+        assertEquals(DEVICE_ID, mParser.deviceId);
+    }
+
+    @Test
+    public void lineWithoutFieldsKeepsFallbackPriorityAndClearsFields() {
+        mParser.parse("2024-01-01 12:00:00 WRN message (folder=abcd-1234 device=" + DEVICE_ID +
+                " log.pkg=model)", Log.INFO);
+        mParser.parse("panic: runtime error", Log.ERROR);
+        assertEquals(Log.ERROR, mParser.priority);
+        assertNull(mParser.facility);
+        assertNull(mParser.folderId);
+        assertNull(mParser.deviceId);
+    }
+
+    private void assertPriority(int expected, String line) {
+        mParser.parse(line, Log.VERBOSE);
+        assertEquals(line, expected, mParser.priority);
+    }
+}
@@ -0,0 +1,160 @@
+package com.nutomic.syncthingandroid.service;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ProcScannerTest {
+
+    private static final String BINARY = Constants.FILENAME_SYNCTHING_BINARY;
+    private static final String BINARY_PATH = "/data/app/com.nutomic.syncthingandroid-1/lib/arm64/"
+            + BINARY;
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mProcRoot;
+    private ProcScanner mScanner;
+
+    @Before
+    public void setUp() throws IOException {
+        mProcRoot = mFolder.newFolder("proc");
+        mScanner = new ProcScanner(mProcRoot);
+        addProcess(1, "/init\0second_stage\0", "1 (init) S 0 0 0");
+    }
+
+    @Test
+    public void matchesFullPath() throws IOException {
+        addProcess(100, BINARY_PATH + "\0serve\0--no-browser\0", stat(100, BINARY, 'S'));
+        assertEquals(Collections.singletonList(100), mScanner.findProcesses(BINARY));
+        assertTrue(mScanner.isRunning(100, BINARY));
+    }
+
+    @Test
+    public void matchesNameWithoutPath() throws IOException {
+        addProcess(100, BINARY + "\0serve\0", stat(100, BINARY, 'R'));
+        assertTrue(mScanner.isRunning(100, BINARY));
+    }
+
+    @Test
+    public void matchesWithoutTrailingNul() throws IOException {
+        addProcess(100, BINARY_PATH, stat(100, BINARY, 'S'));
+        assertTrue(mScanner.isRunning(100, BINARY));
+    }
+
+    @Test
+    public void ignoresLongerNames() throws IOException {
+        addProcess(100, BINARY_PATH + ".old\0serve\0", stat(100, BINARY, 'S'));
+        addProcess(101, "/data/local/tmp/old" + BINARY + "\0", stat(101, BINARY, 'S'));
+        addProcess(102, "old" + BINARY + "\0", stat(102, BINARY, 'S'));
+        assertEquals(Collections.emptyList(), mScanner.findProcesses(BINARY));
+    }
+
+    @Test
+    public void ignoresNameInLaterArgument() throws IOException {
+        addProcess(100, "/system/bin/sh\0-c\0" + BINARY_PATH + "\0", stat(100, "sh", 'S'));
+        addProcess(101, "/system/bin/logcat\0" + BINARY + "\0", stat(101, "logcat", 'S'));
+        assertEquals(Collections.emptyList(), mScanner.findProcesses(BINARY));
+    }
+
+    @Test
+    public void ignoresEmptyCmdline() throws IOException {
+        // Kernel threads have an empty cmdline.
+        addProcess(100, "", stat(100, BINARY, 'S'));
+        assertFalse(mScanner.isRunning(100, BINARY));
+    }
+
+    @Test
+    public void ignoresZombieAndDeadProcesses() throws IOException {
+        addProcess(100, BINARY_PATH + "\0", stat(100, BINARY, 'Z'));
+        addProcess(101, BINARY_PATH + "\0", stat(101, BINARY, 'X'));
+        addProcess(102, BINARY_PATH + "\0", stat(102, BINARY, 'x'));
+        addProcess(103, BINARY_PATH + "\0", stat(103, BINARY, 'D'));
+        assertEquals(Collections.singletonList(103), mScanner.findProcesses(BINARY));
+    }
+
+    @Test
+    public void parsesStateAfterLastParenthesis() throws IOException {
+        // The kernel doesn't escape the command name, which may contain ") Z" itself.
+        addProcess(100, BINARY_PATH + "\0", stat(100, "a) Z (b", 'S'));
+        addProcess(101, BINARY_PATH + "\0", stat(101, "a) S (b", 'Z'));
+        assertTrue(mScanner.isRunning(100, BINARY));
+        assertFalse(mScanner.isRunning(101, BINARY));
+    }
+
+    @Test
+    public void ignoresMissingOrTruncatedStat() throws IOException {
+        addProcess(100, BINARY_PATH + "\0", null);
+        addProcess(101, BINARY_PATH + "\0", "101 (" + BINARY + ")");
+        addProcess(102, BINARY_PATH + "\0", "102 (" + BINARY);
+        assertEquals(Collections.emptyList(), mScanner.findProcesses(BINARY));
+    }
+
+    @Test
+    public void ignoresProcessThatExited() {
+        assertFalse(mScanner.isRunning(100, BINARY));
+    }
+
+    @Test
+    public void ignoresNonNumericEntries() throws IOException {
+        for (String name : Arrays.asList("self", "thread-self", "net", "1a", "-1", "+1",
+                "99999999999")) {
+            File directory = new File(mProcRoot, name);
+            assertTrue(directory.mkdir());
+            write(new File(directory, "cmdline"), BINARY_PATH + "\0");
+            write(new File(directory, "stat"), stat(100, BINARY, 'S'));
+        }
+        write(new File(mProcRoot, "uptime"), "1.00 2.00\n");
+        addProcess(100, BINARY_PATH + "\0", stat(100, BINARY, 'S'));
+        addProcess(200, BINARY_PATH + "\0", stat(200, BINARY, 'S'));
+
+        List<Integer> pids = mScanner.findProcesses(BINARY);
+        Collections.sort(pids);
+        assertEquals(Arrays.asList(100, 200), pids);
+    }
+
+    @Test
+    public void restrictedIfInitIsHidden() throws IOException {
+        assertFalse(mScanner.isRestricted());
+        ProcScanner restricted = new ProcScanner(mFolder.newFolder("hidepid"));
+        assertTrue(restricted.isRestricted());
+    }
+
+    @Test
+    public void nullIfRootCantBeListed() {
+        ProcScanner missing = new ProcScanner(new File(mFolder.getRoot(), "missing"));
+        assertNull(missing.findProcesses(BINARY));
+    }
+
+    private void addProcess(int pid, String cmdline, String stat) throws IOException {
+        File directory = new File(mProcRoot, Integer.toString(pid));
+        assertTrue(directory.mkdir());
+        write(new File(directory, "cmdline"), cmdline);
+        if (stat != null) {
+            write(new File(directory, "stat"), stat);
+        }
+    }
+
+    private static String stat(int pid, String comm, char state) {
+        return pid + " (" + comm + ") " + state + " 1 " + pid + " " + pid + " 0 -1 4194560\n";
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Files.asCharSink(file, Charsets.UTF_8).write(content);
+    }
+}